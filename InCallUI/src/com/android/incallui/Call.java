@@ -307,16 +307,16 @@ public class Call {
         new android.telecom.Call.Callback() {
             @Override
             public void onStateChanged(android.telecom.Call call, int newState) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call + " newState="
-                        + newState);
+                Log.df(this, "TelecomCallCallback onStateChanged call=%s newState=%d", call,
+                        newState);
                 update();
             }
 
             @Override
             public void onParentChanged(android.telecom.Call call,
                     android.telecom.Call newParent) {
-                Log.d(this, "TelecomCallCallback onParentChanged call=" + call + " newParent="
-                        + newParent);
+                Log.df(this, "TelecomCallCallback onParentChanged call=%s newParent=%s", call,
+                        newParent);
                 update();
             }
 
@@ -329,38 +329,38 @@ public class Call {
             @Override
             public void onDetailsChanged(android.telecom.Call call,
                     android.telecom.Call.Details details) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call + " details="
-                        + details);
+                Log.df(this, "TelecomCallCallback onStateChanged call=%s details=%s", call,
+                        details);
                 update();
             }
 
             @Override
             public void onCannedTextResponsesLoaded(android.telecom.Call call,
                     List<String> cannedTextResponses) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call
-                        + " cannedTextResponses=" + cannedTextResponses);
+                Log.df(this, "TelecomCallCallback onStateChanged call=%s"
+                        + " cannedTextResponses=%s", call, cannedTextResponses);
                 update();
             }
 
             @Override
             public void onPostDialWait(android.telecom.Call call,
                     String remainingPostDialSequence) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call
-                        + " remainingPostDialSequence=" + remainingPostDialSequence);
+                Log.df(this, "TelecomCallCallback onStateChanged call=%s"
+                        + " remainingPostDialSequence=%s", call, remainingPostDialSequence);
                 update();
             }
 
             @Override
             public void onVideoCallChanged(android.telecom.Call call,
                     VideoCall videoCall) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call + " videoCall="
-                        + videoCall);
+                Log.df(this, "TelecomCallCallback onStateChanged call=%s videoCall=%s", call,
+                        videoCall);
                 update();
             }
 
             @Override
             public void onCallDestroyed(android.telecom.Call call) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call);
+                Log.d(this, "TelecomCallCallback onStateChanged call=", call);
                 call.unregisterCallback(this);
             }
 
@@ -472,7 +472,7 @@ public class Call {
     }
 
     private void updateFromTelecomCall(boolean registerCallback) {
-        Log.d(this, "updateFromTelecomCall: " + mTelecomCall.toString());
+        Log.d(this, "updateFromTelecomCall: ", mTelecomCall);
         final int translatedState = translateState(mTelecomCall.getState());
         if (mState != State.BLOCKED) {
             setState(translatedState);
@@ -940,8 +940,8 @@ public class Call {
     public void setSessionModificationState(int state) {
         boolean hasChanged = mSessionModificationState != state;
         mSessionModificationState = state;
-        Log.d(this, "setSessionModificationState " + state + " mSessionModificationState="
-                + mSessionModificationState);
+        Log.df(this, "setSessionModificationState %d mSessionModificationState=%d", state,
+                mSessionModificationState);
         if (hasChanged) {
             CallList.getInstance().onSessionModificationStateChange(this, state);
         }
@@ -1114,7 +1114,7 @@ public class Call {
             Bundle extras = getExtras();
             boolean incomingConf = (extras == null)? false :
                     extras.getBoolean(QtiImsExtUtils.QTI_IMS_INCOMING_CONF_EXTRA_KEY, false);
-            Log.d(this, "isIncomingConfCall = " + incomingConf);
+            Log.d(this, "isIncomingConfCall = ", incomingConf);
             return incomingConf;
         }
         return false;
@@ -140,6 +140,7 @@ public class CallCardFragment extends BaseFragment<CallCardPresenter, CallCardPr
     private ImageView mForwardIcon;
     private View mCallNumberAndLabel;
     private TextView mElapsedTime;
+    private final ElapsedTimeText mElapsedTimeText = new ElapsedTimeText();
     private Drawable mPrimaryPhotoDrawable;
     private TextView mCallSubject;
     private ImageView mWorkProfileIcon;
@@ -321,6 +322,7 @@ public class CallCardFragment extends BaseFragment<CallCardPresenter, CallCardPr
         mCallNumberAndLabel = view.findViewById(R.id.labelAndNumber);
         mCallTypeLabel = (TextView) view.findViewById(R.id.callTypeLabel);
         mElapsedTime = (TextView) view.findViewById(R.id.elapsedTime);
+        mElapsedTimeText.reset();
         mPrimaryCallCardContainer = view.findViewById(R.id.primary_call_info_container);
         mPrimaryCallInfo = (ViewGroup) view.findViewById(R.id.primary_call_banner);
         mCallButtonsContainer = view.findViewById(R.id.callButtonFragment);
@@ -1014,16 +1016,26 @@ public class CallCardFragment extends BaseFragment<CallCardPresenter, CallCardPr
             if (mElapsedTime.getVisibility() != View.VISIBLE) {
                 AnimUtils.fadeIn(mElapsedTime, AnimUtils.DEFAULT_DURATION);
             }
-            String callTimeElapsed = DateUtils.formatElapsedTime(duration / 1000);
-            mElapsedTime.setText(callTimeElapsed);
-
-            String durationDescription =
-                    InCallDateUtils.formatDuration(getView().getContext(), duration);
-            mElapsedTime.setContentDescription(
-                    !TextUtils.isEmpty(durationDescription) ? durationDescription : null);
+            if (!mElapsedTimeText.setElapsedTime(duration)) {
+                return;
+            }
+            mElapsedTimeText.applyTo(mElapsedTime);
+
+            // Formatting the spoken duration is comparatively expensive, only do it when needed
+            final AccessibilityManager accessibilityManager = (AccessibilityManager)
+                    getView().getContext().getSystemService(Context.ACCESSIBILITY_SERVICE);
+            if (accessibilityManager != null && accessibilityManager.isEnabled()) {
+                String durationDescription =
+                        InCallDateUtils.formatDuration(getView().getContext(), duration);
+                mElapsedTime.setContentDescription(
+                        !TextUtils.isEmpty(durationDescription) ? durationDescription : null);
+            } else {
+                mElapsedTime.setContentDescription(null);
+            }
         } else {
             // hide() animation has no effect if it is already hidden.
             AnimUtils.fadeOut(mElapsedTime, AnimUtils.DEFAULT_DURATION);
+            mElapsedTimeText.reset();
         }
     }
 
@@ -59,6 +59,7 @@ import com.android.incallui.InCallPresenter.InCallDetailsListener;
 import com.android.incallui.InCallPresenter.InCallEventListener;
 import com.android.incallui.InCallPresenter.InCallState;
 import com.android.incallui.InCallPresenter.InCallStateListener;
+import com.android.incallui.InCallPresenter.InCallUiListener;
 import com.android.incallui.InCallPresenter.IncomingCallListener;
 import com.android.incalluibind.ObjectFactory;
 
@@ -72,7 +73,7 @@ import static com.android.contacts.common.compat.CallSdkCompat.Details.PROPERTY_
  */
 public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi> implements
         InCallStateListener, IncomingCallListener, InCallDetailsListener,
-        InCallEventListener, CallList.CallUpdateListener,
+        InCallEventListener, InCallUiListener, CallList.CallUpdateListener,
         AudioModeListener, DistanceHelper.Listener {
 
     public interface EmergencyCallListener {
@@ -98,6 +99,10 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi> i
     private ContactCacheEntry mPrimaryContactInfo;
     private ContactCacheEntry mSecondaryContactInfo;
     private CallTimer mCallTimer;
+    // The call and connect time the running timer is aligned to
+    private String mTimerCallId;
+    private long mTimerConnectTimeMillis;
+    private boolean mIsUiShowing;
     private Context mContext;
     private AudioManager mAudioManager;
     @Nullable private ContactsPreferences mContactsPreferences;
@@ -203,11 +208,14 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi> i
             updatePrimaryDisplayInfo();
         }
 
+        mIsUiShowing = InCallPresenter.getInstance().isShowingInCallUi();
+
         // Register for call state changes last
         InCallPresenter.getInstance().addListener(this);
         InCallPresenter.getInstance().addIncomingCallListener(this);
         InCallPresenter.getInstance().addDetailsListener(this);
         InCallPresenter.getInstance().addInCallEventListener(this);
+        InCallPresenter.getInstance().addInCallUiListener(this);
         AudioModeProvider.getInstance().addListener(this);
     }
 
@@ -220,7 +228,9 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi> i
         InCallPresenter.getInstance().removeIncomingCallListener(this);
         InCallPresenter.getInstance().removeDetailsListener(this);
         InCallPresenter.getInstance().removeInCallEventListener(this);
+        InCallPresenter.getInstance().removeInCallUiListener(this);
         AudioModeProvider.getInstance().removeListener(this);
+        mCallTimer.cancel();
         if (mPrimary != null) {
             CallList.getInstance().removeCallUpdateListener(mPrimary.getId(), this);
         }
@@ -334,9 +344,8 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi> i
 
         // Start/stop timers.
         if (isPrimaryCallActive()) {
-            Log.d(this, "Starting the calltime timer");
             mPrimary.triggerCalcBaseChronometerTime();
-            mCallTimer.start(CALL_TIME_UPDATE_INTERVAL_MS);
+            startCallTimer();
         } else {
             Log.d(this, "Canceling the calltime timer");
             mCallTimer.cancel();
@@ -602,6 +611,39 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi> i
         getUi().setCallbackNumber(callbackNumber, mPrimary.isEmergencyCall() || showCallbackNumber);
     }
 
+    /**
+     * Starts ticking the elapsed time of the primary call, aligned to the seconds of the call
+     * duration. Leaves a timer which already ticks for the same call alone, and doesn't tick while
+     * the UI isn't showing.
+     */
+    private void startCallTimer() {
+        if (!mIsUiShowing) {
+            // Started again once the UI shows
+            mCallTimer.cancel();
+            return;
+        }
+        final long connectTimeMillis = mPrimary.getConnectTimeMillis();
+        if (mCallTimer.isRunning() && mPrimary.getId().equals(mTimerCallId)
+                && connectTimeMillis == mTimerConnectTimeMillis) {
+            return;
+        }
+        Log.d(this, "Starting the calltime timer");
+        mTimerCallId = mPrimary.getId();
+        mTimerConnectTimeMillis = connectTimeMillis;
+        mCallTimer.start(CALL_TIME_UPDATE_INTERVAL_MS, mPrimary.getCallDuration());
+    }
+
+    @Override
+    public void onUiShowing(boolean showing) {
+        mIsUiShowing = showing;
+        if (!showing) {
+            Log.d(this, "Pausing the calltime timer");
+            mCallTimer.cancel();
+        } else if (isPrimaryCallActive() && getUi() != null) {
+            startCallTimer();
+        }
+    }
+
     public void updateCallTime() {
         final CallCardUi ui = getUi();
 
@@ -969,6 +1011,9 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi> i
                     isForwarded,
                     showContactPhoto,
                     hasWorkCallProperty || isWorkContact);
+            if (isIncoming && !nameIsNumber) {
+                InCallPresenter.getInstance().onCallerIdentityShown(mPrimary);
+            }
 
             updateContactInteractions();
         } else {
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.telecom.InCallService.VideoCall;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Remembers what the {@link CallList} last saw of every call, to tell which aspects of a call
+ * an update actually changed. Returns a mask of the CallList.CHANGE_* flags.
+ *
+ * Telecom replaces the details of a call whenever they change, so unchanged details are
+ * detected by reference. Only used from the main thread.
+ */
+class CallChangeTracker {
+    private final HashMap<String, Snapshot> mSnapshots = new HashMap<>();
+
+    private static class Snapshot {
+        final int state;
+        final int sessionModificationState;
+        final android.telecom.Call.Details details;
+        final android.telecom.Call parent;
+        final List<android.telecom.Call> children;
+        final List<android.telecom.Call> conferenceableCalls;
+        final List<String> cannedTextResponses;
+        final String remainingPostDialSequence;
+        final VideoCall videoCall;
+
+        Snapshot(Call call, android.telecom.Call telecomCall) {
+            state = call.getState();
+            sessionModificationState = call.getSessionModificationState();
+            details = telecomCall.getDetails();
+            parent = telecomCall.getParent();
+            children = new ArrayList<>(telecomCall.getChildren());
+            conferenceableCalls = new ArrayList<>(telecomCall.getConferenceableCalls());
+            cannedTextResponses = telecomCall.getCannedTextResponses();
+            remainingPostDialSequence = telecomCall.getRemainingPostDialSequence();
+            videoCall = telecomCall.getVideoCall();
+        }
+    }
+
+    /**
+     * Records the current values of the call.
+     *
+     * @return The aspects which changed since the last update of the call, or
+     *     {@link CallList#CHANGE_ALL} for calls not seen before.
+     */
+    int update(Call call) {
+        final android.telecom.Call telecomCall = call.getTelecomCall();
+        if (telecomCall == null) {
+            return CallList.CHANGE_ALL;
+        }
+
+        final Snapshot snapshot = new Snapshot(call, telecomCall);
+        final Snapshot old = mSnapshots.put(call.getId(), snapshot);
+        if (old == null) {
+            return CallList.CHANGE_ALL;
+        }
+
+        int changes = 0;
+        if (old.state != snapshot.state) {
+            changes |= CallList.CHANGE_STATE;
+        }
+        if (old.details != snapshot.details) {
+            changes |= getDetailsChanges(old.details, snapshot.details);
+        }
+        if (!old.conferenceableCalls.equals(snapshot.conferenceableCalls)) {
+            changes |= CallList.CHANGE_CAPABILITIES;
+        }
+        if (old.sessionModificationState != snapshot.sessionModificationState
+                || old.videoCall != snapshot.videoCall) {
+            changes |= CallList.CHANGE_VIDEO;
+        }
+        if (old.parent != snapshot.parent
+                || !old.children.equals(snapshot.children)
+                || old.cannedTextResponses != snapshot.cannedTextResponses
+                || !TextUtils.equals(old.remainingPostDialSequence,
+                        snapshot.remainingPostDialSequence)) {
+            changes |= CallList.CHANGE_DETAILS;
+        }
+        return changes;
+    }
+
+    void remove(String callId) {
+        mSnapshots.remove(callId);
+    }
+
+    void clear() {
+        mSnapshots.clear();
+    }
+
+    private static int getDetailsChanges(android.telecom.Call.Details old,
+            android.telecom.Call.Details details) {
+        if (old == null || details == null) {
+            return CallList.CHANGE_ALL;
+        }
+        if (Objects.equals(old, details)) {
+            return 0;
+        }
+
+        int changes = 0;
+        if (old.getCallCapabilities() != details.getCallCapabilities()
+                || old.getCallProperties() != details.getCallProperties()) {
+            changes |= CallList.CHANGE_CAPABILITIES;
+        }
+        if (old.getVideoState() != details.getVideoState()) {
+            changes |= CallList.CHANGE_VIDEO;
+        }
+        // Handle, extras, status hints, ... aren't compared one by one
+        return changes | CallList.CHANGE_DETAILS;
+    }
+}
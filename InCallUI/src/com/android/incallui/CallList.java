@@ -18,10 +18,10 @@ package com.android.incallui;
 
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.os.Trace;
 import android.telecom.DisconnectCause;
 import android.telecom.PhoneAccount;
-import android.text.TextUtils;
 
 import com.android.contacts.common.testing.NeededForTesting;
 import com.android.dialer.database.FilteredNumberAsyncQueryHandler;
@@ -57,12 +57,34 @@ public class CallList {
 
     private static final int EVENT_DISCONNECTED_TIMEOUT = 1;
     private static final int EVENT_NOTIFY_CHANGE = 2;
+    private static final int EVENT_DISPATCH_CHANGES = 3;
     private static final long BLOCK_QUERY_TIMEOUT_MS = 1000;
 
+    /**
+     * Call updates arriving within this time after a dispatch to the listeners are coalesced
+     * into a single dispatch at its end, roughly one frame.
+     */
+    private static final long DISPATCH_COALESCE_MS = 16;
+
+    /** A call was added to or removed from the list */
+    public static final int CHANGE_CALLS = 1 << 0;
+    /** The state of a call changed */
+    public static final int CHANGE_STATE = 1 << 1;
+    /** The capabilities, properties or conferenceable calls of a call changed */
+    public static final int CHANGE_CAPABILITIES = 1 << 2;
+    /** The video state, video call or session modification state of a call changed */
+    public static final int CHANGE_VIDEO = 1 << 3;
+    /** Any other detail of a call, or of the list, changed */
+    public static final int CHANGE_DETAILS = 1 << 4;
+    public static final int CHANGE_ALL = CHANGE_CALLS | CHANGE_STATE | CHANGE_CAPABILITIES
+            | CHANGE_VIDEO | CHANGE_DETAILS;
+
     private static CallList sInstance = new CallList();
 
     private final HashMap<String, Call> mCallById = new HashMap<>();
     private final HashMap<android.telecom.Call, Call> mCallByTelecomCall = new HashMap<>();
+    /** State, number and subscription indexes over the calls in mCallById */
+    private final CallStateIndex mCallIndex = new CallStateIndex();
     private final HashMap<String, List<String>> mCallTextReponsesMap = Maps.newHashMap();
     /**
      * ConcurrentHashMap constructor params: 8 is initial table size, 0.9f is
@@ -71,6 +93,20 @@ public class CallList {
      */
     private final Set<Listener> mListeners = Collections.newSetFromMap(
             new ConcurrentHashMap<Listener, Boolean>(8, 0.9f, 1));
+    /** The CHANGE_* flags each listener is interested in */
+    private final ConcurrentHashMap<Listener, Integer> mListenerChangeMasks =
+            new ConcurrentHashMap<>(8, 0.9f, 1);
+    private final CallChangeTracker mChangeTracker = new CallChangeTracker();
+    /** Changes not yet dispatched to the listeners */
+    private int mPendingChanges;
+    /** Changes of the running dispatch, see {@link #getDispatchingChanges} */
+    private int mDispatchingChanges = CHANGE_ALL;
+    private long mLastDispatchTime;
+
+    // Dispatch counters since the last time the list was empty
+    private int mUpdateCount;
+    private int mDispatchCount;
+    private int mSkippedListenerCount;
     private final HashMap<String, List<CallUpdateListener>> mCallUpdateListenerMap = Maps
             .newHashMap();
     private final Set<Call> mPendingDisconnectCalls = Collections.newSetFromMap(
@@ -98,7 +134,7 @@ public class CallList {
     public void onCallAdded(final android.telecom.Call telecomCall) {
         Trace.beginSection("onCallAdded");
         final Call call = new Call(telecomCall);
-        Log.d(this, "onCallAdded: callState=" + call.getState());
+        Log.d(this, "onCallAdded: callState=", call.getState());
 
         if (call.getState() == Call.State.INCOMING ||
                 call.getState() == Call.State.CALL_WAITING) {
@@ -126,7 +162,9 @@ public class CallList {
      * Called when a single call disconnects.
      */
     public void onDisconnect(Call call) {
+        flushPendingChanges();
         if (updateCallInMap(call)) {
+            mChangeTracker.update(call);
             Log.i(this, "onDisconnect: " + call);
             // notify those listening for changes on this specific change
             notifyCallUpdateListeners(call);
@@ -139,13 +177,15 @@ public class CallList {
      * Called when a single call has changed.
      */
     public void onIncoming(Call call, List<String> textMessages) {
-        Log.d(this, "onIncoming - " + call);
+        Log.d(this, "onIncoming - ", call);
+        flushPendingChanges();
+        mChangeTracker.update(call);
 
         // Update active subscription from call object. it will be set by
         // Telecomm service for incoming call and whenever active sub changes.
         if (call.mIsActiveSub) {
             int sub = call.getSubId();
-            Log.d(this, "onIncoming - sub:" + sub + " mSubId:" + mSubId);
+            Log.df(this, "onIncoming - sub:%d mSubId:%d", sub, mSubId);
             if (sub != mSubId) {
                 setActiveSubId(sub);
             }
@@ -162,7 +202,8 @@ public class CallList {
     }
 
     public void onUpgradeToVideo(Call call){
-        Log.d(this, "onUpgradeToVideo call=" + call);
+        Log.d(this, "onUpgradeToVideo call=", call);
+        flushPendingChanges();
         for (Listener listener : mListeners) {
             listener.onUpgradeToVideo(call);
         }
@@ -173,16 +214,18 @@ public class CallList {
     public void onUpdate(Call call) {
         Trace.beginSection("onUpdate");
         PhoneAccountHandle ph = call.getAccountHandle();
-        Log.d(this, "onUpdate - " + call  + " ph:" + ph);
+        Log.df(this, "onUpdate - %s ph:%s", call, ph);
         if (call.mIsActiveSub && ph != null) {
             int sub = call.getSubId(ph);
-            Log.d(this, "onUpdate - sub:" + sub + " mSubId:" + mSubId);
+            Log.df(this, "onUpdate - sub:%d mSubId:%d", sub, mSubId);
             if(sub != mSubId) {
                 setActiveSubId(sub);
             }
         }
+        mUpdateCount++;
+        final int changes = mChangeTracker.update(call);
         onUpdateCall(call);
-        notifyGenericListeners();
+        scheduleDispatch(changes);
         Trace.endSection();
     }
 
@@ -270,8 +313,18 @@ public class CallList {
     }
 
     public void addListener(Listener listener) {
+        addListener(listener, CHANGE_ALL);
+    }
+
+    /**
+     * Adds a listener which is only notified through {@link Listener#onCallListChange} of
+     * changes matching the given mask of CHANGE_* flags. Incoming calls, disconnects and
+     * upgrades to video are always notified.
+     */
+    public void addListener(Listener listener, int changeMask) {
         Preconditions.checkNotNull(listener);
 
+        mListenerChangeMasks.put(listener, changeMask);
         mListeners.add(listener);
 
         // Let the listener know about the active calls immediately.
@@ -281,9 +334,18 @@ public class CallList {
     public void removeListener(Listener listener) {
         if (listener != null) {
             mListeners.remove(listener);
+            mListenerChangeMasks.remove(listener);
         }
     }
 
+    /**
+     * @return The CHANGE_* flags of the changes currently being dispatched to
+     *     {@link Listener#onCallListChange}, or {@link #CHANGE_ALL} outside of a dispatch.
+     */
+    public int getDispatchingChanges() {
+        return mDispatchingChanges;
+    }
+
     /**
      * TODO: Change so that this function is not needed. Instead of assuming there is an active
      * call, the code should rely on the status of a specific Call and allow the presenters to
@@ -435,8 +497,8 @@ public class CallList {
     }
 
     /**
-     * Returns the [position]th call found in the call map with the specified state.
-     * TODO: Improve this logic to sort by call time.
+     * Returns the [position]th call found in the call map with the specified state, with calls
+     * ordered by the time they were added.
      */
     public Call getCallWithState(int state, int positionToFind) {
         // if DSDA is enabled call getCallWithState with active subscription.
@@ -446,29 +508,11 @@ public class CallList {
             return getCallWithState(state, positionToFind, getActiveSubId());
         }
 
-        Call retval = null;
-        int position = 0;
-        for (Call call : mCallById.values()) {
-            if (call.getState() == state) {
-                if (position >= positionToFind) {
-                    retval = call;
-                    break;
-                } else {
-                    position++;
-                }
-            }
-        }
-
-        return retval;
+        return mCallIndex.getCallWithState(state, positionToFind);
     }
 
     public Call getCallWithStateAndNumber(int state, String number) {
-        for (Call call : mCallById.values()) {
-            if (TextUtils.equals(call.getNumber(), number) && call.getState() == state) {
-                return call;
-            }
-        }
-        return null;
+        return mCallIndex.getCallWithStateAndNumber(state, number);
     }
 
     /**
@@ -511,7 +555,7 @@ public class CallList {
      * @param call The call to update.
      */
     private void onUpdateCall(Call call) {
-        Log.d(this, "\t" + call);
+        Log.d(this, "\t", call);
         if (updateCallInMap(call)) {
             Log.i(this, "onUpdate - " + call);
         }
@@ -524,8 +568,60 @@ public class CallList {
      * It is up to the listeners to call back to determine what changed.
      */
     private void notifyGenericListeners() {
-        for (Listener listener : mListeners) {
-            listener.onCallListChange(this);
+        dispatchChanges(mPendingChanges | CHANGE_ALL);
+    }
+
+    /**
+     * Dispatches the changes of a call update to the listeners. The first update after a quiet
+     * period is dispatched right away, while further updates within
+     * {@link #DISPATCH_COALESCE_MS} are merged into one dispatch at the end of that time.
+     */
+    private void scheduleDispatch(int changes) {
+        if (changes == 0) {
+            // Telecom repeated what we already knew
+            return;
+        }
+        mPendingChanges |= changes;
+        if (mHandler.hasMessages(EVENT_DISPATCH_CHANGES)) {
+            return;
+        }
+
+        final long dispatchTime = mLastDispatchTime + DISPATCH_COALESCE_MS;
+        if (SystemClock.uptimeMillis() >= dispatchTime) {
+            dispatchChanges(mPendingChanges);
+        } else {
+            mHandler.sendEmptyMessageAtTime(EVENT_DISPATCH_CHANGES, dispatchTime);
+        }
+    }
+
+    /**
+     * Dispatches any coalesced changes right away, so they reach the listeners before a
+     * notification which doesn't go through the coalescing.
+     */
+    private void flushPendingChanges() {
+        if (mPendingChanges != 0) {
+            dispatchChanges(mPendingChanges);
+        }
+    }
+
+    private void dispatchChanges(int changes) {
+        mHandler.removeMessages(EVENT_DISPATCH_CHANGES);
+        mPendingChanges = 0;
+        mLastDispatchTime = SystemClock.uptimeMillis();
+        mDispatchCount++;
+
+        mDispatchingChanges = changes;
+        try {
+            for (Listener listener : mListeners) {
+                final Integer changeMask = mListenerChangeMasks.get(listener);
+                if (changeMask != null && (changeMask & changes) == 0) {
+                    mSkippedListenerCount++;
+                    continue;
+                }
+                listener.onCallListChange(this);
+            }
+        } finally {
+            mDispatchingChanges = CHANGE_ALL;
         }
     }
 
@@ -557,16 +653,28 @@ public class CallList {
 
                 mCallById.put(call.getId(), call);
                 mCallByTelecomCall.put(call.getTelecomCall(), call);
+                mCallIndex.update(call);
                 updated = true;
             }
         } else if (!isCallDead(call)) {
             mCallById.put(call.getId(), call);
             mCallByTelecomCall.put(call.getTelecomCall(), call);
+            mCallIndex.update(call);
             updated = true;
         } else if (mCallById.containsKey(call.getId())) {
             mCallById.remove(call.getId());
             mCallByTelecomCall.remove(call.getTelecomCall());
+            mCallIndex.remove(call);
+            mChangeTracker.remove(call.getId());
             updated = true;
+
+            if (mCallById.isEmpty()) {
+                Log.i(this, "Coalesced " + mUpdateCount + " call updates into " + mDispatchCount
+                        + " dispatches, skipped " + mSkippedListenerCount + " listener calls");
+                mUpdateCount = 0;
+                mDispatchCount = 0;
+                mSkippedListenerCount = 0;
+            }
         }
 
         return updated;
@@ -661,6 +769,9 @@ public class CallList {
                     Log.d(this, "EVENT_DISCONNECTED_TIMEOUT ", msg.obj);
                     finishDisconnectedCall((Call) msg.obj);
                     break;
+                case EVENT_DISPATCH_CHANGES:
+                    dispatchChanges(mPendingChanges);
+                    break;
                 case EVENT_NOTIFY_CHANGE:
                     Log.d(this, "EVENT_NOTIFY_CHANGE: ");
                     notifyGenericListeners();
@@ -768,12 +879,9 @@ public class CallList {
      * Returns true, if any voice call is ACTIVE on the provided subscription.
      */
     boolean hasAnyLiveCall(int subId) {
-        for (Call call : mCallById.values()) {
-            PhoneAccountHandle ph = call.getAccountHandle();
-            if (!isCallDead(call) && ph != null && (call.getSubId(ph) == subId)) {
-                Log.d(this, "hasAnyLiveCall sub = " + subId);
-                return true;
-            }
+        if (mCallIndex.hasLiveCall(subId)) {
+            Log.d(this, "hasAnyLiveCall sub = ", subId);
+            return true;
         }
         Log.d(this, "no active call ");
         return false;
@@ -785,7 +893,7 @@ public class CallList {
     boolean hasAnyLiveCall() {
         for (Call call : mCallById.values()) {
             if (!isCallDead(call)) {
-                Log.d(this, "hasAnyLiveCall call = " + call);
+                Log.d(this, "hasAnyLiveCall call = ", call);
                 return true;
             }
         }
@@ -844,22 +952,7 @@ public class CallList {
      * found in the call map with the specified state.
      */
     Call getCallWithState(int state, int positionToFind, int subId) {
-        Call retval = null;
-        int position = 0;
-        for (Call call : mCallById.values()) {
-            PhoneAccountHandle ph = call.getAccountHandle();
-            if ((call.getState() == state) && ((ph == null) ||
-                    (ph != null && (ph.getId() != null) &&  ((ph.getId().contains("sip")
-                    || ph.getId().contains("@")) || call.getSubId(ph) == subId)))) {
-                if (position >= positionToFind) {
-                    retval = call;
-                    break;
-                } else {
-                    position++;
-                }
-            }
-        }
-        return retval;
+        return mCallIndex.getCallWithState(state, positionToFind, subId);
     }
 
     void addActiveSubChangeListener(ActiveSubChangeListener listener) {
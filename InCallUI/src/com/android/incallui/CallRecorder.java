@@ -29,6 +29,7 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
 
+import com.android.incallui.async.LaneExecutor;
 import com.android.services.callrecorder.CallRecorderService;
 import com.android.services.callrecorder.CallRecordingDataStore;
 import com.android.services.callrecorder.common.CallRecording;
@@ -36,6 +37,7 @@ import com.android.services.callrecorder.common.ICallRecorderService;
 
 import java.util.Date;
 import java.util.HashSet;
+import java.util.concurrent.Executor;
 
 /**
  * InCall UI's interface to the call recorder
@@ -61,6 +63,12 @@ public class CallRecorder implements CallList.Listener {
             new HashSet<RecordingProgressListener>();
     private Handler mHandler = new Handler();
 
+    // Saves recordings to the data store, which is kept open for as long as
+    // we are bound to the recorder service
+    private final Executor mPersistExecutor =
+            LaneExecutor.getInstance().getLane(LaneExecutor.LANE_BACKGROUND);
+    private CallRecordingDataStore mDataStore;
+
     private ServiceConnection mConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
@@ -85,7 +93,9 @@ public class CallRecorder implements CallList.Listener {
     }
 
     private CallRecorder() {
-        CallList.getInstance().addListener(this);
+        // Recordings only follow the state of the calls
+        CallList.getInstance().addListener(this,
+                CallList.CHANGE_CALLS | CallList.CHANGE_STATE);
     }
 
     public void setUp(Context context) {
@@ -105,6 +115,28 @@ public class CallRecorder implements CallList.Listener {
             mContext.unbindService(mConnection);
             mInitialized = false;
         }
+        mPersistExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mDataStore != null) {
+                    mDataStore.close();
+                    mDataStore = null;
+                }
+            }
+        });
+    }
+
+    private void persistRecording(final CallRecording recording) {
+        mPersistExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mDataStore == null) {
+                    mDataStore = new CallRecordingDataStore();
+                    mDataStore.open(mContext);
+                }
+                mDataStore.putRecording(recording);
+            }
+        });
     }
 
     public boolean startRecording(final String phoneNumber, final long creationTime) {
@@ -163,15 +195,7 @@ public class CallRecorder implements CallList.Listener {
                 final CallRecording recording = mService.stopRecording();
                 if (recording != null) {
                     if (!TextUtils.isEmpty(recording.phoneNumber)) {
-                        new Thread(new Runnable() {
-                            @Override
-                            public void run() {
-                                CallRecordingDataStore dataStore = new CallRecordingDataStore();
-                                dataStore.open(mContext);
-                                dataStore.putRecording(recording);
-                                dataStore.close();
-                            }
-                        }).start();
+                        persistRecording(recording);
                     } else {
                         // Data store is an index by number so that we can link recordings in the
                         // call detail page.  If phone number is not available (conference call or
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.telecom.PhoneAccountHandle;
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Secondary indexes over the calls of the {@link CallList}, by state, number and subscription,
+ * so looking up a call doesn't scan all of them.
+ *
+ * Calls with the same state are ordered by the time they were first indexed, which is the time
+ * they were added to the CallList. A call has to be passed to {@link #update} again whenever its
+ * state, number or phone account may have changed. Like the CallList, this is only used from
+ * the main thread.
+ */
+class CallStateIndex {
+    private final SparseArray<List<Entry>> mByState = new SparseArray<>();
+    private final HashMap<String, List<Entry>> mByNumber = new HashMap<>();
+    private final HashMap<Call, Entry> mEntries = new HashMap<>();
+    private long mNextSequence;
+
+    private static class Entry {
+        final Call call;
+        final long sequence;
+        int state;
+        String number;
+        PhoneAccountHandle accountHandle;
+        /** Only resolved when needed, as it takes a call to telecom */
+        boolean hasSubId;
+        int subId;
+
+        Entry(Call call, long sequence) {
+            this.call = call;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Adds a call, or moves it to the index positions matching its current state, number and
+     * phone account.
+     */
+    void update(Call call) {
+        final int state = call.getState();
+        final String number = call.getNumber();
+        Entry entry = mEntries.get(call);
+        if (entry == null) {
+            entry = new Entry(call, mNextSequence++);
+            entry.state = state;
+            entry.number = number;
+            mEntries.put(call, entry);
+            insert(getStateList(state), entry);
+            insert(getNumberList(number), entry);
+        } else {
+            if (entry.state != state) {
+                removeFromState(entry);
+                entry.state = state;
+                insert(getStateList(state), entry);
+            }
+            if (!TextUtils.equals(entry.number, number)) {
+                removeFromNumber(entry);
+                entry.number = number;
+                insert(getNumberList(number), entry);
+            }
+        }
+
+        final PhoneAccountHandle accountHandle = call.getAccountHandle();
+        if (!Objects.equals(entry.accountHandle, accountHandle)) {
+            entry.accountHandle = accountHandle;
+            entry.hasSubId = false;
+        }
+    }
+
+    void remove(Call call) {
+        final Entry entry = mEntries.remove(call);
+        if (entry != null) {
+            removeFromState(entry);
+            removeFromNumber(entry);
+        }
+    }
+
+    void clear() {
+        mByState.clear();
+        mByNumber.clear();
+        mEntries.clear();
+    }
+
+    /**
+     * @return The [position]th call with the given state, or {@code null}.
+     */
+    Call getCallWithState(int state, int position) {
+        final List<Entry> entries = mByState.get(state);
+        return entries != null && position < entries.size() ? entries.get(position).call : null;
+    }
+
+    /**
+     * @return The [position]th call with the given state which belongs to the subscription,
+     *     counting calls without a subscription (no phone account, or SIP) as belonging to any.
+     */
+    Call getCallWithState(int state, int position, int subId) {
+        final List<Entry> entries = mByState.get(state);
+        if (entries == null) {
+            return null;
+        }
+        int found = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry entry = entries.get(i);
+            final PhoneAccountHandle ph = entry.accountHandle;
+            if (ph == null || (ph.getId() != null && (ph.getId().contains("sip")
+                    || ph.getId().contains("@") || getSubId(entry) == subId))) {
+                if (found++ >= position) {
+                    return entry.call;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The first call with the given state and number, or {@code null}.
+     */
+    Call getCallWithStateAndNumber(int state, String number) {
+        final List<Entry> entries = mByNumber.get(number);
+        if (entries != null) {
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).state == state) {
+                    return entries.get(i).call;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} if any call with a phone account of the given subscription isn't
+     *     idle or invalid.
+     */
+    boolean hasLiveCall(int subId) {
+        for (Entry entry : mEntries.values()) {
+            if (entry.state != Call.State.IDLE && entry.state != Call.State.INVALID
+                    && entry.accountHandle != null && getSubId(entry) == subId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getSubId(Entry entry) {
+        if (!entry.hasSubId) {
+            entry.subId = entry.call.getSubId(entry.accountHandle);
+            entry.hasSubId = true;
+        }
+        return entry.subId;
+    }
+
+    private List<Entry> getStateList(int state) {
+        List<Entry> entries = mByState.get(state);
+        if (entries == null) {
+            entries = new ArrayList<>(2);
+            mByState.put(state, entries);
+        }
+        return entries;
+    }
+
+    private List<Entry> getNumberList(String number) {
+        List<Entry> entries = mByNumber.get(number);
+        if (entries == null) {
+            entries = new ArrayList<>(1);
+            mByNumber.put(number, entries);
+        }
+        return entries;
+    }
+
+    private void removeFromState(Entry entry) {
+        final List<Entry> entries = mByState.get(entry.state);
+        if (entries != null) {
+            entries.remove(entry);
+        }
+    }
+
+    private void removeFromNumber(Entry entry) {
+        final List<Entry> entries = mByNumber.get(entry.number);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                mByNumber.remove(entry.number);
+            }
+        }
+    }
+
+    /**
+     * Inserts the entry by sequence. Calls are usually indexed in order, so this starts at the
+     * end of the list.
+     */
+    private static void insert(List<Entry> entries, Entry entry) {
+        int i = entries.size();
+        while (i > 0 && entries.get(i - 1).sequence > entry.sequence) {
+            i--;
+        }
+        entries.add(i, entry);
+    }
+}
@@ -42,6 +42,18 @@ public class CallTimer extends Handler {
     }
 
     public boolean start(long interval) {
+        return start(interval, 0);
+    }
+
+    /**
+     * Starts the timer, running the callback right away and then whenever the given phase crosses
+     * a multiple of the interval. Passing the elapsed time of a call as phase makes the timer tick
+     * when the displayed seconds change, rather than up to an interval later.
+     *
+     * @param interval The interval between callbacks.
+     * @param phase How far into the current interval the timer starts.
+     */
+    public boolean start(long interval, long phase) {
         if (interval <= 0) {
             return false;
         }
@@ -50,7 +62,7 @@ public class CallTimer extends Handler {
         cancel();
 
         mInterval = interval;
-        mLastReportedTime = SystemClock.uptimeMillis();
+        mLastReportedTime = SystemClock.uptimeMillis() - Math.max(phase, 0) % interval;
 
         mRunning = true;
         periodicUpdateTimer();
@@ -58,6 +70,10 @@ public class CallTimer extends Handler {
         return true;
     }
 
+    public boolean isRunning() {
+        return mRunning;
+    }
+
     public void cancel() {
         removeCallbacks(mInternalCallback);
         mRunning = false;
@@ -42,6 +42,7 @@ import com.android.dialer.calllog.ContactInfoHelper;
 import com.android.dialer.service.CachedNumberLookupService;
 import com.android.dialer.service.CachedNumberLookupService.CachedContactInfo;
 import com.android.dialerbind.ObjectFactory;
+import com.android.incallui.async.LaneExecutor;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -212,7 +213,12 @@ public class CallerInfoAsyncQuery {
 
         @Override
         protected Handler createHandler(Looper looper) {
-            return new CallerInfoWorkerHandler(looper);
+            // The looper passed in is the worker thread shared by all AsyncQueryHandlers of the
+            // process. It is not used on purpose: incoming calls wait for the caller lookup, so it
+            // runs on the ring lane instead.
+            final LaneExecutor.Lane lane =
+                    LaneExecutor.getInstance().getLane(LaneExecutor.LANE_RING);
+            return lane.newHandler(new CallerInfoWorkerHandler(lane.getLooper()));
         }
 
         /**
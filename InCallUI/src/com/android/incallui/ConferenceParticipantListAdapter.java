@@ -16,6 +16,7 @@
 
 package com.android.incallui;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 
 import android.content.Context;
@@ -46,9 +47,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -65,6 +64,15 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
         private ContactCacheEntry mContactCacheEntry;
         private boolean mCacheLookupComplete = false;
 
+        // What the row of the participant was last bound to
+        private boolean mIsBound = false;
+        private int mBoundRowState;
+        private String mBoundName;
+        private String mBoundNumber;
+        private String mBoundLabel;
+        private String mBoundLookupKey;
+        private Uri mBoundPhotoUri;
+
         public ParticipantInfo(Call call, ContactCacheEntry contactCacheEntry) {
             mCall = call;
             mContactCacheEntry = contactCacheEntry;
@@ -94,6 +102,30 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
             mCacheLookupComplete = cacheLookupComplete;
         }
 
+        public void setBound(int rowState, String preferredName) {
+            mIsBound = true;
+            mBoundRowState = rowState;
+            mBoundName = preferredName;
+            mBoundNumber = mContactCacheEntry.number;
+            mBoundLabel = mContactCacheEntry.label;
+            mBoundLookupKey = mContactCacheEntry.lookupKey;
+            mBoundPhotoUri = mContactCacheEntry.displayPhotoUri;
+        }
+
+        /**
+         * @return {@code true} if the row shows something else than the participant would be
+         *     bound to now.
+         */
+        public boolean needsRebind(int rowState, String preferredName) {
+            return !mIsBound
+                    || mBoundRowState != rowState
+                    || !TextUtils.equals(mBoundName, preferredName)
+                    || !TextUtils.equals(mBoundNumber, mContactCacheEntry.number)
+                    || !TextUtils.equals(mBoundLabel, mContactCacheEntry.label)
+                    || !TextUtils.equals(mBoundLookupKey, mContactCacheEntry.lookupKey)
+                    || !Objects.equals(mBoundPhotoUri, mContactCacheEntry.displayPhotoUri);
+        }
+
         @Override
         public boolean equals(Object o) {
             if (o instanceof ParticipantInfo) {
@@ -160,6 +192,41 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
         }
     }
 
+    /**
+     * Flags of the row state, next to the call state.
+     */
+    private static final int ROW_STATE_CAN_SEPARATE = 1 << 16;
+    private static final int ROW_STATE_CAN_DISCONNECT = 1 << 17;
+
+    /**
+     * Receives the contact info of all participants.
+     */
+    private final ContactLookupCallback mContactLookupCallback = new ContactLookupCallback(this);
+
+    /**
+     * Calls whose rows may need to be rebound, with the next refresh.
+     */
+    private final HashSet<String> mPendingRefreshCallIds = new HashSet<>();
+
+    /**
+     * Whether a participant name changed since the list was last sorted.
+     */
+    private boolean mSortPending = false;
+
+    private boolean mRefreshPosted = false;
+
+    /**
+     * Rebinds all rows changed by the updates since it was posted, so contact lookups completing
+     * together for many participants cause a single pass over the list.
+     */
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mRefreshPosted = false;
+            refreshPendingViews();
+        }
+    };
+
     /**
      * Listener used to handle tap of the "disconnect' button for a participant.
      */
@@ -219,6 +286,11 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
      */
     private final ContactPhotoManager mContactPhotoManager;
 
+    /**
+     * Contact info cache used to look up the participants.
+     */
+    private final ContactInfoCache mContactInfoCache;
+
     /**
      * {@code True} if the conference parent supports separating calls from the conference.
      */
@@ -234,12 +306,21 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
      */
     public ConferenceParticipantListAdapter(ListView listView, Context context,
             LayoutInflater layoutInflater, ContactPhotoManager contactPhotoManager) {
+        this(listView, context, layoutInflater, contactPhotoManager,
+                ContactInfoCache.getInstance(context));
+    }
+
+    @VisibleForTesting
+    ConferenceParticipantListAdapter(ListView listView, Context context,
+            LayoutInflater layoutInflater, ContactPhotoManager contactPhotoManager,
+            ContactInfoCache contactInfoCache) {
 
         mListView = listView;
         mContext = context;
         mContactsPreferences = ContactsPreferencesFactory.newContactsPreferences(mContext);
         mLayoutInflater = layoutInflater;
         mContactPhotoManager = contactPhotoManager;
+        mContactInfoCache = contactInfoCache;
     }
 
     /**
@@ -251,8 +332,12 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
      */
     public void updateParticipants(List<Call> conferenceParticipants, boolean parentCanSeparate) {
         if (mContactsPreferences != null) {
+            final int sortOrder = mContactsPreferences.getSortOrder();
             mContactsPreferences.refreshValue(ContactsPreferences.DISPLAY_ORDER_KEY);
             mContactsPreferences.refreshValue(ContactsPreferences.SORT_ORDER_KEY);
+            if (sortOrder != mContactsPreferences.getSortOrder()) {
+                mSortPending = true;
+            }
         }
         mParentCanSeparate = parentCanSeparate;
         updateParticipantInfo(conferenceParticipants);
@@ -302,10 +387,42 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
         if (mParticipantsByCallId.containsKey(callId)) {
             ParticipantInfo participantInfo = mParticipantsByCallId.get(callId);
             participantInfo.setCall(call);
-            refreshView(callId);
+            scheduleRefresh(callId);
         }
     }
 
+    /**
+     * Refreshes the row of the call with the next refresh, if it changed by then.
+     */
+    private void scheduleRefresh(String callId) {
+        mPendingRefreshCallIds.add(callId);
+        if (!mRefreshPosted) {
+            mRefreshPosted = true;
+            mListView.post(mRefreshRunnable);
+        }
+    }
+
+    private void refreshPendingViews() {
+        if (mSortPending) {
+            // Names changed, which may move any row
+            mSortPending = false;
+            mPendingRefreshCallIds.clear();
+            sortParticipantList();
+            notifyDataSetChanged();
+            return;
+        }
+
+        for (String callId : mPendingRefreshCallIds) {
+            final ParticipantInfo participantInfo = mParticipantsByCallId.get(callId);
+            if (participantInfo != null && participantInfo.needsRebind(
+                    getRowState(participantInfo.getCall()),
+                    getPreferredName(participantInfo.getContactCacheEntry()))) {
+                refreshView(callId);
+            }
+        }
+        mPendingRefreshCallIds.clear();
+    }
+
     /**
      * Attempts to refresh the view for the specified call ID.  This ensures the contact info and
      * photo loaded from cache are updated.
@@ -318,8 +435,8 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
 
         for (int position = 0; position <= last - first; position++) {
             View view = mListView.getChildAt(position);
-            String rowCallId = (String) view.getTag();
-            if (rowCallId.equals(callId)) {
+            String rowCallId = view == null ? null : (String) view.getTag();
+            if (callId.equals(rowCallId)) {
                 getView(position+first, view, mListView);
                 break;
             }
@@ -346,27 +463,17 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
         Call call = participantInfo.getCall();
         ContactCacheEntry contactCache = participantInfo.getContactCacheEntry();
 
-        final ContactInfoCache cache = ContactInfoCache.getInstance(mContext);
+        // The contact lookups of all participants were started when they joined
+        final int rowState = getRowState(call);
+        final String preferredName = getPreferredName(contactCache);
 
-        // If a cache lookup has not yet been performed to retrieve the contact information and
-        // photo, do it now.
-        if (!participantInfo.isCacheLookupComplete()) {
-            cache.findInfo(participantInfo.getCall(),
-                    participantInfo.getCall().getState() == Call.State.INCOMING,
-                    new ContactLookupCallback(this));
-        }
-
-        boolean thisRowCanSeparate = mParentCanSeparate && call.getTelecomCall().getDetails().can(
-                android.telecom.Call.Details.CAPABILITY_SEPARATE_FROM_CONFERENCE);
-        boolean thisRowCanDisconnect = call.getTelecomCall().getDetails().can(
-                android.telecom.Call.Details.CAPABILITY_DISCONNECT_FROM_CONFERENCE);
-
-        setCallerInfoForRow(result, contactCache.namePrimary,
-                ContactDisplayUtils.getPreferredDisplayName(contactCache.namePrimary,
-                        contactCache.nameAlternative, mContactsPreferences),
+        setCallerInfoForRow(result, contactCache.namePrimary, preferredName,
                 contactCache.number, contactCache.label,
-                contactCache.lookupKey, contactCache.displayPhotoUri, thisRowCanSeparate,
-                thisRowCanDisconnect, getResourceforState(call.getTrueState()));
+                contactCache.lookupKey, contactCache.displayPhotoUri,
+                (rowState & ROW_STATE_CAN_SEPARATE) != 0,
+                (rowState & ROW_STATE_CAN_DISCONNECT) != 0,
+                getResourceforState(call.getTrueState()));
+        participantInfo.setBound(rowState, preferredName);
 
         // Tag the row in the conference participant list with the call id to make it easier to
         // find calls when contact cache information is loaded.
@@ -375,6 +482,27 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
         return result;
     }
 
+    /**
+     * @return The call state and the buttons shown in the row of the call.
+     */
+    private int getRowState(Call call) {
+        int rowState = call.getTrueState();
+        final android.telecom.Call.Details details = call.getTelecomCall().getDetails();
+        if (mParentCanSeparate && details.can(
+                android.telecom.Call.Details.CAPABILITY_SEPARATE_FROM_CONFERENCE)) {
+            rowState |= ROW_STATE_CAN_SEPARATE;
+        }
+        if (details.can(android.telecom.Call.Details.CAPABILITY_DISCONNECT_FROM_CONFERENCE)) {
+            rowState |= ROW_STATE_CAN_DISCONNECT;
+        }
+        return rowState;
+    }
+
+    private String getPreferredName(ContactCacheEntry contactCache) {
+        return ContactDisplayUtils.getPreferredDisplayName(contactCache.namePrimary,
+                contactCache.nameAlternative, mContactsPreferences);
+    }
+
     private static int getResourceforState(int state){
         int res;
         switch (state){
@@ -411,9 +539,14 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
     /* package */ void updateContactInfo(String callId, ContactCacheEntry entry) {
         if (mParticipantsByCallId.containsKey(callId)) {
             ParticipantInfo participantInfo = mParticipantsByCallId.get(callId);
+            final ContactCacheEntry oldEntry = participantInfo.getContactCacheEntry();
+            if (!TextUtils.equals(oldEntry.namePrimary, entry.namePrimary)
+                    || !TextUtils.equals(oldEntry.nameAlternative, entry.nameAlternative)) {
+                mSortPending = true;
+            }
             participantInfo.setContactCacheEntry(entry);
             participantInfo.setCacheLookupComplete(true);
-            refreshView(callId);
+            scheduleRefresh(callId);
         }
     }
 
@@ -485,54 +618,78 @@ public class ConferenceParticipantListAdapter extends BaseAdapter {
      * Updates the participant info list which is bound to the ListView.  Stores the call and
      * contact info for all entries.  The list is sorted alphabetically by participant name.
      *
+     * Participants are matched by call id. Known participants keep their contact info, which is
+     * kept up to date by their lookup, and only their rows which changed are rebound. The
+     * contact lookups of newly joined participants are started together.
+     *
      * @param conferenceParticipants The calls which make up the conference participants.
      */
     private void updateParticipantInfo(List<Call> conferenceParticipants) {
-        Log.d(this, "updateParticipantInfo: " + conferenceParticipants);
-        final ContactInfoCache cache = ContactInfoCache.getInstance(mContext);
-        boolean newParticipantAdded = false;
+        Log.d(this, "updateParticipantInfo: ", conferenceParticipants);
+        final ContactInfoCache cache = mContactInfoCache;
+        final ArrayList<ParticipantInfo> joined = new ArrayList<>();
         HashSet<String> newCallIds = new HashSet<>(conferenceParticipants.size());
 
         // Update or add conference participant info.
         for (Call call : conferenceParticipants) {
             String callId = call.getId();
             newCallIds.add(callId);
-            ContactCacheEntry contactCache = cache.getInfo(callId);
-            if (contactCache == null) {
-                contactCache = ContactInfoCache.buildCacheEntryFromCall(mContext, call,
-                        call.getState() == Call.State.INCOMING);
-            }
 
-            if (mParticipantsByCallId.containsKey(callId)) {
-                ParticipantInfo participantInfo = mParticipantsByCallId.get(callId);
+            ParticipantInfo participantInfo = mParticipantsByCallId.get(callId);
+            if (participantInfo != null) {
                 participantInfo.setCall(call);
-                participantInfo.setContactCacheEntry(contactCache);
+                mPendingRefreshCallIds.add(callId);
             } else {
-                newParticipantAdded = true;
-                ParticipantInfo participantInfo = new ParticipantInfo(call, contactCache);
+                ContactCacheEntry contactCache = cache.getInfo(callId);
+                if (contactCache == null) {
+                    contactCache = ContactInfoCache.buildCacheEntryFromCall(mContext, call,
+                            call.getState() == Call.State.INCOMING);
+                }
+                participantInfo = new ParticipantInfo(call, contactCache);
                 mConferenceParticipants.add(participantInfo);
-                mParticipantsByCallId.put(call.getId(), participantInfo);
+                mParticipantsByCallId.put(callId, participantInfo);
+                joined.add(participantInfo);
             }
         }
 
-        // Remove any participants that no longer exist.
-        Iterator<Map.Entry<String, ParticipantInfo>> it =
-                mParticipantsByCallId.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, ParticipantInfo> entry = it.next();
-            String existingCallId = entry.getKey();
-            if (!newCallIds.contains(existingCallId)) {
-                ParticipantInfo existingInfo = entry.getValue();
-                mConferenceParticipants.remove(existingInfo);
-                it.remove();
+        // Remove any participants that no longer exist. The remaining ones are copied into a new
+        // list, as removing from the middle of the list one by one shifts the rest each time.
+        final boolean participantRemoved = mParticipantsByCallId.size() > newCallIds.size();
+        if (participantRemoved) {
+            final List<ParticipantInfo> remaining = new ArrayList<>(newCallIds.size());
+            for (ParticipantInfo participantInfo : mConferenceParticipants) {
+                final String existingCallId = participantInfo.getCall().getId();
+                if (newCallIds.contains(existingCallId)) {
+                    remaining.add(participantInfo);
+                } else {
+                    mParticipantsByCallId.remove(existingCallId);
+                    mPendingRefreshCallIds.remove(existingCallId);
+                }
             }
+            mConferenceParticipants = remaining;
         }
 
-        if (newParticipantAdded) {
-            // Sort the list of participants by contact name.
-            sortParticipantList();
+        if (!joined.isEmpty() || participantRemoved) {
+            if (!joined.isEmpty() || mSortPending) {
+                // Sort the list of participants by contact name.
+                mSortPending = false;
+                sortParticipantList();
+            }
+            // Rows moved, so all of them are rebound.
+            mPendingRefreshCallIds.clear();
+            notifyDataSetChanged();
+        } else {
+            // Only rebind the rows of participants whose state changed.
+            refreshPendingViews();
+        }
+
+        // Look up the contact info of the new participants. Cached results are delivered right
+        // away; all of them are applied with one refresh.
+        for (ParticipantInfo participantInfo : joined) {
+            final Call call = participantInfo.getCall();
+            cache.findInfo(call, call.getState() == Call.State.INCOMING, mContactLookupCallback);
         }
-        notifyDataSetChanged();
+        Log.d(this, "updateParticipantInfo: joined ", joined.size());
     }
 
     /**
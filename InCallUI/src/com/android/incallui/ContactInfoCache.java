@@ -22,6 +22,8 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
@@ -29,16 +31,20 @@ import android.location.Address;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Handler;
 import android.os.Looper;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.DisplayNameSources;
+import android.provider.ContactsContract.PhoneLookup;
 import android.telecom.TelecomManager;
+import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
 import android.util.Pair;
 
 import com.android.contacts.common.ContactsUtils;
+import com.android.contacts.common.GeoUtil;
 import com.android.contacts.common.util.PhoneNumberHelper;
 import com.android.dialer.R;
 import com.android.dialer.calllog.ContactInfo;
@@ -46,6 +52,7 @@ import com.android.dialer.service.CachedNumberLookupService;
 import com.android.dialer.service.CachedNumberLookupService.CachedContactInfo;
 import com.android.dialer.util.MoreStrings;
 import com.android.incallui.Call.LogState;
+import com.android.incallui.async.LaneExecutor;
 import com.android.incallui.service.PhoneNumberService;
 import com.android.incalluibind.ObjectFactory;
 
@@ -56,6 +63,7 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * Class responsible for querying Contact Information for Call objects. Can perform asynchronous
@@ -68,11 +76,20 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
     private static final String TAG = ContactInfoCache.class.getSimpleName();
     private static final int TOKEN_UPDATE_PHOTO_FOR_CALL_STATE = 0;
 
+    /** Bounds of the cache of recent incoming callers, see {@link ContactInfoWarmCache} */
+    private static final int WARM_CACHE_MAX_ENTRIES = 32;
+    private static final long WARM_CACHE_MAX_PHOTO_BYTES = 4 * 1024 * 1024;
+
     private final Context mContext;
     private final PhoneNumberService mPhoneNumberService;
     private final CachedNumberLookupService mCachedNumberLookupService;
     private final HashMap<String, ContactCacheEntry> mInfoMap = Maps.newHashMap();
     private final HashMap<String, Set<ContactInfoCacheCallback>> mCallBacks = Maps.newHashMap();
+    private final ContactInfoWarmCache mWarmCache;
+    /** Warm cache keys of the calls whose lookup is still running */
+    private final HashMap<String, String> mWarmCacheKeys = Maps.newHashMap();
+    /** Ids of the running prefetch lookups, by warm cache key */
+    private final HashMap<String, String> mPrefetches = Maps.newHashMap();
 
     private static ContactInfoCache sCache = null;
 
@@ -94,6 +111,73 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
                 com.android.dialerbind.ObjectFactory.newCachedNumberLookupService();
         mContactUtils = ObjectFactory.getContactUtilsInstance(context);
 
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        mWarmCache = new ContactInfoWarmCache(WARM_CACHE_MAX_ENTRIES,
+                WARM_CACHE_MAX_PHOTO_BYTES, new ContactVersionSource(context),
+                LaneExecutor.getInstance().getLane(LaneExecutor.LANE_BACKGROUND),
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        mainHandler.post(command);
+                    }
+                });
+        context.getContentResolver().registerContentObserver(ContactsContract.AUTHORITY_URI,
+                true, new ContentObserver(mainHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        mWarmCache.onContactsChanged();
+                    }
+                });
+    }
+
+    /**
+     * Versions the contact data of a number by the contacts matching it and the time they were
+     * last updated. The contacts provider also notifies about the usage statistics updated
+     * whenever a contact is called, so changes are only taken as a reason to compare the
+     * versions; cached callers stay valid until their own contact changes, or a contact is added
+     * for their number. Queries the provider, so it's only used off the UI thread.
+     */
+    private static class ContactVersionSource implements ContactInfoWarmCache.VersionSource {
+        private static final String[] PROJECTION = new String[] {
+                PhoneLookup.LOOKUP_KEY,
+                PhoneLookup.CONTACT_LAST_UPDATED_TIMESTAMP
+        };
+
+        private final Context mContext;
+
+        ContactVersionSource(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public String getVersion(String key) {
+            Uri uri = PhoneLookup.CONTENT_FILTER_URI.buildUpon().appendPath(key).build();
+            if (PhoneNumberHelper.isUriNumber(key)) {
+                uri = uri.buildUpon()
+                        .appendQueryParameter(PhoneLookup.QUERY_PARAMETER_SIP_ADDRESS, "1")
+                        .build();
+            }
+
+            final Cursor cursor;
+            try {
+                cursor = mContext.getContentResolver().query(uri, PROJECTION, null, null, null);
+            } catch (SecurityException e) {
+                return null;
+            }
+            if (cursor == null) {
+                return null;
+            }
+            try {
+                final StringBuilder version = new StringBuilder();
+                while (cursor.moveToNext()) {
+                    version.append(cursor.getString(0)).append('/')
+                            .append(cursor.getLong(1)).append(';');
+                }
+                return version.toString();
+            } finally {
+                cursor.close();
+            }
+        }
     }
 
     public ContactCacheEntry getInfo(String callId) {
@@ -157,7 +241,12 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
 
         @Override
         public void onQueryComplete(int token, Object cookie, CallerInfo callerInfo) {
-            findInfoQueryComplete((Call) cookie, callerInfo, mIsIncoming, true);
+            final Call call = (Call) cookie;
+            if (!mCallBacks.containsKey(call.getId())) {
+                Log.d(TAG, "Contact lookup. Dropping result of cancelled lookup");
+                return;
+            }
+            findInfoQueryComplete(call, callerInfo, mIsIncoming, true);
         }
     }
 
@@ -179,8 +268,8 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
 
         // If we have a previously obtained intermediate result return that now
         if (cacheEntry != null) {
-            Log.d(TAG, "Contact lookup. In memory cache hit; lookup "
-                    + (callBacks == null ? "complete" : "still running"));
+            Log.df(TAG, "Contact lookup. In memory cache hit; lookup %s",
+                    callBacks == null ? "complete" : "still running");
             callback.onContactInfoComplete(callId, cacheEntry);
             // If no other callbacks are in flight, we're done.
             if (callBacks == null) {
@@ -193,6 +282,35 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
             callBacks.add(callback);
             return;
         }
+        final String warmCacheKey = isIncoming ? getWarmCacheKey(call) : null;
+        if (warmCacheKey != null) {
+            final ContactCacheEntry warmEntry =
+                    mWarmCache.get(warmCacheKey, mContext.getResources());
+            if (warmEntry != null) {
+                Log.d(TAG, "Contact lookup. Warm cache hit; lookup complete");
+                mInfoMap.put(callId, warmEntry);
+                callback.onContactInfoComplete(callId, warmEntry);
+                return;
+            }
+
+            final String prefetchId = mPrefetches.get(warmCacheKey);
+            if (prefetchId != null) {
+                Log.df(TAG, "Contact lookup. Joining prefetch for %s", prefetchId);
+                callBacks = Sets.newHashSet();
+                callBacks.add(callback);
+                mCallBacks.put(callId, callBacks);
+                mCallBacks.get(prefetchId).add(new PrefetchForwarder(callId));
+
+                final ContactCacheEntry prefetchEntry = mInfoMap.get(prefetchId);
+                if (prefetchEntry != null) {
+                    mInfoMap.put(callId, prefetchEntry);
+                    callback.onContactInfoComplete(callId, prefetchEntry);
+                }
+                return;
+            }
+            mWarmCacheKeys.put(callId, warmCacheKey);
+        }
+
         Log.d(TAG, "Contact lookup. In memory cache miss; searching provider.");
         // New lookup
         callBacks = Sets.newHashSet();
@@ -211,6 +329,91 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
         findInfoQueryComplete(call, callerInfo, isIncoming, false);
     }
 
+    /**
+     * Starts the lookup for an incoming call before it is added to the {@link CallList}, e.g.
+     * while it is checked against the blocked numbers. A later {@link #findInfo} for the call
+     * joins the running lookup, or is answered from the warm cache once it finished.
+     *
+     * @return The id to pass to {@link #cancelPrefetch} if the call isn't going to be shown, or
+     *     {@code null} if no lookup was started.
+     */
+    public String prefetchInfo(android.telecom.Call telecomCall) {
+        Preconditions.checkState(Looper.getMainLooper().getThread() == Thread.currentThread());
+
+        final Call call = new Call(telecomCall, false /* registerCallback */);
+        final String warmCacheKey = getWarmCacheKey(call);
+        if (warmCacheKey == null || mPrefetches.containsKey(warmCacheKey)) {
+            return null;
+        }
+
+        findInfo(call, true /* isIncoming */, PREFETCH_CALLBACK);
+        if (!mCallBacks.containsKey(call.getId())) {
+            // Answered from the warm cache, nothing left to join
+            mInfoMap.remove(call.getId());
+            return null;
+        }
+        mPrefetches.put(warmCacheKey, call.getId());
+        return call.getId();
+    }
+
+    /**
+     * Drops a prefetch started by {@link #prefetchInfo}. Queries already running can't be
+     * stopped, but their results are ignored and nothing is loaded after them.
+     */
+    public void cancelPrefetch(String prefetchId) {
+        if (prefetchId == null) {
+            return;
+        }
+        final String warmCacheKey = mWarmCacheKeys.remove(prefetchId);
+        if (warmCacheKey != null) {
+            mPrefetches.remove(warmCacheKey);
+        }
+        mCallBacks.remove(prefetchId);
+        mInfoMap.remove(prefetchId);
+    }
+
+    private static final ContactInfoCacheCallback PREFETCH_CALLBACK =
+            new ContactInfoCacheCallback() {
+                @Override
+                public void onContactInfoComplete(String callId, ContactCacheEntry entry) {}
+
+                @Override
+                public void onImageLoadComplete(String callId, ContactCacheEntry entry) {}
+
+                @Override
+                public void onContactInteractionsInfoComplete(String callId,
+                        ContactCacheEntry entry) {}
+            };
+
+    /**
+     * Passes the results of a prefetch on to the call which joined it.
+     */
+    private class PrefetchForwarder implements ContactInfoCacheCallback {
+        private final String mCallId;
+
+        PrefetchForwarder(String callId) {
+            mCallId = callId;
+        }
+
+        @Override
+        public void onContactInfoComplete(String callId, ContactCacheEntry entry) {
+            mInfoMap.put(mCallId, entry);
+            sendInfoNotifications(mCallId, entry);
+        }
+
+        @Override
+        public void onImageLoadComplete(String callId, ContactCacheEntry entry) {
+            mInfoMap.put(mCallId, entry);
+            sendImageNotifications(mCallId, entry);
+        }
+
+        @Override
+        public void onContactInteractionsInfoComplete(String callId, ContactCacheEntry entry) {
+            mInfoMap.put(mCallId, entry);
+            sendContactInteractionsNotifications(mCallId, entry);
+        }
+    }
+
     private void findInfoQueryComplete(Call call, CallerInfo callerInfo, boolean isIncoming,
             boolean didLocalLookup) {
         final String callId = call.getId();
@@ -270,6 +473,10 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
         @Override
         public void onPhoneNumberInfoComplete(
                 final PhoneNumberService.PhoneNumberInfo info) {
+            if (!mCallBacks.containsKey(mCallId)) {
+                Log.d(TAG, "Contact lookup. Dropping remote result of cancelled lookup");
+                return;
+            }
             // If we got a miss, this is the end of the lookup pipeline,
             // so clear the callbacks and return.
             if (info == null) {
@@ -405,6 +612,26 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
     public void clearCache() {
         mInfoMap.clear();
         mCallBacks.clear();
+        mWarmCacheKeys.clear();
+        mPrefetches.clear();
+    }
+
+    /**
+     * @return The key of the call in the warm cache, or {@code null} if the caller isn't known
+     *     by its number alone.
+     */
+    private String getWarmCacheKey(Call call) {
+        final String number = call.getNumber();
+        if (TextUtils.isEmpty(number) || call.isEmergencyCall()
+                || call.getNumberPresentation() != TelecomManager.PRESENTATION_ALLOWED) {
+            return null;
+        }
+        if (PhoneNumberHelper.isUriNumber(number)) {
+            return number;
+        }
+        final String e164Number = PhoneNumberUtils.formatNumberToE164(number,
+                GeoUtil.getCurrentCountryIso(mContext));
+        return e164Number != null ? e164Number : PhoneNumberUtils.normalizeNumber(number);
     }
 
     private ContactCacheEntry buildEntry(Context context, String callId,
@@ -503,20 +730,20 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
                     // No name *or* number! Display a generic "unknown" string
                     // (or potentially some other default based on the presentation.)
                     displayName = getPresentationString(context, presentation, info.callSubject);
-                    Log.d(TAG, "  ==> no name *or* number! displayName = " + displayName);
+                    Log.df(TAG, "  ==> no name *or* number! displayName = %s", displayName);
                 } else if (presentation != TelecomManager.PRESENTATION_ALLOWED) {
                     // This case should never happen since the network should never send a phone #
                     // AND a restricted presentation. However we leave it here in case of weird
                     // network behavior
                     displayName = getPresentationString(context, presentation, info.callSubject);
-                    Log.d(TAG, "  ==> presentation not allowed! displayName = " + displayName);
+                    Log.df(TAG, "  ==> presentation not allowed! displayName = %s", displayName);
                 } else if (!TextUtils.isEmpty(info.cnapName)) {
                     // No name, but we do have a valid CNAP name, so use that.
                     displayName = info.cnapName;
                     info.name = info.cnapName;
                     displayNumber = number;
-                    Log.d(TAG, "  ==> cnapName available: displayName '" + displayName +
-                            "', displayNumber '" + displayNumber + "'");
+                    Log.df(TAG, "  ==> cnapName available: displayName '%s', displayNumber '%s'",
+                            displayName, displayNumber);
                 } else {
                     // No name; all we have is a number. This is the typical
                     // case when an incoming call doesn't match any contact,
@@ -531,12 +758,15 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
                         // query to only do the geoDescription lookup in the first
                         // place for incoming calls.
                         displayLocation = info.geoDescription; // may be null
-                        Log.d(TAG, "Geodescrption: " + info.geoDescription);
+                        Log.df(TAG, "Geodescrption: %s", info.geoDescription);
                     }
 
-                    Log.d(TAG, "  ==>  no name; falling back to number:"
-                            + " displayNumber '" + Log.pii(displayNumber)
-                            + "', displayLocation '" + displayLocation + "'");
+                    if (Log.DEBUG) {
+                        // Only hash the number when it's going to be logged
+                        Log.df(TAG, "  ==>  no name; falling back to number:"
+                                + " displayNumber '%s', displayLocation '%s'",
+                                Log.pii(displayNumber), displayLocation);
+                    }
                 }
             } else {
                 // We do have a valid "name" in the CallerInfo. Display that
@@ -546,8 +776,8 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
                     // AND a restricted presentation. However we leave it here in case of weird
                     // network behavior
                     displayName = getPresentationString(context, presentation, info.callSubject);
-                    Log.d(TAG, "  ==> valid name, but presentation not allowed!" +
-                            " displayName = " + displayName);
+                    Log.df(TAG, "  ==> valid name, but presentation not allowed!"
+                            + " displayName = %s", displayName);
                 } else {
                     // Causes cce.namePrimary to be set as info.name below. CallCardPresenter will
                     // later determine whether to use the name or nameAlternative when presenting
@@ -555,8 +785,8 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
                     cce.nameAlternative = info.nameAlternative;
                     displayNumber = number;
                     label = info.phoneLabel;
-                    Log.d(TAG, "  ==>  name is present in CallerInfo: displayName '" + displayName
-                            + "', displayNumber '" + displayNumber + "'");
+                    Log.df(TAG, "  ==>  name is present in CallerInfo: displayName '%s',"
+                            + " displayNumber '%s'", displayName, displayNumber);
                 }
             }
 
@@ -602,8 +832,31 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
         }
     }
 
+    /**
+     * Called once the lookup pipeline for a call is done, so its final entry is remembered for
+     * later calls from the same number.
+     */
     private void clearCallbacks(String callId) {
-        mCallBacks.remove(callId);
+        final Set<ContactInfoCacheCallback> callBacks = mCallBacks.remove(callId);
+
+        final String warmCacheKey = mWarmCacheKeys.remove(callId);
+        final ContactCacheEntry entry = mInfoMap.get(callId);
+        if (warmCacheKey != null && entry != null) {
+            mWarmCache.put(warmCacheKey, entry);
+        }
+
+        if (warmCacheKey != null && callId.equals(mPrefetches.get(warmCacheKey))) {
+            mPrefetches.remove(warmCacheKey);
+            mInfoMap.remove(callId);
+            if (callBacks != null) {
+                // The calls which joined the prefetch are done as well
+                for (ContactInfoCacheCallback callBack : callBacks) {
+                    if (callBack instanceof PrefetchForwarder) {
+                        clearCallbacks(((PrefetchForwarder) callBack).mCallId);
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import com.android.incallui.ContactInfoCache.ContactCacheEntry;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Least recently used cache of resolved {@link ContactCacheEntry}s, keyed by normalized number
+ * rather than call id, so that repeated calls from the same number can be shown without any
+ * lookup. Bounded both by the number of entries and the bytes held by their photos.
+ *
+ * Entries are copied on the way in and out, as the per call entries are modified while their
+ * lookup progresses. Photos are kept as {@link Drawable.ConstantState} so every call gets its
+ * own drawable. Like {@link ContactInfoCache}, this is only used from the UI thread.
+ *
+ * Each entry remembers the {@link VersionSource version} of the contact data of its number, and
+ * is dropped once that version changed. Versions are only read on the background executor: after
+ * an entry is cached or served, and for all entries after {@link #onContactsChanged}. Reads
+ * never wait for them, so an entry may still be served once shortly after its contact changed.
+ */
+class ContactInfoWarmCache {
+    private final int mMaxEntries;
+    private final long mMaxPhotoBytes;
+    private final VersionSource mVersionSource;
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainExecutor;
+    private final LinkedHashMap<String, WarmEntry> mEntries =
+            new LinkedHashMap<String, WarmEntry>(16, 0.75f, true);
+    private long mPhotoBytes;
+    private boolean mRefreshRunning;
+    private boolean mRefreshPending;
+
+    private int mHits;
+    private int mMisses;
+    private int mStale;
+
+    /**
+     * Tells whether the contact data of a number changed.
+     */
+    interface VersionSource {
+        /**
+         * Called on the background executor.
+         *
+         * @return A value which changes whenever the contact data of the number changes, or
+         *     {@code null} if it can't be determined.
+         */
+        String getVersion(String key);
+    }
+
+    private static class WarmEntry {
+        final ContactCacheEntry entry;
+        final Drawable.ConstantState photo;
+        final long photoBytes;
+        /** Null until first read on the background executor */
+        String version;
+        /** Set once the entry was replaced, evicted or removed */
+        boolean removed;
+
+        WarmEntry(ContactCacheEntry entry, Drawable.ConstantState photo, long photoBytes) {
+            this.entry = entry;
+            this.photo = photo;
+            this.photoBytes = photoBytes;
+        }
+    }
+
+    /**
+     * @param backgroundExecutor Runs the {@link VersionSource} queries.
+     * @param mainExecutor Applies their results on the UI thread.
+     */
+    ContactInfoWarmCache(int maxEntries, long maxPhotoBytes, VersionSource versionSource,
+            Executor backgroundExecutor, Executor mainExecutor) {
+        mMaxEntries = maxEntries;
+        mMaxPhotoBytes = maxPhotoBytes;
+        mVersionSource = versionSource;
+        mBackgroundExecutor = backgroundExecutor;
+        mMainExecutor = mainExecutor;
+    }
+
+    /**
+     * Doesn't query anything; the entry is verified in the background afterwards, so it isn't
+     * served again if its contact changed.
+     *
+     * @return A copy of the entry cached for the number, or {@code null} if there is none or the
+     *     contact data of the number is known to have changed since it was cached.
+     */
+    ContactCacheEntry get(String key, Resources res) {
+        final WarmEntry warmEntry = key != null ? mEntries.get(key) : null;
+        if (warmEntry == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        verify(key, warmEntry);
+        final ContactCacheEntry entry = copyOf(warmEntry.entry);
+        if (warmEntry.photo != null) {
+            entry.photo = warmEntry.photo.newDrawable(res);
+        }
+        return entry;
+    }
+
+    /**
+     * Caches a copy of a fully resolved entry. Entries still loading, or with a photo which can't
+     * be shared, are ignored.
+     */
+    void put(String key, ContactCacheEntry entry) {
+        if (key == null || entry.isLoadingPhoto || entry.isLoadingContactInteractions) {
+            return;
+        }
+
+        Drawable.ConstantState photo = null;
+        long photoBytes = 0;
+        if (entry.photo != null) {
+            photo = entry.photo.getConstantState();
+            if (photo == null) {
+                return;
+            }
+            photoBytes = getPhotoBytes(entry.photo);
+            if (photoBytes > mMaxPhotoBytes) {
+                return;
+            }
+        }
+
+        final ContactCacheEntry copy = copyOf(entry);
+        copy.photo = null;
+        remove(key);
+        final WarmEntry warmEntry = new WarmEntry(copy, photo, photoBytes);
+        mEntries.put(key, warmEntry);
+        mPhotoBytes += photoBytes;
+        trim();
+        verify(key, warmEntry);
+    }
+
+    /**
+     * Verifies all entries in the background, e.g. after the contacts provider changed. Calls
+     * while a verification is running are coalesced into one more run after it.
+     */
+    void onContactsChanged() {
+        if (mRefreshRunning) {
+            mRefreshPending = true;
+            return;
+        }
+        if (mEntries.isEmpty()) {
+            return;
+        }
+        mRefreshRunning = true;
+
+        final List<String> keys = new ArrayList<String>(mEntries.keySet());
+        final List<WarmEntry> warmEntries = new ArrayList<WarmEntry>(mEntries.values());
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String[] versions = new String[keys.size()];
+                for (int i = 0; i < versions.length; i++) {
+                    versions[i] = mVersionSource.getVersion(keys.get(i));
+                }
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < versions.length; i++) {
+                            applyVersion(keys.get(i), warmEntries.get(i), versions[i]);
+                        }
+                        mRefreshRunning = false;
+                        if (mRefreshPending) {
+                            mRefreshPending = false;
+                            onContactsChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void verify(final String key, final WarmEntry warmEntry) {
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String version = mVersionSource.getVersion(key);
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyVersion(key, warmEntry, version);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Records the first version read for an entry, and drops it once a later one differs or the
+     * version can't be determined.
+     */
+    private void applyVersion(String key, WarmEntry warmEntry, String version) {
+        if (warmEntry.removed) {
+            return;
+        }
+        if (version == null) {
+            remove(key);
+        } else if (warmEntry.version == null) {
+            warmEntry.version = version;
+        } else if (!warmEntry.version.equals(version)) {
+            remove(key);
+            mStale++;
+        }
+    }
+
+    void remove(String key) {
+        final WarmEntry old = mEntries.remove(key);
+        if (old != null) {
+            old.removed = true;
+            mPhotoBytes -= old.photoBytes;
+        }
+    }
+
+    void clear() {
+        for (WarmEntry warmEntry : mEntries.values()) {
+            warmEntry.removed = true;
+        }
+        mEntries.clear();
+        mPhotoBytes = 0;
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    long getPhotoBytes() {
+        return mPhotoBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ContactInfoWarmCache{entries=" + mEntries.size() + ", photoBytes=" + mPhotoBytes
+                + ", hits=" + mHits + ", misses=" + mMisses + ", stale=" + mStale + "}";
+    }
+
+    private void trim() {
+        final Iterator<Map.Entry<String, WarmEntry>> it = mEntries.entrySet().iterator();
+        while (it.hasNext() && (mEntries.size() > mMaxEntries || mPhotoBytes > mMaxPhotoBytes)) {
+            final WarmEntry old = it.next().getValue();
+            old.removed = true;
+            mPhotoBytes -= old.photoBytes;
+            it.remove();
+        }
+    }
+
+    private static long getPhotoBytes(Drawable photo) {
+        if (photo instanceof BitmapDrawable) {
+            final Bitmap bitmap = ((BitmapDrawable) photo).getBitmap();
+            return bitmap != null ? bitmap.getByteCount() : 0;
+        }
+        return 0;
+    }
+
+    private static ContactCacheEntry copyOf(ContactCacheEntry entry) {
+        final ContactCacheEntry copy = new ContactCacheEntry();
+        copy.namePrimary = entry.namePrimary;
+        copy.nameAlternative = entry.nameAlternative;
+        copy.number = entry.number;
+        copy.location = entry.location;
+        copy.label = entry.label;
+        copy.photo = entry.photo;
+        copy.isSipCall = entry.isSipCall;
+        copy.contactUri = entry.contactUri;
+        copy.displayPhotoUri = entry.displayPhotoUri;
+        copy.lookupUri = entry.lookupUri;
+        copy.lookupKey = entry.lookupKey;
+        copy.locationAddress = entry.locationAddress;
+        copy.openingHours = entry.openingHours;
+        copy.contactLookupResult = entry.contactLookupResult;
+        copy.userType = entry.userType;
+        copy.contactRingtoneUri = entry.contactRingtoneUri;
+        return copy;
+    }
+}
@@ -25,12 +25,12 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
 import android.provider.ContactsContract.Contacts;
 
 import com.android.dialer.R;
+import com.android.incallui.async.LaneExecutor;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -202,9 +202,9 @@ public class ContactsAsyncHelper {
      * Private constructor for static class
      */
     private ContactsAsyncHelper() {
-        HandlerThread thread = new HandlerThread("ContactsAsyncWorker");
-        thread.start();
-        sThreadHandler = new WorkerHandler(thread.getLooper());
+        // Photos are only loaded for calls already shown
+        final LaneExecutor.Lane lane = LaneExecutor.getInstance().getLane(LaneExecutor.LANE_UI);
+        sThreadHandler = lane.newHandler(new WorkerHandler(lane.getLooper()));
     }
 
     /**
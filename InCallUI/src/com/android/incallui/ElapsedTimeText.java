@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.graphics.Paint;
+import android.text.format.DateUtils;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+/**
+ * Shows the elapsed time of a call in a TextView once per second, without allocating a new
+ * string or laying out the call card for every tick.
+ *
+ * The digits are written into a reused buffer which the TextView displays directly, in the
+ * layout of {@link DateUtils#formatElapsedTime(long)}; its zero digit and separators are only
+ * looked up again when the locale changes. The width of the TextView is pinned to fit any time
+ * of the same length, so a tick which only changes digits merely invalidates the view; a new
+ * layout pass is only needed when the length changes, e.g. from 9:59 to 10:00.
+ */
+class ElapsedTimeText {
+    private char[] mChars = new char[8];
+    private int mLength;
+    private long mElapsedSeconds = -1;
+    private int mPinnedLength = -1;
+
+    private Locale mLocale;
+    private char mZeroDigit;
+    private char mMinutesSeparator;
+    private char mHoursSeparator;
+    private char mHoursMinutesSeparator;
+
+    /**
+     * Formats the elapsed time into the buffer.
+     *
+     * @return {@code false} if the time didn't change since the last call, in seconds.
+     */
+    boolean setElapsedTime(long elapsedMillis) {
+        final long elapsedSeconds = Math.max(elapsedMillis, 0) / 1000;
+        if (elapsedSeconds == mElapsedSeconds) {
+            return false;
+        }
+        mElapsedSeconds = elapsedSeconds;
+
+        updateSymbols();
+        final long hours = elapsedSeconds / 3600;
+        final long minutes = (elapsedSeconds % 3600) / 60;
+        final long seconds = elapsedSeconds % 60;
+
+        int length = 0;
+        if (hours > 0) {
+            length = appendNumber(hours, 1, length);
+            length = appendChar(mHoursSeparator, length);
+            length = appendNumber(minutes, 2, length);
+            length = appendChar(mHoursMinutesSeparator, length);
+        } else {
+            length = appendNumber(minutes, 2, length);
+            length = appendChar(mMinutesSeparator, length);
+        }
+        mLength = appendNumber(seconds, 2, length);
+        return true;
+    }
+
+    /**
+     * Takes the zero digit and separators of the current locale from the format of
+     * {@link DateUtils#formatElapsedTime(long)}, i.e. "00:00" and "1:00:00".
+     */
+    private void updateSymbols() {
+        final Locale locale = Locale.getDefault();
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+        final String minutesFormat = DateUtils.formatElapsedTime(0);
+        final String hoursFormat = DateUtils.formatElapsedTime(3600);
+        mZeroDigit = minutesFormat.charAt(0);
+        mMinutesSeparator = minutesFormat.charAt(2);
+        mHoursSeparator = hoursFormat.charAt(1);
+        mHoursMinutesSeparator = hoursFormat.charAt(4);
+    }
+
+    /**
+     * Writes {@code value} at {@code start}, padded with zeros to {@code minDigits}.
+     *
+     * @return The position after the last digit.
+     */
+    private int appendNumber(long value, int minDigits, int start) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        ensureCapacity(start + digits);
+
+        int position = start + digits;
+        long rest = value;
+        while (position > start) {
+            mChars[--position] = (char) (mZeroDigit + rest % 10);
+            rest /= 10;
+        }
+        return start + digits;
+    }
+
+    private int appendChar(char c, int start) {
+        ensureCapacity(start + 1);
+        mChars[start] = c;
+        return start + 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (mChars.length < capacity) {
+            final char[] chars = new char[Math.max(capacity, mChars.length * 2)];
+            System.arraycopy(mChars, 0, chars, 0, mChars.length);
+            mChars = chars;
+        }
+    }
+
+    long getElapsedSeconds() {
+        return mElapsedSeconds;
+    }
+
+    int length() {
+        return mLength;
+    }
+
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mLength);
+    }
+
+    /**
+     * Shows the formatted time in the view.
+     */
+    void applyTo(TextView view) {
+        if (mLength != mPinnedLength) {
+            mPinnedLength = mLength;
+            view.setWidth(getMaxWidth(view));
+        }
+        // The view keeps a reference to the buffer rather than copying it
+        view.setText(mChars, 0, mLength);
+    }
+
+    /**
+     * Forgets the last time, e.g. when the view was hidden, so the next time is applied again.
+     */
+    void reset() {
+        mElapsedSeconds = -1;
+        mPinnedLength = -1;
+    }
+
+    /**
+     * @return The width of the view for any time of the current length, assuming every digit is
+     *     as wide as the widest one.
+     */
+    private int getMaxWidth(TextView view) {
+        final Paint paint = view.getPaint();
+        float maxDigitWidth = 0;
+        for (char digit = '0'; digit <= '9'; digit++) {
+            maxDigitWidth = Math.max(maxDigitWidth, paint.measureText(String.valueOf(digit)));
+        }
+
+        float width = 0;
+        for (int i = 0; i < mLength; i++) {
+            final float charWidth = paint.measureText(mChars, i, 1);
+            width += Character.isDigit(mChars[i]) ? Math.max(charWidth, maxDigitWidth) : charWidth;
+        }
+        return (int) Math.ceil(width) + 1
+                + view.getCompoundPaddingLeft() + view.getCompoundPaddingRight();
+    }
+}
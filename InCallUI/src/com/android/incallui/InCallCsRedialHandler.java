@@ -66,7 +66,8 @@ public class InCallCsRedialHandler implements CallList.Listener {
     public void setUp(Context context) {
         mContext = context;
         mCallList = CallList.getInstance();
-        mCallList.addListener(this);
+        // Only disconnects are of interest
+        mCallList.addListener(this, 0);
     }
 
     /**
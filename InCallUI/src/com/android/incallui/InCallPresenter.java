@@ -29,13 +29,16 @@ import android.database.ContentObserver;
 import android.graphics.Point;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.provider.CallLog;
 import android.telecom.DisconnectCause;
 import android.telecom.PhoneAccount;
 import android.telecom.PhoneAccountHandle;
 import android.telecom.TelecomManager;
 import android.telecom.VideoProfile;
+import android.telephony.PhoneNumberUtils;
 import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
@@ -55,16 +58,20 @@ import com.android.dialer.calllog.CallLogAsyncTaskUtil;
 import com.android.dialer.calllog.CallLogAsyncTaskUtil.OnCallLogQueryFinishedListener;
 import com.android.dialer.database.FilteredNumberAsyncQueryHandler;
 import com.android.dialer.database.FilteredNumberAsyncQueryHandler.OnCheckBlockedListener;
+import com.android.dialer.filterednumber.BlockedNumberIndex;
 import com.android.dialer.filterednumber.FilteredNumbersUtil;
 import com.android.dialer.logging.InteractionEvent;
 import com.android.dialer.logging.Logger;
 import com.android.dialer.util.TelecomUtil;
+import com.android.incallui.async.LaneExecutor;
 import com.android.incallui.util.TelecomCallUtil;
 import com.android.incalluibind.ObjectFactory;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -99,6 +106,11 @@ public class InCallPresenter implements CallList.Listener,
      */
     private final Set<InCallStateListener> mListeners = Collections.newSetFromMap(
             new ConcurrentHashMap<InCallStateListener, Boolean>(8, 0.9f, 1));
+    /** The CallList.CHANGE_* flags each state listener is interested in */
+    private final Map<InCallStateListener, Integer> mListenerChangeMasks =
+            new ConcurrentHashMap<InCallStateListener, Integer>(8, 0.9f, 1);
+    /** State listener calls skipped as nothing they are interested in changed */
+    private int mSkippedListenerCount;
     private final List<IncomingCallListener> mIncomingCallListeners = new CopyOnWriteArrayList<>();
     private final Set<InCallDetailsListener> mDetailsListeners = Collections.newSetFromMap(
             new ConcurrentHashMap<InCallDetailsListener, Boolean>(8, 0.9f, 1));
@@ -127,6 +139,11 @@ public class InCallPresenter implements CallList.Listener,
     private InCallCameraManager mInCallCameraManager = null;
     private AnswerPresenter mAnswerPresenter = new AnswerPresenter();
     private FilteredNumberAsyncQueryHandler mFilteredQueryHandler;
+    // For block check timeouts and call log observers, rather than a new handler per call
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private BlockedNumberIndex mBlockedNumberIndex;
+    /** Time each ringing call was added, until its caller is shown, see onCallerIdentityShown */
+    private final Map<android.telecom.Call, Long> mIncomingCallAddedTimes = new HashMap<>();
     private PowerManager mPowerManager;
     private PowerManager.WakeLock mWakeLock = null;
 
@@ -187,7 +204,15 @@ public class InCallPresenter implements CallList.Listener,
                 }
                 // Check if the number is blocked, to silence the ringer.
                 String countryIso = GeoUtil.getCurrentCountryIso(mContext);
-                mFilteredQueryHandler.isBlockedNumber(
+                if (mBlockedNumberIndex.isLoaded()) {
+                    String e164Number =
+                            PhoneNumberUtils.formatNumberToE164(incomingNumber, countryIso);
+                    if (mBlockedNumberIndex.isBlocked(e164Number)) {
+                        TelecomUtil.silenceRinger(mContext);
+                    }
+                    return;
+                }
+                mFilteredQueryHandler.isBlockedNumberOrPrefix(
                         mOnCheckBlockedListener, incomingNumber, countryIso);
             }
         }
@@ -333,12 +358,12 @@ public class InCallPresenter implements CallList.Listener,
         addListener(mStatusBarNotifier);
 
         mInCallVibrationHandler = new InCallVibrationHandler(context);
-        addListener(mInCallVibrationHandler);
+        addListener(mInCallVibrationHandler, CallList.CHANGE_CALLS | CallList.CHANGE_STATE);
 
         mAudioModeProvider = audioModeProvider;
 
         mProximitySensor = proximitySensor;
-        addListener(mProximitySensor);
+        addListener(mProximitySensor, CallList.CHANGE_CALLS | CallList.CHANGE_STATE);
 
         addIncomingCallListener(mAnswerPresenter);
         addInCallUiListener(mAnswerPresenter);
@@ -363,7 +388,17 @@ public class InCallPresenter implements CallList.Listener,
         InCallLowBatteryListener.getInstance().setUp(mContext);
         InCallVideoCallCallbackNotifier.getInstance().addSessionModificationListener(this);
 
-        mFilteredQueryHandler = new FilteredNumberAsyncQueryHandler(context.getContentResolver());
+        mFilteredQueryHandler = new FilteredNumberAsyncQueryHandler(context.getContentResolver()) {
+            @Override
+            protected Handler createHandler(Looper looper) {
+                // Incoming calls wait for the block check, so it runs on the ring lane rather
+                // than on the worker thread of the given looper, shared by the whole process
+                final LaneExecutor.Lane lane =
+                        LaneExecutor.getInstance().getLane(LaneExecutor.LANE_RING);
+                return lane.newHandler(new WorkerHandler(lane.getLooper()));
+            }
+        };
+        mBlockedNumberIndex = BlockedNumberIndex.getInstance(context);
         mTelephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
         mTelephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_CALL_STATE);
         mCallList.setFilteredNumberQueryHandler(mFilteredQueryHandler);
@@ -547,6 +582,10 @@ public class InCallPresenter implements CallList.Listener,
     }
 
     public void onCallAdded(final android.telecom.Call call) {
+        if (call.getState() == android.telecom.Call.STATE_RINGING) {
+            mIncomingCallAddedTimes.put(call, SystemClock.elapsedRealtime());
+        }
+
         if (shouldAttemptBlocking(call)) {
             maybeBlockCall(call);
         } else {
@@ -584,21 +623,44 @@ public class InCallPresenter implements CallList.Listener,
 
     /**
      * Checks whether a call should be blocked, and blocks it if so. Otherwise, it adds the call
-     * to the CallList so it can proceed as normal. There is a timeout, so if the function for
-     * checking whether a function is blocked does not return in a reasonable time, we proceed
-     * with adding the call anyways.
+     * to the CallList so it can proceed as normal. This is decided right away if the
+     * {@link BlockedNumberIndex} is loaded. Otherwise the providers are queried for the number and
+     * its prefix rules with a timeout, so if the function for checking whether a function is
+     * blocked does not return in a reasonable time, we proceed with adding the call anyways.
      */
     private void maybeBlockCall(final android.telecom.Call call) {
         final String countryIso = GeoUtil.getCurrentCountryIso(mContext);
         final String number = TelecomCallUtil.getNumber(call);
         final long timeAdded = System.currentTimeMillis();
 
+        if (mBlockedNumberIndex.isLoaded()) {
+            // The index is current, no need to wait for a provider query
+            final String e164Number = PhoneNumberUtils.formatNumberToE164(number, countryIso);
+            int id = mBlockedNumberIndex.getBlockedId(e164Number);
+            if (id == BlockedNumberIndex.NOT_BLOCKED) {
+                // Statistics of prefix rules are kept in their own row
+                id = mBlockedNumberIndex.getPrefixRuleId(e164Number);
+            }
+            if (id == BlockedNumberIndex.NOT_BLOCKED) {
+                mCallList.onCallAdded(call);
+            } else {
+                rejectBlockedCall(call, id, number, timeAdded);
+            }
+            return;
+        }
+
+        // Look up the caller while the provider is queried, so the name is ready by the time the
+        // call is shown. Any later lookup for the call joins this one.
+        final String prefetchId = mContactInfoCache != null
+                ? mContactInfoCache.prefetchInfo(call) : null;
+        final long blockCheckStart = SystemClock.elapsedRealtime();
+
         // Though AtomicBoolean's can be scary, don't fear, as in this case it is only used on the
         // main UI thread. It is needed so we can change its value within different scopes, since
         // that cannot be done with a final boolean.
         final AtomicBoolean hasTimedOut = new AtomicBoolean(false);
 
-        final Handler handler = new Handler();
+        final Handler handler = mMainHandler;
 
         // Proceed if the query is slow; the call may still be blocked after the query returns.
         final Runnable runnable = new Runnable() {
@@ -612,6 +674,8 @@ public class InCallPresenter implements CallList.Listener,
         OnCheckBlockedListener onCheckBlockedListener = new OnCheckBlockedListener() {
             @Override
             public void onCheckComplete(final Integer id) {
+                Log.d(InCallPresenter.this, "Block check took "
+                        + (SystemClock.elapsedRealtime() - blockCheckStart) + "ms");
                 if (!hasTimedOut.get()) {
                     handler.removeCallbacks(runnable);
                 }
@@ -620,22 +684,16 @@ public class InCallPresenter implements CallList.Listener,
                         mCallList.onCallAdded(call);
                     }
                 } else {
-                    Log.i(this, "Rejecting incoming call from blocked number");
-                    call.reject(false, null);
-                    Logger.logInteraction(InteractionEvent.CALL_BLOCKED);
-
-                    mFilteredQueryHandler.incrementFilteredCount(id);
-
-                    // Register observer to update the call log.
-                    // BlockedNumberContentObserver will unregister after successful log or timeout.
-                    BlockedNumberContentObserver contentObserver =
-                            new BlockedNumberContentObserver(new Handler(), number, timeAdded);
-                    contentObserver.register();
+                    if (!hasTimedOut.get() && mContactInfoCache != null) {
+                        // The call is never shown, so nobody joined the lookup
+                        mContactInfoCache.cancelPrefetch(prefetchId);
+                    }
+                    rejectBlockedCall(call, id, number, timeAdded);
                 }
             }
         };
 
-        final boolean success = mFilteredQueryHandler.isBlockedNumber(
+        final boolean success = mFilteredQueryHandler.isBlockedNumberOrPrefix(
                 onCheckBlockedListener, number, countryIso);
         if (!success) {
             Log.d(this, "checkForBlockedCall: invalid number, skipping block checking");
@@ -646,7 +704,23 @@ public class InCallPresenter implements CallList.Listener,
         }
     }
 
+    private void rejectBlockedCall(android.telecom.Call call, int id, String number,
+            long timeAdded) {
+        Log.i(this, "Rejecting incoming call from blocked number");
+        call.reject(false, null);
+        Logger.logInteraction(InteractionEvent.CALL_BLOCKED);
+
+        mFilteredQueryHandler.incrementFilteredCount(id);
+
+        // Register observer to update the call log.
+        // BlockedNumberContentObserver will unregister after successful log or timeout.
+        BlockedNumberContentObserver contentObserver =
+                new BlockedNumberContentObserver(mMainHandler, number, timeAdded);
+        contentObserver.register();
+    }
+
     public void onCallRemoved(android.telecom.Call call) {
+        mIncomingCallAddedTimes.remove(call);
         if (call.getDetails()
                 .hasProperty(CallSdkCompat.Details.PROPERTY_IS_EXTERNAL_CALL)) {
             mExternalCallList.onCallRemoved(call);
@@ -656,6 +730,18 @@ public class InCallPresenter implements CallList.Listener,
         }
     }
 
+    /**
+     * Called once the name of the caller of an incoming call is on screen, to log the time it
+     * took since telecom added the call. Only the first call per incoming call is logged.
+     */
+    public void onCallerIdentityShown(Call call) {
+        final Long addedTime = mIncomingCallAddedTimes.remove(call.getTelecomCall());
+        if (addedTime != null) {
+            Log.i(this, "Caller identity shown "
+                    + (SystemClock.elapsedRealtime() - addedTime) + "ms after the call was added");
+        }
+    }
+
     public void onCanAddCallChanged(boolean canAddCall) {
         for (CanAddCallListener listener : mCanAddCallListeners) {
             listener.onCanAddCallChanged(canAddCall);
@@ -683,19 +769,35 @@ public class InCallPresenter implements CallList.Listener,
 
         InCallState newState = getPotentialStateFromCallList(callList);
         InCallState oldState = mInCallState;
-        Log.d(this, "onCallListChange oldState= " + oldState + " newState=" + newState);
+        Log.df(this, "onCallListChange oldState= %s newState=%s", oldState, newState);
         newState = startOrFinishUi(newState);
-        Log.d(this, "onCallListChange newState changed to " + newState);
+        Log.d(this, "onCallListChange newState changed to ", newState);
 
-        // Set the new state before announcing it to the world
-        Log.i(this, "Phone switching state: " + oldState + " -> " + newState);
+        // Set the new state before announcing it to the world. Most updates don't switch states,
+        // so those are only logged when debugging.
+        if (oldState != newState) {
+            Log.i(this, "Phone switching state: " + oldState + " -> " + newState);
+        } else {
+            Log.df(this, "Phone switching state: %s -> %s", oldState, newState);
+        }
         mInCallState = newState;
 
-        // notify listeners of new state
+        // notify listeners of new state, or of the changes they are interested in
+        final int changes = callList.getDispatchingChanges();
         for (InCallStateListener listener : mListeners) {
-            Log.d(this, "Notify " + listener + " of state " + mInCallState.toString());
+            final Integer changeMask = mListenerChangeMasks.get(listener);
+            if (oldState == mInCallState && changeMask != null && (changeMask & changes) == 0) {
+                mSkippedListenerCount++;
+                continue;
+            }
+            Log.df(this, "Notify %s of state %s", listener, mInCallState);
             listener.onStateChange(oldState, mInCallState, callList);
         }
+        if (mInCallState == InCallState.NO_CALLS && oldState != InCallState.NO_CALLS) {
+            Log.i(this, "Skipped " + mSkippedListenerCount + " state listener calls");
+            mSkippedListenerCount = 0;
+            LaneExecutor.getInstance().logAndResetStats();
+        }
 
         if (isActivityStarted()) {
             final boolean hasCall = callList.getActiveOrBackgroundCall() != null ||
@@ -849,13 +951,23 @@ public class InCallPresenter implements CallList.Listener,
     }
 
     public void addListener(InCallStateListener listener) {
+        addListener(listener, CallList.CHANGE_ALL);
+    }
+
+    /**
+     * Adds a listener which is only notified of call list changes matching the given mask of
+     * CallList.CHANGE_* flags, as long as the in-call state stays the same.
+     */
+    public void addListener(InCallStateListener listener, int changeMask) {
         Preconditions.checkNotNull(listener);
+        mListenerChangeMasks.put(listener, changeMask);
         mListeners.add(listener);
     }
 
     public void removeListener(InCallStateListener listener) {
         if (listener != null) {
             mListeners.remove(listener);
+            mListenerChangeMasks.remove(listener);
         }
     }
 
@@ -1418,7 +1530,7 @@ public class InCallPresenter implements CallList.Listener,
      * the UI needs to be started or finished depending on the new state and does it.
      */
     private InCallState startOrFinishUi(InCallState newState) {
-        Log.d(this, "startOrFinishUi: " + mInCallState + " -> " + newState);
+        Log.df(this, "startOrFinishUi: %s -> %s", mInCallState, newState);
 
         // TODO: Consider a proper state machine implementation
 
@@ -1432,7 +1544,7 @@ public class InCallPresenter implements CallList.Listener,
                                (mInCallActivity == null);
         }
 
-        Log.d(this, "startOrFinishUi: " + isAutoAnswer);
+        Log.d(this, "startOrFinishUi: ", isAutoAnswer);
 
         boolean isAnyOtherSubActive = InCallState.INCOMING == newState &&
                 mCallList.isAnyOtherSubActive(mCallList.getActiveSubId());
@@ -1695,6 +1807,7 @@ public class InCallPresenter implements CallList.Listener,
             mInCallActivity = null;
 
             mListeners.clear();
+            mListenerChangeMasks.clear();
             mIncomingCallListeners.clear();
             mDetailsListeners.clear();
             mCanAddCallListeners.clear();
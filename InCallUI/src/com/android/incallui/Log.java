@@ -22,6 +22,7 @@ import android.telephony.PhoneNumberUtils;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 
 /**
  * Manages logging for the entire class.
@@ -68,6 +69,69 @@ public class Log {
         }
     }
 
+    /**
+     * Logs a {@link String#format} template at debug level. The message is only formatted, and
+     * the arguments only converted to strings, when debug logging is enabled; use this instead of
+     * concatenating on paths which run on every call update. The fixed arity overloads avoid
+     * allocating a varargs array while logging is disabled.
+     */
+    public static void df(Object obj, String format, Object arg1) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, getPrefix(obj) + format(format, arg1));
+        }
+    }
+
+    public static void df(Object obj, String format, Object arg1, Object arg2) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, getPrefix(obj) + format(format, arg1, arg2));
+        }
+    }
+
+    public static void df(Object obj, String format, Object arg1, Object arg2, Object arg3) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, getPrefix(obj) + format(format, arg1, arg2, arg3));
+        }
+    }
+
+    public static void df(Object obj, String format, Object... args) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, getPrefix(obj) + format(format, args));
+        }
+    }
+
+    public static void df(String tag, String format, Object arg1) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, delimit(tag) + format(format, arg1));
+        }
+    }
+
+    public static void df(String tag, String format, Object arg1, Object arg2) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, delimit(tag) + format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * Verbose level version of {@link #df(Object, String, Object)}.
+     */
+    public static void vf(Object obj, String format, Object arg1) {
+        if (VERBOSE) {
+            android.util.Log.v(TAG, getPrefix(obj) + format(format, arg1));
+        }
+    }
+
+    public static void vf(Object obj, String format, Object arg1, Object arg2) {
+        if (VERBOSE) {
+            android.util.Log.v(TAG, getPrefix(obj) + format(format, arg1, arg2));
+        }
+    }
+
+    public static void vf(Object obj, String format, Object... args) {
+        if (VERBOSE) {
+            android.util.Log.v(TAG, getPrefix(obj) + format(format, args));
+        }
+    }
+
     public static void e(String tag, String msg, Exception e) {
         android.util.Log.e(TAG, delimit(tag) + msg, e);
     }
@@ -166,6 +230,10 @@ public class Log {
         return hex.toString();
     }
 
+    private static String format(String format, Object... args) {
+        return String.format(Locale.US, format, args);
+    }
+
     private static String getPrefix(Object obj) {
         return (obj == null ? "" : (obj.getClass().getSimpleName() + TAG_DELIMETER));
     }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.util.Objects;
+
+/**
+ * Everything the {@link StatusBarNotifier} puts into an in-call notification. Two specs are equal
+ * when they would produce the same notification, so an equal spec doesn't need to be posted
+ * again.
+ *
+ * The large icon is compared by reference; it is the unrounded contact photo, which stays the
+ * same bitmap for as long as the contact info of the call doesn't change.
+ */
+final class NotificationSpec {
+    final int notificationType;
+    final int iconResId;
+    final String contentTitle;
+    final String content;
+    final String publicContent;
+    final Bitmap largeIcon;
+    final int callState;
+    final int videoState;
+    final boolean isVideoCall;
+    final boolean isVideoUpgradeRequest;
+    final boolean isFullScreen;
+    final long connectTimeMillis;
+    final Uri ringtone;
+    final String person;
+
+    private NotificationSpec(Builder builder) {
+        notificationType = builder.mNotificationType;
+        iconResId = builder.mIconResId;
+        contentTitle = builder.mContentTitle;
+        content = builder.mContent;
+        publicContent = builder.mPublicContent;
+        largeIcon = builder.mLargeIcon;
+        callState = builder.mCallState;
+        videoState = builder.mVideoState;
+        isVideoCall = builder.mIsVideoCall;
+        isVideoUpgradeRequest = builder.mIsVideoUpgradeRequest;
+        isFullScreen = builder.mIsFullScreen;
+        // Only active calls show the connect time
+        connectTimeMillis = builder.mCallState == Call.State.ACTIVE
+                ? builder.mConnectTimeMillis : 0;
+        ringtone = builder.mRingtone;
+        person = builder.mPerson;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NotificationSpec)) {
+            return false;
+        }
+        final NotificationSpec other = (NotificationSpec) o;
+        return notificationType == other.notificationType
+                && iconResId == other.iconResId
+                && callState == other.callState
+                && videoState == other.videoState
+                && isVideoCall == other.isVideoCall
+                && isVideoUpgradeRequest == other.isVideoUpgradeRequest
+                && isFullScreen == other.isFullScreen
+                && connectTimeMillis == other.connectTimeMillis
+                && largeIcon == other.largeIcon
+                && Objects.equals(contentTitle, other.contentTitle)
+                && Objects.equals(content, other.content)
+                && Objects.equals(publicContent, other.publicContent)
+                && Objects.equals(ringtone, other.ringtone)
+                && Objects.equals(person, other.person);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(notificationType, iconResId, callState, videoState, connectTimeMillis,
+                System.identityHashCode(largeIcon), contentTitle, content);
+    }
+
+    @Override
+    public String toString() {
+        return "[type:" + notificationType + ", state:" + Call.State.toString(callState)
+                + ", videoState:" + videoState + ", fullScreen:" + isFullScreen
+                + ", largeIcon:" + (largeIcon != null) + "]";
+    }
+
+    static class Builder {
+        private int mNotificationType;
+        private int mIconResId;
+        private String mContentTitle;
+        private String mContent;
+        private String mPublicContent;
+        private Bitmap mLargeIcon;
+        private int mCallState = Call.State.INVALID;
+        private int mVideoState;
+        private boolean mIsVideoCall;
+        private boolean mIsVideoUpgradeRequest;
+        private boolean mIsFullScreen;
+        private long mConnectTimeMillis;
+        private Uri mRingtone;
+        private String mPerson;
+
+        Builder setNotificationType(int notificationType) {
+            mNotificationType = notificationType;
+            return this;
+        }
+
+        Builder setIconResId(int iconResId) {
+            mIconResId = iconResId;
+            return this;
+        }
+
+        Builder setContentTitle(String contentTitle) {
+            mContentTitle = contentTitle;
+            return this;
+        }
+
+        Builder setContent(String content) {
+            mContent = content;
+            return this;
+        }
+
+        Builder setPublicContent(String publicContent) {
+            mPublicContent = publicContent;
+            return this;
+        }
+
+        Builder setLargeIcon(Bitmap largeIcon) {
+            mLargeIcon = largeIcon;
+            return this;
+        }
+
+        Builder setCallState(int callState) {
+            mCallState = callState;
+            return this;
+        }
+
+        Builder setVideoState(int videoState) {
+            mVideoState = videoState;
+            return this;
+        }
+
+        Builder setIsVideoCall(boolean isVideoCall) {
+            mIsVideoCall = isVideoCall;
+            return this;
+        }
+
+        Builder setIsVideoUpgradeRequest(boolean isVideoUpgradeRequest) {
+            mIsVideoUpgradeRequest = isVideoUpgradeRequest;
+            return this;
+        }
+
+        Builder setIsFullScreen(boolean isFullScreen) {
+            mIsFullScreen = isFullScreen;
+            return this;
+        }
+
+        Builder setConnectTimeMillis(long connectTimeMillis) {
+            mConnectTimeMillis = connectTimeMillis;
+            return this;
+        }
+
+        Builder setRingtone(Uri ringtone) {
+            mRingtone = ringtone;
+            return this;
+        }
+
+        Builder setPerson(String person) {
+            mPerson = person;
+            return this;
+        }
+
+        NotificationSpec build() {
+            return new NotificationSpec(this);
+        }
+    }
+}
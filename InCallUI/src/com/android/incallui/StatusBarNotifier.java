@@ -42,13 +42,13 @@ import android.os.SystemClock;
 import android.telecom.Call.Details;
 import android.telecom.PhoneAccount;
 import android.telecom.TelecomManager;
-import android.telecom.VideoProfile;
 import android.telephony.TelephonyManager;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.text.BidiFormatter;
 import android.text.TextDirectionHeuristics;
 import android.text.TextUtils;
+import android.util.LruCache;
 
 import com.android.contacts.common.ContactsUtils;
 import com.android.contacts.common.ContactsUtils.UserType;
@@ -66,7 +66,6 @@ import com.android.incallui.ringtone.DialerRingtoneManager;
 import com.android.incallui.ringtone.InCallTonePlayer;
 import com.android.incallui.ringtone.ToneGeneratorFactory;
 
-import java.util.Objects;
 import org.codeaurora.ims.QtiCallConstants;
 
 /**
@@ -87,6 +86,9 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
 
     private static final long[] VIBRATE_PATTERN = new long[] {0, 1000, 1000};
 
+    // An incoming call and the call it waits on, plus a photo loaded later
+    private static final int ROUNDED_ICON_CACHE_SIZE = 3;
+
     private final Context mContext;
     @Nullable private ContactsPreferences mContactsPreferences;
     private final ContactInfoCache mContactInfoCache;
@@ -94,15 +96,17 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
     private final TelephonyManager mTelephonyManager;
     private final DialerRingtoneManager mDialerRingtoneManager;
     private int mCurrentNotification = NOTIFICATION_NONE;
-    private int mCallState = Call.State.INVALID;
-    private int mVideoState = VideoProfile.STATE_AUDIO_ONLY;
-    private int mSavedIcon = 0;
-    private String mSavedContent = null;
-    private Bitmap mSavedLargeIcon;
-    private String mSavedContentTitle;
+    // What the current notification was built from, to skip posting it again unchanged
+    private NotificationSpec mPostedSpec;
     private String mCallId = null;
     private InCallState mInCallState;
-    private Uri mRingtone;
+    // Rounded large icons by contact photo, so each photo is only scaled and rounded once
+    private final LruCache<Bitmap, Bitmap> mRoundedIcons = new LruCache<>(ROUNDED_ICON_CACHE_SIZE);
+    private Bitmap mConferenceIcon;
+    // Instrumentation, logged and reset when the notification is cancelled
+    private int mPostCount;
+    private int mSkippedPostCount;
+    private int mRoundedIconCount;
     private static final String EXTRA_KEY_SHOW = "showCallStatusBar";
     private static final String EXTRA_KEY_CALL_STATE = "callState";
     private static final String EXTRA_KEY_CHRONOMETER_TIME = "baseChronometerMillis";
@@ -199,8 +203,15 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         if (mCurrentNotification != NOTIFICATION_NONE) {
             Log.d(this, "cancelInCall()...");
             mNotificationManager.cancel(mCurrentNotification);
+            Log.i(this, "Posted " + mPostCount + " notifications, skipped " + mSkippedPostCount
+                    + " unchanged ones, rounded " + mRoundedIconCount + " icons");
+            mPostCount = 0;
+            mSkippedPostCount = 0;
+            mRoundedIconCount = 0;
         }
         mCurrentNotification = NOTIFICATION_NONE;
+        mPostedSpec = null;
+        mRoundedIcons.evictAll();
     }
 
     /**
@@ -323,9 +334,7 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
 
         final int callState = call.getState();
 
-        // Check if data has changed; if nothing is different, don't issue another notification.
         final int iconResId;
-        Bitmap largeIcon = getLargeIconToDisplay(contactInfo, call);
         String content =
                 getContentString(call, contactInfo.userType);
         int wifiQualityValue = call.getWifiQuality();
@@ -335,39 +344,60 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         } else {
             iconResId = getIconToDisplay(call);
         }
-        final String contentTitle = getContentTitle(contactInfo, call);
+
+        //set the content
+        boolean isMultiSimDevice = mTelephonyManager.isMultiSimEnabled();
+        if (isMultiSimDevice) {
+            SubscriptionInfo info =
+                    SubscriptionManager.from(mContext).getActiveSubscriptionInfo(call.getSubId());
+            if (info != null) {
+                content += " (" + info.getDisplayName() + ")";
+            }
+        }
 
         final boolean isVideoUpgradeRequest = call.getSessionModificationState()
                 == Call.SessionModificationState.RECEIVED_UPGRADE_TO_VIDEO_REQUEST;
         final Call pendingAccountSelectionCall = CallList.getInstance()
                 .getWaitingForAccountCall();
+        final boolean isShowingInCallUi = InCallPresenter.getInstance().isShowingInCallUi();
         final int notificationType;
         if ((callState == Call.State.INCOMING || callState == Call.State.CALL_WAITING
-                || isVideoUpgradeRequest) && (!InCallPresenter.getInstance().isShowingInCallUi()
+                || isVideoUpgradeRequest) && (!isShowingInCallUi
                 || pendingAccountSelectionCall != null)) {
             notificationType = NOTIFICATION_INCOMING_CALL;
         } else {
             notificationType = NOTIFICATION_IN_CALL;
         }
 
-        if (!checkForChangeAndSaveData(iconResId, content, largeIcon, contentTitle, callState,
-                call.getVideoState(), notificationType, contactInfo.contactRingtoneUri)) {
+        final NotificationSpec spec = new NotificationSpec.Builder()
+                .setNotificationType(notificationType)
+                .setIconResId(iconResId)
+                .setContentTitle(getContentTitle(contactInfo, call))
+                .setContent(content)
+                // Hide work call state for the lock screen notification
+                .setPublicContent(getContentString(call, ContactsUtils.USER_TYPE_CURRENT))
+                .setLargeIcon(getLargeIconToDisplay(contactInfo, call))
+                .setCallState(callState)
+                .setVideoState(call.getVideoState())
+                .setIsVideoCall(call.isVideoCall(mContext))
+                .setIsVideoUpgradeRequest(isVideoUpgradeRequest)
+                .setIsFullScreen(notificationType == NOTIFICATION_INCOMING_CALL
+                        && (!isShowingInCallUi || pendingAccountSelectionCall != null))
+                .setConnectTimeMillis(call.getConnectTimeMillis())
+                .setRingtone(contactInfo.contactRingtoneUri)
+                .setPerson(getPersonReference(contactInfo, call))
+                .build();
+
+        // Check if data has changed; if nothing is different, don't issue another notification.
+        if (notificationType == mCurrentNotification && spec.equals(mPostedSpec)) {
+            mSkippedPostCount++;
+            Log.d(this, "Notification unchanged, not posting ", spec);
             return;
         }
-
-        if (largeIcon != null) {
-            largeIcon = getRoundedIcon(largeIcon);
-        }
-
-        //set the content
-        boolean isMultiSimDevice = mTelephonyManager.isMultiSimEnabled();
-        if (isMultiSimDevice) {
-            SubscriptionInfo info =
-                    SubscriptionManager.from(mContext).getActiveSubscriptionInfo(call.getSubId());
-            if (info != null) {
-                content += " (" + info.getDisplayName() + ")";
-            }
+        if (mCurrentNotification == NOTIFICATION_NONE) {
+            Log.d(this, "Showing notification for first time.");
         }
+        Log.d(this, "Data changed.  Showing notification ", spec);
 
         /*
          * This builder is used for the notification shown when the device is locked and the user
@@ -375,11 +405,10 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
          * {@see Notification.Builder#setPublicVersion}.
          */
         Notification.Builder publicBuilder = new Notification.Builder(mContext);
-        publicBuilder.setSmallIcon(iconResId)
+        publicBuilder.setSmallIcon(spec.iconResId)
                 .setColor(mContext.getResources().getColor(R.color.dialer_theme_color))
-                // Hide work call state for the lock screen notification
-                .setContentTitle(getContentString(call, ContactsUtils.USER_TYPE_CURRENT));
-        setNotificationWhen(call, callState, publicBuilder);
+                .setContentTitle(spec.publicContent);
+        setNotificationWhen(spec, publicBuilder);
 
         /*
          * Builder for the notification shown when the device is unlocked or the user has set their
@@ -393,30 +422,30 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         builder.setContentIntent(inCallPendingIntent);
 
         // Set the intent as a full screen intent as well if a call is incoming
-        if (notificationType == NOTIFICATION_INCOMING_CALL
-                && (!InCallPresenter.getInstance().isShowingInCallUi() ||
-                   (pendingAccountSelectionCall != null))) {
+        if (spec.isFullScreen) {
             configureFullScreenIntent(builder, inCallPendingIntent, call);
             // Set the notification category for incoming calls
             builder.setCategory(Notification.CATEGORY_CALL);
         }
 
         // Set the content
-        builder.setContentText(content);
-        builder.setSmallIcon(iconResId);
-        builder.setContentTitle(contentTitle);
-        builder.setLargeIcon(largeIcon);
+        builder.setContentText(spec.content);
+        builder.setSmallIcon(spec.iconResId);
+        builder.setContentTitle(spec.contentTitle);
+        builder.setLargeIcon(getRoundedIcon(spec.largeIcon));
         builder.setColor(mContext.getResources().getColor(R.color.dialer_theme_color));
 
-        if (isVideoUpgradeRequest) {
+        if (spec.isVideoUpgradeRequest) {
             builder.setUsesChronometer(false);
             addDismissUpgradeRequestAction(builder);
             addAcceptUpgradeRequestAction(builder);
         } else {
-            createIncomingCallNotification(call, callState, builder);
+            createIncomingCallNotification(spec, builder);
         }
 
-        addPersonReference(builder, contactInfo, call);
+        if (spec.person != null) {
+            builder.addPerson(spec.person);
+        }
 
         /*
          * Fire off the notification
@@ -446,11 +475,14 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         Log.i(this, "Displaying notification for " + notificationType);
         mNotificationManager.notify(notificationType, notification);
         mCurrentNotification = notificationType;
+        mPostedSpec = spec;
+        mPostCount++;
     }
 
-    private void createIncomingCallNotification(
-            Call call, int state, Notification.Builder builder) {
-        setNotificationWhen(call, state, builder);
+    private void createIncomingCallNotification(NotificationSpec spec,
+            Notification.Builder builder) {
+        setNotificationWhen(spec, builder);
+        final int state = spec.callState;
 
         // Add hang up option for any active calls (active | onhold), outgoing calls (dialing).
         if (state == Call.State.ACTIVE ||
@@ -459,9 +491,9 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
             addHangupAction(builder);
         } else if (state == Call.State.INCOMING || state == Call.State.CALL_WAITING) {
             addDismissAction(builder);
-            if (call.isVideoCall(mContext)) {
+            if (spec.isVideoCall) {
                 addVoiceAction(builder);
-                addVideoCallAction(builder, call.getVideoState());
+                addVideoCallAction(builder, spec.videoState);
             } else {
                 addAnswerAction(builder);
             }
@@ -473,60 +505,15 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
      * the duration of the call. For all other states, the notification will automatically show the
      * time at which the notification was created.
      */
-    private void setNotificationWhen(Call call, int state, Notification.Builder builder) {
-        if (state == Call.State.ACTIVE) {
+    private void setNotificationWhen(NotificationSpec spec, Notification.Builder builder) {
+        if (spec.callState == Call.State.ACTIVE) {
             builder.setUsesChronometer(true);
-            builder.setWhen(call.getConnectTimeMillis());
+            builder.setWhen(spec.connectTimeMillis);
         } else {
             builder.setUsesChronometer(false);
         }
     }
 
-    /**
-     * Checks the new notification data and compares it against any notification that we
-     * are already displaying. If the data is exactly the same, we return false so that
-     * we do not issue a new notification for the exact same data.
-     */
-    private boolean checkForChangeAndSaveData(int icon, String content, Bitmap largeIcon,
-            String contentTitle, int state, int videoState, int notificationType, Uri ringtone) {
-
-        // The two are different:
-        // if new title is not null, it should be different from saved version OR
-        // if new title is null, the saved version should not be null
-        final boolean contentTitleChanged =
-                (contentTitle != null && !contentTitle.equals(mSavedContentTitle)) ||
-                (contentTitle == null && mSavedContentTitle != null);
-
-        // any change means we are definitely updating
-        boolean retval = (mSavedIcon != icon) || !Objects.equals(mSavedContent, content)
-                || (mCallState != state) || (mVideoState != videoState)
-                || (mSavedLargeIcon != largeIcon) || contentTitleChanged
-                || !Objects.equals(mRingtone, ringtone);
-
-        // If we aren't showing a notification right now or the notification type is changing,
-        // definitely do an update.
-        if (mCurrentNotification != notificationType) {
-            if (mCurrentNotification == NOTIFICATION_NONE) {
-                Log.d(this, "Showing notification for first time.");
-            }
-            retval = true;
-        }
-
-        mSavedIcon = icon;
-        mSavedContent = content;
-        mCallState = state;
-        mVideoState = videoState;
-        mSavedLargeIcon = largeIcon;
-        mSavedContentTitle = contentTitle;
-        mRingtone = ringtone;
-
-        if (retval) {
-            Log.d(this, "Data changed.  Showing notification");
-        }
-
-        return retval;
-    }
-
     /**
      * Returns the main string to use in the notification.
      */
@@ -550,17 +537,16 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         return contactInfo.namePrimary;
     }
 
-    private void addPersonReference(Notification.Builder builder, ContactCacheEntry contactInfo,
-            Call call) {
+    private String getPersonReference(ContactCacheEntry contactInfo, Call call) {
         // Query {@link Contacts#CONTENT_LOOKUP_URI} directly with work lookup key is not allowed.
         // So, do not pass {@link Contacts#CONTENT_LOOKUP_URI} to NotificationManager to avoid
         // NotificationManager using it.
         if (contactInfo.lookupUri != null && contactInfo.userType != ContactsUtils.USER_TYPE_WORK) {
-            builder.addPerson(contactInfo.lookupUri.toString());
+            return contactInfo.lookupUri.toString();
         } else if (!TextUtils.isEmpty(call.getNumber())) {
-            builder.addPerson(Uri.fromParts(PhoneAccount.SCHEME_TEL,
-                    call.getNumber(), null).toString());
+            return Uri.fromParts(PhoneAccount.SCHEME_TEL, call.getNumber(), null).toString();
         }
+        return null;
     }
 
     /**
@@ -569,8 +555,11 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
     private Bitmap getLargeIconToDisplay(ContactCacheEntry contactInfo, Call call) {
         Bitmap largeIcon = null;
         if (call.isConferenceCall() && !call.hasProperty(Details.PROPERTY_GENERIC_CONFERENCE)) {
-            largeIcon = BitmapFactory.decodeResource(mContext.getResources(),
-                    R.drawable.img_conference);
+            if (mConferenceIcon == null) {
+                mConferenceIcon = BitmapFactory.decodeResource(mContext.getResources(),
+                        R.drawable.img_conference);
+            }
+            largeIcon = mConferenceIcon;
         }
         if (contactInfo.photo != null && (contactInfo.photo instanceof BitmapDrawable)) {
             largeIcon = ((BitmapDrawable) contactInfo.photo).getBitmap();
@@ -578,15 +567,22 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         return largeIcon;
     }
 
-    private Bitmap getRoundedIcon(Bitmap bitmap) {
+    @NeededForTesting
+    Bitmap getRoundedIcon(Bitmap bitmap) {
         if (bitmap == null) {
             return null;
         }
-        final int height = (int) mContext.getResources().getDimension(
-                android.R.dimen.notification_large_icon_height);
-        final int width = (int) mContext.getResources().getDimension(
-                android.R.dimen.notification_large_icon_width);
-        return BitmapUtil.getRoundedBitmap(bitmap, width, height);
+        Bitmap roundedIcon = mRoundedIcons.get(bitmap);
+        if (roundedIcon == null) {
+            final int height = (int) mContext.getResources().getDimension(
+                    android.R.dimen.notification_large_icon_height);
+            final int width = (int) mContext.getResources().getDimension(
+                    android.R.dimen.notification_large_icon_width);
+            roundedIcon = BitmapUtil.getRoundedBitmap(bitmap, width, height);
+            mRoundedIcons.put(bitmap, roundedIcon);
+            mRoundedIconCount++;
+        }
+        return roundedIcon;
     }
 
     /**
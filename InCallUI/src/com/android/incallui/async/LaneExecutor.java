@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui.async;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.android.contacts.common.testing.NeededForTesting;
+import com.android.incallui.Log;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the background work of the in-call UI on a few lanes, each with its own thread, so work
+ * of one lane never waits for work of another:
+ * <ul>
+ * <li>{@link #LANE_RING}: work an incoming call waits for before it is shown, like the block
+ * check and the caller lookup.</li>
+ * <li>{@link #LANE_UI}: work supporting the UI of a shown call, like loading photos.</li>
+ * <li>{@link #LANE_BACKGROUND}: work nobody waits for, like persisting call recordings.</li>
+ * </ul>
+ *
+ * Each lane is an {@link Executor}, and creates handlers for handler based helpers like
+ * AsyncQueryHandler through {@link Lane#newHandler}. The queue depth and latency of each lane are
+ * recorded for the work submitted through either.
+ */
+public class LaneExecutor {
+    public static final int LANE_RING = 0;
+    public static final int LANE_UI = 1;
+    public static final int LANE_BACKGROUND = 2;
+
+    private static final String[] LANE_NAMES = { "InCallRing", "InCallUi", "InCallBackground" };
+    private static final int[] LANE_PRIORITIES = {
+            Process.THREAD_PRIORITY_FOREGROUND,
+            Process.THREAD_PRIORITY_DEFAULT,
+            Process.THREAD_PRIORITY_BACKGROUND };
+
+    private static LaneExecutor sInstance;
+
+    private final Lane[] mLanes = new Lane[LANE_NAMES.length];
+
+    public static synchronized LaneExecutor getInstance() {
+        if (sInstance == null) {
+            sInstance = new LaneExecutor();
+        }
+        return sInstance;
+    }
+
+    @NeededForTesting
+    LaneExecutor() {
+        for (int i = 0; i < mLanes.length; i++) {
+            mLanes[i] = new Lane(LANE_NAMES[i], LANE_PRIORITIES[i]);
+        }
+    }
+
+    public Lane getLane(int lane) {
+        return mLanes[lane];
+    }
+
+    /**
+     * Logs the statistics of all lanes and starts recording new ones, e.g. once all calls ended.
+     */
+    public void logAndResetStats() {
+        for (Lane lane : mLanes) {
+            final Stats stats = lane.getStats();
+            if (stats.executed > 0) {
+                Log.i(this, stats.toString());
+            }
+            lane.resetStats();
+        }
+    }
+
+    @NeededForTesting
+    void quit() {
+        for (Lane lane : mLanes) {
+            lane.mThread.quitSafely();
+        }
+    }
+
+    /**
+     * Statistics of a lane since it was last reset.
+     */
+    public static class Stats {
+        public final String name;
+        /** Number of tasks or messages waiting to run, or running */
+        public final int queueDepth;
+        public final int maxQueueDepth;
+        public final int executed;
+        /** How long tasks waited to run after they were due */
+        public final long totalLatencyMillis;
+        public final long maxLatencyMillis;
+        public final long totalRunMillis;
+
+        private Stats(Lane lane) {
+            name = lane.mThread.getName();
+            queueDepth = lane.mQueueDepth;
+            maxQueueDepth = lane.mMaxQueueDepth;
+            executed = lane.mExecuted;
+            totalLatencyMillis = lane.mTotalLatencyMillis;
+            maxLatencyMillis = lane.mMaxLatencyMillis;
+            totalRunMillis = lane.mTotalRunMillis;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": executed " + executed + " (" + totalRunMillis + "ms), latency avg "
+                    + (executed > 0 ? totalLatencyMillis / executed : 0) + "ms max "
+                    + maxLatencyMillis + "ms, queue depth " + queueDepth + " max "
+                    + maxQueueDepth;
+        }
+    }
+
+    public static class Lane implements Executor {
+        private final HandlerThread mThread;
+        private final Handler mHandler;
+
+        // Guarded by this
+        private int mQueueDepth;
+        private int mMaxQueueDepth;
+        private int mExecuted;
+        private long mTotalLatencyMillis;
+        private long mMaxLatencyMillis;
+        private long mTotalRunMillis;
+
+        private Lane(String name, int priority) {
+            mThread = new HandlerThread(name, priority) {
+                @Override
+                protected void onLooperPrepared() {
+                    Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                        @Override
+                        public boolean queueIdle() {
+                            onIdle();
+                            return true;
+                        }
+                    });
+                }
+            };
+            mThread.start();
+            mHandler = newHandler(null);
+        }
+
+        public Looper getLooper() {
+            return mThread.getLooper();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            mHandler.post(command);
+        }
+
+        /**
+         * Creates a handler on the looper of this lane which records the messages sent to it.
+         * Messages should not be delayed, as the queue depth is reset whenever the lane is idle.
+         *
+         * @param target The handler to dispatch the messages to, which should use the looper of
+         *         this lane too; or null to only run posted callbacks.
+         */
+        public Handler newHandler(Handler target) {
+            return new InstrumentedHandler(this, target);
+        }
+
+        private synchronized void onMessageQueued() {
+            mQueueDepth++;
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueueDepth);
+        }
+
+        /**
+         * Messages removed before they are dispatched, e.g. by
+         * AsyncQueryHandler#cancelOperation, can't be seen as Handler#removeMessages is final. No
+         * lane work is delayed, so nothing is queued once the lane is idle.
+         */
+        private synchronized void onMessageDropped() {
+            mQueueDepth = Math.max(mQueueDepth - 1, 0);
+        }
+
+        private synchronized void onIdle() {
+            mQueueDepth = 0;
+        }
+
+        private long onDispatchStarted(Message msg) {
+            final long start = SystemClock.uptimeMillis();
+            final long latency = Math.max(start - msg.getWhen(), 0);
+            synchronized (this) {
+                mTotalLatencyMillis += latency;
+                mMaxLatencyMillis = Math.max(mMaxLatencyMillis, latency);
+            }
+            return start;
+        }
+
+        private void onDispatchFinished(long start) {
+            final long runMillis = SystemClock.uptimeMillis() - start;
+            synchronized (this) {
+                mQueueDepth = Math.max(mQueueDepth - 1, 0);
+                mExecuted++;
+                mTotalRunMillis += runMillis;
+            }
+        }
+
+        public synchronized Stats getStats() {
+            return new Stats(this);
+        }
+
+        synchronized void resetStats() {
+            // Queued messages are still to be dispatched
+            mMaxQueueDepth = mQueueDepth;
+            mExecuted = 0;
+            mTotalLatencyMillis = 0;
+            mMaxLatencyMillis = 0;
+            mTotalRunMillis = 0;
+        }
+    }
+
+    private static class InstrumentedHandler extends Handler {
+        private final Lane mLane;
+        private final Handler mTarget;
+
+        InstrumentedHandler(Lane lane, Handler target) {
+            super(lane.getLooper());
+            mLane = lane;
+            mTarget = target;
+        }
+
+        @Override
+        public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+            // Counted before queueing, so the dispatch can't be recorded first
+            mLane.onMessageQueued();
+            final boolean queued = super.sendMessageAtTime(msg, uptimeMillis);
+            if (!queued) {
+                mLane.onMessageDropped();
+            }
+            return queued;
+        }
+
+        @Override
+        public void dispatchMessage(Message msg) {
+            final long start = mLane.onDispatchStarted(msg);
+            try {
+                if (mTarget != null) {
+                    mTarget.dispatchMessage(msg);
+                } else {
+                    super.dispatchMessage(msg);
+                }
+            } finally {
+                mLane.onDispatchFinished(start);
+            }
+        }
+    }
+}
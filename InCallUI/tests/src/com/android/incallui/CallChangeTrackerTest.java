@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.net.Uri;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomManager;
+import android.telecom.VideoProfile;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class CallChangeTrackerTest extends AndroidTestCase {
+    private static final String CALL_ID = "Call_0";
+
+    private CallChangeTracker mTracker;
+    private Call mCall;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTracker = new CallChangeTracker();
+        mCall = mock(Call.class);
+        when(mCall.getId()).thenReturn(CALL_ID);
+        when(mCall.getState()).thenReturn(Call.State.ACTIVE);
+        setTelecomCall(0, VideoProfile.STATE_AUDIO_ONLY);
+    }
+
+    public void testUpdate_NewCall() {
+        assertEquals(CallList.CHANGE_ALL, mTracker.update(mCall));
+    }
+
+    public void testUpdate_NothingChanged() {
+        mTracker.update(mCall);
+        assertEquals(0, mTracker.update(mCall));
+    }
+
+    public void testUpdate_StateChanged() {
+        mTracker.update(mCall);
+        when(mCall.getState()).thenReturn(Call.State.ONHOLD);
+        assertEquals(CallList.CHANGE_STATE, mTracker.update(mCall));
+    }
+
+    public void testUpdate_SessionModificationStateChanged() {
+        mTracker.update(mCall);
+        when(mCall.getSessionModificationState()).thenReturn(
+                Call.SessionModificationState.WAITING_FOR_RESPONSE);
+        assertEquals(CallList.CHANGE_VIDEO, mTracker.update(mCall));
+    }
+
+    public void testUpdate_CapabilitiesChanged() {
+        mTracker.update(mCall);
+        setTelecomCall(android.telecom.Call.Details.CAPABILITY_HOLD,
+                VideoProfile.STATE_AUDIO_ONLY);
+        assertEquals(CallList.CHANGE_CAPABILITIES | CallList.CHANGE_DETAILS,
+                mTracker.update(mCall));
+    }
+
+    public void testUpdate_VideoStateChanged() {
+        mTracker.update(mCall);
+        setTelecomCall(0, VideoProfile.STATE_BIDIRECTIONAL);
+        assertEquals(CallList.CHANGE_VIDEO | CallList.CHANGE_DETAILS, mTracker.update(mCall));
+    }
+
+    public void testUpdate_EqualDetails() {
+        mTracker.update(mCall);
+        // New details with the same values
+        setTelecomCall(0, VideoProfile.STATE_AUDIO_ONLY);
+        assertEquals(0, mTracker.update(mCall));
+    }
+
+    public void testUpdate_NoTelecomCall() {
+        when(mCall.getTelecomCall()).thenReturn(null);
+        mTracker.update(mCall);
+        assertEquals(CallList.CHANGE_ALL, mTracker.update(mCall));
+    }
+
+    public void testRemove() {
+        mTracker.update(mCall);
+        mTracker.remove(CALL_ID);
+        assertEquals(CallList.CHANGE_ALL, mTracker.update(mCall));
+    }
+
+    private void setTelecomCall(int capabilities, int videoState) {
+        TestTelecomCall testCall = TestTelecomCall.createInstance(
+                "1",
+                Uri.parse("tel:650-555-1212"), /* handle */
+                TelecomManager.PRESENTATION_ALLOWED, /* handlePresentation */
+                "Joe", /* callerDisplayName */
+                TelecomManager.PRESENTATION_ALLOWED, /* callerDisplayNamePresentation */
+                new PhoneAccountHandle(new ComponentName("test", "class"),
+                        "handle"), /* accountHandle */
+                capabilities, /* capabilities */
+                0, /* properties */
+                null, /* disconnectCause */
+                0, /* connectTimeMillis */
+                null, /* GatewayInfo */
+                videoState, /* videoState */
+                null, /* statusHints */
+                null, /* extras */
+                null /* intentExtras */);
+        when(mCall.getTelecomCall()).thenReturn(testCall.getCall());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.telecom.PhoneAccountHandle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class CallStateIndexTest extends AndroidTestCase {
+    private static final String NUMBER = "6502530000";
+    private static final String OTHER_NUMBER = "6502530001";
+
+    private static final PhoneAccountHandle SUB_1 =
+            new PhoneAccountHandle(new ComponentName("test", "Test"), "sub1");
+    private static final PhoneAccountHandle SUB_2 =
+            new PhoneAccountHandle(new ComponentName("test", "Test"), "sub2");
+    private static final PhoneAccountHandle SIP =
+            new PhoneAccountHandle(new ComponentName("test", "Test"), "sip");
+
+    private CallStateIndex mIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mIndex = new CallStateIndex();
+    }
+
+    public void testGetCallWithState_Empty() {
+        assertNull(mIndex.getCallWithState(Call.State.ACTIVE, 0));
+        assertNull(mIndex.getCallWithStateAndNumber(Call.State.ACTIVE, NUMBER));
+    }
+
+    public void testGetCallWithState_OrderedByTimeAdded() {
+        Call first = newCall(Call.State.ONHOLD, NUMBER, null);
+        Call second = newCall(Call.State.ACTIVE, OTHER_NUMBER, null);
+        mIndex.update(first);
+        mIndex.update(second);
+
+        // The first call becomes active after the second one, but still comes first
+        when(first.getState()).thenReturn(Call.State.ACTIVE);
+        mIndex.update(first);
+
+        assertSame(first, mIndex.getCallWithState(Call.State.ACTIVE, 0));
+        assertSame(second, mIndex.getCallWithState(Call.State.ACTIVE, 1));
+        assertNull(mIndex.getCallWithState(Call.State.ACTIVE, 2));
+        assertNull(mIndex.getCallWithState(Call.State.ONHOLD, 0));
+    }
+
+    public void testGetCallWithStateAndNumber() {
+        Call active = newCall(Call.State.ACTIVE, NUMBER, null);
+        Call waiting = newCall(Call.State.CALL_WAITING, NUMBER, null);
+        mIndex.update(active);
+        mIndex.update(waiting);
+
+        assertSame(active, mIndex.getCallWithStateAndNumber(Call.State.ACTIVE, NUMBER));
+        assertSame(waiting, mIndex.getCallWithStateAndNumber(Call.State.CALL_WAITING, NUMBER));
+        assertNull(mIndex.getCallWithStateAndNumber(Call.State.ACTIVE, OTHER_NUMBER));
+    }
+
+    public void testGetCallWithStateAndNumber_NumberChanged() {
+        Call call = newCall(Call.State.DIALING, NUMBER, null);
+        mIndex.update(call);
+        when(call.getNumber()).thenReturn(OTHER_NUMBER);
+        mIndex.update(call);
+
+        assertNull(mIndex.getCallWithStateAndNumber(Call.State.DIALING, NUMBER));
+        assertSame(call, mIndex.getCallWithStateAndNumber(Call.State.DIALING, OTHER_NUMBER));
+    }
+
+    public void testRemove() {
+        Call call = newCall(Call.State.ACTIVE, NUMBER, null);
+        mIndex.update(call);
+        mIndex.remove(call);
+
+        assertNull(mIndex.getCallWithState(Call.State.ACTIVE, 0));
+        assertNull(mIndex.getCallWithStateAndNumber(Call.State.ACTIVE, NUMBER));
+    }
+
+    public void testGetCallWithState_BySubscription() {
+        Call sub1 = newCall(Call.State.ACTIVE, NUMBER, SUB_1);
+        Call sub2 = newCall(Call.State.ACTIVE, OTHER_NUMBER, SUB_2);
+        Call sip = newCall(Call.State.ACTIVE, "alice@example.com", SIP);
+        when(sub1.getSubId(SUB_1)).thenReturn(1);
+        when(sub2.getSubId(SUB_2)).thenReturn(2);
+        mIndex.update(sub1);
+        mIndex.update(sub2);
+        mIndex.update(sip);
+
+        assertSame(sub2, mIndex.getCallWithState(Call.State.ACTIVE, 0, 2));
+        // SIP calls belong to any subscription
+        assertSame(sip, mIndex.getCallWithState(Call.State.ACTIVE, 1, 2));
+        assertNull(mIndex.getCallWithState(Call.State.ACTIVE, 2, 2));
+    }
+
+    public void testHasLiveCall() {
+        Call call = newCall(Call.State.ACTIVE, NUMBER, SUB_1);
+        when(call.getSubId(SUB_1)).thenReturn(1);
+        mIndex.update(call);
+
+        assertTrue(mIndex.hasLiveCall(1));
+        assertFalse(mIndex.hasLiveCall(2));
+
+        // The subscription is only resolved once per phone account
+        mIndex.update(call);
+        assertTrue(mIndex.hasLiveCall(1));
+        verify(call, times(1)).getSubId(SUB_1);
+    }
+
+    private static Call newCall(int state, String number, PhoneAccountHandle accountHandle) {
+        final Call call = mock(Call.class);
+        when(call.getState()).thenReturn(state);
+        when(call.getNumber()).thenReturn(number);
+        when(call.getAccountHandle()).thenReturn(accountHandle);
+        return call;
+    }
+}
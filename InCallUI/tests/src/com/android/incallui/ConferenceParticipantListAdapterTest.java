@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.telecom.TelecomManager;
+import android.telecom.VideoProfile;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.android.contacts.common.ContactPhotoManager;
+import com.android.contacts.common.ContactPhotoManager.DefaultImageRequest;
+import com.android.contacts.common.preference.ContactsPreferences;
+import com.android.dialer.R;
+import com.android.incallui.ContactInfoCache.ContactCacheEntry;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link ConferenceParticipantListAdapter}.
+ */
+@SmallTest
+public class ConferenceParticipantListAdapterTest extends AndroidTestCase {
+    private static final String ALICE_ID = "alice";
+    private static final String BOB_ID = "bob";
+    private static final String CAROL_ID = "carol";
+
+    @Mock private ContactInfoCache mContactInfoCache;
+    @Mock private ContactPhotoManager mContactPhotoManager;
+    @Mock private ContactsPreferences mContactsPreferences;
+    @Mock private ListView mListView;
+
+    private ListView mParent;
+    private ConferenceParticipantListAdapter mAdapter;
+    private int mChangedCount;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        MockitoAnnotations.initMocks(this);
+
+        when(mContactsPreferences.getDisplayOrder())
+                .thenReturn(ContactsPreferences.DISPLAY_ORDER_PRIMARY);
+        when(mContactsPreferences.getSortOrder())
+                .thenReturn(ContactsPreferences.SORT_ORDER_PRIMARY);
+        ContactsPreferencesFactory.setTestInstance(mContactsPreferences);
+
+        when(mContactInfoCache.getInfo(ALICE_ID)).thenReturn(createEntry("Alice", "1"));
+        when(mContactInfoCache.getInfo(BOB_ID)).thenReturn(createEntry("Bob", "2"));
+        when(mContactInfoCache.getInfo(CAROL_ID)).thenReturn(createEntry("Carol", "3"));
+
+        mParent = new ListView(mContext);
+        mAdapter = new ConferenceParticipantListAdapter(mListView, mContext,
+                LayoutInflater.from(mContext), mContactPhotoManager, mContactInfoCache);
+        mAdapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                mChangedCount++;
+            }
+        });
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        ContactsPreferencesFactory.setTestInstance(null);
+        super.tearDown();
+    }
+
+    public void testUpdateParticipants_Join() {
+        final Call bob = createCall(BOB_ID, Call.State.ACTIVE);
+        mAdapter.updateParticipants(Arrays.asList(bob), false);
+        assertEquals(1, mChangedCount);
+
+        final Call alice = createCall(ALICE_ID, Call.State.ACTIVE);
+        final Call carol = createCall(CAROL_ID, Call.State.ACTIVE);
+        mAdapter.updateParticipants(Arrays.asList(carol, bob, alice), false);
+
+        assertEquals(2, mChangedCount);
+        assertEquals(3, mAdapter.getCount());
+        assertNames("Alice", "Bob", "Carol");
+        // Only the participants which joined are looked up
+        verify(mContactInfoCache, times(3)).findInfo(any(Call.class), anyBoolean(),
+                any(ContactInfoCache.ContactInfoCacheCallback.class));
+    }
+
+    public void testUpdateParticipants_Leave() {
+        final Call alice = createCall(ALICE_ID, Call.State.ACTIVE);
+        final Call bob = createCall(BOB_ID, Call.State.ACTIVE);
+        final Call carol = createCall(CAROL_ID, Call.State.ACTIVE);
+        mAdapter.updateParticipants(Arrays.asList(alice, bob, carol), false);
+
+        mAdapter.updateParticipants(Arrays.asList(alice, carol), false);
+
+        assertEquals(2, mChangedCount);
+        assertEquals(2, mAdapter.getCount());
+        assertNames("Alice", "Carol");
+
+        // Results for a participant which left are ignored
+        mAdapter.updateContactInfo(BOB_ID, createEntry("Bob", "4"));
+        verify(mListView, never()).post(any(Runnable.class));
+    }
+
+    public void testUpdateParticipants_StateChange() {
+        final Call alice = createCall(ALICE_ID, Call.State.ACTIVE);
+        final Call bob = createCall(BOB_ID, Call.State.ACTIVE);
+        mAdapter.updateParticipants(Arrays.asList(alice, bob), false);
+        bindRows();
+        verifyPhotoLoads(2);
+
+        // Only the row of the participant put on hold is rebound
+        mAdapter.updateParticipants(
+                Arrays.asList(createCall(ALICE_ID, Call.State.ONHOLD), bob), false);
+        assertEquals(1, mChangedCount);
+        verifyPhotoLoads(3);
+
+        // Nothing changed, so nothing is rebound
+        mAdapter.updateParticipants(
+                Arrays.asList(createCall(ALICE_ID, Call.State.ONHOLD), bob), false);
+        assertEquals(1, mChangedCount);
+        verifyPhotoLoads(3);
+    }
+
+    public void testUpdateContactInfo_RefreshCoalesced() {
+        final Call alice = createCall(ALICE_ID, Call.State.ACTIVE);
+        final Call bob = createCall(BOB_ID, Call.State.ACTIVE);
+        mAdapter.updateParticipants(Arrays.asList(alice, bob), false);
+        bindRows();
+        verifyPhotoLoads(2);
+
+        mAdapter.updateContactInfo(ALICE_ID, createEntry("Alice", "5"));
+        mAdapter.updateContactInfo(BOB_ID, createEntry("Bob", "2"));
+
+        // Both results are applied with a single refresh, which only rebinds the changed row
+        runRefresh(1);
+        assertEquals(1, mChangedCount);
+        verifyPhotoLoads(3);
+    }
+
+    public void testUpdateContactInfo_NameChangeResorts() {
+        final Call alice = createCall(ALICE_ID, Call.State.ACTIVE);
+        final Call bob = createCall(BOB_ID, Call.State.ACTIVE);
+        mAdapter.updateParticipants(Arrays.asList(alice, bob), false);
+        assertNames("Alice", "Bob");
+
+        mAdapter.updateContactInfo(ALICE_ID, createEntry("Zoe", "1"));
+        runRefresh(1);
+
+        assertEquals(2, mChangedCount);
+        assertNames("Bob", "Zoe");
+    }
+
+    private Call createCall(String callId, int state) {
+        final TestTelecomCall telecomCall = TestTelecomCall.createInstance(callId,
+                Uri.parse("tel:" + callId), TelecomManager.PRESENTATION_ALLOWED, null,
+                TelecomManager.PRESENTATION_ALLOWED, null, 0 /* capabilities */,
+                0 /* properties */, null, 0, null, VideoProfile.STATE_AUDIO_ONLY, null, null,
+                null);
+        final Call call = mock(Call.class);
+        when(call.getId()).thenReturn(callId);
+        when(call.getState()).thenReturn(state);
+        when(call.getTrueState()).thenReturn(state);
+        when(call.getTelecomCall()).thenReturn(telecomCall.getCall());
+        return call;
+    }
+
+    private static ContactCacheEntry createEntry(String name, String number) {
+        final ContactCacheEntry entry = new ContactCacheEntry();
+        entry.namePrimary = name;
+        entry.nameAlternative = name;
+        entry.number = number;
+        return entry;
+    }
+
+    /**
+     * Binds all rows and makes them the visible children of the list.
+     */
+    private void bindRows() {
+        final int count = mAdapter.getCount();
+        when(mListView.getFirstVisiblePosition()).thenReturn(0);
+        when(mListView.getLastVisiblePosition()).thenReturn(count - 1);
+        for (int position = 0; position < count; position++) {
+            final View row = mAdapter.getView(position, null, mParent);
+            when(mListView.getChildAt(position)).thenReturn(row);
+        }
+    }
+
+    private void runRefresh(int expectedPosts) {
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mListView, times(expectedPosts)).post(captor.capture());
+        captor.getValue().run();
+    }
+
+    private void verifyPhotoLoads(int expected) {
+        verify(mContactPhotoManager, times(expected)).loadDirectoryPhoto(any(ImageView.class),
+                any(Uri.class), anyBoolean(), anyBoolean(), any(DefaultImageRequest.class));
+    }
+
+    private void assertNames(String... names) {
+        assertEquals(names.length, mAdapter.getCount());
+        for (int position = 0; position < names.length; position++) {
+            final View row = mAdapter.getView(position, null, mParent);
+            final TextView name = (TextView) row.findViewById(R.id.conferenceCallerName);
+            assertEquals(names[position], name.getText().toString());
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.incallui.ContactInfoCache.ContactCacheEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+@SmallTest
+public class ContactInfoWarmCacheTest extends AndroidTestCase {
+    private static final String NUMBER = "+16502530000";
+    private static final String OTHER_NUMBER = "+16502530001";
+
+    private final HashMap<String, String> mVersions = new HashMap<String, String>();
+    private int mVersionQueries;
+    private final ContactInfoWarmCache.VersionSource mVersionSource =
+            new ContactInfoWarmCache.VersionSource() {
+                @Override
+                public String getVersion(String key) {
+                    mVersionQueries++;
+                    return mVersions.containsKey(key) ? mVersions.get(key) : "";
+                }
+            };
+
+    /** Background work is queued until {@link #runBackgroundTasks} */
+    private final List<Runnable> mBackgroundTasks = new ArrayList<Runnable>();
+    private final Executor mBackgroundExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mBackgroundTasks.add(command);
+        }
+    };
+    private final Executor mMainExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    public void testGet_Miss() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        assertNull(cache.get(NUMBER, getContext().getResources()));
+        assertNull(cache.get(null, getContext().getResources()));
+    }
+
+    public void testGet_ReturnsCopy() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        ContactCacheEntry entry = newEntry("Alice");
+        cache.put(NUMBER, entry);
+        entry.namePrimary = "Bob";
+
+        ContactCacheEntry cached = cache.get(NUMBER, getContext().getResources());
+        assertEquals("Alice", cached.namePrimary);
+        cached.namePrimary = "Carol";
+        assertEquals("Alice", cache.get(NUMBER, getContext().getResources()).namePrimary);
+    }
+
+    public void testPut_IgnoresLoadingEntries() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        ContactCacheEntry entry = newEntry("Alice");
+        entry.isLoadingPhoto = true;
+        cache.put(NUMBER, entry);
+
+        assertEquals(0, cache.size());
+    }
+
+    public void testPut_EvictsLeastRecentlyUsed() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        cache.put(NUMBER, newEntry("Alice"));
+        cache.put(OTHER_NUMBER, newEntry("Bob"));
+        cache.get(NUMBER, getContext().getResources());
+        cache.put("+16502530002", newEntry("Carol"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(NUMBER, getContext().getResources()));
+        assertNull(cache.get(OTHER_NUMBER, getContext().getResources()));
+    }
+
+    public void testPut_BoundedByPhotoBytes() {
+        // A 16x16 ARGB_8888 photo takes 1024 bytes
+        ContactInfoWarmCache cache = newCache(10, 1536);
+        cache.put(NUMBER, newEntryWithPhoto("Alice"));
+        cache.put(OTHER_NUMBER, newEntryWithPhoto("Bob"));
+
+        assertEquals(1, cache.size());
+        assertEquals(1024, cache.getPhotoBytes());
+        assertNull(cache.get(NUMBER, getContext().getResources()));
+
+        ContactCacheEntry cached = cache.get(OTHER_NUMBER, getContext().getResources());
+        assertTrue(cached.photo instanceof BitmapDrawable);
+    }
+
+    public void testPut_ReplacesEntry() {
+        ContactInfoWarmCache cache = newCache(10, 4096);
+        cache.put(NUMBER, newEntryWithPhoto("Alice"));
+        cache.put(NUMBER, newEntry("Alice"));
+
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getPhotoBytes());
+    }
+
+    public void testClear() {
+        ContactInfoWarmCache cache = newCache(10, 4096);
+        cache.put(NUMBER, newEntryWithPhoto("Alice"));
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getPhotoBytes());
+    }
+
+    public void testGetAndPut_DontQueryVersions() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        cache.put(NUMBER, newEntry("Alice"));
+        assertNotNull(cache.get(NUMBER, getContext().getResources()));
+        assertEquals(0, mVersionQueries);
+
+        runBackgroundTasks();
+        assertEquals(2, mVersionQueries);
+    }
+
+    public void testOnContactsChanged_ContactChanged() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        mVersions.put(NUMBER, "lookupKey/1");
+        cache.put(NUMBER, newEntry("Alice"));
+        cache.put(OTHER_NUMBER, newEntry("Bob"));
+        runBackgroundTasks();
+
+        mVersions.put(NUMBER, "lookupKey/2");
+        cache.onContactsChanged();
+        runBackgroundTasks();
+        assertNull(cache.get(NUMBER, getContext().getResources()));
+        assertNotNull(cache.get(OTHER_NUMBER, getContext().getResources()));
+        assertEquals(1, cache.size());
+    }
+
+    public void testOnContactsChanged_ContactAddedForNumber() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        cache.put(NUMBER, newEntry(null));
+        runBackgroundTasks();
+
+        mVersions.put(NUMBER, "lookupKey/1");
+        cache.onContactsChanged();
+        runBackgroundTasks();
+        assertNull(cache.get(NUMBER, getContext().getResources()));
+    }
+
+    public void testOnContactsChanged_CoalescedWhileRunning() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        cache.put(NUMBER, newEntry("Alice"));
+        runBackgroundTasks();
+        mVersionQueries = 0;
+
+        cache.onContactsChanged();
+        cache.onContactsChanged();
+        cache.onContactsChanged();
+        assertEquals(1, mBackgroundTasks.size());
+
+        runBackgroundTasks();
+        // One run for the first change, and one for those seen while it was running
+        assertEquals(2, mVersionQueries);
+    }
+
+    public void testGet_VerifiedAfterServing() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        mVersions.put(NUMBER, "lookupKey/1");
+        cache.put(NUMBER, newEntry("Alice"));
+        runBackgroundTasks();
+
+        // Served once before the change is noticed
+        mVersions.put(NUMBER, "lookupKey/2");
+        assertNotNull(cache.get(NUMBER, getContext().getResources()));
+        runBackgroundTasks();
+        assertNull(cache.get(NUMBER, getContext().getResources()));
+    }
+
+    public void testPut_DropsUnknownVersion() {
+        ContactInfoWarmCache cache = newCache(2, 1024);
+        mVersions.put(NUMBER, null);
+        cache.put(NUMBER, newEntry("Alice"));
+        runBackgroundTasks();
+
+        assertEquals(0, cache.size());
+    }
+
+    private ContactInfoWarmCache newCache(int maxEntries, long maxPhotoBytes) {
+        return new ContactInfoWarmCache(maxEntries, maxPhotoBytes, mVersionSource,
+                mBackgroundExecutor, mMainExecutor);
+    }
+
+    private void runBackgroundTasks() {
+        while (!mBackgroundTasks.isEmpty()) {
+            mBackgroundTasks.remove(0).run();
+        }
+    }
+
+    private ContactCacheEntry newEntry(String name) {
+        ContactCacheEntry entry = new ContactCacheEntry();
+        entry.namePrimary = name;
+        entry.number = NUMBER;
+        return entry;
+    }
+
+    private ContactCacheEntry newEntryWithPhoto(String name) {
+        ContactCacheEntry entry = newEntry(name);
+        entry.photo = new BitmapDrawable(getContext().getResources(),
+                Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888));
+        return entry;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.format.DateUtils;
+import android.widget.TextView;
+
+@SmallTest
+public class ElapsedTimeTextTest extends AndroidTestCase {
+
+    public void testSetElapsedTime_MatchesDateUtils() {
+        ElapsedTimeText text = new ElapsedTimeText();
+        for (long seconds : new long[] { 0, 9, 59, 61, 599, 600, 3599, 3600, 36061, 360061 }) {
+            assertTrue(text.setElapsedTime(seconds * 1000));
+            assertEquals(DateUtils.formatElapsedTime(seconds), text.toString());
+        }
+    }
+
+    public void testSetElapsedTime_OnlyChangesEverySecond() {
+        ElapsedTimeText text = new ElapsedTimeText();
+        assertTrue(text.setElapsedTime(1000));
+        assertFalse(text.setElapsedTime(1999));
+        assertTrue(text.setElapsedTime(2000));
+        assertEquals(2, text.getElapsedSeconds());
+    }
+
+    public void testReset() {
+        ElapsedTimeText text = new ElapsedTimeText();
+        text.setElapsedTime(1000);
+        text.reset();
+        assertTrue(text.setElapsedTime(1000));
+    }
+
+    public void testApplyTo_PinsWidthPerLength() {
+        ElapsedTimeText text = new ElapsedTimeText();
+        TextView view = new TextView(getContext());
+
+        text.setElapsedTime(11 * 1000);
+        text.applyTo(view);
+        assertEquals(text.toString(), view.getText().toString());
+        final int width = view.getMaxWidth();
+        assertTrue(width > 0);
+
+        // Same length, the width stays put
+        text.setElapsedTime(48 * 1000);
+        text.applyTo(view);
+        assertEquals(width, view.getMaxWidth());
+
+        // One more digit
+        text.setElapsedTime(600 * 1000);
+        text.applyTo(view);
+        assertTrue(view.getMaxWidth() > width);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+public class LogTest extends AndroidTestCase {
+    private static final String TAG = "LogTest";
+    private static final int UPDATES = 100;
+
+    /** Counts how often it was converted to a string, standing in for a call */
+    private static class CountingCall {
+        int toStringCount;
+
+        @Override
+        public String toString() {
+            toStringCount++;
+            return "[Call_0, ACTIVE, [[ Capabilities: CAPABILITY_HOLD ]], [[ Properties: ]]]";
+        }
+    }
+
+    @SmallTest
+    public void testFormatLogging_ArgumentsOnlyFormattedWhenEnabled() {
+        CountingCall call = new CountingCall();
+        Log.df(this, "onUpdate - %s ph:%s", call, null);
+        Log.df(TAG, "Contact lookup. Joining prefetch for %s", call);
+        Log.vf(this, "activeCall: %s, canMerge: %b, canHold: %b", call, true, false);
+
+        assertEquals((Log.DEBUG ? 2 : 0) + (Log.VERBOSE ? 1 : 0), call.toStringCount);
+    }
+
+    @SmallTest
+    public void testFormatLogging_Varargs() {
+        CountingCall call = new CountingCall();
+        Log.df(this, "%s %d %d %s", call, 1, 2, "three");
+
+        assertEquals(Log.DEBUG ? 1 : 0, call.toStringCount);
+    }
+
+    /**
+     * Replays the debug logging of a call receiving {@link #UPDATES} updates, once concatenating
+     * the messages as the call update paths used to, and once deferring the formatting.
+     */
+    @LargeTest
+    public void testFormatLogging_Benchmark() {
+        final CountingCall call = new CountingCall();
+        final String accountHandle = "ComponentInfo{com.android.phone/TelephonyConnectionService}";
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < UPDATES; i++) {
+                Log.d(this, "TelecomCallCallback onStateChanged call=" + call + " details="
+                        + accountHandle);
+                Log.d(this, "onUpdate - " + call + " ph:" + accountHandle);
+                Log.d(this, "onUpdate - sub:" + 1 + " mSubId:" + 1);
+                Log.d(this, "\t" + call);
+                Log.d(this, "onCallListChange oldState= " + InCallPresenter.InCallState.INCALL
+                        + " newState=" + InCallPresenter.InCallState.INCALL);
+            }
+            final long eagerNanos = SystemClock.elapsedRealtimeNanos() - start;
+            final int eagerAllocs = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < UPDATES; i++) {
+                Log.df(this, "TelecomCallCallback onStateChanged call=%s details=%s", call,
+                        accountHandle);
+                Log.df(this, "onUpdate - %s ph:%s", call, accountHandle);
+                Log.df(this, "onUpdate - sub:%d mSubId:%d", 1, 1);
+                Log.d(this, "\t", call);
+                Log.df(this, "onCallListChange oldState= %s newState=%s",
+                        InCallPresenter.InCallState.INCALL, InCallPresenter.InCallState.INCALL);
+            }
+            final long deferredNanos = SystemClock.elapsedRealtimeNanos() - start;
+            final int deferredAllocs = Debug.getThreadAllocCount();
+
+            Log.i(TAG, UPDATES + " updates, debug " + Log.DEBUG + ": concatenated "
+                    + eagerAllocs + " allocations in " + eagerNanos / 1000 + "us, deferred "
+                    + deferredAllocs + " allocations in " + deferredNanos / 1000 + "us");
+
+            if (!Log.DEBUG) {
+                assertEquals(0, deferredAllocs);
+                assertTrue(eagerAllocs >= UPDATES);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class NotificationSpecTest extends AndroidTestCase {
+    private static final Bitmap PHOTO = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+
+    public void testEquals_SameValues() {
+        NotificationSpec spec = newBuilder().build();
+        NotificationSpec other = newBuilder().build();
+
+        assertEquals(spec, other);
+        assertEquals(spec.hashCode(), other.hashCode());
+    }
+
+    public void testEquals_DifferentContent() {
+        assertFalse(newBuilder().build().equals(newBuilder().setContent("On hold").build()));
+        assertFalse(newBuilder().build().equals(newBuilder().setContentTitle(null).build()));
+        assertFalse(newBuilder().build().equals(
+                newBuilder().setCallState(Call.State.ONHOLD).build()));
+        assertFalse(newBuilder().build().equals(newBuilder().setIsFullScreen(true).build()));
+        assertFalse(newBuilder().build().equals(
+                newBuilder().setRingtone(Uri.parse("content://media/1")).build()));
+    }
+
+    public void testEquals_LargeIconComparedByReference() {
+        Bitmap samePixels = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+
+        assertFalse(newBuilder().build().equals(newBuilder().setLargeIcon(samePixels).build()));
+        assertFalse(newBuilder().build().equals(newBuilder().setLargeIcon(null).build()));
+    }
+
+    public void testEquals_ConnectTimeOnlyForActiveCalls() {
+        assertFalse(newBuilder().build().equals(
+                newBuilder().setConnectTimeMillis(2000).build()));
+        assertEquals(newBuilder().setCallState(Call.State.DIALING).build(),
+                newBuilder().setCallState(Call.State.DIALING).setConnectTimeMillis(2000).build());
+    }
+
+    private static NotificationSpec.Builder newBuilder() {
+        return new NotificationSpec.Builder()
+                .setNotificationType(1)
+                .setIconResId(R.drawable.ic_call_white_24dp)
+                .setContentTitle("Alice")
+                .setContent("Ongoing call")
+                .setPublicContent("Ongoing call")
+                .setLargeIcon(PHOTO)
+                .setCallState(Call.State.ACTIVE)
+                .setConnectTimeMillis(1000)
+                .setPerson("tel:6502530000");
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.android.incallui;
 
+import android.graphics.Bitmap;
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.MediumTest;
 
@@ -95,4 +96,16 @@ public class StatusBarNotifierTest extends AndroidTestCase {
         StatusBarNotifier statusBarNotifier = new StatusBarNotifier(mContext, null);
         assertEquals(NUMBER, statusBarNotifier.getContentTitle(contactCacheEntry, mCall));
     }
+
+    public void testGetRoundedIcon_Cached() {
+        StatusBarNotifier statusBarNotifier = new StatusBarNotifier(mContext, null);
+        Bitmap photo = Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888);
+        Bitmap otherPhoto = Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888);
+
+        Bitmap rounded = statusBarNotifier.getRoundedIcon(photo);
+        assertNotNull(rounded);
+        assertSame(rounded, statusBarNotifier.getRoundedIcon(photo));
+        assertNotSame(rounded, statusBarNotifier.getRoundedIcon(otherPhoto));
+        assertNull(statusBarNotifier.getRoundedIcon(null));
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui.async;
+
+import android.os.Handler;
+import android.os.Message;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@MediumTest
+public class LaneExecutorTest extends AndroidTestCase {
+    private static final long TIMEOUT_MS = 5000;
+
+    private LaneExecutor mExecutor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mExecutor = new LaneExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mExecutor.quit();
+        super.tearDown();
+    }
+
+    public void testExecute_RunsOnLaneThread() throws InterruptedException {
+        Thread ring = getExecutingThread(LaneExecutor.LANE_RING);
+        Thread ui = getExecutingThread(LaneExecutor.LANE_UI);
+        Thread background = getExecutingThread(LaneExecutor.LANE_BACKGROUND);
+
+        assertNotSame(Thread.currentThread(), ring);
+        assertNotSame(ring, ui);
+        assertNotSame(ring, background);
+        assertNotSame(ui, background);
+        assertSame(ring, getExecutingThread(LaneExecutor.LANE_RING));
+    }
+
+    public void testExecute_RingLaneNotQueuedBehindUiLane() throws InterruptedException {
+        final CountDownLatch uiBlocked = new CountDownLatch(1);
+        final CountDownLatch ringDone = new CountDownLatch(1);
+        mExecutor.getLane(LaneExecutor.LANE_UI).execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Stands in for a slow photo decode
+                    uiBlocked.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        mExecutor.getLane(LaneExecutor.LANE_RING).execute(new Runnable() {
+            @Override
+            public void run() {
+                ringDone.countDown();
+            }
+        });
+
+        assertTrue(ringDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, mExecutor.getLane(LaneExecutor.LANE_UI).getStats().queueDepth);
+        uiBlocked.countDown();
+    }
+
+    public void testStats() throws InterruptedException {
+        final LaneExecutor.Lane lane = mExecutor.getLane(LaneExecutor.LANE_BACKGROUND);
+        final CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        // The stats are recorded right after the last task
+        waitForIdle(lane);
+
+        LaneExecutor.Stats stats = lane.getStats();
+        assertEquals(4, stats.executed);
+        assertEquals(0, stats.queueDepth);
+        assertTrue(stats.maxQueueDepth >= 1);
+
+        mExecutor.logAndResetStats();
+        assertEquals(0, lane.getStats().executed);
+    }
+
+    public void testNewHandler_DispatchesToTarget() throws InterruptedException {
+        final LaneExecutor.Lane lane = mExecutor.getLane(LaneExecutor.LANE_UI);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        Handler handler = lane.newHandler(new Handler(lane.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                thread.set(Thread.currentThread());
+                done.countDown();
+            }
+        });
+
+        handler.sendEmptyMessage(0);
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertSame(getExecutingThread(LaneExecutor.LANE_UI), thread.get());
+        waitForIdle(lane);
+        assertEquals(2, lane.getStats().executed);
+    }
+
+    public void testStats_RemovedMessagesLeaveQueue() throws InterruptedException {
+        final LaneExecutor.Lane lane = mExecutor.getLane(LaneExecutor.LANE_BACKGROUND);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        Handler handler = lane.newHandler(new Handler(lane.getLooper()));
+        handler.sendEmptyMessage(1);
+        handler.sendEmptyMessage(1);
+        assertEquals(3, lane.getStats().queueDepth);
+
+        handler.removeMessages(1);
+        blocked.countDown();
+        waitForIdle(lane);
+        assertEquals(0, lane.getStats().queueDepth);
+    }
+
+    private Thread getExecutingThread(int lane) throws InterruptedException {
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        mExecutor.getLane(lane).execute(new Runnable() {
+            @Override
+            public void run() {
+                thread.set(Thread.currentThread());
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        return thread.get();
+    }
+
+    /**
+     * Runs one more task on the lane and waits until its stats were recorded.
+     */
+    private void waitForIdle(LaneExecutor.Lane lane) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (lane.getStats().queueDepth > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
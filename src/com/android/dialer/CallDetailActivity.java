@@ -33,6 +33,8 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
+import android.widget.HeaderViewListAdapter;
+import android.widget.ListAdapter;
 import android.widget.ListView;
 import android.widget.QuickContactBadge;
 import android.widget.TextView;
@@ -66,7 +68,8 @@ import com.android.dialer.util.IntentUtil.CallIntentBuilder;
 import com.android.dialer.util.PhoneNumberUtil;
 import com.android.dialer.util.TelecomUtil;
 import com.android.incallui.Call.LogState;
-import com.android.services.callrecorder.CallRecordingDataStore;
+import com.android.services.callrecorder.CallRecorderService;
+import com.android.services.callrecorder.CallRecordingIndex;
 
 /**
  * Displays the details of a specific call log entry.
@@ -187,8 +190,11 @@ public class CallDetailActivity extends AppCompatActivity
 
             invalidateOptionsMenu();
 
+            if (mCallRecordingIndex != null) {
+                mCallRecordingIndex.load(mNumber);
+            }
             mHistoryList.setAdapter(new CallDetailHistoryAdapter(mContext,
-                        mInflater, mCallTypeHelper, details, mCallRecordingDataStore));
+                        mInflater, mCallTypeHelper, details, mCallRecordingIndex));
 
             updateFilteredNumberChanges();
             updateContactPhoto();
@@ -220,7 +226,7 @@ public class CallDetailActivity extends AppCompatActivity
     private ContactPhotoManager mContactPhotoManager;
     private FilteredNumberAsyncQueryHandler mFilteredNumberAsyncQueryHandler;
     private BidiFormatter mBidiFormatter = BidiFormatter.getInstance();
-    private CallRecordingDataStore mCallRecordingDataStore = new CallRecordingDataStore();
+    private CallRecordingIndex mCallRecordingIndex;
     private LayoutInflater mInflater;
     private Resources mResources;
 
@@ -255,6 +261,20 @@ public class CallDetailActivity extends AppCompatActivity
         mCallTypeHelper = new CallTypeHelper(getResources());
         mFilteredNumberAsyncQueryHandler =
                 new FilteredNumberAsyncQueryHandler(getContentResolver());
+        if (CallRecorderService.isEnabled(this)) {
+            mCallRecordingIndex = new CallRecordingIndex(this, new CallRecordingIndex.Listener() {
+                @Override
+                public void onCallRecordingsChanged() {
+                    ListAdapter adapter = mHistoryList.getAdapter();
+                    if (adapter instanceof HeaderViewListAdapter) {
+                        adapter = ((HeaderViewListAdapter) adapter).getWrappedAdapter();
+                    }
+                    if (adapter instanceof CallDetailHistoryAdapter) {
+                        ((CallDetailHistoryAdapter) adapter).notifyDataSetChanged();
+                    }
+                }
+            });
+        }
 
         mVoicemailUri = getIntent().getParcelableExtra(EXTRA_VOICEMAIL_URI);
 
@@ -319,7 +339,9 @@ public class CallDetailActivity extends AppCompatActivity
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mCallRecordingDataStore.close();
+        if (mCallRecordingIndex != null) {
+            mCallRecordingIndex.close();
+        }
     }
 
     @Override
@@ -24,8 +24,11 @@ import android.support.annotation.Nullable;
 
 import com.android.contacts.common.extensions.ExtensionsFactory;
 import com.android.contacts.common.testing.NeededForTesting;
+import com.android.dialer.database.DialerDatabaseHelper;
 import com.android.dialer.database.FilteredNumberAsyncQueryHandler;
 import com.android.dialer.filterednumber.BlockedNumbersAutoMigrator;
+import com.android.dialer.lookup.ReverseLookupPrefetchService;
+import com.android.services.callrecorder.CallRecordingMaintenanceService;
 
 public class DialerApplication extends Application {
 
@@ -43,6 +46,9 @@ public class DialerApplication extends Application {
         Trace.endSection();
         new BlockedNumbersAutoMigrator(PreferenceManager.getDefaultSharedPreferences(this),
                 new FilteredNumberAsyncQueryHandler(getContentResolver())).autoMigrate();
+        ReverseLookupPrefetchService.schedule(this);
+        CallRecordingMaintenanceService.schedule(this);
+        DialerDatabaseHelper.getInstance(this).startCallStatsObserver();
         Trace.endSection();
     }
 
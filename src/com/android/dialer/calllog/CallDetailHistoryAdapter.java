@@ -45,8 +45,7 @@ import com.android.dialer.util.DialerUtils;
 import com.android.dialer.util.AppCompatConstants;
 import com.android.dialer.util.PresenceHelper;
 import com.android.services.callrecorder.common.CallRecording;
-import com.android.services.callrecorder.CallRecorderService;
-import com.android.services.callrecorder.CallRecordingDataStore;
+import com.android.services.callrecorder.CallRecordingIndex;
 import com.google.common.collect.Lists;
 
 import java.io.File;
@@ -70,7 +69,7 @@ public class CallDetailHistoryAdapter extends BaseAdapter implements View.OnClic
     private final CallTypeHelper mCallTypeHelper;
     private final PhoneCallDetails[] mPhoneCallDetails;
 
-    private CallRecordingDataStore mCallRecordingDataStore;
+    private final CallRecordingIndex mCallRecordingIndex;
 
     /**
      * List of items to be concatenated together for duration strings.
@@ -79,12 +78,12 @@ public class CallDetailHistoryAdapter extends BaseAdapter implements View.OnClic
 
     public CallDetailHistoryAdapter(Context context, LayoutInflater layoutInflater,
             CallTypeHelper callTypeHelper, PhoneCallDetails[] phoneCallDetails,
-            CallRecordingDataStore callRecordingDataStore) {
+            CallRecordingIndex callRecordingIndex) {
         mContext = context;
         mLayoutInflater = layoutInflater;
         mCallTypeHelper = callTypeHelper;
         mPhoneCallDetails = phoneCallDetails;
-        mCallRecordingDataStore = callRecordingDataStore;
+        mCallRecordingIndex = callRecordingIndex;
     }
 
     @Override
@@ -170,12 +169,11 @@ public class CallDetailHistoryAdapter extends BaseAdapter implements View.OnClic
             durationView.setText(formatDurationAndDataUsage(details.duration, details.dataUsage));
         }
 
-        // do this synchronously to prevent recordings from "popping in"
-        // after detail item is displayed
+        // the index is loaded in the background and notifies the adapter once ready;
+        // the invisible button already takes up its space, so rows don't shift then
         List<CallRecording> recordings = null;
-        if (CallRecorderService.isEnabled(mContext)) {
-            mCallRecordingDataStore.open(mContext); // opens unless already open
-            recordings = mCallRecordingDataStore.getRecordings(
+        if (mCallRecordingIndex != null) {
+            recordings = mCallRecordingIndex.getRecordings(
                     details.number.toString(), details.date);
         }
         playbackButton.setTag(recordings);
@@ -36,7 +36,6 @@ import android.telecom.PhoneAccountHandle;
 import android.telephony.PhoneNumberUtils;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
-import android.util.ArrayMap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.AccessibilityDelegate;
@@ -57,6 +56,7 @@ import com.android.dialer.contactinfo.ContactInfoCache.OnContactInfoChangedListe
 import com.android.dialer.database.FilteredNumberAsyncQueryHandler;
 import com.android.dialer.database.VoicemailArchiveContract;
 import com.android.dialer.filterednumber.BlockNumberDialogFragment.Callback;
+import com.android.dialer.filterednumber.BlockedNumberIndex;
 import com.android.dialer.logging.InteractionEvent;
 import com.android.dialer.logging.Logger;
 import com.android.dialer.service.ExtendedBlockingButtonRenderer;
@@ -64,7 +64,6 @@ import com.android.dialer.util.PhoneNumberUtil;
 import com.android.dialer.voicemail.VoicemailPlaybackPresenter;
 
 import java.util.HashMap;
-import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -106,7 +105,14 @@ public class CallLogAdapter extends GroupingListAdapter
     protected final VoicemailPlaybackPresenter mVoicemailPlaybackPresenter;
     private final CallFetcher mCallFetcher;
     private final FilteredNumberAsyncQueryHandler mFilteredNumberAsyncQueryHandler;
-    private final Map<String, Boolean> mBlockedNumberCache = new ArrayMap<>();
+    private final BlockedNumberIndex mBlockedNumberIndex;
+    private final BlockedNumberIndex.Listener mBlockedNumbersListener =
+            new BlockedNumberIndex.Listener() {
+                @Override
+                public void onBlockedNumbersChanged() {
+                    notifyDataSetChanged();
+                }
+            };
 
     protected ContactInfoCache mContactInfoCache;
     private String mFilterString;
@@ -295,6 +301,7 @@ public class CallLogAdapter extends GroupingListAdapter
         mCallLogGroupBuilder = new CallLogGroupBuilder(this);
         mFilteredNumberAsyncQueryHandler =
                 new FilteredNumberAsyncQueryHandler(mContext.getContentResolver());
+        mBlockedNumberIndex = BlockedNumberIndex.getInstance(mContext);
 
         mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
         mContactsPreferences = new ContactsPreferences(mContext);
@@ -317,20 +324,30 @@ public class CallLogAdapter extends GroupingListAdapter
 
     @Override
     public void onBlockedNumber(String number,String countryIso) {
-        String cacheKey = PhoneNumberUtils.formatNumberToE164(number, countryIso);
-        if (!TextUtils.isEmpty(cacheKey)) {
-            mBlockedNumberCache.put(cacheKey, true);
-            notifyDataSetChanged();
-        }
+        // Rows are updated again once BlockedNumberIndex picked up the change
+        notifyDataSetChanged();
     }
 
     @Override
     public void onUnblockedNumber( String number, String countryIso) {
-        String cacheKey = PhoneNumberUtils.formatNumberToE164(number, countryIso);
-        if (!TextUtils.isEmpty(cacheKey)) {
-            mBlockedNumberCache.put(cacheKey, false);
-            notifyDataSetChanged();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Checks the number against the {@link BlockedNumberIndex}, including prefix rules. Numbers
+     * are treated as not blocked until the index is loaded. While it reloads after a change, the
+     * previous state is shown rather than none; rows are updated again once the reload finished.
+     */
+    private boolean isBlockedNumber(String number, String countryIso, ContactInfo info,
+            ContactInfo cachedContactInfo) {
+        String e164Number = info.normalizedNumber;
+        if (TextUtils.isEmpty(e164Number)) {
+            e164Number = cachedContactInfo.normalizedNumber;
+        }
+        if (TextUtils.isEmpty(e164Number)) {
+            e164Number = PhoneNumberUtils.formatNumberToE164(number, countryIso);
         }
+        return mBlockedNumberIndex.isBlocked(e164Number);
     }
 
     /**
@@ -369,10 +386,12 @@ public class CallLogAdapter extends GroupingListAdapter
             mContactInfoCache.start();
         }
         mContactsPreferences.refreshValue(ContactsPreferences.DISPLAY_ORDER_KEY);
+        mBlockedNumberIndex.addListener(mBlockedNumbersListener);
     }
 
     public void onPause() {
         pauseCache();
+        mBlockedNumberIndex.removeListener(mBlockedNumbersListener);
 
         if (mHiddenItemUri != null) {
             CallLogAsyncTaskUtil.deleteVoicemail(mContext, mHiddenItemUri, null);
@@ -569,6 +588,7 @@ public class CallLogAdapter extends GroupingListAdapter
         views.postDialDigits = details.postDialDigits;
         views.displayNumber = details.displayNumber;
         views.numberPresentation = numberPresentation;
+        views.isBlocked = isBlockedNumber(number, countryIso, info, cachedContactInfo);
 
         views.accountHandle = accountHandle;
         // Stash away the Ids of the calls so that we can support deleting a row in the call log.
@@ -45,7 +45,10 @@ import com.android.dialer.util.TelecomUtil;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public class CallLogAsyncTaskUtil {
     private static String TAG = CallLogAsyncTaskUtil.class.getSimpleName();
@@ -149,15 +152,8 @@ public class CallLogAsyncTaskUtil {
                 new AsyncTask<Void, Void, PhoneCallDetails[]>() {
                     @Override
                     public PhoneCallDetails[] doInBackground(Void... params) {
-                        // TODO: All calls correspond to the same person, so make a single lookup.
-                        final int numCalls = callUris.length;
-                        PhoneCallDetails[] details = new PhoneCallDetails[numCalls];
                         try {
-                            for (int index = 0; index < numCalls; ++index) {
-                                details[index] =
-                                        getPhoneCallDetailsForUri(context, callUris[index]);
-                            }
-                            return details;
+                            return getPhoneCallDetailsForUris(context, callUris);
                         } catch (IllegalArgumentException e) {
                             // Something went wrong reading in our primary data.
                             Log.w(TAG, "Invalid URI starting call details", e);
@@ -174,10 +170,113 @@ public class CallLogAsyncTaskUtil {
                 });
     }
 
+    /**
+     * Return the phone call details for the given call log URIs, in the same order.
+     *
+     * URIs ending in a row id are fetched with one query per table, and every distinct number
+     * is looked up in the contacts only once.
+     */
+    private static PhoneCallDetails[] getPhoneCallDetailsForUris(Context context, Uri[] callUris) {
+        final PhoneCallDetails[] details = new PhoneCallDetails[callUris.length];
+        final ContactInfoHelper contactInfoHelper =
+                new ContactInfoHelper(context, GeoUtil.getCurrentCountryIso(context));
+        final Map<String, ContactInfo> contactInfos = new HashMap<>();
+
+        // Group the URIs by the table they point into, keyed by row id
+        final Map<Uri, Map<Long, List<Integer>>> batches = new HashMap<>();
+        for (int index = 0; index < callUris.length; ++index) {
+            final Uri callUri = callUris[index];
+            final long id = getCallId(callUri);
+            if (id < 0) {
+                details[index] = getPhoneCallDetailsForUri(
+                        context, callUri, contactInfoHelper, contactInfos);
+                continue;
+            }
+
+            final Uri tableUri = getTableUri(callUri);
+            Map<Long, List<Integer>> batch = batches.get(tableUri);
+            if (batch == null) {
+                batch = new HashMap<>();
+                batches.put(tableUri, batch);
+            }
+            List<Integer> positions = batch.get(id);
+            if (positions == null) {
+                positions = new ArrayList<>(1);
+                batch.put(id, positions);
+            }
+            positions.add(index);
+        }
+
+        final String[] projection = Arrays.copyOf(CallDetailQuery.CALL_LOG_PROJECTION,
+                CallDetailQuery.CALL_LOG_PROJECTION.length + 1);
+        final int idColumnIndex = projection.length - 1;
+        projection[idColumnIndex] = CallLog.Calls._ID;
+
+        for (Map.Entry<Uri, Map<Long, List<Integer>>> batch : batches.entrySet()) {
+            final Map<Long, List<Integer>> positionsById = batch.getValue();
+            final Cursor cursor = context.getContentResolver().query(batch.getKey(), projection,
+                    CallLog.Calls._ID + " IN (" + TextUtils.join(",", positionsById.keySet())
+                            + ")", null, null);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    final List<Integer> positions =
+                            positionsById.get(cursor.getLong(idColumnIndex));
+                    if (positions == null) {
+                        continue;
+                    }
+                    for (int index : positions) {
+                        details[index] = createPhoneCallDetails(
+                                context, cursor, contactInfoHelper, contactInfos);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        for (int index = 0; index < callUris.length; ++index) {
+            if (details[index] == null) {
+                throw new IllegalArgumentException("Cannot find content: " + callUris[index]);
+            }
+        }
+        return details;
+    }
+
+    /**
+     * Returns the row id a call URI ends in, or -1 if it doesn't point to a single row.
+     */
+    private static long getCallId(Uri callUri) {
+        final String lastSegment = callUri.getLastPathSegment();
+        if (lastSegment == null || !TextUtils.isDigitsOnly(lastSegment)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastSegment);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the call URI with its row id removed.
+     */
+    private static Uri getTableUri(Uri callUri) {
+        final List<String> segments = callUri.getPathSegments();
+        final Uri.Builder builder = callUri.buildUpon().path(null);
+        for (int i = 0; i < segments.size() - 1; i++) {
+            builder.appendPath(segments.get(i));
+        }
+        return builder.build();
+    }
+
     /**
      * Return the phone call details for a given call log URI.
      */
-    private static PhoneCallDetails getPhoneCallDetailsForUri(Context context, Uri callUri) {
+    private static PhoneCallDetails getPhoneCallDetailsForUri(Context context, Uri callUri,
+            ContactInfoHelper contactInfoHelper, Map<String, ContactInfo> contactInfos) {
         Cursor cursor = context.getContentResolver().query(
                 callUri, CallDetailQuery.CALL_LOG_PROJECTION, null, null, null);
 
@@ -185,66 +284,7 @@ public class CallLogAsyncTaskUtil {
             if (cursor == null || !cursor.moveToFirst()) {
                 throw new IllegalArgumentException("Cannot find content: " + callUri);
             }
-
-            // Read call log.
-            final String countryIso = cursor.getString(CallDetailQuery.COUNTRY_ISO_COLUMN_INDEX);
-            final String number = cursor.getString(CallDetailQuery.NUMBER_COLUMN_INDEX);
-            final String postDialDigits = CompatUtils.isNCompatible()
-                    ? cursor.getString(CallDetailQuery.POST_DIAL_DIGITS) : "";
-            final String viaNumber = CompatUtils.isNCompatible() ?
-                    cursor.getString(CallDetailQuery.VIA_NUMBER) : "";
-            final int numberPresentation =
-                    cursor.getInt(CallDetailQuery.NUMBER_PRESENTATION_COLUMN_INDEX);
-
-            final PhoneAccountHandle accountHandle = PhoneAccountUtils.getAccount(
-                    cursor.getString(CallDetailQuery.ACCOUNT_COMPONENT_NAME),
-                    cursor.getString(CallDetailQuery.ACCOUNT_ID));
-
-            // If this is not a regular number, there is no point in looking it up in the contacts.
-            ContactInfoHelper contactInfoHelper =
-                    new ContactInfoHelper(context, GeoUtil.getCurrentCountryIso(context));
-            boolean isVoicemail = PhoneNumberUtil.isVoicemailNumber(context, accountHandle, number);
-            boolean shouldLookupNumber =
-                    PhoneNumberUtil.canPlaceCallsTo(number, numberPresentation) && !isVoicemail;
-            ContactInfo info = ContactInfo.EMPTY;
-
-            if (shouldLookupNumber) {
-                ContactInfo lookupInfo = contactInfoHelper.lookupNumber(number, countryIso);
-                info = lookupInfo != null ? lookupInfo : ContactInfo.EMPTY;
-            }
-
-            PhoneCallDetails details = new PhoneCallDetails(
-                    context, number, numberPresentation, info.formattedNumber,
-                    postDialDigits, isVoicemail);
-
-            details.viaNumber = viaNumber;
-            details.accountHandle = accountHandle;
-            details.contactUri = info.lookupUri;
-            details.namePrimary = info.name;
-            details.nameAlternative = info.nameAlternative;
-            details.numberType = info.type;
-            details.numberLabel = info.label;
-            details.photoUri = info.photoUri;
-            details.sourceType = info.sourceType;
-            details.objectId = info.objectId;
-
-            details.callTypes = new int[] {
-                cursor.getInt(CallDetailQuery.CALL_TYPE_COLUMN_INDEX)
-            };
-            details.date = cursor.getLong(CallDetailQuery.DATE_COLUMN_INDEX);
-            details.duration = cursor.getLong(CallDetailQuery.DURATION_COLUMN_INDEX);
-            details.features = cursor.getInt(CallDetailQuery.FEATURES);
-            details.geocode = cursor.getString(CallDetailQuery.GEOCODED_LOCATION_COLUMN_INDEX);
-            details.transcription = cursor.getString(CallDetailQuery.TRANSCRIPTION_COLUMN_INDEX);
-
-            details.countryIso = !TextUtils.isEmpty(countryIso) ? countryIso
-                    : GeoUtil.getCurrentCountryIso(context);
-
-            if (!cursor.isNull(CallDetailQuery.DATA_USAGE)) {
-                details.dataUsage = cursor.getLong(CallDetailQuery.DATA_USAGE);
-            }
-
-            return details;
+            return createPhoneCallDetails(context, cursor, contactInfoHelper, contactInfos);
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -252,6 +292,80 @@ public class CallLogAsyncTaskUtil {
         }
     }
 
+    /**
+     * Return the phone call details for the call log row the cursor is positioned on.
+     *
+     * @param contactInfos Contact lookups already done for this batch of calls, keyed by number
+     *         and country. New lookups are added to it.
+     */
+    private static PhoneCallDetails createPhoneCallDetails(Context context, Cursor cursor,
+            ContactInfoHelper contactInfoHelper, Map<String, ContactInfo> contactInfos) {
+        // Read call log.
+        final String countryIso = cursor.getString(CallDetailQuery.COUNTRY_ISO_COLUMN_INDEX);
+        final String number = cursor.getString(CallDetailQuery.NUMBER_COLUMN_INDEX);
+        final String postDialDigits = CompatUtils.isNCompatible()
+                ? cursor.getString(CallDetailQuery.POST_DIAL_DIGITS) : "";
+        final String viaNumber = CompatUtils.isNCompatible() ?
+                cursor.getString(CallDetailQuery.VIA_NUMBER) : "";
+        final int numberPresentation =
+                cursor.getInt(CallDetailQuery.NUMBER_PRESENTATION_COLUMN_INDEX);
+
+        final PhoneAccountHandle accountHandle = PhoneAccountUtils.getAccount(
+                cursor.getString(CallDetailQuery.ACCOUNT_COMPONENT_NAME),
+                cursor.getString(CallDetailQuery.ACCOUNT_ID));
+
+        // If this is not a regular number, there is no point in looking it up in the contacts.
+        boolean isVoicemail = PhoneNumberUtil.isVoicemailNumber(context, accountHandle, number);
+        boolean shouldLookupNumber =
+                PhoneNumberUtil.canPlaceCallsTo(number, numberPresentation) && !isVoicemail;
+        ContactInfo info = ContactInfo.EMPTY;
+
+        if (shouldLookupNumber) {
+            final String key = number + "|" + countryIso;
+            ContactInfo lookupInfo = contactInfos.get(key);
+            if (lookupInfo == null) {
+                lookupInfo = contactInfoHelper.lookupNumber(number, countryIso);
+                if (lookupInfo == null) {
+                    lookupInfo = ContactInfo.EMPTY;
+                }
+                contactInfos.put(key, lookupInfo);
+            }
+            info = lookupInfo;
+        }
+
+        PhoneCallDetails details = new PhoneCallDetails(
+                context, number, numberPresentation, info.formattedNumber,
+                postDialDigits, isVoicemail);
+
+        details.viaNumber = viaNumber;
+        details.accountHandle = accountHandle;
+        details.contactUri = info.lookupUri;
+        details.namePrimary = info.name;
+        details.nameAlternative = info.nameAlternative;
+        details.numberType = info.type;
+        details.numberLabel = info.label;
+        details.photoUri = info.photoUri;
+        details.sourceType = info.sourceType;
+        details.objectId = info.objectId;
+
+        details.callTypes = new int[] {
+            cursor.getInt(CallDetailQuery.CALL_TYPE_COLUMN_INDEX)
+        };
+        details.date = cursor.getLong(CallDetailQuery.DATE_COLUMN_INDEX);
+        details.duration = cursor.getLong(CallDetailQuery.DURATION_COLUMN_INDEX);
+        details.features = cursor.getInt(CallDetailQuery.FEATURES);
+        details.geocode = cursor.getString(CallDetailQuery.GEOCODED_LOCATION_COLUMN_INDEX);
+        details.transcription = cursor.getString(CallDetailQuery.TRANSCRIPTION_COLUMN_INDEX);
+
+        details.countryIso = !TextUtils.isEmpty(countryIso) ? countryIso
+                : GeoUtil.getCurrentCountryIso(context);
+
+        if (!cursor.isNull(CallDetailQuery.DATA_USAGE)) {
+            details.dataUsage = cursor.getLong(CallDetailQuery.DATA_USAGE);
+        }
+
+        return details;
+    }
 
     /**
      * Delete specified calls from the call log.
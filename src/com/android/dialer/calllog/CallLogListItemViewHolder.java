@@ -29,6 +29,7 @@ import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.support.v7.widget.CardView;
 import android.support.v7.widget.RecyclerView;
 import android.telecom.PhoneAccountHandle;
+import android.telephony.PhoneNumberUtils;
 import android.text.BidiFormatter;
 import android.text.TextDirectionHeuristics;
 import android.text.TextUtils;
@@ -56,6 +57,7 @@ import com.android.dialer.calllog.calllogcache.CallLogCache;
 import com.android.dialer.compat.FilteredNumberCompat;
 import com.android.dialer.database.FilteredNumberAsyncQueryHandler;
 import com.android.dialer.filterednumber.BlockNumberDialogFragment;
+import com.android.dialer.filterednumber.BlockedNumberIndex;
 import com.android.dialer.filterednumber.FilteredNumbersUtil;
 import com.android.dialer.logging.Logger;
 import com.android.dialer.logging.ScreenEvent;
@@ -354,27 +356,37 @@ public final class CallLogListItemViewHolder extends RecyclerView.ViewHolder
 
         if (FilteredNumberCompat.canAttemptBlockOperations(mContext)
                 && FilteredNumbersUtil.canBlockNumber(mContext, number, countryIso)) {
-            mFilteredNumberAsyncQueryHandler.isBlockedNumber(
-                    new FilteredNumberAsyncQueryHandler.OnCheckBlockedListener() {
-                        @Override
-                        public void onCheckComplete(Integer id) {
-                            blockId = id;
-                            int blockTitleId = blockId == null ? R.string.action_block_number
-                                    : R.string.action_unblock_number;
-                            final MenuItem blockItem = menu.add(
-                                    ContextMenu.NONE,
-                                    R.id.context_menu_block_number,
-                                    ContextMenu.NONE,
-                                    blockTitleId);
-                            blockItem.setOnMenuItemClickListener(
-                                    CallLogListItemViewHolder.this);
-                        }
-                    }, number, countryIso);
+            final BlockedNumberIndex blockedNumberIndex = BlockedNumberIndex.getInstance(mContext);
+            if (blockedNumberIndex.isLoaded()) {
+                final int id = blockedNumberIndex.getBlockedId(
+                        PhoneNumberUtils.formatNumberToE164(number, countryIso));
+                addBlockMenuItem(menu, id == BlockedNumberIndex.NOT_BLOCKED ? null : id);
+            } else {
+                mFilteredNumberAsyncQueryHandler.isBlockedNumber(
+                        new FilteredNumberAsyncQueryHandler.OnCheckBlockedListener() {
+                            @Override
+                            public void onCheckComplete(Integer id) {
+                                addBlockMenuItem(menu, id);
+                            }
+                        }, number, countryIso);
+            }
         }
 
         Logger.logScreenView(ScreenEvent.CALL_LOG_CONTEXT_MENU, (Activity) mContext);
     }
 
+    private void addBlockMenuItem(ContextMenu menu, Integer id) {
+        blockId = id;
+        int blockTitleId = blockId == null ? R.string.action_block_number
+                : R.string.action_unblock_number;
+        final MenuItem blockItem = menu.add(
+                ContextMenu.NONE,
+                R.id.context_menu_block_number,
+                ContextMenu.NONE,
+                blockTitleId);
+        blockItem.setOnMenuItemClickListener(this);
+    }
+
     @Override
     public boolean onMenuItemClick(MenuItem item) {
         int resId = item.getItemId();
@@ -654,6 +666,12 @@ public final class CallLogListItemViewHolder extends RecyclerView.ViewHolder
     }
 
     public void updatePhoto() {
+        if (isBlocked) {
+            quickContactView.assignContactUri(null);
+            quickContactView.setImageDrawable(mContext.getDrawable(R.drawable.blocked_contact));
+            return;
+        }
+
         quickContactView.assignContactUri(info.lookupUri);
 
         final boolean isVoicemail = mCallLogCache.isVoicemailNumber(accountHandle, number);
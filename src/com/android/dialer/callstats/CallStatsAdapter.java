@@ -34,18 +34,11 @@ import com.android.contacts.common.util.PermissionsUtil;
 import com.android.dialer.DialtactsActivity;
 import com.android.dialer.R;
 import com.android.dialer.calllog.CallLogQueryHandler;
-import com.android.dialer.calllog.ContactInfo;
 import com.android.dialer.calllog.ContactInfoHelper;
 import com.android.dialer.contactinfo.ContactInfoCache;
 import com.android.dialer.util.DialerUtils;
 import com.android.dialer.util.PhoneNumberUtil;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * Adapter class to hold and handle call stat entries
  */
@@ -54,10 +47,9 @@ class CallStatsAdapter extends RecyclerView.Adapter {
     private final ContactInfoHelper mContactInfoHelper;
     private final ContactInfoCache mContactInfoCache;
 
-    private ArrayList<CallStatsDetails> mAllItems;
-    private ArrayList<CallStatsDetails> mShownItems;
+    private SortedCallStats mCalls;
     private CallStatsDetails mTotalItem;
-    private Map<ContactInfo, CallStatsDetails> mInfoLookup;
+    private int mShownCount;
 
     private int mType = CallLogQueryHandler.CALL_TYPE_ALL;
     private long mFilterFrom;
@@ -134,37 +126,14 @@ class CallStatsAdapter extends RecyclerView.Adapter {
                 }
             };
 
-    private final Comparator<CallStatsDetails> mDurationComparator =
-            new Comparator<CallStatsDetails>() {
-        @Override
-        public int compare(CallStatsDetails o1, CallStatsDetails o2) {
-            Long duration1 = o1.getRequestedDuration(mType);
-            Long duration2 = o2.getRequestedDuration(mType);
-            // sort descending
-            return duration2.compareTo(duration1);
-        }
-    };
-    private final Comparator<CallStatsDetails> mCountComparator =
-            new Comparator<CallStatsDetails>() {
-        @Override
-        public int compare(CallStatsDetails o1, CallStatsDetails o2) {
-            Integer count1 = o1.getRequestedCount(mType);
-            Integer count2 = o2.getRequestedCount(mType);
-            // sort descending
-            return count2.compareTo(count1);
-        }
-    };
-
     CallStatsAdapter(Context context) {
         mContext = context;
 
         final String currentCountryIso = GeoUtil.getCurrentCountryIso(mContext);
         mContactInfoHelper = new ContactInfoHelper(mContext, currentCountryIso);
 
-        mAllItems = new ArrayList<CallStatsDetails>();
-        mShownItems = new ArrayList<CallStatsDetails>();
-        mTotalItem = new CallStatsDetails(null, 0, null, null, null, null, null, 0);
-        mInfoLookup = new ConcurrentHashMap<ContactInfo, CallStatsDetails>();
+        mCalls = SortedCallStats.empty();
+        mTotalItem = mCalls.getTotal();
 
         mContactInfoCache = new ContactInfoCache(
                 mContactInfoHelper, mOnContactInfoChangedListener);
@@ -173,37 +142,21 @@ class CallStatsAdapter extends RecyclerView.Adapter {
         }
     }
 
-    public void updateData(Map<ContactInfo, CallStatsDetails> calls, long from, long to) {
-        mInfoLookup.clear();
-        mInfoLookup.putAll(calls);
+    public void updateData(SortedCallStats calls, long from, long to) {
+        mCalls = calls;
+        mTotalItem = calls.getTotal();
         mFilterFrom = from;
         mFilterTo = to;
-
-        mAllItems.clear();
-        mTotalItem.reset();
-
-        for (Map.Entry<ContactInfo, CallStatsDetails> entry : calls.entrySet()) {
-            final CallStatsDetails call = entry.getValue();
-            mAllItems.add(call);
-            mTotalItem.mergeWith(call);
-        }
     }
 
+    /**
+     * Switches to the given call type and sort mode. The orderings were
+     * computed along with the data, so this only rebinds the visible rows.
+     */
     public void updateDisplayedData(int type, boolean sortByDuration) {
         mType = type;
         mSortByDuration = sortByDuration;
-
-        mShownItems.clear();
-
-        for (CallStatsDetails call : mAllItems) {
-            if (sortByDuration && call.getRequestedDuration(type) > 0) {
-                mShownItems.add(call);
-            } else if (!sortByDuration && call.getRequestedCount(type) > 0) {
-                mShownItems.add(call);
-            }
-        }
-
-        Collections.sort(mShownItems, sortByDuration ? mDurationComparator : mCountComparator);
+        mShownCount = mCalls.getCount(type, sortByDuration);
         notifyDataSetChanged();
     }
 
@@ -223,7 +176,7 @@ class CallStatsAdapter extends RecyclerView.Adapter {
 
     @Override
     public int getItemCount() {
-        return mShownItems.size();
+        return mShownCount;
     }
 
     @Override
@@ -241,8 +194,8 @@ class CallStatsAdapter extends RecyclerView.Adapter {
 
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int position) {
-        CallStatsDetails details = mShownItems.get(position);
-        CallStatsDetails first = mShownItems.get(0);
+        CallStatsDetails details = mCalls.get(mType, mSortByDuration, position);
+        CallStatsDetails first = mCalls.get(mType, mSortByDuration, 0);
         CallStatsListItemViewHolder views = (CallStatsListItemViewHolder) viewHolder;
 
         views.setDetails(details, first, mTotalItem, mType, mSortByDuration);
@@ -111,20 +111,24 @@ public class CallStatsDetails implements Parcelable {
     }
 
     public void addTimeOrMissed(int type, long time) {
+        addCalls(type, 1, time);
+    }
+
+    public void addCalls(int type, int count, long duration) {
         switch (type) {
             case Calls.INCOMING_TYPE:
-                incomingCount++;
-                inDuration += time;
+                incomingCount += count;
+                inDuration += duration;
                 break;
             case Calls.OUTGOING_TYPE:
-                outgoingCount++;
-                outDuration += time;
+                outgoingCount += count;
+                outDuration += duration;
                 break;
             case Calls.MISSED_TYPE:
-                missedCount++;
+                missedCount += count;
                 break;
             case Calls.BLOCKED_TYPE:
-                blockedCount++;
+                blockedCount += count;
                 break;
         }
     }
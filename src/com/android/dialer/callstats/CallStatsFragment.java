@@ -45,13 +45,10 @@ import android.widget.TextView;
 import com.android.contacts.common.util.PermissionsUtil;
 import com.android.dialer.R;
 import com.android.dialer.calllog.CallLogQueryHandler;
-import com.android.dialer.calllog.ContactInfo;
 import com.android.dialer.calllog.SpinnerContent;
 import com.android.dialer.widget.DoubleDatePickerDialog;
 import com.android.dialer.widget.EmptyContentView;
 
-import java.util.Map;
-
 import static android.Manifest.permission.READ_CALL_LOG;
 
 public class CallStatsFragment extends Fragment implements
@@ -99,7 +96,7 @@ public class CallStatsFragment extends Fragment implements
         super.onCreate(state);
 
         final ContentResolver cr = getActivity().getContentResolver();
-        mCallStatsQueryHandler = new CallStatsQueryHandler(cr, this);
+        mCallStatsQueryHandler = new CallStatsQueryHandler(getActivity(), this);
         cr.registerContentObserver(CallLog.CONTENT_URI, true, mObserver);
         cr.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, mObserver);
 
@@ -278,7 +275,7 @@ public class CallStatsFragment extends Fragment implements
      * fetched or updated.
      */
     @Override
-    public void onCallsFetched(Map<ContactInfo, CallStatsDetails> calls) {
+    public void onCallsFetched(SortedCallStats calls) {
         if (getActivity() == null || getActivity().isFinishing()) {
             return;
         }
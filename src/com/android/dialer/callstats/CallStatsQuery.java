@@ -62,4 +62,11 @@ public class CallStatsQuery {
     public static final int ACCOUNT_COMPONENT_NAME = 16;
     public static final int ACCOUNT_ID = 17;
     public static final int POST_DIAL_DIGITS = 18;
+
+    /**
+     * Number of calls summed up in a row of
+     * {@link com.android.dialer.database.DialerDatabaseHelper#queryCallStats}, which
+     * appends it to the columns above.
+     */
+    public static final int CALL_COUNT = 19;
 }
@@ -18,16 +18,14 @@
 package com.android.dialer.callstats;
 
 import android.content.AsyncQueryHandler;
-import android.content.ContentResolver;
+import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabaseCorruptException;
 import android.database.sqlite.SQLiteDiskIOException;
 import android.database.sqlite.SQLiteFullException;
-import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
-import android.provider.CallLog.Calls;
 import android.telecom.PhoneAccountHandle;
 import android.telephony.PhoneNumberUtils;
 import android.telephony.SubscriptionManager;
@@ -36,28 +34,34 @@ import android.util.Log;
 import com.android.contacts.common.util.UriUtils;
 import com.android.dialer.calllog.ContactInfo;
 import com.android.dialer.calllog.PhoneAccountUtils;
+import com.android.dialer.database.DialerDatabaseHelper;
 
-import com.google.common.collect.Lists;
+import com.google.common.annotations.VisibleForTesting;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 
 /**
- * Class to handle call-log queries, optionally with a date-range filter
+ * Class to handle call statistics queries, optionally with a date-range filter.
+ * Calls are summed up from the daily buckets kept by {@link DialerDatabaseHelper}
+ * rather than read one by one from the call log.
  */
 public class CallStatsQueryHandler extends AsyncQueryHandler {
-    private static final String[] EMPTY_STRING_ARRAY = new String[0];
-
     private static final int EVENT_PROCESS_DATA = 10;
+    private static final int EVENT_FETCH_CALLS = 11;
 
     private static final int QUERY_CALLS_TOKEN = 100;
 
     private static final String TAG = "CallStatsQueryHandler";
 
+    /** Number of trailing digits {@link PhoneNumberUtils#compare} requires to match */
+    private static final int MIN_MATCH = 7;
+
     private final WeakReference<Listener> mListener;
+    private final DialerDatabaseHelper mDatabaseHelper;
     private Handler mWorkerThreadHandler;
 
     /**
@@ -71,16 +75,18 @@ public class CallStatsQueryHandler extends AsyncQueryHandler {
 
         @Override
         public void handleMessage(Message msg) {
-            if (msg.arg1 == EVENT_PROCESS_DATA) {
-                Cursor cursor = (Cursor) msg.obj;
-                Message reply = CallStatsQueryHandler.this.obtainMessage(msg.what);
-                reply.obj = processData(cursor);
-                reply.arg1 = msg.arg1;
-                reply.sendToTarget();
-                return;
-            }
-
             try {
+                if (msg.arg1 == EVENT_FETCH_CALLS) {
+                    FetchArgs args = (FetchArgs) msg.obj;
+                    Cursor cursor = mDatabaseHelper.queryCallStats(
+                            args.from, args.to, args.accountId);
+                    Message reply = CallStatsQueryHandler.this.obtainMessage(msg.what);
+                    reply.obj = processData(cursor);
+                    reply.arg1 = EVENT_PROCESS_DATA;
+                    reply.sendToTarget();
+                    return;
+                }
+
                 // Perform same query while catching any exceptions
                 super.handleMessage(msg);
             } catch (SQLiteDiskIOException e) {
@@ -100,60 +106,34 @@ public class CallStatsQueryHandler extends AsyncQueryHandler {
         return mWorkerThreadHandler;
     }
 
-    public CallStatsQueryHandler(ContentResolver contentResolver, Listener listener) {
-        super(contentResolver);
+    public CallStatsQueryHandler(Context context, Listener listener) {
+        super(context.getContentResolver());
         mListener = new WeakReference<Listener>(listener);
+        mDatabaseHelper = DialerDatabaseHelper.getInstance(context);
     }
 
     public void fetchCalls(long from, long to, int slotId) {
-        cancelOperation(QUERY_CALLS_TOKEN);
+        mWorkerThreadHandler.removeMessages(QUERY_CALLS_TOKEN);
+        removeMessages(QUERY_CALLS_TOKEN);
 
-        StringBuilder selection = new StringBuilder();
-        List<String> selectionArgs = Lists.newArrayList();
-
-        if (from != -1) {
-            selection.append(String.format("(%s > ?)", Calls.DATE));
-            selectionArgs.add(String.valueOf(from));
-        }
-        if (to != -1) {
-            if (selection.length() > 0) {
-                selection.append(" AND ");
-            }
-            selection.append(String.format("(%s < ?)", Calls.DATE));
-            selectionArgs.add(String.valueOf(to));
-        }
+        String accountId = null;
         if (slotId >= 0) {
             int[] subId = SubscriptionManager.getSubId(slotId);
             if (subId != null && subId.length >= 1) {
-                if (selection.length() > 0) {
-                    selection.append(" AND ");
-                }
-                selection.append(String.format("(%s = ?)", Calls.PHONE_ACCOUNT_ID));
-                selectionArgs.add(Integer.toString(subId[0]));
+                accountId = Integer.toString(subId[0]);
             }
         }
 
-        startQuery(QUERY_CALLS_TOKEN, null, Calls.CONTENT_URI_WITH_VOICEMAIL,
-                CallStatsQuery._PROJECTION, selection.toString(),
-                selectionArgs.toArray(EMPTY_STRING_ARRAY), Calls.NUMBER + " ASC");
-    }
-
-    @Override
-    protected synchronized void onQueryComplete(int token, Object cookie, Cursor cursor) {
-        if (token == QUERY_CALLS_TOKEN) {
-            Message msg = mWorkerThreadHandler.obtainMessage(token);
-            msg.arg1 = EVENT_PROCESS_DATA;
-            msg.obj = cursor;
-
-            mWorkerThreadHandler.sendMessage(msg);
-        }
+        Message msg = mWorkerThreadHandler.obtainMessage(QUERY_CALLS_TOKEN);
+        msg.arg1 = EVENT_FETCH_CALLS;
+        msg.obj = new FetchArgs(from, to, accountId);
+        mWorkerThreadHandler.sendMessage(msg);
     }
 
     @Override
     public void handleMessage(Message msg) {
         if (msg.arg1 == EVENT_PROCESS_DATA) {
-            final Map<ContactInfo, CallStatsDetails> calls =
-                    (Map<ContactInfo, CallStatsDetails>) msg.obj;
+            final SortedCallStats calls = (SortedCallStats) msg.obj;
             final Listener listener = mListener.get();
             if (listener != null) {
                 listener.onCallsFetched(calls);
@@ -163,18 +143,21 @@ public class CallStatsQueryHandler extends AsyncQueryHandler {
         }
     }
 
-    private Map<ContactInfo, CallStatsDetails> processData(Cursor cursor) {
-        final Map<ContactInfo, CallStatsDetails> result = new HashMap<ContactInfo, CallStatsDetails>();
-        final ArrayList<ContactInfo> infos = new ArrayList<ContactInfo>();
+    private SortedCallStats processData(Cursor cursor) {
         final ArrayList<CallStatsDetails> calls = new ArrayList<CallStatsDetails>();
         CallStatsDetails pending = null;
 
+        if (cursor == null) {
+            return SortedCallStats.empty();
+        }
+
         cursor.moveToFirst();
 
         while (!cursor.isAfterLast()) {
             final String number = cursor.getString(CallStatsQuery.NUMBER);
             final long duration = cursor.getLong(CallStatsQuery.DURATION);
             final int callType = cursor.getInt(CallStatsQuery.CALL_TYPE);
+            final int count = cursor.getInt(CallStatsQuery.CALL_COUNT);
 
             if (pending == null || !phoneNumbersEqual(pending.number.toString(), number)) {
                 final long date = cursor.getLong(CallStatsQuery.DATE);
@@ -189,54 +172,134 @@ public class CallStatsQueryHandler extends AsyncQueryHandler {
 
                 pending = new CallStatsDetails(number, numberPresentation, postDialDigits,
                         accountHandle, info, countryIso, geocode, date);
-                infos.add(info);
                 calls.add(pending);
             }
 
-            pending.addTimeOrMissed(callType, duration);
+            pending.addCalls(callType, count, duration);
             cursor.moveToNext();
         }
 
         cursor.close();
-        mergeItemsByNumber(calls, infos);
+        mergeItemsByNumber(calls);
 
-        for (int i = 0; i < calls.size(); i++) {
-            result.put(infos.get(i), calls.get(i));
+        return new SortedCallStats(calls);
+    }
+
+    /**
+     * Merge items whose numbers are considered equal by {@link #phoneNumbersEqual}.
+     *
+     * Numbers that compare equal share their trailing {@link #MIN_MATCH} digits, so
+     * items are bucketed by those and only compared pairwise within a bucket.
+     * Shorter numbers can't be keyed reliably that way and are compared against
+     * everything.
+     */
+    @VisibleForTesting
+    static void mergeItemsByNumber(List<CallStatsDetails> calls) {
+        final int size = calls.size();
+        final boolean[] merged = new boolean[size];
+        final HashMap<String, List<Integer>> buckets = new HashMap<String, List<Integer>>();
+        final ArrayList<Integer> shortNumbers = new ArrayList<Integer>();
+
+        for (int i = 0; i < size; i++) {
+            final String key = getMergeKey(calls.get(i).number);
+            if (key == null) {
+                shortNumbers.add(i);
+                continue;
+            }
+            List<Integer> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<Integer>(1);
+                buckets.put(key, bucket);
+            }
+            bucket.add(i);
         }
 
-        return result;
-    }
+        for (List<Integer> bucket : buckets.values()) {
+            if (bucket.size() > 1) {
+                mergeItems(calls, bucket, merged);
+            }
+        }
+        if (!shortNumbers.isEmpty()) {
+            for (int i : shortNumbers) {
+                for (int j = 0; j < size; j++) {
+                    if (j != i && !merged[i] && !merged[j]
+                            && phoneNumbersEqual(calls.get(i).number, calls.get(j).number)) {
+                        // keep the item that came first
+                        if (i < j) {
+                            mergeItem(calls.get(i), calls.get(j));
+                            merged[j] = true;
+                        } else {
+                            mergeItem(calls.get(j), calls.get(i));
+                            merged[i] = true;
+                        }
+                    }
+                }
+            }
+        }
 
-    private void mergeItemsByNumber(List<CallStatsDetails> calls, List<ContactInfo> infos) {
-        // temporarily store items marked for removal
-        final ArrayList<CallStatsDetails> callsToRemove = new ArrayList<CallStatsDetails>();
-        final ArrayList<ContactInfo> infosToRemove = new ArrayList<ContactInfo>();
+        // compact the list in a single pass
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!merged[i]) {
+                calls.set(kept, calls.get(i));
+                kept++;
+            }
+        }
+        calls.subList(kept, size).clear();
+    }
 
-        for (int i = 0; i < calls.size(); i++) {
+    private static void mergeItems(List<CallStatsDetails> calls, List<Integer> bucket,
+            boolean[] merged) {
+        for (int a = 0; a < bucket.size(); a++) {
+            final int i = bucket.get(a);
+            if (merged[i]) {
+                continue;
+            }
             final CallStatsDetails outerItem = calls.get(i);
-            final String currentFormattedNumber = outerItem.number.toString();
-
-            for (int j = calls.size() - 1; j > i; j--) {
-                final CallStatsDetails innerItem = calls.get(j);
-                final String innerNumber = innerItem.number.toString();
-
-                if (phoneNumbersEqual(currentFormattedNumber, innerNumber)) {
-                    outerItem.mergeWith(innerItem);
-                    //make sure we're not counting twice in case we're dealing with
-                    //multiple different formats
-                    innerItem.reset();
-                    callsToRemove.add(innerItem);
-                    infosToRemove.add(infos.get(j));
+
+            for (int b = a + 1; b < bucket.size(); b++) {
+                final int j = bucket.get(b);
+                if (!merged[j] && phoneNumbersEqual(outerItem.number, calls.get(j).number)) {
+                    mergeItem(outerItem, calls.get(j));
+                    merged[j] = true;
                 }
             }
         }
+    }
 
-        for (CallStatsDetails call : callsToRemove) {
-            calls.remove(call);
+    private static void mergeItem(CallStatsDetails target, CallStatsDetails item) {
+        target.mergeWith(item);
+        //make sure we're not counting twice in case we're dealing with
+        //multiple different formats
+        item.reset();
+    }
+
+    /**
+     * Key shared by all numbers that may compare equal to the given one: the
+     * SIP address with its host part lower-cased, or the trailing MIN_MATCH
+     * digits of a phone number. Returns null for numbers shorter than that.
+     */
+    private static String getMergeKey(String number) {
+        if (number == null) {
+            return null;
         }
-        for (ContactInfo info : infosToRemove) {
-            infos.remove(info);
+        if (PhoneNumberUtils.isUriNumber(number)) {
+            final int index = number.indexOf('@');
+            return index != -1
+                    ? "sip:" + number.substring(0, index)
+                            + number.substring(index).toLowerCase(Locale.ROOT)
+                    : "sip:" + number;
         }
+
+        final char[] key = new char[MIN_MATCH];
+        int count = 0;
+        for (int i = number.length() - 1; i >= 0 && count < MIN_MATCH; i--) {
+            final char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                key[count++] = c;
+            }
+        }
+        return count == MIN_MATCH ? new String(key) : null;
     }
 
     private ContactInfo getContactInfoFromCallStats(Cursor c) {
@@ -293,7 +356,19 @@ public class CallStatsQueryHandler extends AsyncQueryHandler {
         return userinfo1.equals(userinfo2) && rest1.equalsIgnoreCase(rest2);
     }
 
+    private static class FetchArgs {
+        final long from;
+        final long to;
+        final String accountId;
+
+        FetchArgs(long from, long to, String accountId) {
+            this.from = from;
+            this.to = to;
+            this.accountId = accountId;
+        }
+    }
+
     public interface Listener {
-        void onCallsFetched(Map<ContactInfo, CallStatsDetails> calls);
+        void onCallsFetched(SortedCallStats calls);
     }
 }
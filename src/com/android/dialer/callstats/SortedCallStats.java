@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.callstats;
+
+import android.provider.CallLog.Calls;
+
+import com.android.dialer.calllog.CallLogQueryHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Call stats entries along with their totals and their display order for
+ * every call type filter and sort mode.
+ *
+ * All orderings are computed up front, so this is meant to be built on a
+ * background thread; switching between filters on the UI thread is then
+ * just a lookup.
+ */
+public class SortedCallStats {
+    /** Call type filters offered by the call stats screen */
+    private static final int[] TYPES = new int[] {
+            CallLogQueryHandler.CALL_TYPE_ALL,
+            Calls.INCOMING_TYPE,
+            Calls.OUTGOING_TYPE,
+            Calls.MISSED_TYPE,
+            Calls.BLOCKED_TYPE,
+    };
+
+    /**
+     * Orderings are sorted as longs holding the sort key in the upper bits
+     * and the (inverted) item index in the lower ones, which keeps the sort
+     * free of boxing and comparator calls.
+     */
+    private static final int INDEX_BITS = 24;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+    private static final long MAX_KEY = Long.MAX_VALUE >> INDEX_BITS;
+
+    private final List<CallStatsDetails> mItems;
+    private final CallStatsDetails mTotal;
+    /** Item indices per type and sort mode, see {@link #getOrderingIndex} */
+    private final int[][] mOrderings;
+
+    public SortedCallStats(List<CallStatsDetails> items) {
+        if (items.size() > INDEX_MASK) {
+            throw new IllegalArgumentException("Too many call stats entries: " + items.size());
+        }
+
+        mItems = Collections.unmodifiableList(new ArrayList<CallStatsDetails>(items));
+        mTotal = new CallStatsDetails(null, 0, null, null, null, null, null, 0);
+        for (CallStatsDetails item : mItems) {
+            mTotal.mergeWith(item);
+        }
+
+        mOrderings = new int[TYPES.length * 2][];
+        final long[] keys = new long[mItems.size()];
+        for (int type : TYPES) {
+            mOrderings[getOrderingIndex(type, false)] = buildOrdering(keys, type, false);
+            mOrderings[getOrderingIndex(type, true)] = buildOrdering(keys, type, true);
+        }
+    }
+
+    public static SortedCallStats empty() {
+        return new SortedCallStats(Collections.<CallStatsDetails>emptyList());
+    }
+
+    /**
+     * Returns the sum of all entries.
+     */
+    public CallStatsDetails getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * Returns the number of entries having calls of the given type, or call
+     * time when sorting by duration.
+     */
+    public int getCount(int type, boolean sortByDuration) {
+        return mOrderings[getOrderingIndex(type, sortByDuration)].length;
+    }
+
+    /**
+     * Returns the entry at the given position, with entries sorted by
+     * descending count or duration of the given call type.
+     */
+    public CallStatsDetails get(int type, boolean sortByDuration, int position) {
+        return mItems.get(mOrderings[getOrderingIndex(type, sortByDuration)][position]);
+    }
+
+    private int[] buildOrdering(long[] keys, int type, boolean sortByDuration) {
+        int count = 0;
+        for (int i = 0; i < mItems.size(); i++) {
+            final CallStatsDetails item = mItems.get(i);
+            final long key = sortByDuration
+                    ? item.getRequestedDuration(type) : item.getRequestedCount(type);
+            if (key > 0) {
+                // invert the index so that equal keys keep their original order
+                // once the ascending sort result is read backwards
+                keys[count++] = (Math.min(key, MAX_KEY) << INDEX_BITS) | (INDEX_MASK - i);
+            }
+        }
+
+        Arrays.sort(keys, 0, count);
+
+        final int[] ordering = new int[count];
+        for (int i = 0; i < count; i++) {
+            ordering[i] = (int) (INDEX_MASK - (keys[count - 1 - i] & INDEX_MASK));
+        }
+        return ordering;
+    }
+
+    private static int getOrderingIndex(int type, boolean sortByDuration) {
+        int typeIndex = 0;
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i] == type) {
+                typeIndex = i;
+                break;
+            }
+        }
+        return typeIndex * 2 + (sortByDuration ? 1 : 0);
+    }
+}
@@ -19,15 +19,21 @@ package com.android.dialer.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.BaseColumns;
+import android.provider.CallLog;
+import android.provider.CallLog.Calls;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.provider.ContactsContract.Contacts;
@@ -41,6 +47,7 @@ import com.android.contacts.common.util.StopWatch;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumberColumns;
 import com.android.dialer.database.VoicemailArchiveContract.VoicemailArchive;
 import com.android.dialer.R;
+import com.android.dialer.callstats.CallStatsQuery;
 import com.android.dialer.dialpad.SmartDialNameMatcher;
 import com.android.dialer.dialpad.SmartDialPrefix;
 
@@ -50,8 +57,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -67,8 +79,10 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
     private static DialerDatabaseHelper sSingleton = null;
 
     private static final Object mLock = new Object();
+    private static final Object sCallStatsLock = new Object();
     private static final AtomicBoolean sInUpdate = new AtomicBoolean(false);
     private final Context mContext;
+    private ContentObserver mCallStatsObserver;
 
     /**
      * SmartDial DB version ranges:
@@ -76,7 +90,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      *   0-98   KitKat
      * </pre>
      */
-    public static final int DATABASE_VERSION = 70010;
+    public static final int DATABASE_VERSION = 70013;
     public static final String DATABASE_NAME = "dialer.db";
 
     /**
@@ -86,6 +100,17 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
     private static final String LAST_UPDATED_MILLIS = "last_updated_millis";
     private static final String DATABASE_VERSION_PROPERTY = "database_version";
 
+    /**
+     * Call log state the call statistics tables were last updated from.
+     */
+    private static final String CALL_STATS_LAST_CALL_ID_PROPERTY = "call_stats_last_call_id";
+    private static final String CALL_STATS_TIME_ZONE_PROPERTY = "call_stats_time_zone";
+    /**
+     * Quiet period before the call statistics are updated after the call log changed. The
+     * call stats screen catches up itself before querying, so this can be generous.
+     */
+    private static final long CALL_STATS_UPDATE_DELAY_MS = 10000;
+
     private static final int MAX_ENTRIES = 20;
 
     public interface Tables {
@@ -97,6 +122,12 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         static final String PREFIX_TABLE = "prefix_table";
         /** Saves all archived voicemail information. */
         static final String VOICEMAIL_ARCHIVE_TABLE = "voicemail_archive_table";
+        /** Saves call counts and durations per number, day, call type and account. */
+        static final String CALL_STATS_TABLE = "call_stats_table";
+        /** Saves the most recent call log entry of every number in the call stats table. */
+        static final String CALL_STATS_NUMBERS_TABLE = "call_stats_numbers_table";
+        /** Saves the bucket and duration of every call counted in the call stats table. */
+        static final String CALL_STATS_CALLS_TABLE = "call_stats_calls_table";
         /** Database properties for internal use */
         static final String PROPERTIES = "properties";
     }
@@ -127,6 +158,17 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         static final String CONTACT_ID = "contact_id";
     }
 
+    public interface CallStatsColumns {
+        static final String NUMBER = "number";
+        /** Start of the local day the calls were made on, in milliseconds */
+        static final String DAY = "day";
+        static final String TYPE = "type";
+        static final String ACCOUNT_COMPONENT_NAME = "account_component_name";
+        static final String ACCOUNT_ID = "account_id";
+        static final String COUNT = "count";
+        static final String DURATION = "duration";
+    }
+
     public interface PropertiesColumns {
         String PROPERTY_KEY = "property_key";
         String PROPERTY_VALUE = "property_value";
@@ -439,6 +481,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                 + ");");
 
         createVoicemailArchiveTable(db);
+        createCallStatsTables(db);
         setProperty(db, DATABASE_VERSION_PROPERTY, String.valueOf(DATABASE_VERSION));
         if (!mIsTestInstance) {
             resetSmartDialLastUpdatedTime();
@@ -451,6 +494,9 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("DROP TABLE IF EXISTS " + Tables.PROPERTIES);
         db.execSQL("DROP TABLE IF EXISTS " + Tables.FILTERED_NUMBER_TABLE);
         db.execSQL("DROP TABLE IF EXISTS " + Tables.VOICEMAIL_ARCHIVE_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_NUMBERS_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_CALLS_TABLE);
     }
 
     @Override
@@ -498,6 +544,33 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             oldVersion = 70010;
         }
 
+        if (oldVersion < 70011) {
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_NUMBERS_TABLE);
+            createCallStatsTables(db);
+            oldVersion = 70011;
+        }
+
+        if (oldVersion < 70012) {
+            // Existing stats lack the calls table, so rebuild them
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_NUMBERS_TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_CALLS_TABLE);
+            createCallStatsTables(db);
+            setProperty(db, CALL_STATS_LAST_CALL_ID_PROPERTY, "0");
+            oldVersion = 70012;
+        }
+
+        if (oldVersion < 70013) {
+            // The numbers table no longer keeps copies of the cached call log columns
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_NUMBERS_TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.CALL_STATS_CALLS_TABLE);
+            createCallStatsTables(db);
+            setProperty(db, CALL_STATS_LAST_CALL_ID_PROPERTY, "0");
+            oldVersion = 70013;
+        }
+
         if (oldVersion != DATABASE_VERSION) {
             throw new IllegalStateException(
                     "error upgrading the database to version " + DATABASE_VERSION);
@@ -562,6 +635,15 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    private long getPropertyAsLong(SQLiteDatabase db, String key, long defaultValue) {
+        final String stored = getProperty(db, key, "");
+        try {
+            return Long.parseLong(stored);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     private void resetSmartDialLastUpdatedTime() {
         final SharedPreferences databaseLastUpdateSharedPref = mContext.getSharedPreferences(
                 DATABASE_LAST_CREATED_SHARED_PREF, Context.MODE_PRIVATE);
@@ -699,6 +781,591 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                 + ");");
     }
 
+    /**
+     * The numbers table maps each number to the id of its newest call, whose call log row fills
+     * in the cached contact info when the stats are queried. The calls table holds the id,
+     * bucket and duration of each call, so calls pruned from the call log can be taken out of
+     * their buckets again.
+     *
+     * @param db Database pointer to the dialer database.
+     */
+    private void createCallStatsTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Tables.CALL_STATS_TABLE + " ("
+                + CallStatsColumns.NUMBER + " TEXT NOT NULL,"
+                + CallStatsColumns.DAY + " LONG NOT NULL,"
+                + CallStatsColumns.TYPE + " INTEGER NOT NULL,"
+                + CallStatsColumns.ACCOUNT_COMPONENT_NAME + " TEXT NOT NULL,"
+                + CallStatsColumns.ACCOUNT_ID + " TEXT NOT NULL,"
+                + CallStatsColumns.COUNT + " INTEGER NOT NULL,"
+                + CallStatsColumns.DURATION + " LONG NOT NULL,"
+                + "UNIQUE (" + CallStatsColumns.NUMBER + ", " + CallStatsColumns.DAY + ", "
+                + CallStatsColumns.TYPE + ", " + CallStatsColumns.ACCOUNT_COMPONENT_NAME + ", "
+                + CallStatsColumns.ACCOUNT_ID + ")"
+                + ");");
+        db.execSQL("CREATE INDEX call_stats_day_index ON " + Tables.CALL_STATS_TABLE
+                + " (" + CallStatsColumns.DAY + ");");
+
+        db.execSQL("CREATE TABLE " + Tables.CALL_STATS_NUMBERS_TABLE + " ("
+                + Calls.NUMBER + " TEXT PRIMARY KEY,"
+                + Calls._ID + " INTEGER NOT NULL"
+                + ");");
+
+        db.execSQL("CREATE TABLE " + Tables.CALL_STATS_CALLS_TABLE + " ("
+                + Calls._ID + " INTEGER PRIMARY KEY,"
+                + CallStatsColumns.NUMBER + " TEXT NOT NULL,"
+                + CallStatsColumns.DAY + " LONG NOT NULL,"
+                + CallStatsColumns.TYPE + " INTEGER NOT NULL,"
+                + CallStatsColumns.ACCOUNT_COMPONENT_NAME + " TEXT NOT NULL,"
+                + CallStatsColumns.ACCOUNT_ID + " TEXT NOT NULL,"
+                + CallStatsColumns.DURATION + " LONG NOT NULL"
+                + ");");
+    }
+
+    /**
+     * Brings the call statistics tables up to date with the call log. Calls added since the
+     * last update are folded into their daily buckets, and the oldest calls the call log
+     * provider pruned meanwhile are taken out of theirs. If other calls were deleted or the time
+     * zone changed, the tables are rebuilt from scratch.
+     */
+    public void updateCallStats() {
+        if (!PermissionsUtil.hasPermission(mContext, android.Manifest.permission.READ_CALL_LOG)) {
+            return;
+        }
+
+        synchronized (sCallStatsLock) {
+            final StopWatch stopWatch = DEBUG ? StopWatch.start("Call stats update") : null;
+            final SQLiteDatabase db = getWritableDatabase();
+            final String timeZone = TimeZone.getDefault().getID();
+
+            long lastCallId = getPropertyAsLong(db, CALL_STATS_LAST_CALL_ID_PROPERTY, 0);
+
+            if (lastCallId > 0) {
+                // The oldest call left of those ingested; older ones were pruned
+                final long firstCallId = queryFirstCallId(lastCallId);
+                if (!timeZone.equals(getProperty(db, CALL_STATS_TIME_ZONE_PROPERTY, ""))
+                        || firstCallId < 0
+                        || !isCallLogUnchanged(lastCallId,
+                                countCallStatsCalls(db, firstCallId))) {
+                    if (DEBUG) {
+                        Log.v(TAG, "Call log changed, rebuilding call stats");
+                    }
+                    removeAllCallStats(db);
+                    lastCallId = 0;
+                } else {
+                    final int pruned = removePrunedCallStats(db, firstCallId);
+                    if (DEBUG && pruned > 0) {
+                        Log.v(TAG, "Removed " + pruned + " pruned calls from call stats");
+                    }
+                }
+            }
+
+            final Cursor calls = mContext.getContentResolver().query(
+                    Calls.CONTENT_URI_WITH_VOICEMAIL, CallStatsQuery._PROJECTION,
+                    Calls._ID + " > ?", new String[] {String.valueOf(lastCallId)},
+                    Calls._ID + " ASC");
+            if (calls == null) {
+                return;
+            }
+
+            db.beginTransaction();
+            try {
+                final int added = calls.getCount();
+                if (added > 0) {
+                    lastCallId = insertCallStats(db, calls, TimeZone.getDefault());
+                }
+                setProperty(db, CALL_STATS_LAST_CALL_ID_PROPERTY, String.valueOf(lastCallId));
+                setProperty(db, CALL_STATS_TIME_ZONE_PROPERTY, timeZone);
+                db.setTransactionSuccessful();
+                if (DEBUG) {
+                    stopWatch.stopAndLog(TAG + " Added " + added + " calls to call stats", 0);
+                }
+            } finally {
+                calls.close();
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Starts updating the call statistics tables in the background whenever the call log
+     * changes, so the call stats screen only has to catch up on the last few calls.
+     */
+    public void startCallStatsObserver() {
+        if (mCallStatsObserver != null) {
+            return;
+        }
+        final Handler handler = new Handler(Looper.getMainLooper());
+        final Runnable update = new Runnable() {
+            @Override
+            public void run() {
+                new CallStatsUpdateAsyncTask().execute();
+            }
+        };
+        mCallStatsObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                // Cached contact info updates come in bursts, only update once they settle
+                handler.removeCallbacks(update);
+                handler.postDelayed(update, CALL_STATS_UPDATE_DELAY_MS);
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(
+                CallLog.CONTENT_URI, true, mCallStatsObserver);
+    }
+
+    private class CallStatsUpdateAsyncTask extends AsyncTask<Void, Void, Void> {
+        @Override
+        protected Void doInBackground(Void... params) {
+            try {
+                updateCallStats();
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Failed to update call stats", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return The id of the oldest call in the call log up to {@code lastCallId}, or -1 if
+     *     there is none or the call log can't be read.
+     */
+    private long queryFirstCallId(long lastCallId) {
+        final Uri uri = Calls.CONTENT_URI_WITH_VOICEMAIL.buildUpon()
+                .appendQueryParameter(Calls.LIMIT_PARAM_KEY, "1")
+                .build();
+        final Cursor cursor = mContext.getContentResolver().query(uri,
+                new String[] {Calls._ID}, Calls._ID + " <= ?",
+                new String[] {String.valueOf(lastCallId)}, Calls._ID + " ASC");
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Counts the calls in the call statistics tables from {@code firstCallId} on.
+     */
+    private static int countCallStatsCalls(SQLiteDatabase db, long firstCallId) {
+        return (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM "
+                + Tables.CALL_STATS_CALLS_TABLE + " WHERE " + Calls._ID + " >= ?",
+                new String[] {String.valueOf(firstCallId)});
+    }
+
+    /**
+     * Checks whether calls up to {@code lastCallId} were deleted since the last update, i.e.
+     * whether the call at position {@code callCount - 1} in id order is still the last call
+     * that was ingested. Only that single row is read rather than counting all ids.
+     */
+    private boolean isCallLogUnchanged(long lastCallId, int callCount) {
+        if (callCount <= 0) {
+            return false;
+        }
+        final Uri uri = Calls.CONTENT_URI_WITH_VOICEMAIL.buildUpon()
+                .appendQueryParameter(Calls.LIMIT_PARAM_KEY, "1")
+                .appendQueryParameter(Calls.OFFSET_PARAM_KEY, String.valueOf(callCount - 1))
+                .build();
+        final Cursor cursor = mContext.getContentResolver().query(uri,
+                new String[] {Calls._ID}, Calls._ID + " <= ?",
+                new String[] {String.valueOf(lastCallId)}, Calls._ID + " ASC");
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst() && cursor.getLong(0) == lastCallId;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Adds calls to the call statistics tables.
+     *
+     * @param db Database pointer to the dialer database.
+     * @param calls Cursor over {@link CallStatsQuery#_PROJECTION}, ordered by ascending id.
+     * @param timeZone Time zone the day buckets are computed in.
+     * @return Id of the last call added.
+     */
+    @VisibleForTesting
+    long insertCallStats(SQLiteDatabase db, Cursor calls, TimeZone timeZone) {
+        final Map<CallStatsBucket, CallStatsBucket> buckets =
+                new HashMap<CallStatsBucket, CallStatsBucket>();
+        final Map<String, Long> numbers = new HashMap<String, Long>();
+        final List<ContentValues> callValues = new ArrayList<ContentValues>(calls.getCount());
+        final Calendar calendar = Calendar.getInstance(timeZone);
+        long dayStart = 0;
+        long dayEnd = 0;
+        long lastCallId = 0;
+
+        calls.moveToPosition(-1);
+        while (calls.moveToNext()) {
+            final long id = calls.getLong(CallStatsQuery.ID);
+            final long date = calls.getLong(CallStatsQuery.DATE);
+            // Calls mostly come in date order, so the day rarely needs to be recomputed
+            if (date < dayStart || date >= dayEnd) {
+                calendar.setTimeInMillis(date);
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.set(Calendar.SECOND, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                dayStart = calendar.getTimeInMillis();
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                dayEnd = calendar.getTimeInMillis();
+            }
+
+            final String number = nullToEmpty(calls.getString(CallStatsQuery.NUMBER));
+            final CallStatsBucket key = new CallStatsBucket(number, dayStart,
+                    calls.getInt(CallStatsQuery.CALL_TYPE),
+                    nullToEmpty(calls.getString(CallStatsQuery.ACCOUNT_COMPONENT_NAME)),
+                    nullToEmpty(calls.getString(CallStatsQuery.ACCOUNT_ID)));
+            CallStatsBucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = key;
+                buckets.put(key, bucket);
+            }
+            final long duration = calls.getLong(CallStatsQuery.DURATION);
+            bucket.count++;
+            bucket.duration += duration;
+
+            final ContentValues call = new ContentValues();
+            call.put(Calls._ID, id);
+            call.put(CallStatsColumns.NUMBER, key.number);
+            call.put(CallStatsColumns.DAY, key.day);
+            call.put(CallStatsColumns.TYPE, key.type);
+            call.put(CallStatsColumns.ACCOUNT_COMPONENT_NAME, key.accountComponentName);
+            call.put(CallStatsColumns.ACCOUNT_ID, key.accountId);
+            call.put(CallStatsColumns.DURATION, duration);
+            callValues.add(call);
+
+            // Calls come in id order, so the newest call of each number ends up in the map
+            numbers.put(number, id);
+            lastCallId = Math.max(lastCallId, id);
+        }
+
+        final SQLiteStatement update = db.compileStatement("UPDATE " + Tables.CALL_STATS_TABLE
+                + " SET " + CallStatsColumns.COUNT + " = " + CallStatsColumns.COUNT + " + ?, "
+                + CallStatsColumns.DURATION + " = " + CallStatsColumns.DURATION + " + ?"
+                + " WHERE " + CallStatsColumns.NUMBER + " = ? AND " + CallStatsColumns.DAY
+                + " = ? AND " + CallStatsColumns.TYPE + " = ? AND "
+                + CallStatsColumns.ACCOUNT_COMPONENT_NAME + " = ? AND "
+                + CallStatsColumns.ACCOUNT_ID + " = ?");
+        final SQLiteStatement insert = db.compileStatement("INSERT INTO "
+                + Tables.CALL_STATS_TABLE + " (" + CallStatsColumns.COUNT + ", "
+                + CallStatsColumns.DURATION + ", " + CallStatsColumns.NUMBER + ", "
+                + CallStatsColumns.DAY + ", " + CallStatsColumns.TYPE + ", "
+                + CallStatsColumns.ACCOUNT_COMPONENT_NAME + ", " + CallStatsColumns.ACCOUNT_ID
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+
+        db.beginTransaction();
+        try {
+            for (CallStatsBucket bucket : buckets.values()) {
+                bucket.bindTo(update);
+                if (update.executeUpdateDelete() == 0) {
+                    bucket.bindTo(insert);
+                    insert.executeInsert();
+                }
+            }
+            final ContentValues values = new ContentValues();
+            for (Map.Entry<String, Long> number : numbers.entrySet()) {
+                values.put(Calls.NUMBER, number.getKey());
+                values.put(Calls._ID, number.getValue());
+                db.replace(Tables.CALL_STATS_NUMBERS_TABLE, null, values);
+            }
+            for (ContentValues values : callValues) {
+                db.replace(Tables.CALL_STATS_CALLS_TABLE, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            update.close();
+            insert.close();
+            db.endTransaction();
+        }
+
+        return lastCallId;
+    }
+
+    /**
+     * Updates the call statistics tables and sums up calls per number and call type.
+     *
+     * @param from Start of the first day to include, or -1 for no lower limit.
+     * @param to Any time within the last day to include, or -1 for no upper limit.
+     * @param accountId Phone account to restrict the calls to, or null for all accounts.
+     * @return A cursor over {@link CallStatsQuery#_PROJECTION} plus
+     *         {@link CallStatsQuery#CALL_COUNT}, with one row per number and call type and
+     *         the newest call of each number filling the per-call columns, ordered by number.
+     *         Null if the call log can't be read.
+     */
+    public Cursor queryCallStats(long from, long to, String accountId) {
+        if (!PermissionsUtil.hasPermission(mContext, android.Manifest.permission.READ_CALL_LOG)) {
+            return null;
+        }
+        updateCallStats();
+
+        final Cursor stats = queryCallStats(getReadableDatabase(), from, to, accountId);
+        try {
+            // The cached contact info of the newest calls is read from the call log itself, so
+            // lookups written back since the calls were added show up as well
+            final Set<Long> callIds = new HashSet<Long>();
+            while (stats.moveToNext()) {
+                callIds.add(stats.getLong(CallStatsQuery.ID));
+            }
+            if (callIds.isEmpty()) {
+                return fillCallStats(stats, new MatrixCursor(CallStatsQuery._PROJECTION));
+            }
+            final Cursor calls = mContext.getContentResolver().query(
+                    Calls.CONTENT_URI_WITH_VOICEMAIL, CallStatsQuery._PROJECTION,
+                    Calls._ID + " IN (" + TextUtils.join(",", callIds) + ")", null, null);
+            if (calls == null) {
+                return null;
+            }
+            try {
+                return fillCallStats(stats, calls);
+            } finally {
+                calls.close();
+            }
+        } finally {
+            stats.close();
+        }
+    }
+
+    /**
+     * Sums up calls per number and call type. Only the id, number, duration, type and count
+     * columns are filled in, see {@link #fillCallStats}.
+     */
+    @VisibleForTesting
+    Cursor queryCallStats(SQLiteDatabase db, long from, long to, String accountId) {
+        final StringBuilder projection = new StringBuilder();
+        for (String column : CallStatsQuery._PROJECTION) {
+            if (projection.length() > 0) {
+                projection.append(", ");
+            }
+            if (Calls._ID.equals(column) || Calls.NUMBER.equals(column)) {
+                projection.append("n.").append(column);
+            } else if (Calls.DURATION.equals(column)) {
+                projection.append("SUM(s.").append(CallStatsColumns.DURATION).append(")");
+            } else if (Calls.TYPE.equals(column)) {
+                projection.append("s.").append(CallStatsColumns.TYPE);
+            } else {
+                projection.append("NULL");
+            }
+            projection.append(" AS ").append(column);
+        }
+        projection.append(", SUM(s.").append(CallStatsColumns.COUNT).append(") AS ")
+                .append(CallStatsColumns.COUNT);
+
+        final StringBuilder selection = new StringBuilder("1");
+        final ArrayList<String> selectionArgs = new ArrayList<String>();
+        if (from != -1) {
+            selection.append(" AND s.").append(CallStatsColumns.DAY).append(" >= ?");
+            selectionArgs.add(String.valueOf(getStartOfDay(from)));
+        }
+        if (to != -1) {
+            selection.append(" AND s.").append(CallStatsColumns.DAY).append(" <= ?");
+            selectionArgs.add(String.valueOf(to));
+        }
+        if (accountId != null) {
+            selection.append(" AND s.").append(CallStatsColumns.ACCOUNT_ID).append(" = ?");
+            selectionArgs.add(accountId);
+        }
+
+        return db.rawQuery("SELECT " + projection
+                + " FROM " + Tables.CALL_STATS_TABLE + " s JOIN "
+                + Tables.CALL_STATS_NUMBERS_TABLE + " n ON s." + CallStatsColumns.NUMBER
+                + " = n." + Calls.NUMBER
+                + " WHERE " + selection
+                + " GROUP BY s." + CallStatsColumns.NUMBER + ", s." + CallStatsColumns.TYPE
+                + " ORDER BY s." + CallStatsColumns.NUMBER + ", s." + CallStatsColumns.TYPE,
+                selectionArgs.toArray(new String[selectionArgs.size()]));
+    }
+
+    /**
+     * Fills the per-call columns of the rows returned by
+     * {@link #queryCallStats(SQLiteDatabase, long, long, String)} from the newest call of each
+     * number. Rows whose newest call is no longer in {@code calls} are left out; the next update
+     * rebuilds the call statistics tables in that case anyway.
+     *
+     * @param stats Cursor over the summed up calls.
+     * @param calls Cursor over {@link CallStatsQuery#_PROJECTION} with the newest calls.
+     */
+    @VisibleForTesting
+    static Cursor fillCallStats(Cursor stats, Cursor calls) {
+        final Map<Long, Integer> positions = new HashMap<Long, Integer>(calls.getCount());
+        calls.moveToPosition(-1);
+        while (calls.moveToNext()) {
+            positions.put(calls.getLong(CallStatsQuery.ID), calls.getPosition());
+        }
+
+        final MatrixCursor result = new MatrixCursor(stats.getColumnNames(), stats.getCount());
+        final Object[] row = new Object[stats.getColumnCount()];
+        stats.moveToPosition(-1);
+        while (stats.moveToNext()) {
+            final Integer position = positions.get(stats.getLong(CallStatsQuery.ID));
+            if (position == null) {
+                continue;
+            }
+            calls.moveToPosition(position);
+            for (int i = 0; i < row.length; i++) {
+                switch (i) {
+                    case CallStatsQuery.NUMBER:
+                    case CallStatsQuery.DURATION:
+                    case CallStatsQuery.CALL_TYPE:
+                    case CallStatsQuery.CALL_COUNT:
+                        row[i] = getValue(stats, i);
+                        break;
+                    default:
+                        row[i] = getValue(calls, i);
+                        break;
+                }
+            }
+            result.addRow(row);
+        }
+        return result;
+    }
+
+    private static Object getValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return null;
+        }
+    }
+
+    private static long getStartOfDay(long millis) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Removes all entries in the call statistics tables.
+     */
+    @VisibleForTesting
+    void removeAllCallStats(SQLiteDatabase db) {
+        db.delete(Tables.CALL_STATS_TABLE, null, null);
+        db.delete(Tables.CALL_STATS_NUMBERS_TABLE, null, null);
+        db.delete(Tables.CALL_STATS_CALLS_TABLE, null, null);
+        setProperty(db, CALL_STATS_LAST_CALL_ID_PROPERTY, "0");
+    }
+
+    /**
+     * Takes calls older than {@code firstCallId}, which the call log provider pruned, out of
+     * the call statistics tables.
+     *
+     * @param db Database pointer to the dialer database.
+     * @param firstCallId Id of the oldest call still in the call log.
+     * @return Number of calls removed.
+     */
+    @VisibleForTesting
+    int removePrunedCallStats(SQLiteDatabase db, long firstCallId) {
+        final String[] args = new String[] {String.valueOf(firstCallId)};
+        final String bucketMatch = " WHERE c." + CallStatsColumns.NUMBER + " = "
+                + Tables.CALL_STATS_TABLE + "." + CallStatsColumns.NUMBER
+                + " AND c." + CallStatsColumns.DAY + " = "
+                + Tables.CALL_STATS_TABLE + "." + CallStatsColumns.DAY
+                + " AND c." + CallStatsColumns.TYPE + " = "
+                + Tables.CALL_STATS_TABLE + "." + CallStatsColumns.TYPE
+                + " AND c." + CallStatsColumns.ACCOUNT_COMPONENT_NAME + " = "
+                + Tables.CALL_STATS_TABLE + "." + CallStatsColumns.ACCOUNT_COMPONENT_NAME
+                + " AND c." + CallStatsColumns.ACCOUNT_ID + " = "
+                + Tables.CALL_STATS_TABLE + "." + CallStatsColumns.ACCOUNT_ID
+                + " AND c." + Calls._ID + " < ?";
+
+        db.beginTransaction();
+        try {
+            final int pruned = (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM "
+                    + Tables.CALL_STATS_CALLS_TABLE + " WHERE " + Calls._ID + " < ?", args);
+            if (pruned > 0) {
+                db.execSQL("UPDATE " + Tables.CALL_STATS_TABLE + " SET "
+                        + CallStatsColumns.COUNT + " = " + CallStatsColumns.COUNT
+                        + " - (SELECT COUNT(*) FROM " + Tables.CALL_STATS_CALLS_TABLE + " c"
+                        + bucketMatch + "), "
+                        + CallStatsColumns.DURATION + " = " + CallStatsColumns.DURATION
+                        + " - (SELECT TOTAL(c." + CallStatsColumns.DURATION + ") FROM "
+                        + Tables.CALL_STATS_CALLS_TABLE + " c" + bucketMatch + ")",
+                        new String[] {args[0], args[0]});
+                db.delete(Tables.CALL_STATS_TABLE, CallStatsColumns.COUNT + " <= 0", null);
+                db.delete(Tables.CALL_STATS_CALLS_TABLE, Calls._ID + " < ?", args);
+                db.delete(Tables.CALL_STATS_NUMBERS_TABLE, Calls.NUMBER + " NOT IN (SELECT "
+                        + CallStatsColumns.NUMBER + " FROM " + Tables.CALL_STATS_TABLE + ")",
+                        null);
+            }
+            db.setTransactionSuccessful();
+            return pruned;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Key and running totals of one row in the call stats table.
+     */
+    private static class CallStatsBucket {
+        final String number;
+        final long day;
+        final int type;
+        final String accountComponentName;
+        final String accountId;
+        int count;
+        long duration;
+
+        CallStatsBucket(String number, long day, int type, String accountComponentName,
+                String accountId) {
+            this.number = number;
+            this.day = day;
+            this.type = type;
+            this.accountComponentName = accountComponentName;
+            this.accountId = accountId;
+        }
+
+        void bindTo(SQLiteStatement statement) {
+            statement.bindLong(1, count);
+            statement.bindLong(2, duration);
+            statement.bindString(3, number);
+            statement.bindLong(4, day);
+            statement.bindLong(5, type);
+            statement.bindString(6, accountComponentName);
+            statement.bindString(7, accountId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(number, day, type, accountComponentName, accountId);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (object instanceof CallStatsBucket) {
+                final CallStatsBucket that = (CallStatsBucket) object;
+                return day == that.day && type == that.type
+                        && number.equals(that.number)
+                        && accountComponentName.equals(that.accountComponentName)
+                        && accountId.equals(that.accountId);
+            }
+            return false;
+        }
+    }
+
     /**
      * Removes all entries in the smartdial contact database.
      */
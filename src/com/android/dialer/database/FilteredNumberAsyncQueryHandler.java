@@ -24,20 +24,45 @@ import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabaseCorruptException;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.support.annotation.Nullable;
 import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
 
+import com.android.dialer.compat.BlockedNumbersSdkCompat;
 import com.android.dialer.compat.FilteredNumberCompat;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumber;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumberColumns;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumberSources;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumberTypes;
+import com.android.dialer.filterednumber.PrefixBlockMatcher;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
     private static final int NO_TOKEN = 0;
 
+    /**
+     * Columns identifying a number when blocking numbers in bulk, in order of preference. Some
+     * are null on platforms without {@link android.provider.BlockedNumberContract}.
+     */
+    private static final String[] NUMBER_KEY_COLUMNS = new String[] {
+            FilteredNumberColumns.NORMALIZED_NUMBER,
+            BlockedNumbersSdkCompat.E164_NUMBER,
+            FilteredNumberColumns.NUMBER,
+            BlockedNumbersSdkCompat.COLUMN_ORIGINAL_NUMBER
+    };
+
+    private final ContentResolver mContentResolver;
+
     public FilteredNumberAsyncQueryHandler(ContentResolver cr) {
         super(cr);
+        mContentResolver = cr;
     }
 
     /**
@@ -70,6 +95,14 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
         void onBlockComplete(Uri uri);
     }
 
+    public interface OnBlockPrefixesListener {
+        /**
+         * Invoked after inserting blocked prefixes.
+         * @param count The number of newly created rows.
+         */
+        void onBlockComplete(int count);
+    }
+
     public interface OnUnblockNumberListener {
         /**
          * Invoked after removing a blocked number
@@ -202,6 +235,56 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
         return true;
     }
 
+    /**
+     * Checks whether calls from a number are blocked, either by the number itself or by a
+     * prefix rule. Prefix rules are only stored in the {@link FilteredNumber} table, so they are
+     * queried there after the number itself wasn't found.
+     *
+     * @return {@code false} if the number can't be formatted to E164, in which case the
+     *     listener isn't called.
+     */
+    public boolean isBlockedNumberOrPrefix(
+            final OnCheckBlockedListener listener, String number, String countryIso) {
+        final String e164Number = PhoneNumberUtils.formatNumberToE164(number, countryIso);
+        return isBlockedNumber(new OnCheckBlockedListener() {
+            @Override
+            public void onCheckComplete(Integer id) {
+                if (id != null) {
+                    listener.onCheckComplete(id);
+                } else {
+                    isBlockedPrefix(listener, e164Number);
+                }
+            }
+        }, number, countryIso);
+    }
+
+    /**
+     * Looks up the shortest prefix rule matching the number, like
+     * {@link com.android.dialer.filterednumber.PrefixBlockMatcher#match}.
+     */
+    private void isBlockedPrefix(final OnCheckBlockedListener listener, String e164Number) {
+        startQuery(NO_TOKEN,
+                new Listener() {
+                    @Override
+                    protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
+                        try {
+                            listener.onCheckComplete(cursor != null && cursor.moveToFirst()
+                                    ? cursor.getInt(0) : null);
+                        } finally {
+                            if (cursor != null) {
+                                cursor.close();
+                            }
+                        }
+                    }
+                },
+                FilteredNumber.CONTENT_URI,
+                new String[]{FilteredNumberColumns._ID},
+                FilteredNumberColumns.TYPE + "=" + FilteredNumberTypes.BLOCKED_PREFIX
+                        + " AND ? LIKE " + FilteredNumberColumns.NORMALIZED_NUMBER + " || '%'",
+                new String[]{e164Number},
+                "LENGTH(" + FilteredNumberColumns.NORMALIZED_NUMBER + ") ASC");
+    }
+
     public void blockNumber(
             final OnBlockNumberListener listener, String number, @Nullable String countryIso) {
         blockNumber(listener, null, number, countryIso);
@@ -235,6 +318,111 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
                 }, FilteredNumberCompat.getContentUri(null), values);
     }
 
+    /**
+     * Block all numbers starting with one of the given prefixes. Prefix rules are always stored
+     * in the {@link FilteredNumber} table, as the framework block list only supports exact
+     * numbers.
+     *
+     * @param listener (optional) The {@link OnBlockPrefixesListener} called after the prefixes
+     * are blocked.
+     * @param prefixes The prefixes, each a '+' followed by the leading digits of E164 numbers,
+     * e.g. from {@link PrefixBlockMatcher#rangeToPrefixes}.
+     * @param countryIso (optional) The country iso the prefixes were entered in.
+     * @throws IllegalArgumentException if a prefix isn't in that form.
+     */
+    public void blockPrefixes(@Nullable final OnBlockPrefixesListener listener,
+            Collection<String> prefixes, @Nullable String countryIso) {
+        final List<ContentValues> valuesList = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) {
+            if (!PrefixBlockMatcher.isValidPrefix(prefix)) {
+                throw new IllegalArgumentException("Invalid prefix: " + prefix);
+            }
+            ContentValues values = new ContentValues();
+            values.put(FilteredNumberColumns.NUMBER, prefix);
+            values.put(FilteredNumberColumns.NORMALIZED_NUMBER, prefix);
+            values.put(FilteredNumberColumns.COUNTRY_ISO, countryIso);
+            values.put(FilteredNumberColumns.TYPE, FilteredNumberTypes.BLOCKED_PREFIX);
+            values.put(FilteredNumberColumns.SOURCE, FilteredNumberSources.USER);
+            valuesList.add(values);
+        }
+
+        new AsyncTask<Void, Void, Integer>() {
+            @Override
+            protected Integer doInBackground(Void... params) {
+                return blockNumbers(mContentResolver, FilteredNumber.CONTENT_URI, valuesList);
+            }
+
+            @Override
+            protected void onPostExecute(Integer count) {
+                if (listener != null) {
+                    listener.onBlockComplete(count);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Restores a prefix rule with the values returned by {@link #unblockPrefix}, when
+     * performing the 'undo' action after unblocking.
+     */
+    public void blockPrefix(final OnBlockNumberListener listener, ContentValues values) {
+        startInsert(NO_TOKEN,
+                new Listener() {
+                    @Override
+                    public void onInsertComplete(int token, Object cookie, Uri uri) {
+                        if (listener != null ) {
+                            listener.onBlockComplete(uri);
+                        }
+                    }
+                }, FilteredNumber.CONTENT_URI, values);
+    }
+
+    /**
+     * Block several numbers with a single provider operation, rather than one insert per number.
+     * Numbers which occur more than once in {@code valuesList} are only inserted once. Must be
+     * called on a background thread.
+     *
+     * @param uri The content uri of the block list to insert into.
+     * @return The number of inserted rows.
+     */
+    public static int blockNumbers(ContentResolver resolver, Uri uri,
+            Collection<ContentValues> valuesList) {
+        final List<ContentValues> unique = dedupeNumbers(valuesList);
+        if (unique.isEmpty()) {
+            return 0;
+        }
+        return resolver.bulkInsert(uri, unique.toArray(new ContentValues[unique.size()]));
+    }
+
+    /**
+     * Drops values whose number already occurred earlier in the collection. Numbers are
+     * compared by E164 format where available, and as given otherwise.
+     */
+    @VisibleForTesting
+    static List<ContentValues> dedupeNumbers(Collection<ContentValues> valuesList) {
+        final List<ContentValues> result = new ArrayList<>(valuesList.size());
+        final Set<String> keys = new HashSet<>();
+        for (ContentValues values : valuesList) {
+            final String key = getNumberKey(values);
+            if (key == null || keys.add(key)) {
+                result.add(values);
+            }
+        }
+        return result;
+    }
+
+    private static String getNumberKey(ContentValues values) {
+        for (String column : NUMBER_KEY_COLUMNS) {
+            if (column != null) {
+                final String value = values.getAsString(column);
+                if (!TextUtils.isEmpty(value)) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Unblocks the number with the given id.
      *
@@ -249,6 +437,20 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
         unblock(listener, FilteredNumberCompat.getContentUri(id));
     }
 
+    /**
+     * Removes the prefix rule with the given id.
+     *
+     * @param listener (optional) The {@link OnUnblockNumberListener} called after the prefix is
+     * unblocked.
+     * @param id The {@link FilteredNumber} row id of the prefix rule.
+     */
+    public void unblockPrefix(@Nullable final OnUnblockNumberListener listener, Integer id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Null id passed into unblockPrefix");
+        }
+        unblock(listener, ContentUris.withAppendedId(FilteredNumber.CONTENT_URI, id));
+    }
+
     /**
      * Removes row from database.
      * @param listener (optional) The {@link OnUnblockNumberListener} called after the number is
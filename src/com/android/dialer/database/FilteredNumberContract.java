@@ -43,6 +43,11 @@ public final class FilteredNumberContract {
          * Dialer will disconnect the call without sending the caller to voicemail.
          */
         static final int BLOCKED_NUMBER = 1;
+        /**
+         * Dialer will disconnect calls from all numbers starting with the NORMALIZED_NUMBER,
+         * which holds a '+' followed by the leading digits of the E164 numbers to block.
+         */
+        static final int BLOCKED_PREFIX = 2;
     }
 
     /** The original source of the filtered number, e.g. the user manually added it. */
@@ -37,6 +37,8 @@ import com.android.dialerbind.ObjectFactory;
 import com.google.common.annotations.VisibleForTesting;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Filtered number content provider.
@@ -120,6 +122,55 @@ public class FilteredNumberProvider extends ContentProvider {
         return ContentUris.withAppendedId(uri, id);
     }
 
+    /**
+     * Inserts all values in a single transaction. Values with a normalized number which is
+     * already blocked, or which occurs earlier in {@code valuesArray}, are skipped.
+     *
+     * @return The number of inserted rows.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] valuesArray) {
+        if (sUriMatcher.match(uri) != FILTERED_NUMBERS_TABLE) {
+            throw new IllegalArgumentException("Unknown uri: " + uri);
+        }
+
+        SQLiteDatabase db = mDialerDatabaseHelper.getWritableDatabase();
+        final Set<String> normalizedNumbers = new HashSet<>();
+        String countryIso = null;
+        int inserted = 0;
+        db.beginTransaction();
+        try {
+            for (ContentValues values : valuesArray) {
+                final String normalizedNumber =
+                        values.getAsString(FilteredNumberColumns.NORMALIZED_NUMBER);
+                if (normalizedNumber != null && !normalizedNumbers.add(normalizedNumber)) {
+                    continue;
+                }
+                if (values.getAsString(FilteredNumberColumns.COUNTRY_ISO) == null) {
+                    // Look this up once rather than for every row in setDefaultValues()
+                    if (countryIso == null) {
+                        countryIso = GeoUtil.getCurrentCountryIso(getContext());
+                    }
+                    values.put(FilteredNumberColumns.COUNTRY_ISO, countryIso);
+                }
+                setDefaultValues(values);
+                long id = db.insertWithOnConflict(DialerDatabaseHelper.Tables.FILTERED_NUMBER_TABLE,
+                        null, values, SQLiteDatabase.CONFLICT_IGNORE);
+                if (id >= 0) {
+                    inserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (inserted > 0) {
+            notifyChange(uri);
+        }
+        return inserted;
+    }
+
     @VisibleForTesting
     protected long getCurrentTimeMs() {
         return System.currentTimeMillis();
@@ -77,10 +77,12 @@ public class BlockNumberDialogFragment extends DialogFragment {
     private static final String ARG_COUNTRY_ISO = "argCountryIso";
     private static final String ARG_DISPLAY_NUMBER = "argDisplayNumber";
     private static final String ARG_PARENT_VIEW_ID = "parentViewId";
+    private static final String ARG_IS_PREFIX = "argIsPrefix";
 
     private String mNumber;
     private String mDisplayNumber;
     private String mCountryIso;
+    private boolean mIsPrefix;
 
     private FilteredNumberAsyncQueryHandler mHandler;
     private View mParentView;
@@ -102,6 +104,24 @@ public class BlockNumberDialogFragment extends DialogFragment {
         newFragment.show(fragmentManager, BlockNumberDialogFragment.BLOCK_DIALOG_FRAGMENT);
     }
 
+    /**
+     * Shows the dialog for unblocking a prefix rule. Prefix rules are created with
+     * {@link BlockPrefixDialogFragment}.
+     */
+    public static void showForPrefix(
+            Integer blockId,
+            String prefix,
+            Integer parentViewId,
+            FragmentManager fragmentManager,
+            Callback callback) {
+        final BlockNumberDialogFragment newFragment = BlockNumberDialogFragment.newInstance(
+                blockId, prefix, null, prefix, parentViewId);
+        newFragment.getArguments().putBoolean(ARG_IS_PREFIX, true);
+
+        newFragment.setCallback(callback);
+        newFragment.show(fragmentManager, BlockNumberDialogFragment.BLOCK_DIALOG_FRAGMENT);
+    }
+
     private static BlockNumberDialogFragment newInstance(
             Integer blockId,
             String number,
@@ -136,12 +156,27 @@ public class BlockNumberDialogFragment extends DialogFragment {
         mNumber = getArguments().getString(ARG_NUMBER);
         mDisplayNumber = getArguments().getString(ARG_DISPLAY_NUMBER);
         mCountryIso = getArguments().getString(ARG_COUNTRY_ISO);
+        mIsPrefix = getArguments().getBoolean(ARG_IS_PREFIX);
 
         if (TextUtils.isEmpty(mDisplayNumber)) {
             mDisplayNumber = mNumber;
         }
 
-        mHandler = new FilteredNumberAsyncQueryHandler(getContext().getContentResolver());
+        final BlockedNumberIndex blockedNumberIndex = BlockedNumberIndex.getInstance(getContext());
+        mHandler = new FilteredNumberAsyncQueryHandler(getContext().getContentResolver()) {
+            // Callers reading the index right after a (un)block must not see the old state
+            @Override
+            protected void onInsertComplete(int token, Object cookie, Uri uri) {
+                blockedNumberIndex.invalidate();
+                super.onInsertComplete(token, cookie, uri);
+            }
+
+            @Override
+            protected void onDeleteComplete(int token, Object cookie, int result) {
+                blockedNumberIndex.invalidate();
+                super.onDeleteComplete(token, cookie, result);
+            }
+        };
         mVoicemailEnabledChecker = new VisualVoicemailEnabledChecker(getActivity(), null);
       	/**
          * Choose not to update VoicemailEnabledChecker, as checks should already been done in
@@ -156,7 +191,8 @@ public class BlockNumberDialogFragment extends DialogFragment {
             title = null;
             okText = getString(R.string.unblock_number_ok);
             message = ContactDisplayUtils.getTtsSpannedPhoneNumber(getResources(),
-                    R.string.unblock_number_confirmation_title,
+                    mIsPrefix ? R.string.unblock_prefix_confirmation_title
+                            : R.string.unblock_number_confirmation_title,
                     mDisplayNumber).toString();
         } else {
             title = ContactDisplayUtils.getTtsSpannedPhoneNumber(getResources(),
@@ -192,7 +228,8 @@ public class BlockNumberDialogFragment extends DialogFragment {
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
-        if (!FilteredNumbersUtil.canBlockNumber(getActivity(), mNumber, mCountryIso)) {
+        if (!mIsPrefix
+                && !FilteredNumbersUtil.canBlockNumber(getActivity(), mNumber, mCountryIso)) {
             dismiss();
             Toast.makeText(getContext(),
                     ContactDisplayUtils.getTtsSpannedPhoneNumber(
@@ -216,12 +253,14 @@ public class BlockNumberDialogFragment extends DialogFragment {
 
     private CharSequence getBlockedMessage() {
         return ContactDisplayUtils.getTtsSpannedPhoneNumber(getResources(),
-                R.string.snackbar_number_blocked, mDisplayNumber);
+                mIsPrefix ? R.string.snackbar_prefix_blocked : R.string.snackbar_number_blocked,
+                mDisplayNumber);
     }
 
     private CharSequence getUnblockedMessage() {
         return ContactDisplayUtils.getTtsSpannedPhoneNumber(getResources(),
-                R.string.snackbar_number_unblocked, mDisplayNumber);
+                mIsPrefix ? R.string.snackbar_prefix_unblocked : R.string.snackbar_number_unblocked,
+                mDisplayNumber);
     }
 
     private int getActionTextColor() {
@@ -294,7 +333,7 @@ public class BlockNumberDialogFragment extends DialogFragment {
             }
         };
 
-        mHandler.unblock(new OnUnblockNumberListener() {
+        final OnUnblockNumberListener onUnblockNumberListener = new OnUnblockNumberListener() {
             @Override
             public void onUnblockComplete(int rows, final ContentValues values) {
                 final View.OnClickListener undoListener = new View.OnClickListener() {
@@ -302,7 +341,11 @@ public class BlockNumberDialogFragment extends DialogFragment {
                     public void onClick(View view) {
                         // Re-insert the row on 'undo', with a new ID.
                         Logger.logInteraction(InteractionEvent.UNDO_UNBLOCK_NUMBER);
-                        mHandler.blockNumber(onUndoListener, values);
+                        if (mIsPrefix) {
+                            mHandler.blockPrefix(onUndoListener, values);
+                        } else {
+                            mHandler.blockNumber(onUndoListener, values);
+                        }
                     }
                 };
 
@@ -315,6 +358,12 @@ public class BlockNumberDialogFragment extends DialogFragment {
                     callback.onUnfilterNumberSuccess();
                 }
             }
-        }, getArguments().getInt(ARG_BLOCK_ID));
+        };
+
+        if (mIsPrefix) {
+            mHandler.unblockPrefix(onUnblockNumberListener, getArguments().getInt(ARG_BLOCK_ID));
+        } else {
+            mHandler.unblock(onUnblockNumberListener, getArguments().getInt(ARG_BLOCK_ID));
+        }
     }
 }
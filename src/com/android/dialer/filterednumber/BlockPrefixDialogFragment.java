@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.filterednumber;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
+import android.app.FragmentManager;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.support.design.widget.Snackbar;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.Toast;
+
+import com.android.contacts.common.GeoUtil;
+import com.android.dialer.R;
+import com.android.dialer.database.FilteredNumberAsyncQueryHandler;
+import com.android.dialer.database.FilteredNumberAsyncQueryHandler.OnBlockPrefixesListener;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fragment for entering and blocking a prefix, or a range of numbers which is stored as the
+ * prefixes covering it. Prefix rules are unblocked with
+ * {@link BlockNumberDialogFragment#showForPrefix}.
+ */
+public class BlockPrefixDialogFragment extends DialogFragment {
+    private static final String BLOCK_PREFIX_DIALOG_FRAGMENT = "BlockPrefixDialog";
+
+    private static final String ARG_PARENT_VIEW_ID = "parentViewId";
+
+    private View mParentView;
+    private EditText mStartEditText;
+    private EditText mEndEditText;
+
+    public static void show(Integer parentViewId, FragmentManager fragmentManager) {
+        final BlockPrefixDialogFragment fragment = new BlockPrefixDialogFragment();
+        final Bundle args = new Bundle();
+        args.putInt(ARG_PARENT_VIEW_ID, parentViewId.intValue());
+        fragment.setArguments(args);
+        fragment.show(fragmentManager, BLOCK_PREFIX_DIALOG_FRAGMENT);
+    }
+
+    @Override
+    public Context getContext() {
+        return getActivity();
+    }
+
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        super.onCreateDialog(savedInstanceState);
+        mParentView = getActivity().findViewById(getArguments().getInt(ARG_PARENT_VIEW_ID));
+
+        final View view = LayoutInflater.from(getActivity())
+                .inflate(R.layout.block_prefix_dialog, null);
+        mStartEditText = (EditText) view.findViewById(R.id.block_prefix_start);
+        mEndEditText = (EditText) view.findViewById(R.id.block_prefix_end);
+
+        return new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.block_prefix_dialog_title)
+                .setView(view)
+                .setPositiveButton(R.string.block_number_ok, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int id) {
+                        blockPrefix();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .create();
+    }
+
+    @Override
+    public void onPause() {
+        // Dismiss on rotation, like BlockNumberDialogFragment.
+        dismiss();
+
+        super.onPause();
+    }
+
+    private void blockPrefix() {
+        final String start = PhoneNumberUtils.normalizeNumber(mStartEditText.getText().toString());
+        final String end = PhoneNumberUtils.normalizeNumber(mEndEditText.getText().toString());
+        final boolean isRange = !TextUtils.isEmpty(end) && !end.equals(start);
+
+        final List<String> prefixes;
+        if (isRange) {
+            try {
+                prefixes = PrefixBlockMatcher.rangeToPrefixes(start, end);
+            } catch (IllegalArgumentException e) {
+                showInvalidToast(start + " - " + end);
+                return;
+            }
+        } else if (PrefixBlockMatcher.isValidPrefix(start)) {
+            prefixes = Collections.singletonList(start);
+        } else {
+            showInvalidToast(start);
+            return;
+        }
+
+        final CharSequence message = isRange
+                ? getString(R.string.snackbar_range_blocked, start, end)
+                : getString(R.string.snackbar_prefix_blocked, start);
+        final View parentView = mParentView;
+        final BlockedNumberIndex blockedNumberIndex = BlockedNumberIndex.getInstance(getContext());
+
+        new FilteredNumberAsyncQueryHandler(getContext().getContentResolver()).blockPrefixes(
+                new OnBlockPrefixesListener() {
+                    @Override
+                    public void onBlockComplete(int count) {
+                        // Callers reading the index right after blocking must see the new rules
+                        blockedNumberIndex.invalidate();
+                        Snackbar.make(parentView, message, Snackbar.LENGTH_LONG).show();
+                    }
+                }, prefixes, GeoUtil.getCurrentCountryIso(getContext()));
+    }
+
+    private void showInvalidToast(String input) {
+        Toast.makeText(getContext(), getString(R.string.invalid_prefix, input),
+                Toast.LENGTH_SHORT).show();
+    }
+}
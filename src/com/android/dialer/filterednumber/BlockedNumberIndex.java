@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.filterednumber;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.dialer.compat.BlockedNumbersSdkCompat;
+import com.android.dialer.compat.FilteredNumberCompat;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumber;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumberColumns;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumberTypes;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide, in-memory copy of the blocked numbers.
+ *
+ * The numbers are loaded from whichever provider {@link FilteredNumberCompat} currently uses,
+ * and reloaded in the background whenever that provider changes. Prefix rules always come from
+ * the {@link FilteredNumber} table, as the framework provider only supports exact numbers.
+ *
+ * Once loaded, lookups are synchronous and don't allocate, so they can be done on the UI thread
+ * and the incoming call path. Callers should fall back to {@link
+ * com.android.dialer.database.FilteredNumberAsyncQueryHandler} while {@link #isLoaded()} returns
+ * {@code false}. Changes mark the index stale as soon as they are seen, so {@link #isLoaded()}
+ * also returns {@code false} until the reload following a change finished.
+ */
+public class BlockedNumberIndex {
+    private static final String TAG = "BlockedNumberIndex";
+    private static final boolean DEBUG = false;
+
+    /** Returned by {@link #getBlockedId} for numbers which aren't blocked */
+    public static final int NOT_BLOCKED = -1;
+
+    /** Coalesces bursts of provider changes, e.g. during migration or import */
+    private static final long RELOAD_DELAY_MS = 200;
+
+    private static BlockedNumberIndex sInstance;
+
+    /**
+     * Callback for changes to the blocked numbers, invoked on the main thread once the index
+     * reflects them.
+     */
+    public interface Listener {
+        void onBlockedNumbersChanged();
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final Runnable mNotifyTask = new Runnable() {
+        @Override
+        public void run() {
+            for (Listener listener : mListeners) {
+                listener.onBlockedNumbersChanged();
+            }
+        }
+    };
+    private final Runnable mReloadTask = new Runnable() {
+        @Override
+        public void run() {
+            reload();
+        }
+    };
+    /** Without a handler, changes are seen on the binder thread right away */
+    @VisibleForTesting
+    final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    };
+
+    /** Replaced as a whole on every reload, null until the first load finishes */
+    private volatile Snapshot mSnapshot;
+    /** Incremented on every change, a snapshot of an older generation is stale */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    private static class Snapshot {
+        final Uri uri;
+        final int generation;
+        final Map<String, Integer> ids;
+        final PrefixBlockMatcher prefixes;
+
+        Snapshot(Uri uri, int generation, Map<String, Integer> ids,
+                PrefixBlockMatcher prefixes) {
+            this.uri = uri;
+            this.generation = generation;
+            this.ids = ids;
+            this.prefixes = prefixes;
+        }
+    }
+
+    public static synchronized BlockedNumberIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BlockedNumberIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    BlockedNumberIndex(Context context) {
+        mContext = context;
+
+        HandlerThread thread =
+                new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+
+        mContext.getContentResolver().registerContentObserver(
+                FilteredNumber.CONTENT_URI, true, mObserver);
+        if (BlockedNumbersSdkCompat.CONTENT_URI != null) {
+            mContext.getContentResolver().registerContentObserver(
+                    BlockedNumbersSdkCompat.CONTENT_URI, true, mObserver);
+        }
+
+        mHandler.post(mReloadTask);
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Marks the index stale after the blocked numbers were changed, until it is reloaded. The
+     * provider's change notification does the same, but may arrive after whoever made the
+     * change already acted on it.
+     */
+    public void invalidate() {
+        mGeneration.incrementAndGet();
+        scheduleReload();
+    }
+
+    /**
+     * @return {@code true} if the index reflects the blocked numbers of the provider currently
+     *     in use, {@code false} if it is still loading, reloading after a change, or switching to
+     *     another provider.
+     */
+    public boolean isLoaded() {
+        final Snapshot snapshot = mSnapshot;
+        if (snapshot == null || snapshot.generation != mGeneration.get()) {
+            return false;
+        }
+        if (!snapshot.uri.equals(FilteredNumberCompat.getContentUri(null))) {
+            // Migrated to the other provider since the last load
+            scheduleReload();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param e164Number The number in E164 format.
+     * @return {@code true} if the number is blocked, either by itself or by a prefix rule.
+     *     Always {@code false} until the first load finished, and possibly stale unless
+     *     {@link #isLoaded()}.
+     */
+    public boolean isBlocked(String e164Number) {
+        return getBlockedId(e164Number) != NOT_BLOCKED
+                || getPrefixRuleId(e164Number) != NOT_BLOCKED;
+    }
+
+    /**
+     * @param e164Number The number in E164 format.
+     * @return The provider row id of the blocked number, or {@link #NOT_BLOCKED} if the number
+     *     itself isn't blocked or the first load didn't finish. Possibly stale unless
+     *     {@link #isLoaded()}. Prefix rules aren't considered, so the id can be used with
+     *     {@link FilteredNumberCompat#getContentUri}.
+     */
+    public int getBlockedId(String e164Number) {
+        final Snapshot snapshot = mSnapshot;
+        if (snapshot == null || TextUtils.isEmpty(e164Number)) {
+            return NOT_BLOCKED;
+        }
+        final Integer id = snapshot.ids.get(e164Number);
+        return id != null ? id : NOT_BLOCKED;
+    }
+
+    /**
+     * @param e164Number The number in E164 format.
+     * @return The {@link FilteredNumber} row id of a prefix rule matching the number, or
+     *     {@link #NOT_BLOCKED} if there is none or the first load didn't finish. Possibly stale
+     *     unless {@link #isLoaded()}.
+     */
+    public int getPrefixRuleId(String e164Number) {
+        final Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            return NOT_BLOCKED;
+        }
+        final int id = snapshot.prefixes.match(e164Number);
+        return id != PrefixBlockMatcher.NO_MATCH ? id : NOT_BLOCKED;
+    }
+
+    private void scheduleReload() {
+        mHandler.removeCallbacks(mReloadTask);
+        mHandler.postDelayed(mReloadTask, RELOAD_DELAY_MS);
+    }
+
+    private void reload() {
+        final Uri uri = FilteredNumberCompat.getContentUri(null);
+        if (uri == null) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        // Changes made while querying leave the snapshot stale and schedule another reload
+        final int generation = mGeneration.get();
+        Cursor cursor = null;
+        try {
+            cursor = mContext.getContentResolver().query(uri,
+                    FilteredNumberCompat.filter(new String[] {
+                            FilteredNumberCompat.getIdColumnName(),
+                            FilteredNumberCompat.getE164NumberColumnName(),
+                            FilteredNumberCompat.getTypeColumnName()
+                    }),
+                    FilteredNumberCompat.useNewFiltering() ? null : FilteredNumberColumns.TYPE
+                            + "=" + FilteredNumberTypes.BLOCKED_NUMBER,
+                    null, null);
+        } catch (SecurityException e) {
+            // Blocked numbers can only be read while we are the default dialer
+            Log.w(TAG, "Unable to read blocked numbers", e);
+        }
+        if (cursor == null) {
+            mSnapshot = null;
+            return;
+        }
+
+        final Map<String, Integer> ids;
+        try {
+            ids = readBlockedNumbers(cursor);
+        } finally {
+            cursor.close();
+        }
+
+        mSnapshot = new Snapshot(uri, generation, ids, loadPrefixRules());
+        mMainHandler.post(mNotifyTask);
+
+        if (DEBUG) {
+            Log.d(TAG, "Loaded " + mSnapshot.ids.size() + " blocked numbers and "
+                    + mSnapshot.prefixes.getPrefixCount() + " prefixes in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    private PrefixBlockMatcher loadPrefixRules() {
+        final Cursor cursor = mContext.getContentResolver().query(FilteredNumber.CONTENT_URI,
+                new String[] {
+                        FilteredNumberColumns._ID,
+                        FilteredNumberColumns.NORMALIZED_NUMBER
+                },
+                FilteredNumberColumns.TYPE + "=" + FilteredNumberTypes.BLOCKED_PREFIX,
+                null, null);
+        if (cursor == null) {
+            return PrefixBlockMatcher.empty();
+        }
+        try {
+            return readPrefixRules(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads the ids and E164 numbers from a cursor with the id in the first and the E164 number
+     * in the second column.
+     */
+    @VisibleForTesting
+    static Map<String, Integer> readBlockedNumbers(Cursor cursor) {
+        final Map<String, Integer> ids = new HashMap<>(Math.max(cursor.getCount() * 2, 16));
+        while (cursor.moveToNext()) {
+            final String e164Number = cursor.getString(1);
+            if (!TextUtils.isEmpty(e164Number) && !ids.containsKey(e164Number)) {
+                ids.put(e164Number, cursor.getInt(0));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Compiles the prefix rules from a cursor with the id in the first and the prefix in the
+     * second column.
+     */
+    @VisibleForTesting
+    static PrefixBlockMatcher readPrefixRules(Cursor cursor) {
+        if (cursor.getCount() == 0) {
+            return PrefixBlockMatcher.empty();
+        }
+        final PrefixBlockMatcher.Builder builder = new PrefixBlockMatcher.Builder();
+        while (cursor.moveToNext()) {
+            builder.add(cursor.getString(1), cursor.getInt(0));
+        }
+        return builder.build();
+    }
+}
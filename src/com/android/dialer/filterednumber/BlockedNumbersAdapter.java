@@ -26,6 +26,7 @@ import com.android.contacts.common.GeoUtil;
 import com.android.dialer.R;
 import com.android.dialer.calllog.ContactInfoHelper;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumberColumns;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumberTypes;
 import com.android.dialer.logging.InteractionEvent;
 import com.android.dialer.logging.Logger;
 
@@ -59,6 +60,24 @@ public class BlockedNumbersAdapter extends NumbersAdapter {
                 FilteredNumberColumns.NORMALIZED_NUMBER));
 
         final View deleteButton = view.findViewById(R.id.delete_button);
+        if (cursor.getInt(cursor.getColumnIndex(FilteredNumberColumns.TYPE))
+                == FilteredNumberTypes.BLOCKED_PREFIX) {
+            deleteButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    BlockNumberDialogFragment.showForPrefix(
+                            id,
+                            normalizedNumber,
+                            R.id.blocked_numbers_activity_container,
+                            getFragmentManager(),
+                            null);
+                }
+            });
+
+            updatePrefixView(view, normalizedNumber);
+            return;
+        }
+
         deleteButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
@@ -48,6 +48,7 @@ public class BlockedNumbersFragment extends ListFragment
         implements LoaderManager.LoaderCallbacks<Cursor>, View.OnClickListener,
         VisualVoicemailEnabledChecker.Callback {
     private static final char ADD_BLOCKED_NUMBER_ICON_LETTER = '+';
+    private static final char ADD_BLOCKED_PREFIX_ICON_LETTER = '#';
 
     private BlockedNumbersMigrator blockedNumbersMigratorForTest;
     protected View migratePromoView;
@@ -73,13 +74,8 @@ public class BlockedNumbersFragment extends ListFragment
         getListView().addHeaderView(inflater.inflate(R.layout.blocked_number_header, null));
         getListView().addFooterView(inflater.inflate(R.layout.blocked_number_footer, null));
         //replace the icon for add number with LetterTileDrawable(), so it will have identical style
-        ImageView addNumberIcon = (ImageView) getActivity().findViewById(R.id.add_number_icon);
-        LetterTileDrawable drawable = new LetterTileDrawable(getResources());
-        drawable.setLetter(ADD_BLOCKED_NUMBER_ICON_LETTER);
-        drawable.setColor(ActivityCompat.getColor(getActivity(),
-                R.color.add_blocked_number_icon_color));
-        drawable.setIsCircular(true);
-        addNumberIcon.setImageDrawable(drawable);
+        setAddIcon(R.id.add_number_icon, ADD_BLOCKED_NUMBER_ICON_LETTER);
+        setAddIcon(R.id.add_prefix_icon, ADD_BLOCKED_PREFIX_ICON_LETTER);
 
         if (mAdapter == null) {
             mAdapter = BlockedNumbersAdapter.newBlockedNumbersAdapter(
@@ -97,6 +93,7 @@ public class BlockedNumbersFragment extends ListFragment
         getListView().findViewById(R.id.import_button).setOnClickListener(this);
         getListView().findViewById(R.id.view_numbers_button).setOnClickListener(this);
         getListView().findViewById(R.id.add_number_linear_layout).setOnClickListener(this);
+        getListView().findViewById(R.id.add_prefix_linear_layout).setOnClickListener(this);
 
         footerText = (TextView) getActivity().findViewById(
             R.id.blocked_number_footer_textview);
@@ -105,6 +102,16 @@ public class BlockedNumbersFragment extends ListFragment
         updateActiveVoicemailProvider();
     }
 
+    private void setAddIcon(int iconViewId, char letter) {
+        ImageView addIcon = (ImageView) getActivity().findViewById(iconViewId);
+        LetterTileDrawable drawable = new LetterTileDrawable(getResources());
+        drawable.setLetter(letter);
+        drawable.setColor(ActivityCompat.getColor(getActivity(),
+                R.color.add_blocked_number_icon_color));
+        drawable.setIsCircular(true);
+        addIcon.setImageDrawable(drawable);
+    }
+
     @Override
     public void onDestroy() {
         setListAdapter(null);
@@ -129,17 +136,19 @@ public class BlockedNumbersFragment extends ListFragment
         actionBar.setDisplayHomeAsUpEnabled(true);
         actionBar.setDisplayShowHomeEnabled(true);
         actionBar.setDisplayShowTitleEnabled(true);
-        actionBar.setTitle(R.string.manage_blocked_numbers_label);
+        actionBar.setTitle(FilteredNumberCompat.useNewFiltering()
+                ? R.string.manage_blocked_prefixes_label : R.string.manage_blocked_numbers_label);
 
         // If the device can use the framework blocking solution, users should not be able to add
         // new blocked numbers from the Blocked Management UI. They will be shown a promo card
-        // asking them to migrate to new blocking instead.
+        // asking them to migrate to new blocking instead. Prefix rules aren't supported by the
+        // framework, so they are still managed here, also after migrating.
         if (FilteredNumberCompat.canUseNewFiltering()) {
-            migratePromoView.setVisibility(View.VISIBLE);
+            migratePromoView.setVisibility(FilteredNumberCompat.hasMigratedToNewBlocking()
+                    ? View.GONE : View.VISIBLE);
             blockedNumbersText.setVisibility(View.GONE);
             getListView().findViewById(R.id.add_number_linear_layout).setVisibility(View.GONE);
             getListView().findViewById(R.id.add_number_linear_layout).setOnClickListener(null);
-            mBlockedNumberListDivider.setVisibility(View.GONE);
             mImportSettings.setVisibility(View.GONE);
             getListView().findViewById(R.id.import_button).setOnClickListener(null);
             getListView().findViewById(R.id.view_numbers_button).setOnClickListener(null);
@@ -180,10 +189,17 @@ public class BlockedNumbersFragment extends ListFragment
             FilteredNumberContract.FilteredNumberColumns._ID,
             FilteredNumberContract.FilteredNumberColumns.COUNTRY_ISO,
             FilteredNumberContract.FilteredNumberColumns.NUMBER,
-            FilteredNumberContract.FilteredNumberColumns.NORMALIZED_NUMBER
+            FilteredNumberContract.FilteredNumberColumns.NORMALIZED_NUMBER,
+            FilteredNumberContract.FilteredNumberColumns.TYPE
         };
-        final String selection = FilteredNumberContract.FilteredNumberColumns.TYPE
-                + "=" + FilteredNumberContract.FilteredNumberTypes.BLOCKED_NUMBER;
+        // After migrating, blocked numbers are managed by the framework and only the prefix rules
+        // are left in the Dialer table
+        final String selection = FilteredNumberCompat.useNewFiltering()
+                ? FilteredNumberContract.FilteredNumberColumns.TYPE + "="
+                        + FilteredNumberContract.FilteredNumberTypes.BLOCKED_PREFIX
+                : FilteredNumberContract.FilteredNumberColumns.TYPE + " IN ("
+                        + FilteredNumberContract.FilteredNumberTypes.BLOCKED_NUMBER + ","
+                        + FilteredNumberContract.FilteredNumberTypes.BLOCKED_PREFIX + ")";
         return new CursorLoader(
                 getContext(), FilteredNumberContract.FilteredNumber.CONTENT_URI, projection,
                 selection, null, null);
@@ -192,7 +208,7 @@ public class BlockedNumbersFragment extends ListFragment
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         mAdapter.swapCursor(data);
-        if (FilteredNumberCompat.canUseNewFiltering() || data.getCount() == 0) {
+        if (data.getCount() == 0) {
             mBlockedNumberListDivider.setVisibility(View.INVISIBLE);
         } else {
             mBlockedNumberListDivider.setVisibility(View.VISIBLE);
@@ -215,6 +231,9 @@ public class BlockedNumbersFragment extends ListFragment
         int resId = view.getId();
         if (resId == R.id.add_number_linear_layout) {
             activity.showSearchUi();
+        } else if (resId == R.id.add_prefix_linear_layout) {
+            BlockPrefixDialogFragment.show(
+                    R.id.blocked_numbers_activity_container, getFragmentManager());
         } else if (resId == R.id.view_numbers_button) {
             activity.showNumbersToImportPreviewUi();
         } else if (resId == R.id.import_button) {
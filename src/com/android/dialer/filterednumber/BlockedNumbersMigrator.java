@@ -25,11 +25,18 @@ import android.os.AsyncTask;
 
 import com.android.dialer.compat.BlockedNumbersSdkCompat;
 import com.android.dialer.compat.FilteredNumberCompat;
+import com.android.dialer.database.FilteredNumberAsyncQueryHandler;
 import com.android.dialer.database.FilteredNumberContract;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumber;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumberColumns;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumberTypes;
 import com.android.incallui.Log;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Class which should be used to migrate numbers from {@link FilteredNumberContract} blocking to
  * {@link android.provider.BlockedNumberContract} blocking.
@@ -98,7 +105,9 @@ public class BlockedNumbersMigrator {
 
     private static boolean migrateToNewBlockingInBackground(ContentResolver resolver) {
         try (Cursor cursor = resolver.query(FilteredNumber.CONTENT_URI,
-                new String[]{FilteredNumberColumns.NUMBER}, null, null, null)) {
+                new String[]{FilteredNumberColumns.NUMBER},
+                FilteredNumberColumns.TYPE + "=" + FilteredNumberTypes.BLOCKED_NUMBER,
+                null, null)) {
             if (cursor == null) {
                 Log.i(TAG, "migrate - cursor was null");
                 return false;
@@ -106,30 +115,40 @@ public class BlockedNumbersMigrator {
 
             Log.i(TAG, "migrate - attempting to migrate " + cursor.getCount() + "numbers");
 
-            int numMigrated = 0;
+            final Set<String> alreadyBlocked = getNumbersInNewBlocking(resolver);
+            final List<ContentValues> valuesList = new ArrayList<>(cursor.getCount());
             while (cursor.moveToNext()) {
                 String originalNumber = cursor
                         .getString(cursor.getColumnIndex(FilteredNumberColumns.NUMBER));
-                if (isNumberInNewBlocking(resolver, originalNumber)) {
+                if (!alreadyBlocked.add(originalNumber)) {
                     Log.i(TAG, "migrate - number was already blocked in new blocking");
                     continue;
                 }
                 ContentValues values = new ContentValues();
                 values.put(BlockedNumbersSdkCompat.COLUMN_ORIGINAL_NUMBER, originalNumber);
-                resolver.insert(BlockedNumbersSdkCompat.CONTENT_URI, values);
-                ++numMigrated;
+                valuesList.add(values);
             }
+            int numMigrated = FilteredNumberAsyncQueryHandler.blockNumbers(resolver,
+                    BlockedNumbersSdkCompat.CONTENT_URI, valuesList);
             Log.i(TAG, "migrate - migration complete. " + numMigrated + " numbers migrated.");
             return true;
         }
     }
 
-    private static boolean isNumberInNewBlocking(ContentResolver resolver, String originalNumber) {
+    /**
+     * Reads all numbers in the {@link android.provider.BlockedNumberContract} block list with a
+     * single query, instead of checking every migrated number separately.
+     */
+    private static Set<String> getNumbersInNewBlocking(ContentResolver resolver) {
+        final Set<String> numbers = new HashSet<>();
         try (Cursor cursor = resolver.query(BlockedNumbersSdkCompat.CONTENT_URI,
-                new String[]{BlockedNumbersSdkCompat._ID},
-                BlockedNumbersSdkCompat.COLUMN_ORIGINAL_NUMBER + " = ?",
-                new String[] {originalNumber}, null)) {
-            return cursor != null && cursor.getCount() != 0;
+                new String[]{BlockedNumbersSdkCompat.COLUMN_ORIGINAL_NUMBER}, null, null, null)) {
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    numbers.add(cursor.getString(0));
+                }
+            }
         }
+        return numbers;
     }
 }
@@ -41,6 +41,8 @@ import com.android.dialer.database.FilteredNumberContract.FilteredNumberColumns;
 import com.android.dialer.logging.InteractionEvent;
 import com.android.dialer.logging.Logger;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -164,8 +166,6 @@ public class FilteredNumbersUtil {
     public static void importSendToVoicemailContacts(
             final Context context, final ImportSendToVoicemailContactsListener listener) {
         Logger.logInteraction(InteractionEvent.IMPORT_SEND_TO_VOICEMAIL);
-        final FilteredNumberAsyncQueryHandler mFilteredNumberAsyncQueryHandler =
-                new FilteredNumberAsyncQueryHandler(context.getContentResolver());
 
         final AsyncTask<Object, Void, Boolean> task = new AsyncTask<Object, Void, Boolean>() {
             @Override
@@ -186,22 +186,29 @@ public class FilteredNumbersUtil {
                     return false;
                 }
 
+                // Collect the phone numbers of the contacts, keyed by normalized number as
+                // contacts often share numbers.
+                final Map<String, ContentValues> numbersToBlock = new LinkedHashMap<>();
                 try {
                     while (phoneCursor.moveToNext()) {
                         final String normalizedNumber = phoneCursor.getString(
                                 PhoneQuery.NORMALIZED_NUMBER_COLUMN_INDEX);
                         final String number = phoneCursor.getString(
                                 PhoneQuery.NUMBER_COLUMN_INDEX);
-                        if (normalizedNumber != null) {
-                            // Block the phone number of the contact.
-                            mFilteredNumberAsyncQueryHandler.blockNumber(
-                                    null, normalizedNumber, number, null);
+                        if (normalizedNumber != null
+                                && !numbersToBlock.containsKey(normalizedNumber)) {
+                            numbersToBlock.put(normalizedNumber, FilteredNumberCompat
+                                    .newBlockNumberContentValues(number, normalizedNumber, null));
                         }
                     }
                 } finally {
                     phoneCursor.close();
                 }
 
+                // Block the phone numbers of the contacts in one go.
+                FilteredNumberAsyncQueryHandler.blockNumbers(context.getContentResolver(),
+                        FilteredNumberCompat.getContentUri(null), numbersToBlock.values());
+
                 // Clear SEND_TO_VOICEMAIL on all contacts. The setting has been imported to Dialer.
                 ContentValues newValues = new ContentValues();
                 newValues.put(Contacts.SEND_TO_VOICEMAIL, 0);
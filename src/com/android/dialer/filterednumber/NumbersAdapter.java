@@ -81,6 +81,7 @@ public class NumbersAdapter extends SimpleCursorAdapter {
             nameForDefaultImage = info.name;
             callerName.setText(info.name);
             callerNumber.setText(locationOrType + " " + displayNumberStr);
+            callerNumber.setVisibility(View.VISIBLE);
         } else {
             nameForDefaultImage = displayNumber;
             callerName.setText(displayNumberStr);
@@ -94,6 +95,29 @@ public class NumbersAdapter extends SimpleCursorAdapter {
         loadContactPhoto(info, nameForDefaultImage, quickContactBadge);
     }
 
+    /**
+     * Shows a prefix rule, which has no contact or location to look up.
+     */
+    public void updatePrefixView(View view, String prefix) {
+        final TextView callerName = (TextView) view.findViewById(R.id.caller_name);
+        final TextView callerNumber = (TextView) view.findViewById(R.id.caller_number);
+        final QuickContactBadge quickContactBadge =
+                (QuickContactBadge) view.findViewById(R.id.quick_contact_photo);
+        quickContactBadge.setOverlay(null);
+
+        final String displayPrefix = mBidiFormatter.unicodeWrap(prefix,
+                TextDirectionHeuristics.LTR);
+        callerName.setText(mContext.getString(R.string.blocked_prefix, displayPrefix));
+        callerNumber.setVisibility(View.GONE);
+
+        final DefaultImageRequest request = new DefaultImageRequest(prefix, null,
+                ContactPhotoManager.TYPE_DEFAULT, true /* isCircular */);
+        quickContactBadge.assignContactUri(null);
+        quickContactBadge.setContentDescription(callerName.getText());
+        mContactPhotoManager.loadDirectoryPhoto(quickContactBadge, null,
+                false /* darkTheme */, true /* isCircular */, request);
+    }
+
     private void loadContactPhoto(ContactInfo info, String displayName, QuickContactBadge badge) {
         final String lookupKey = info.lookupUri == null
                 ? null : UriUtils.getLookupKeyFromUri(info.lookupUri);
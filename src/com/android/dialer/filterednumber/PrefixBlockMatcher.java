@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.filterednumber;
+
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Matches numbers against a set of blocked E164 prefixes, such as "+1800555".
+ *
+ * The prefixes are compiled into a digit trie held in flat int arrays, so a lookup walks at
+ * most one node per digit of the number and doesn't allocate, regardless of the number of
+ * prefixes.
+ */
+public class PrefixBlockMatcher {
+    /** Returned by {@link #match} for numbers not matching any prefix */
+    public static final int NO_MATCH = -1;
+
+    private static final int RADIX = 10;
+    private static final int ROOT = 0;
+
+    private static final PrefixBlockMatcher EMPTY = new Builder().build();
+
+    /** RADIX child node indices per node. The root is never a child, so 0 means none. */
+    private final int[] mChildren;
+    /** Rule id per node, or NO_MATCH if no prefix ends at that node */
+    private final int[] mRuleIds;
+    private final int mPrefixCount;
+
+    private PrefixBlockMatcher(int[] children, int[] ruleIds, int prefixCount) {
+        mChildren = children;
+        mRuleIds = ruleIds;
+        mPrefixCount = prefixCount;
+    }
+
+    public static PrefixBlockMatcher empty() {
+        return EMPTY;
+    }
+
+    public int getPrefixCount() {
+        return mPrefixCount;
+    }
+
+    /**
+     * @param e164Number The number in E164 format.
+     * @return The rule id of the shortest prefix of the number, or {@link #NO_MATCH}.
+     */
+    public int match(String e164Number) {
+        if (mPrefixCount == 0 || e164Number == null || e164Number.length() < 2
+                || e164Number.charAt(0) != '+') {
+            return NO_MATCH;
+        }
+
+        int node = ROOT;
+        for (int i = 1; i < e164Number.length(); i++) {
+            final int digit = e164Number.charAt(i) - '0';
+            if (digit < 0 || digit >= RADIX) {
+                return NO_MATCH;
+            }
+            node = mChildren[node * RADIX + digit];
+            if (node == ROOT) {
+                return NO_MATCH;
+            }
+            if (mRuleIds[node] != NO_MATCH) {
+                return mRuleIds[node];
+            }
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * @return {@code true} if the given string is a valid prefix: a '+' followed by at least
+     *     one digit.
+     */
+    public static boolean isValidPrefix(String prefix) {
+        if (TextUtils.isEmpty(prefix) || prefix.length() < 2 || prefix.charAt(0) != '+') {
+            return false;
+        }
+        for (int i = 1; i < prefix.length(); i++) {
+            final char c = prefix.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts the inclusive range between two E164 numbers of equal length into the smallest
+     * list of prefixes covering exactly that range.
+     *
+     * For example, +16502530000 to +16502531999 becomes +16502530 and +16502531.
+     *
+     * @throws IllegalArgumentException if the numbers aren't valid, differ in length or are out
+     *     of order.
+     */
+    public static List<String> rangeToPrefixes(String start, String end) {
+        if (!isValidPrefix(start) || !isValidPrefix(end) || start.length() != end.length()
+                || start.length() > 19 || start.compareTo(end) > 0) {
+            throw new IllegalArgumentException("Invalid range " + start + " - " + end);
+        }
+
+        // Ranges only differ in the digits after the common prefix
+        int common = 1;
+        while (common < start.length() && start.charAt(common) == end.charAt(common)) {
+            common++;
+        }
+        final String commonPrefix = start.substring(0, common);
+        final int length = start.length() - common;
+        final List<String> result = new ArrayList<>();
+        if (length == 0) {
+            result.add(start);
+            return result;
+        }
+
+        long low = Long.parseLong(start.substring(common));
+        final long high = Long.parseLong(end.substring(common));
+        while (low <= high) {
+            // Take the largest aligned block of numbers starting at low that fits the range
+            int blockDigits = 0;
+            long blockSize = 1;
+            while (blockDigits < length
+                    && low % (blockSize * RADIX) == 0
+                    && low + blockSize * RADIX - 1 <= high) {
+                blockDigits++;
+                blockSize *= RADIX;
+            }
+
+            final String digits = String.format(Locale.US, "%0" + length + "d", low);
+            result.add(commonPrefix + digits.substring(0, length - blockDigits));
+            low += blockSize;
+        }
+        return result;
+    }
+
+    /**
+     * Collects prefixes and compiles them into a {@link PrefixBlockMatcher}.
+     */
+    public static class Builder {
+        private int[] mChildren = new int[16 * RADIX];
+        private int[] mRuleIds = new int[16];
+        private int mNodeCount = 1;
+        private int mPrefixCount;
+
+        public Builder() {
+            Arrays.fill(mRuleIds, NO_MATCH);
+        }
+
+        /**
+         * Adds a prefix. Invalid prefixes are ignored.
+         *
+         * @param prefix The prefix, a '+' followed by digits.
+         * @param ruleId The non-negative id to return when a number matches the prefix.
+         * @return {@code true} if the prefix was added.
+         */
+        public boolean add(String prefix, int ruleId) {
+            if (!isValidPrefix(prefix) || ruleId < 0) {
+                return false;
+            }
+
+            int node = ROOT;
+            for (int i = 1; i < prefix.length(); i++) {
+                final int slot = node * RADIX + (prefix.charAt(i) - '0');
+                int child = mChildren[slot];
+                if (child == ROOT) {
+                    child = newNode();
+                    mChildren[slot] = child;
+                }
+                node = child;
+            }
+            if (mRuleIds[node] == NO_MATCH) {
+                mRuleIds[node] = ruleId;
+                mPrefixCount++;
+            }
+            return true;
+        }
+
+        public PrefixBlockMatcher build() {
+            return new PrefixBlockMatcher(Arrays.copyOf(mChildren, mNodeCount * RADIX),
+                    Arrays.copyOf(mRuleIds, mNodeCount), mPrefixCount);
+        }
+
+        private int newNode() {
+            if (mNodeCount == mRuleIds.length) {
+                final int capacity = mRuleIds.length * 2;
+                mChildren = Arrays.copyOf(mChildren, capacity * RADIX);
+                mRuleIds = Arrays.copyOf(mRuleIds, capacity);
+                Arrays.fill(mRuleIds, mNodeCount, capacity, NO_MATCH);
+            }
+            return mNodeCount++;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.lookup;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.dialer.calllog.ContactInfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reverse lookup that races the configured provider against the additional
+ * providers the user explicitly enabled.
+ *
+ * The best ranked provider is queried first; every {@link #HEDGE_DELAY_MS}
+ * without a usable answer (or as soon as all running queries came back empty)
+ * the next provider is started as well. The first result carrying a display
+ * name wins and all other queries are cancelled. Per-provider hit rate and
+ * latency are tracked, and kept across process restarts, so that providers
+ * which answer well for the user's region move to the front of the queue.
+ */
+public class CompositeReverseLookup extends ReverseLookup {
+    private static final String TAG = CompositeReverseLookup.class.getSimpleName();
+
+    private static final boolean DEBUG = false;
+
+    /** Time to wait for the running providers before starting the next one */
+    private static final long HEDGE_DELAY_MS = 750;
+    /** Upper bound for the whole lookup */
+    private static final long LOOKUP_TIMEOUT_MS = 10000;
+    /** Time idle lookup threads are kept around */
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private static final String STATS_PREFERENCES = "reverse_lookup_stats";
+    private static final int MAX_IMAGE_OWNERS = 32;
+
+    private final List<String> mProviderNames;
+    private final List<ProviderEntry> mProviders = new ArrayList<ProviderEntry>();
+    private final ThreadPoolExecutor mExecutor;
+    /** The provider whose result carried an image URI, which only it can load */
+    private final LruCache<Uri, ProviderEntry> mImageOwners =
+            new LruCache<Uri, ProviderEntry>(MAX_IMAGE_OWNERS);
+
+    /**
+     * @param providers The providers to query, the configured one first.
+     */
+    public CompositeReverseLookup(Context context, List<String> providers) {
+        mProviderNames = new ArrayList<String>(providers);
+
+        SharedPreferences stats = context.getSharedPreferences(
+                STATS_PREFERENCES, Context.MODE_PRIVATE);
+        for (String provider : providers) {
+            ReverseLookup lookup = ReverseLookup.createInstance(context, provider);
+            if (lookup != null) {
+                mProviders.add(new ProviderEntry(provider, lookup, stats));
+            }
+        }
+
+        // One thread per provider at most, none while idle
+        final int threads = Math.max(mProviders.size(), 1);
+        mExecutor = new ThreadPoolExecutor(threads, threads,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    List<String> getProviders() {
+        return mProviderNames;
+    }
+
+    /**
+     * Stop accepting lookups, e.g. once the providers were changed. Running
+     * lookups still finish.
+     */
+    void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Lookup image
+     *
+     * @param context The application context
+     * @param uri The image URI
+     */
+    @Override
+    public Bitmap lookupImage(final Context context, final Uri uri) {
+        ProviderEntry owner = mImageOwners.get(uri);
+        if (owner != null) {
+            return owner.lookup.lookupImage(context, uri);
+        }
+
+        // The result was looked up before the process restarted; ask all
+        // providers at once and use the first image
+        final CompletionService<Bitmap> completionService =
+                new ExecutorCompletionService<Bitmap>(mExecutor);
+        final List<Future<Bitmap>> futures = new ArrayList<Future<Bitmap>>();
+        try {
+            for (final ProviderEntry entry : mProviders) {
+                futures.add(completionService.submit(new Callable<Bitmap>() {
+                    @Override
+                    public Bitmap call() throws Exception {
+                        return entry.lookup.lookupImage(context, uri);
+                    }
+                }));
+            }
+
+            final long deadline = SystemClock.elapsedRealtime() + LOOKUP_TIMEOUT_MS;
+            for (int pending = futures.size(); pending > 0; pending--) {
+                long wait = deadline - SystemClock.elapsedRealtime();
+                Future<Bitmap> done = wait > 0
+                        ? completionService.poll(wait, TimeUnit.MILLISECONDS) : null;
+                if (done == null) {
+                    Log.w(TAG, "Timed out waiting for reverse lookup images");
+                    break;
+                }
+                Bitmap bmp = getResult(done);
+                if (bmp != null) {
+                    return bmp;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Reverse lookup providers were changed");
+        } finally {
+            for (Future<Bitmap> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Perform phone number lookup.
+     *
+     * @param context The application context
+     * @param normalizedNumber The normalized phone number
+     * @param formattedNumber The formatted phone number
+     * @return The phone number info object
+     */
+    @Override
+    public ContactInfo lookupNumber(Context context,
+            String normalizedNumber, String formattedNumber) throws IOException {
+        final List<ProviderEntry> providers = getOrderedProviders();
+        final CompletionService<ContactInfo> completionService =
+                new ExecutorCompletionService<ContactInfo>(mExecutor);
+        final List<Future<ContactInfo>> futures = new ArrayList<Future<ContactInfo>>();
+
+        final long deadline = SystemClock.elapsedRealtime() + LOOKUP_TIMEOUT_MS;
+        long nextHedge = 0;
+        int next = 0;
+        int pending = 0;
+        ContactInfo fallback = null;
+
+        try {
+            while (next < providers.size() || pending > 0) {
+                long now = SystemClock.elapsedRealtime();
+                if (now >= deadline) {
+                    Log.w(TAG, "Timed out waiting for reverse lookup providers");
+                    break;
+                }
+
+                if (next < providers.size() && (pending == 0 || now >= nextHedge)) {
+                    ProviderEntry entry = providers.get(next++);
+                    if (DEBUG) Log.d(TAG, "Starting lookup with " + entry.name);
+                    futures.add(completionService.submit(new LookupTask(
+                            context, entry, normalizedNumber, formattedNumber)));
+                    pending++;
+                    nextHedge = now + HEDGE_DELAY_MS;
+                    continue;
+                }
+
+                long wait = (next < providers.size() ? Math.min(nextHedge, deadline) : deadline)
+                        - now;
+                Future<ContactInfo> done = completionService.poll(wait, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    continue;
+                }
+
+                pending--;
+                ContactInfo info = getResult(done);
+                if (isComplete(info)) {
+                    return info;
+                } else if (fallback == null && info != null && !ContactInfo.EMPTY.equals(info)) {
+                    fallback = info;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Reverse lookup providers were changed");
+        } finally {
+            for (Future<ContactInfo> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return fallback;
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    private static boolean isComplete(ContactInfo info) {
+        return info != null && !TextUtils.isEmpty(info.name);
+    }
+
+    private List<ProviderEntry> getOrderedProviders() {
+        List<ProviderEntry> providers = new ArrayList<ProviderEntry>(mProviders);
+        // Stable sort, so the configured order breaks ties
+        Collections.sort(providers, new Comparator<ProviderEntry>() {
+            @Override
+            public int compare(ProviderEntry lhs, ProviderEntry rhs) {
+                return Double.compare(rhs.getScore(), lhs.getScore());
+            }
+        });
+        return providers;
+    }
+
+    private class LookupTask implements Callable<ContactInfo> {
+        private final Context mContext;
+        private final ProviderEntry mEntry;
+        private final String mNormalizedNumber;
+        private final String mFormattedNumber;
+
+        LookupTask(Context context, ProviderEntry entry,
+                String normalizedNumber, String formattedNumber) {
+            mContext = context;
+            mEntry = entry;
+            mNormalizedNumber = normalizedNumber;
+            mFormattedNumber = formattedNumber;
+        }
+
+        @Override
+        public ContactInfo call() throws Exception {
+            final long start = SystemClock.elapsedRealtime();
+            ContactInfo info = null;
+            try {
+                info = mEntry.lookup.lookupNumber(mContext, mNormalizedNumber, mFormattedNumber);
+                if (info != null && info.photoUri != null) {
+                    mImageOwners.put(info.photoUri, mEntry);
+                }
+            } catch (IOException e) {
+                if (DEBUG) Log.d(TAG, mEntry.name + " failed", e);
+            } finally {
+                // Lookups cut short by a faster provider say nothing about this one
+                if (!Thread.interrupted()) {
+                    mEntry.record(isComplete(info), SystemClock.elapsedRealtime() - start);
+                }
+            }
+            return info;
+        }
+    }
+
+    /**
+     * A provider along with its running hit rate and latency statistics,
+     * which are persisted after every lookup.
+     */
+    private static class ProviderEntry {
+        /** Weight of the newest sample in the latency moving average */
+        private static final double LATENCY_ALPHA = 0.3;
+        /** Latency assumed for providers that were never queried */
+        private static final double INITIAL_LATENCY_MS = 1000;
+
+        final String name;
+        final ReverseLookup lookup;
+        private final SharedPreferences mStats;
+
+        private int mAttempts;
+        private int mHits;
+        private double mAverageLatencyMs;
+
+        ProviderEntry(String name, ReverseLookup lookup, SharedPreferences stats) {
+            this.name = name;
+            this.lookup = lookup;
+            mStats = stats;
+            mAttempts = stats.getInt(name + "_attempts", 0);
+            mHits = stats.getInt(name + "_hits", 0);
+            mAverageLatencyMs = stats.getFloat(name + "_latency", (float) INITIAL_LATENCY_MS);
+        }
+
+        synchronized void record(boolean hit, long latencyMs) {
+            mAttempts++;
+            if (hit) {
+                mHits++;
+            }
+            mAverageLatencyMs += LATENCY_ALPHA * (latencyMs - mAverageLatencyMs);
+            mStats.edit()
+                    .putInt(name + "_attempts", mAttempts)
+                    .putInt(name + "_hits", mHits)
+                    .putFloat(name + "_latency", (float) mAverageLatencyMs)
+                    .apply();
+            if (DEBUG) {
+                Log.d(TAG, name + ": " + mHits + "/" + mAttempts + " hits, avg latency "
+                        + (long) mAverageLatencyMs + "ms");
+            }
+        }
+
+        /**
+         * Hits per second of latency, with the hit rate smoothed so that
+         * untried providers start out neutral instead of first or last.
+         */
+        synchronized double getScore() {
+            double hitRate = (mHits + 1.0) / (mAttempts + 2.0);
+            return hitRate * 1000.0 / Math.max(mAverageLatencyMs, 1.0);
+        }
+    }
+}
@@ -27,20 +27,24 @@ import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Directory;
 import android.provider.ContactsContract.DisplayNameSources;
 import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.android.contacts.common.util.Constants;
 import com.android.dialer.calllog.ContactInfo;
 import com.android.dialer.R;
 
-import java.sql.Struct;
+import libcore.io.IoUtils;
+
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
-import org.w3c.dom.Text;
 
 public class ContactBuilder {
     private static final String TAG =
@@ -63,6 +67,17 @@ public class ContactBuilder {
             .build()
             .toString();
 
+    /** Number of address labels remembered by {@link #getAddressLabel} */
+    private static final int ADDRESS_LABEL_CACHE_SIZE = 64;
+
+    /**
+     * Address labels keyed by the encoded fragment of the lookup URI. Only
+     * the resulting string is kept, so builders changed after build() can't
+     * alter what other lookups see. An empty string means no address.
+     */
+    private static final LruCache<String, String> sAddressLabels =
+            new LruCache<String, String>(ADDRESS_LABEL_CACHE_SIZE);
+
     private ArrayList<Address> mAddresses = new ArrayList<Address>();
     private ArrayList<PhoneNumber> mPhoneNumbers
             = new ArrayList<PhoneNumber>();
@@ -99,58 +114,97 @@ public class ContactBuilder {
                 Log.e(TAG, "Error parsing directory id of uri " + encodedContactUri, e);
             }
         }
+        if (jsonData == null) {
+            throw new JSONException("No contact data in uri " + encodedContactUri);
+        }
+
+        mName = new Name();
+
+        // Stream the data rather than building a JSONObject tree, only the
+        // contact entry is of interest
+        JsonReader reader = new JsonReader(new StringReader(jsonData));
         try {
-            // name
-            JSONObject json = new JSONObject(jsonData);
-            JSONObject contact = json.optJSONObject(Contacts.CONTENT_ITEM_TYPE);
-            JSONObject nameObj = contact.optJSONObject(StructuredName.CONTENT_ITEM_TYPE);
-            mName = new Name(nameObj);
-
-            if (contact != null) {
-                // numbers
-                if (contact.has(Phone.CONTENT_ITEM_TYPE)) {
-                    String phoneData = contact.getString(Phone.CONTENT_ITEM_TYPE);
-                    Object phoneObject = new JSONTokener(phoneData).nextValue();
-                    JSONArray phoneNumbers;
-                    if (phoneObject instanceof JSONObject) {
-                        phoneNumbers = new JSONArray();
-                        phoneNumbers.put(phoneObject);
-                    } else {
-                        phoneNumbers = contact.getJSONArray(Phone.CONTENT_ITEM_TYPE);
-                    }
-                    for (int i = 0; i < phoneNumbers.length(); ++i) {
-                        JSONObject phoneObj = phoneNumbers.getJSONObject(i);
-                        mPhoneNumbers.add(new PhoneNumber(phoneObj));
-                    }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (Contacts.CONTENT_ITEM_TYPE.equals(reader.nextName())) {
+                    readContact(reader);
+                } else {
+                    reader.skipValue();
                 }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            Log.e(TAG, "Error parsing encoded fragment of uri " + encodedContactUri, e);
+            throw new JSONException(e.toString());
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Returns the city of the first address of an encoded lookup URI, or its
+     * formatted address if there is no city. Returns null if the contact has
+     * no address.
+     *
+     * The labels of contacts built or parsed recently are remembered, so
+     * this avoids parsing the same JSON again for every cursor row.
+     */
+    public static String getAddressLabel(Uri encodedContactUri) throws JSONException {
+        String jsonData = encodedContactUri.getEncodedFragment();
+        String label = jsonData != null ? sAddressLabels.get(jsonData) : null;
+        if (label == null) {
+            label = new ContactBuilder(encodedContactUri).getAddressLabel();
+            sAddressLabels.put(jsonData, label);
+        }
+        return label.isEmpty() ? null : label;
+    }
 
-                // address
-                if (contact.has(StructuredPostal.CONTENT_ITEM_TYPE)) {
-                    JSONArray addresses = contact.getJSONArray(StructuredPostal.CONTENT_ITEM_TYPE);
-                    for (int i = 0; i < addresses.length(); ++i) {
-                        JSONObject addrObj = addresses.getJSONObject(i);
-                        mAddresses.add(new Address(addrObj));
+    private String getAddressLabel() {
+        String label = null;
+        if (!mAddresses.isEmpty()) {
+            Address address = mAddresses.get(0);
+            label = address.city != null ? address.city : address.formattedAddress;
+        }
+        return label != null ? label : "";
+    }
+
+    private void readContact(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (StructuredName.CONTENT_ITEM_TYPE.equals(name)) {
+                mName = new Name(reader);
+            } else if (Phone.CONTENT_ITEM_TYPE.equals(name)) {
+                // A single number may be stored as an object instead of an array
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    mPhoneNumbers.add(new PhoneNumber(reader));
+                } else {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        mPhoneNumbers.add(new PhoneNumber(reader));
                     }
+                    reader.endArray();
                 }
-
-                // websites
-                if (contact.has(Website.CONTENT_ITEM_TYPE)) {
-                    JSONArray websites = contact.getJSONArray(Website.CONTENT_ITEM_TYPE);
-                    for (int i = 0; i < websites.length(); ++i) {
-                        JSONObject websiteObj = websites.getJSONObject(i);
-                        final WebsiteUrl websiteUrl = new WebsiteUrl(websiteObj);
-                        if (!TextUtils.isEmpty(websiteUrl.url)) {
-                            mWebsites.add(new WebsiteUrl(websiteObj));
-                        }
+            } else if (StructuredPostal.CONTENT_ITEM_TYPE.equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    mAddresses.add(new Address(reader));
+                }
+                reader.endArray();
+            } else if (Website.CONTENT_ITEM_TYPE.equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    final WebsiteUrl websiteUrl = new WebsiteUrl(reader);
+                    if (!TextUtils.isEmpty(websiteUrl.url)) {
+                        mWebsites.add(websiteUrl);
                     }
                 }
+                reader.endArray();
+            } else {
+                reader.skipValue();
             }
-
-        }
-        catch(JSONException e) {
-            Log.e(TAG, "Error parsing encoded fragment of uri " + encodedContactUri, e);
-            throw e;
         }
+        reader.endObject();
     }
 
     public void addAddress(Address address) {
@@ -319,6 +373,7 @@ public class ContactBuilder {
                                 String.valueOf(directoryId))
                         .encodedFragment(json)
                         .build();
+                sAddressLabels.put(info.lookupUri.getEncodedFragment(), getAddressLabel());
             }
 
             return info;
@@ -366,10 +421,35 @@ public class ContactBuilder {
 
         public Address() {}
 
-        public Address(JSONObject json) throws JSONException {
-            if (json.has(StructuredPostal.FORMATTED_ADDRESS)) {
-                formattedAddress = json.getString(StructuredPostal.FORMATTED_ADDRESS);
+        public Address(JsonReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (StructuredPostal.FORMATTED_ADDRESS.equals(name)) {
+                    formattedAddress = LookupUtils.nextStringOrNull(reader);
+                } else if (StructuredPostal.TYPE.equals(name)) {
+                    type = reader.nextInt();
+                } else if (StructuredPostal.LABEL.equals(name)) {
+                    label = LookupUtils.nextStringOrNull(reader);
+                } else if (StructuredPostal.STREET.equals(name)) {
+                    street = LookupUtils.nextStringOrNull(reader);
+                } else if (StructuredPostal.POBOX.equals(name)) {
+                    poBox = LookupUtils.nextStringOrNull(reader);
+                } else if (StructuredPostal.NEIGHBORHOOD.equals(name)) {
+                    neighborhood = LookupUtils.nextStringOrNull(reader);
+                } else if (StructuredPostal.CITY.equals(name)) {
+                    city = LookupUtils.nextStringOrNull(reader);
+                } else if (StructuredPostal.REGION.equals(name)) {
+                    region = LookupUtils.nextStringOrNull(reader);
+                } else if (StructuredPostal.POSTCODE.equals(name)) {
+                    postCode = LookupUtils.nextStringOrNull(reader);
+                } else if (StructuredPostal.COUNTRY.equals(name)) {
+                    country = LookupUtils.nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
             }
+            reader.endObject();
         }
 
         public String toString() {
@@ -421,10 +501,20 @@ public class ContactBuilder {
             return json;
         }
 
-        public Name(JSONObject json) throws JSONException {
-            if (json != null) {
-                displayName = json.optString(StructuredName.DISPLAY_NAME, null);
+        public Name(JsonReader reader) throws IOException {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (StructuredName.DISPLAY_NAME.equals(reader.nextName())) {
+                    displayName = LookupUtils.nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
             }
+            reader.endObject();
         }
 
         public Name() {}
@@ -463,12 +553,21 @@ public class ContactBuilder {
             return json;
         }
 
-        public PhoneNumber(JSONObject json) throws JSONException {
-            number = json.getString(Phone.NUMBER);
-            type = json.getInt(Phone.TYPE);
-            if (json.has(Phone.LABEL)) {
-                label = json.getString(Phone.LABEL);
+        public PhoneNumber(JsonReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (Phone.NUMBER.equals(name)) {
+                    number = LookupUtils.nextStringOrNull(reader);
+                } else if (Phone.TYPE.equals(name)) {
+                    type = reader.nextInt();
+                } else if (Phone.LABEL.equals(name)) {
+                    label = LookupUtils.nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
             }
+            reader.endObject();
         }
 
         public PhoneNumber() {}
@@ -503,16 +602,21 @@ public class ContactBuilder {
 
         public WebsiteUrl() {}
 
-        public WebsiteUrl(JSONObject json) throws JSONException {
-            if (json.has(Website.URL)) {
-                url = json.getString(Website.URL);
-            }
-            if (json.has(Website.TYPE)) {
-                type = json.getInt(Website.TYPE);
-            }
-            if (json.has(Website.LABEL)) {
-                label = json.getString(Website.LABEL);
+        public WebsiteUrl(JsonReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (Website.URL.equals(name)) {
+                    url = LookupUtils.nextStringOrNull(reader);
+                } else if (Website.TYPE.equals(name)) {
+                    type = reader.nextInt();
+                } else if (Website.LABEL.equals(name)) {
+                    label = LookupUtils.nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
             }
+            reader.endObject();
         }
 
         public String toString() {
@@ -22,13 +22,31 @@ import com.android.dialer.lookup.openstreetmap.OpenStreetMapForwardLookup;
 
 import android.content.Context;
 import android.location.Location;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Locale;
 
 public abstract class ForwardLookup {
     private static final String TAG = ForwardLookup.class.getSimpleName();
 
+    private static final boolean DEBUG = false;
+
+    /** Number of result sets kept in the cache */
+    private static final int CACHE_SIZE = 64;
+    /** Time after which cached results are looked up again */
+    private static final long CACHE_EXPIRY_MS = 10 * 60 * 1000;
+    /** Size of a location cell in degrees (roughly 1km of latitude) */
+    private static final double LOCATION_CELL_DEGREES = 0.01;
+
     private static ForwardLookup INSTANCE = null;
 
+    private final LruCache<String, CachedResult> mCache =
+            new LruCache<String, CachedResult>(CACHE_SIZE);
+
     public static ForwardLookup getInstance(Context context) {
         String provider = LookupSettings.getForwardLookupProvider(context);
 
@@ -57,6 +75,138 @@ public abstract class ForwardLookup {
         }
     }
 
-    public abstract ContactInfo[] lookup(Context context,
+    /**
+     * Perform a forward lookup, answering from the cache where possible.
+     *
+     * Results are cached per filter and location cell. If the provider
+     * reported the result set of a shorter prefix of the filter as complete,
+     * that result set is filtered locally instead of querying the network.
+     *
+     * @param context The application context
+     * @param filter The search string
+     * @param lastLocation The current location
+     * @return The results, or null if there are none
+     */
+    public ContactInfo[] lookup(Context context, String filter, Location lastLocation) {
+        final String normalizedFilter = normalizeFilter(filter);
+        final String cell = getLocationCell(lastLocation);
+
+        CachedResult cached = getCachedResult(normalizedFilter, cell);
+        if (cached != null) {
+            if (DEBUG) Log.v(TAG, "Cache hit for " + normalizedFilter);
+            return cached.results;
+        }
+
+        for (int length = normalizedFilter.length() - 1; length > 0; length--) {
+            cached = getCachedResult(normalizedFilter.substring(0, length), cell);
+            if (cached != null && cached.complete) {
+                if (DEBUG) Log.v(TAG, "Filtering cached results for "
+                        + normalizedFilter.substring(0, length));
+                ContactInfo[] results = filterResults(cached.results, normalizedFilter);
+                putCachedResult(normalizedFilter, cell, results, true);
+                return results;
+            }
+        }
+
+        ContactInfo[] results = performLookup(context, filter, lastLocation);
+        if (results != null) {
+            putCachedResult(normalizedFilter, cell, results, isCompleteResult(results));
+        }
+        return results;
+    }
+
+    /**
+     * Query the provider for the given filter.
+     *
+     * @param context The application context
+     * @param filter The search string
+     * @param lastLocation The current location
+     * @return The results, or null if there are none
+     */
+    protected abstract ContactInfo[] performLookup(Context context,
             String filter, Location lastLocation);
+
+    /**
+     * Whether the provider returned every match for the query, so that the
+     * results of longer filters can be computed by filtering these locally.
+     *
+     * @param results The results returned by {@link #performLookup}
+     */
+    protected boolean isCompleteResult(ContactInfo[] results) {
+        return false;
+    }
+
+    /**
+     * Whether a result matches a filter. Must agree with the provider's own
+     * matching if {@link #isCompleteResult} can return true.
+     *
+     * @param info The result to check
+     * @param normalizedFilter The lower case filter
+     */
+    protected boolean matchesFilter(ContactInfo info, String normalizedFilter) {
+        return info.name != null
+                && info.name.toLowerCase(Locale.ROOT).contains(normalizedFilter);
+    }
+
+    private ContactInfo[] filterResults(ContactInfo[] results, String normalizedFilter) {
+        if (results == null) {
+            return null;
+        }
+
+        ArrayList<ContactInfo> filtered = new ArrayList<ContactInfo>();
+        for (ContactInfo info : results) {
+            if (matchesFilter(info, normalizedFilter)) {
+                filtered.add(info);
+            }
+        }
+
+        return filtered.isEmpty() ? null : filtered.toArray(new ContactInfo[filtered.size()]);
+    }
+
+    private CachedResult getCachedResult(String normalizedFilter, String cell) {
+        CachedResult cached = mCache.get(normalizedFilter + cell);
+        if (cached != null && cached.isExpired()) {
+            mCache.remove(normalizedFilter + cell);
+            return null;
+        }
+        return cached;
+    }
+
+    private void putCachedResult(String normalizedFilter, String cell,
+            ContactInfo[] results, boolean complete) {
+        mCache.put(normalizedFilter + cell, new CachedResult(results, complete));
+    }
+
+    private static String normalizeFilter(String filter) {
+        return TextUtils.isEmpty(filter) ? "" : filter.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Bucket a location into a grid cell, so that nearby locations share
+     * cache entries.
+     */
+    private static String getLocationCell(Location location) {
+        if (location == null) {
+            return "@";
+        }
+        long lat = (long) Math.floor(location.getLatitude() / LOCATION_CELL_DEGREES);
+        long lon = (long) Math.floor(location.getLongitude() / LOCATION_CELL_DEGREES);
+        return "@" + lat + "," + lon;
+    }
+
+    private static class CachedResult {
+        final ContactInfo[] results;
+        final boolean complete;
+        final long timestamp;
+
+        CachedResult(ContactInfo[] results, boolean complete) {
+            this.results = results;
+            this.complete = complete;
+            this.timestamp = SystemClock.elapsedRealtime();
+        }
+
+        boolean isExpired() {
+            return SystemClock.elapsedRealtime() - timestamp > CACHE_EXPIRY_MS;
+        }
+    }
 }
@@ -26,11 +26,14 @@ import android.provider.ContactsContract.Contacts;
 import android.telephony.PhoneNumberUtils;
 import android.telephony.TelephonyManager;
 import android.util.JsonReader;
+import android.util.DisplayMetrics;
 import android.util.JsonWriter;
 import android.util.Log;
+import android.util.LruCache;
 
 import libcore.io.IoUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -56,6 +59,29 @@ public class LookupCache {
     //public static final String PHOTO_URI = "PhotoURI";
     public static final String LOOKUP_URI = "LookupURI";
 
+    /**
+     * Upper bound for the in-memory image cache. Images are kept encoded, a
+     * screen wide WEBP photo takes about 50 to 200 KB.
+     */
+    private static final int MAX_IMAGE_MEMORY_CACHE_BYTES = 2 * 1024 * 1024;
+    /** WEBP quality of cached images */
+    private static final int IMAGE_QUALITY = 90;
+
+    /**
+     * Encoded images keyed by normalized number, bounded by byte count.
+     * Decoded images of the size shown would take several MB each on high
+     * density screens, so only the encoded ones are kept; decoding one is
+     * still much cheaper than reading it from disk or the network.
+     */
+    private static final LruCache<String, byte[]> sImageMemoryCache =
+            new LruCache<String, byte[]>((int) Math.min(MAX_IMAGE_MEMORY_CACHE_BYTES,
+                    Runtime.getRuntime().maxMemory() / 64)) {
+                @Override
+                protected int sizeOf(String key, byte[] value) {
+                    return value.length;
+                }
+            };
+
     public static boolean hasCachedContact(Context context, String number) {
         String normalizedNumber = formatE164(context, number);
 
@@ -206,6 +232,8 @@ public class LookupCache {
             return;
         }
 
+        sImageMemoryCache.evictAll();
+
         File[] files = dir.listFiles();
         if (files != null) {
             for (File file : files) {
@@ -223,6 +251,7 @@ public class LookupCache {
             f.delete();
         }
 
+        sImageMemoryCache.remove(normalizedNumber);
         f = getImagePath(context, normalizedNumber);
         if (f.exists()) {
             f.delete();
@@ -236,17 +265,37 @@ public class LookupCache {
             return false;
         }
 
+        if (sImageMemoryCache.get(normalizedNumber) != null) {
+            return true;
+        }
+
         File file = getImagePath(context, normalizedNumber);
         return file.exists();
     }
 
-    public static void cacheImage(Context context,
+    /**
+     * Store an image in the memory and disk caches, scaled down to the
+     * largest size the in-call UI displays.
+     *
+     * @return The image as cached, or null if there was none
+     */
+    public static Bitmap cacheImage(Context context,
             String normalizedNumber, Bitmap bmp) {
         // Compress the cached images to save space
         if (bmp == null) {
             Log.e(TAG, "Failed to cache image");
-            return;
+            return null;
+        }
+
+        bmp = scaleImage(bmp, getMaxImageSize(context));
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        if (!bmp.compress(Bitmap.CompressFormat.WEBP, IMAGE_QUALITY, encoded)) {
+            Log.e(TAG, "Failed to encode image");
+            return bmp;
         }
+        byte[] data = encoded.toByteArray();
+        putImageInMemoryCache(normalizedNumber, data);
 
         File image = getImagePath(context, normalizedNumber);
 
@@ -254,23 +303,89 @@ public class LookupCache {
 
         try {
             out = new FileOutputStream(image);
-            bmp.compress(Bitmap.CompressFormat.WEBP, 100, out);
+            out.write(data);
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
             IoUtils.closeQuietly(out);
         }
+
+        return bmp;
     }
 
     public static Bitmap getCachedImage(Context context, String normalizedNumber) {
-        File image = getImagePath(context, normalizedNumber);
-        if (!image.exists()) {
-            return null;
+        byte[] data = sImageMemoryCache.get(normalizedNumber);
+        if (data == null) {
+            File image = getImagePath(context, normalizedNumber);
+            if (!image.exists()) {
+                return null;
+            }
+
+            try {
+                data = IoUtils.readFileAsByteArray(image.getPath());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read cached image", e);
+                return null;
+            }
+            putImageInMemoryCache(normalizedNumber, data);
         }
 
+        return decodeImage(context, data);
+    }
+
+    private static void putImageInMemoryCache(String normalizedNumber, byte[] data) {
+        // A single image taking the whole cache would only evict all others
+        if (data.length <= sImageMemoryCache.maxSize() / 4) {
+            sImageMemoryCache.put(normalizedNumber, data);
+        }
+    }
+
+    /**
+     * Decode an encoded image, subsampling it while decoding if it is larger
+     * than what the in-call UI displays.
+     */
+    public static Bitmap decodeImage(Context context, byte[] data) {
         BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-        return BitmapFactory.decodeFile(image.getPath(), options);
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options, getMaxImageSize(context));
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * The large contact photo in the call card spans the width of the
+     * screen, so there is no point in keeping anything larger than that.
+     */
+    private static int getMaxImageSize(Context context) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        return Math.min(metrics.widthPixels, metrics.heightPixels);
+    }
+
+    private static int calculateInSampleSize(BitmapFactory.Options options, int maxSize) {
+        int sampleSize = 1;
+        if (maxSize <= 0) {
+            return sampleSize;
+        }
+        while (options.outWidth / (sampleSize * 2) >= maxSize
+                && options.outHeight / (sampleSize * 2) >= maxSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap scaleImage(Bitmap bmp, int maxSize) {
+        int width = bmp.getWidth();
+        int height = bmp.getHeight();
+        if (maxSize <= 0 || Math.min(width, height) <= maxSize) {
+            return bmp;
+        }
+
+        // Scale the shorter edge to the display size, as the photo is center-cropped
+        float scale = (float) maxSize / Math.min(width, height);
+        return Bitmap.createScaledBitmap(bmp,
+                Math.round(width * scale), Math.round(height * scale), true);
     }
 
     private static String formatE164(Context context, String number) {
@@ -37,11 +37,13 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.provider.ContactsContract;
-import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
 import android.provider.ContactsContract.Contacts;
 import android.provider.Settings;
 import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -50,14 +52,14 @@ import java.net.URLDecoder;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
-import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 public class LookupProvider extends ContentProvider {
     private static final String TAG = LookupProvider.class.getSimpleName();
@@ -75,8 +77,37 @@ public class LookupProvider extends ContentProvider {
             Uri.withAppendedPath(AUTHORITY_URI, "images");
 
     private static final UriMatcher sURIMatcher = new UriMatcher(-1);
-    private final LinkedList<FutureTask> mActiveTasks =
-            new LinkedList<FutureTask>();
+
+    /** Number of worker threads performing filter lookups */
+    private static final int FILTER_THREAD_COUNT = 2;
+    /** Quiet period before a filter query goes to the network */
+    private static final long FILTER_DEBOUNCE_MS = 200;
+    /** Maximum time a binder thread waits for a filter query */
+    private static final long FILTER_TIMEOUT_MS = 10000;
+    /** Number of people lookup results kept for re-use */
+    private static final int RESULT_CACHE_SIZE = 32;
+    /** Time after which cached people lookup results are looked up again */
+    private static final long RESULT_CACHE_EXPIRY_MS = 60 * 1000;
+
+    private final ScheduledThreadPoolExecutor mExecutor = new ScheduledThreadPoolExecutor(
+            FILTER_THREAD_COUNT, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "FilterThread #" + mCount.getAndIncrement());
+                }
+            });
+    /** The latest filter task per query type; older ones are superseded */
+    private final SparseArray<Future<ContactInfo[]>> mActiveTasks =
+            new SparseArray<Future<ContactInfo[]>>();
+    /**
+     * People lookup results keyed by provider and filter. Nearby results are
+     * cached by {@link ForwardLookup}, which also takes the location into
+     * account.
+     */
+    private final LruCache<String, CachedResult> mResultCache =
+            new LruCache<String, CachedResult>(RESULT_CACHE_SIZE);
 
     private static final int NEARBY = 0;
     private static final int PEOPLE = 1;
@@ -88,38 +119,24 @@ public class LookupProvider extends ContentProvider {
         sURIMatcher.addURI(AUTHORITY, "images/*", IMAGE);
     }
 
-    private class FutureCallable<T> implements Callable<T> {
-        private final Callable<T> mCallable;
-        private volatile FutureTask<T> mFuture;
+    private static class CachedResult {
+        final ContactInfo[] results;
+        final long timestamp;
 
-        public FutureCallable(Callable<T> callable) {
-            mFuture = null;
-            mCallable = callable;
+        CachedResult(ContactInfo[] results) {
+            this.results = results;
+            this.timestamp = SystemClock.elapsedRealtime();
         }
 
-        public T call() throws Exception {
-            Log.v(TAG, "Future called for " + Thread.currentThread().getName());
-
-            T result = mCallable.call();
-            if (mFuture == null) {
-                return result;
-            }
-
-            synchronized (mActiveTasks) {
-                mActiveTasks.remove(mFuture);
-            }
-
-            mFuture = null;
-            return result;
-        }
-
-        public void setFuture(FutureTask<T> future) {
-            mFuture = future;
+        boolean isExpired() {
+            return SystemClock.elapsedRealtime() - timestamp > RESULT_CACHE_EXPIRY_MS;
         }
     }
 
     @Override
     public boolean onCreate() {
+        // Superseded queries should not linger in the queue until their delay expires
+        mExecutor.setRemoveOnCancelPolicy(true);
         return true;
     }
 
@@ -163,15 +180,28 @@ public class LookupProvider extends ContentProvider {
             }
 
             final Location finalLastLocation = lastLocation;
-            final int finalMaxResults = maxResults;
-
-            return execute(new Callable<Cursor>() {
-                @Override
-                public Cursor call() {
-                    return handleFilter(match, projection, filter,
-                            finalMaxResults, finalLastLocation);
+            final String cacheKey = match == PEOPLE
+                    ? LookupSettings.getPeopleLookupProvider(getContext()) + "/" + filter
+                    : null;
+
+            ContactInfo[] results;
+            CachedResult cached = cacheKey != null ? mResultCache.get(cacheKey) : null;
+            if (cached != null && !cached.isExpired()) {
+                if (DEBUG) Log.v(TAG, "query: using cached results for " + filter);
+                results = cached.results;
+            } else {
+                results = execute(match, new Callable<ContactInfo[]>() {
+                    @Override
+                    public ContactInfo[] call() {
+                        return handleFilter(match, filter, finalLastLocation);
+                    }
+                });
+                if (results != null && cacheKey != null) {
+                    mResultCache.put(cacheKey, new CachedResult(results));
                 }
-            }, "FilterThread");
+            }
+
+            return buildResultCursor(projection, results, maxResults);
         }
 
         return null;
@@ -288,14 +318,12 @@ public class LookupProvider extends ContentProvider {
     /**
      * Process filter/query and perform the lookup.
      *
-     * @param projection Columns to include in query
+     * @param type The query type, either {@link #NEARBY} or {@link #PEOPLE}
      * @param filter String to lookup
-     * @param maxResults Maximum number of results
      * @param lastLocation Coordinates of last location query
-     * @return Cursor for the results
+     * @return The results, an empty array if there are none or null on failure
      */
-    private Cursor handleFilter(int type, String[] projection, String filter,
-            int maxResults, Location lastLocation) {
+    private ContactInfo[] handleFilter(int type, String filter, Location lastLocation) {
         if (DEBUG) Log.v(TAG, "handleFilter(" + filter + ")");
 
         if (filter != null) {
@@ -315,20 +343,12 @@ public class LookupProvider extends ContentProvider {
 
             if (results == null || results.length == 0) {
                 if (DEBUG) Log.v(TAG, "handleFilter(" + filter + "): No results");
-                return null;
-            }
-
-            Cursor cur = null;
-            try {
-                cur = buildResultCursor(projection, results, maxResults);
-
+            } else {
                 if (DEBUG) Log.v(TAG, "handleFilter(" + filter + "): "
-                        + cur.getCount() + " matches");
-            } catch (JSONException e) {
-                Log.e(TAG, "JSON failure", e);
+                        + results.length + " matches");
             }
 
-            return cur;
+            return results;
         }
 
         return null;
@@ -343,8 +363,11 @@ public class LookupProvider extends ContentProvider {
      * @return Cursor for forward lookup query results
      */
     private Cursor buildResultCursor(String[] projection,
-            ContactInfo[] results, int maxResults)
-            throws JSONException {
+            ContactInfo[] results, int maxResults) {
+        if (results == null || results.length == 0) {
+            return null;
+        }
+
         // Extended directories always use this projection
         MatrixCursor cursor = new MatrixCursor(PhoneQuery.PROJECTION_PRIMARY);
 
@@ -379,86 +402,57 @@ public class LookupProvider extends ContentProvider {
         // Hack: Show city or address for phone label, so they appear in
         // the results list
 
-        String city = null;
-        String address = null;
-
         try {
-            String jsonString = info.lookupUri.getEncodedFragment();
-            JSONObject json = new JSONObject(jsonString);
-            JSONObject contact = json.getJSONObject(Contacts.CONTENT_ITEM_TYPE);
-
-            if (!contact.has(StructuredPostal.CONTENT_ITEM_TYPE)) {
-                return null;
-            }
-
-            JSONArray addresses = contact.getJSONArray(
-                    StructuredPostal.CONTENT_ITEM_TYPE);
-
-            if (addresses.length() == 0) {
-                return null;
-            }
-
-            JSONObject addressEntry = addresses.getJSONObject(0);
-
-            if (addressEntry.has(StructuredPostal.CITY)) {
-                city = addressEntry.getString(StructuredPostal.CITY);
-            }
-            if (addressEntry.has(StructuredPostal.FORMATTED_ADDRESS)) {
-                address = addressEntry.getString(
-                        StructuredPostal.FORMATTED_ADDRESS);
-            }
+            return ContactBuilder.getAddressLabel(info.lookupUri);
         } catch (JSONException e) {
             Log.e(TAG, "Failed to get address", e);
-        }
-
-        if (city != null) {
-            return city;
-        } else if (address != null) {
-            return address;
-        } else {
             return null;
         }
     }
 
     /**
-     * Execute thread that is killed after a specified amount of time.
+     * Run a filter lookup on the worker pool and wait for its result.
+     *
+     * Only the most recent query of each type is allowed to proceed: each
+     * query is scheduled after a short quiet period, so that fast typing does
+     * not cause a lookup per keystroke, and a newer query cancels the previous
+     * one. The binder thread of a superseded query returns right away.
      *
-     * @param callable The thread
-     * @param name Name of the thread
-     * @return Instance of the thread
+     * @param type The query type
+     * @param callable The lookup to perform
+     * @return The lookup result, or null if it failed, timed out or was superseded
      */
-    private <T> T execute(Callable<T> callable, String name) {
-        FutureCallable<T> futureCallable = new FutureCallable<T>(callable);
-        FutureTask<T> future = new FutureTask<T>(futureCallable);
-        futureCallable.setFuture(future);
+    private ContactInfo[] execute(int type, Callable<ContactInfo[]> callable) {
+        Future<ContactInfo[]> future;
 
         synchronized (mActiveTasks) {
-            mActiveTasks.addLast(future);
-            Log.v(TAG, "Currently running tasks: " + mActiveTasks.size());
-
-            while (mActiveTasks.size() > 8) {
-                Log.w(TAG, "Too many tasks, canceling one");
-                mActiveTasks.removeFirst().cancel(true);
+            Future<ContactInfo[]> previous = mActiveTasks.get(type);
+            if (previous != null) {
+                Log.v(TAG, "Superseding previous filter task");
+                previous.cancel(true);
             }
+            future = mExecutor.schedule(callable, FILTER_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+            mActiveTasks.put(type, future);
         }
 
-        Log.v(TAG, "Starting task " + name);
-
-        new Thread(future, name).start();
-
         try {
-            Log.v(TAG, "Getting future " + name);
-            return future.get(10000, TimeUnit.MILLISECONDS);
+            return future.get(FILTER_DEBOUNCE_MS + FILTER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
-            Log.w(TAG, "Task was interrupted: " + name);
+            Log.w(TAG, "Task was interrupted");
             Thread.currentThread().interrupt();
         } catch (ExecutionException e) {
-            Log.w(TAG, "Task threw an exception: " + name, e);
+            Log.w(TAG, "Task threw an exception", e);
         } catch (TimeoutException e) {
-            Log.w(TAG, "Task timed out: " + name);
+            Log.w(TAG, "Task timed out");
             future.cancel(true);
         } catch (CancellationException e) {
-            Log.w(TAG, "Task was cancelled: " + name);
+            Log.v(TAG, "Task was superseded");
+        } finally {
+            synchronized (mActiveTasks) {
+                if (mActiveTasks.get(type) == future) {
+                    mActiveTasks.remove(type);
+                }
+            }
         }
 
         return null;
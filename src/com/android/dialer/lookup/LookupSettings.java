@@ -20,11 +20,18 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.preference.PreferenceManager;
 import android.provider.Settings;
 
+import com.android.dialer.R;
+
 import cyanogenmod.providers.CMSettings;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 public final class LookupSettings {
     private static final String TAG = LookupSettings.class.getSimpleName();
@@ -52,6 +59,10 @@ public final class LookupSettings {
     public static final String RLP_AUSKUNFT = "Auskunft";
     public static final String RLP_DEFAULT = RLP_OPENCNAM;
 
+    /** Reverse lookup providers the user chose to query along with the configured one */
+    public static final String KEY_ADDITIONAL_REVERSE_LOOKUP_PROVIDERS =
+            "additional_reverse_lookup_providers";
+
     private LookupSettings() {
     }
 
@@ -97,6 +108,35 @@ public final class LookupSettings {
         return provider;
     }
 
+    /**
+     * Returns the reverse lookup providers incoming numbers are sent to: the
+     * configured provider first, followed by the additional providers the user
+     * explicitly enabled, in the order of the provider list.
+     */
+    public static List<String> getReverseLookupProviders(Context context) {
+        String provider = getReverseLookupProvider(context);
+        Set<String> additional = PreferenceManager.getDefaultSharedPreferences(context)
+                .getStringSet(KEY_ADDITIONAL_REVERSE_LOOKUP_PROVIDERS,
+                        Collections.<String>emptySet());
+
+        List<String> result = new ArrayList<String>(additional.size() + 1);
+        result.add(provider);
+        if (additional.isEmpty()) {
+            return result;
+        }
+
+        List<String> known = new ArrayList<String>(Arrays.asList(
+                context.getResources().getStringArray(R.array.reverse_lookup_providers)));
+        known.add(context.getString(R.string.cyngn_reverse_lookup_provider_value));
+        for (String name : known) {
+            if (additional.contains(name) && !result.contains(name)) {
+                result.add(name);
+            }
+        }
+
+        return result;
+    }
+
     private static String getLookupProvider(Context context,
             String key, String defaultValue) {
         ContentResolver cr = context.getContentResolver();
@@ -17,6 +17,8 @@
 package com.android.dialer.lookup;
 
 import android.text.Html;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
@@ -159,6 +161,17 @@ public class LookupUtils {
         return m.find() ? m.group(1).trim() : null;
     }
 
+    /**
+     * Read a string value from a JSON stream, allowing it to be null.
+     */
+    public static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
     public static String fromHtml(String input) {
         if (input == null) {
             return null;
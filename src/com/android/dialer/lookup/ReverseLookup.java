@@ -32,6 +32,7 @@ import android.net.Uri;
 import android.util.Log;
 
 import java.io.IOException;
+import java.util.List;
 
 public abstract class ReverseLookup {
     private static final String TAG = ReverseLookup.class.getSimpleName();
@@ -39,47 +40,67 @@ public abstract class ReverseLookup {
     private static ReverseLookup INSTANCE = null;
 
     public static ReverseLookup getInstance(Context context) {
-        String provider = LookupSettings.getReverseLookupProvider(context);
+        List<String> providers = LookupSettings.getReverseLookupProviders(context);
+        String provider = providers.get(0);
 
-        if (INSTANCE == null || !isInstance(provider)) {
+        if (providers.size() > 1) {
+            if (!(INSTANCE instanceof CompositeReverseLookup)
+                    || !((CompositeReverseLookup) INSTANCE).getProviders().equals(providers)) {
+                Log.d(TAG, "Chosen reverse lookup providers: " + providers);
+                setInstance(new CompositeReverseLookup(context, providers));
+            }
+        } else if (INSTANCE == null || !isInstance(provider)) {
             Log.d(TAG, "Chosen reverse lookup provider: " + provider);
 
-            if (provider.equals(LookupSettings.RLP_OPENCNAM)) {
-                INSTANCE = new OpenCnamReverseLookup(context);
-            } else if (provider.equals(LookupSettings.RLP_WHITEPAGES)
-                    || provider.equals(LookupSettings.RLP_WHITEPAGES_CA)) {
-                INSTANCE = new WhitePagesReverseLookup(context);
-            } else if (provider.equals(LookupSettings.RLP_YELLOWPAGES)
-                    || provider.equals(LookupSettings.RLP_YELLOWPAGES_CA)) {
-                INSTANCE = new YellowPagesReverseLookup(context);
-            } else if (provider.equals(LookupSettings.RLP_ZABASEARCH)) {
-                INSTANCE = new ZabaSearchReverseLookup(context);
-            } else if (provider.equals(LookupSettings.RLP_CYNGN_CHINESE)) {
-                INSTANCE = new CyngnChineseReverseLookup(context);
-            } else if (provider.equals(LookupSettings.RLP_DASTELEFONBUCH)) {
-                INSTANCE = new TelefonbuchReverseLookup(context);
-            } else if (provider.equals(LookupSettings.RLP_GEBELD)) {
-                INSTANCE = new GebeldReverseLookup(context);
-            } else if (provider.equals(LookupSettings.RLP_AUSKUNFT)) {
-                INSTANCE = new AuskunftReverseLookup(context);
+            ReverseLookup instance = createInstance(context, provider);
+            if (instance != null) {
+                setInstance(instance);
             }
         }
 
         return INSTANCE;
     }
 
+    private static void setInstance(ReverseLookup instance) {
+        if (INSTANCE instanceof CompositeReverseLookup) {
+            ((CompositeReverseLookup) INSTANCE).shutdown();
+        }
+        INSTANCE = instance;
+    }
+
+    static ReverseLookup createInstance(Context context, String provider) {
+        if (provider.equals(LookupSettings.RLP_OPENCNAM)) {
+            return new OpenCnamReverseLookup(context);
+        } else if (provider.equals(LookupSettings.RLP_WHITEPAGES)
+                || provider.equals(LookupSettings.RLP_WHITEPAGES_CA)) {
+            return new WhitePagesReverseLookup(context, provider);
+        } else if (provider.equals(LookupSettings.RLP_YELLOWPAGES)
+                || provider.equals(LookupSettings.RLP_YELLOWPAGES_CA)) {
+            return new YellowPagesReverseLookup(context, provider);
+        } else if (provider.equals(LookupSettings.RLP_ZABASEARCH)) {
+            return new ZabaSearchReverseLookup(context);
+        } else if (provider.equals(LookupSettings.RLP_CYNGN_CHINESE)) {
+            return new CyngnChineseReverseLookup(context);
+        } else if (provider.equals(LookupSettings.RLP_DASTELEFONBUCH)) {
+            return new TelefonbuchReverseLookup(context);
+        } else if (provider.equals(LookupSettings.RLP_GEBELD)) {
+            return new GebeldReverseLookup(context);
+        } else if (provider.equals(LookupSettings.RLP_AUSKUNFT)) {
+            return new AuskunftReverseLookup(context);
+        }
+
+        return null;
+    }
+
     private static boolean isInstance(String provider) {
         if (provider.equals(LookupSettings.RLP_OPENCNAM)
                 && INSTANCE instanceof OpenCnamReverseLookup) {
             return true;
-        } else if ((provider.equals(LookupSettings.RLP_WHITEPAGES)
-                || provider.equals(LookupSettings.RLP_WHITEPAGES_CA))
-                && INSTANCE instanceof WhitePagesReverseLookup) {
-            return true;
-        } else if ((provider.equals(LookupSettings.RLP_YELLOWPAGES)
-                || provider.equals(LookupSettings.RLP_YELLOWPAGES_CA))
-                && INSTANCE instanceof YellowPagesReverseLookup) {
-            return true;
+        } else if (INSTANCE instanceof WhitePagesReverseLookup) {
+            // The US and CA providers share a class, but not the region they look up in
+            return provider.equals(((WhitePagesReverseLookup) INSTANCE).getProvider());
+        } else if (INSTANCE instanceof YellowPagesReverseLookup) {
+            return provider.equals(((YellowPagesReverseLookup) INSTANCE).getProvider());
         } else if (provider.equals(LookupSettings.RLP_ZABASEARCH)
                 && INSTANCE instanceof ZabaSearchReverseLookup) {
             return true;
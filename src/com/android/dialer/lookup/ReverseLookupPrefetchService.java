@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.lookup;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.provider.CallLog.Calls;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.contacts.common.GeoUtil;
+import com.android.contacts.common.util.PermissionsUtil;
+import com.android.dialer.calllog.ContactInfo;
+import com.android.dialer.calllog.ContactInfoHelper;
+import com.android.dialer.util.TelecomUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Periodic job that reverse looks up unknown numbers in the call log.
+ *
+ * Numbers are deduplicated by their E.164 form and looked up one at a time
+ * with a pause in between, so the lookup providers are not flooded. Results
+ * go into the {@link LookupCache} and the cached name columns of the call
+ * log, so the call log can show them without a lookup of its own. Numbers
+ * without a result are not retried for {@link #RETRY_INTERVAL_MS}.
+ */
+public class ReverseLookupPrefetchService extends JobService {
+    private static final String TAG = ReverseLookupPrefetchService.class.getSimpleName();
+
+    private static final boolean DEBUG = false;
+
+    private static final int JOB_ID = 0x4c4b5046;
+
+    private static final long JOB_INTERVAL_MS = 24 * 60 * 60 * 1000;
+    /** Time before a number without results is looked up again */
+    private static final long RETRY_INTERVAL_MS = 7 * 24 * 60 * 60 * 1000;
+    /** Pause between two network lookups */
+    private static final long LOOKUP_INTERVAL_MS = 2000;
+    /** Maximum number of network lookups per run */
+    private static final int MAX_LOOKUPS_PER_RUN = 50;
+    /** Number of most recent unknown call log entries considered */
+    private static final int MAX_CALLS = 500;
+
+    private static final String PREFS_NAME = "reverse_lookup_prefetch";
+
+    private static final String[] PROJECTION = new String[] {
+            Calls.NUMBER,
+            Calls.COUNTRY_ISO,
+    };
+    private static final int NUMBER = 0;
+    private static final int COUNTRY_ISO = 1;
+
+    private PrefetchThread mThread;
+
+    /**
+     * Schedule the periodic prefetch job, unless it is already scheduled.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, ReverseLookupPrefetchService.class))
+                .setPeriodic(JOB_INTERVAL_MS)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        if (!LookupSettings.isReverseLookupEnabled(this)
+                || !PermissionsUtil.hasPermission(this,
+                        android.Manifest.permission.READ_CALL_LOG)) {
+            return false;
+        }
+
+        mThread = new PrefetchThread(params);
+        mThread.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mThread != null) {
+            mThread.cancel();
+            mThread = null;
+        }
+        // The periodic schedule picks up where this run stopped
+        return false;
+    }
+
+    private class PrefetchThread extends Thread {
+        private final JobParameters mParams;
+        private volatile boolean mCancelled;
+
+        PrefetchThread(JobParameters params) {
+            super("ReverseLookupPrefetch");
+            mParams = params;
+        }
+
+        void cancel() {
+            mCancelled = true;
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            try {
+                prefetch();
+            } finally {
+                if (!mCancelled) {
+                    jobFinished(mParams, false);
+                }
+            }
+        }
+
+        private void prefetch() {
+            final Context context = ReverseLookupPrefetchService.this;
+            final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+            final String currentCountryIso = GeoUtil.getCurrentCountryIso(context);
+            final ContactInfoHelper helper = new ContactInfoHelper(context, currentCountryIso);
+            final long now = System.currentTimeMillis();
+
+            pruneAttempts(prefs, now);
+
+            Map<String, List<CallLogNumber>> numbers = queryUnknownNumbers(context);
+            if (DEBUG) Log.d(TAG, numbers.size() + " unknown numbers in the call log");
+
+            SharedPreferences.Editor editor = prefs.edit();
+            int lookups = 0;
+
+            for (Map.Entry<String, List<CallLogNumber>> entry : numbers.entrySet()) {
+                if (mCancelled || lookups >= MAX_LOOKUPS_PER_RUN) {
+                    break;
+                }
+
+                final String normalizedNumber = entry.getKey();
+                final CallLogNumber first = entry.getValue().get(0);
+
+                // Contacts and earlier lookups only need to be copied to the call log
+                ContactInfo info = helper.lookupNumber(first.number, first.countryIso);
+                if (info == null || TextUtils.isEmpty(info.name)) {
+                    if (prefs.contains(normalizedNumber)) {
+                        continue;
+                    }
+
+                    if (lookups > 0 && !pause()) {
+                        break;
+                    }
+                    lookups++;
+
+                    info = lookupNumber(context, normalizedNumber, first);
+                    if (info == null) {
+                        editor.putLong(normalizedNumber, now);
+                        continue;
+                    }
+                    LookupCache.cacheContact(context, info);
+                }
+
+                for (CallLogNumber number : entry.getValue()) {
+                    helper.updateCallLogContactInfo(number.number, number.countryIso, info, null);
+                }
+            }
+
+            editor.apply();
+            if (DEBUG) Log.d(TAG, "Performed " + lookups + " lookups");
+        }
+
+        private ContactInfo lookupNumber(Context context, String normalizedNumber,
+                CallLogNumber number) {
+            String formattedNumber = PhoneNumberUtils.formatNumber(number.number,
+                    normalizedNumber, GeoUtil.getCurrentCountryIso(context));
+            try {
+                ContactInfo info = ReverseLookup.getInstance(context).lookupNumber(
+                        context, normalizedNumber, formattedNumber);
+                if (info != null && !ContactInfo.EMPTY.equals(info)
+                        && !TextUtils.isEmpty(info.name)) {
+                    return info;
+                }
+            } catch (IOException e) {
+                if (DEBUG) Log.d(TAG, "Lookup failed for " + normalizedNumber, e);
+            }
+            return null;
+        }
+
+        /**
+         * Wait between two network lookups.
+         *
+         * @return false if the job was cancelled while waiting
+         */
+        private boolean pause() {
+            try {
+                Thread.sleep(LOOKUP_INTERVAL_MS);
+                return !mCancelled;
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Query the most recent call log entries without a cached name.
+     *
+     * @return The raw numbers and their country, keyed by E.164 number
+     */
+    private static Map<String, List<CallLogNumber>> queryUnknownNumbers(Context context) {
+        Map<String, List<CallLogNumber>> numbers = new LinkedHashMap<String, List<CallLogNumber>>();
+
+        Cursor cursor = context.getContentResolver().query(
+                TelecomUtil.getCallLogUri(context).buildUpon()
+                        .appendQueryParameter(Calls.LIMIT_PARAM_KEY, String.valueOf(MAX_CALLS))
+                        .build(),
+                PROJECTION,
+                "(" + Calls.CACHED_NAME + " IS NULL OR " + Calls.CACHED_NAME + " = '') AND "
+                        + Calls.NUMBER_PRESENTATION + " = " + Calls.PRESENTATION_ALLOWED,
+                null,
+                Calls.DEFAULT_SORT_ORDER);
+        if (cursor == null) {
+            return numbers;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                String number = cursor.getString(NUMBER);
+                String countryIso = cursor.getString(COUNTRY_ISO);
+                if (TextUtils.isEmpty(number)) {
+                    continue;
+                }
+
+                String normalizedNumber = PhoneNumberUtils.formatNumberToE164(number,
+                        countryIso != null ? countryIso : GeoUtil.getCurrentCountryIso(context));
+                if (normalizedNumber == null) {
+                    continue;
+                }
+
+                List<CallLogNumber> list = numbers.get(normalizedNumber);
+                if (list == null) {
+                    list = new ArrayList<CallLogNumber>();
+                    numbers.put(normalizedNumber, list);
+                }
+
+                CallLogNumber entry = new CallLogNumber(number, countryIso);
+                if (!list.contains(entry)) {
+                    list.add(entry);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return numbers;
+    }
+
+    /**
+     * Forget about failed lookups that are due to be retried.
+     */
+    private static void pruneAttempts(SharedPreferences prefs, long now) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            Object value = entry.getValue();
+            if (!(value instanceof Long) || now - (Long) value > RETRY_INTERVAL_MS) {
+                editor.remove(entry.getKey());
+            }
+        }
+        editor.commit();
+    }
+
+    private static class CallLogNumber {
+        final String number;
+        final String countryIso;
+
+        CallLogNumber(String number, String countryIso) {
+            this.number = number;
+            this.countryIso = countryIso;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CallLogNumber)) {
+                return false;
+            }
+            CallLogNumber other = (CallLogNumber) o;
+            return TextUtils.equals(number, other.number)
+                    && TextUtils.equals(countryIso, other.countryIso);
+        }
+
+        @Override
+        public int hashCode() {
+            return number.hashCode() * 31 + (countryIso != null ? countryIso.hashCode() : 0);
+        }
+    }
+}
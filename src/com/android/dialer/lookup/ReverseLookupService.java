@@ -149,14 +149,18 @@ public class ReverseLookupService implements PhoneNumberService, Handler.Callbac
     }
 
     private Bitmap fetchImage(LookupRequest request, Uri uri) {
-        if (!LookupCache.hasCachedImage(mContext, request.normalizedNumber)) {
-            Bitmap bmp = ReverseLookup.getInstance(mContext).lookupImage(mContext, uri);
-            if (bmp != null) {
-                LookupCache.cacheImage(mContext, request.normalizedNumber, bmp);
-            }
+        Bitmap bmp = LookupCache.getCachedImage(mContext, request.normalizedNumber);
+        if (bmp != null) {
+            return bmp;
+        }
+
+        bmp = ReverseLookup.getInstance(mContext).lookupImage(mContext, uri);
+        if (bmp == null) {
+            return null;
         }
 
-        return LookupCache.getCachedImage(mContext, request.normalizedNumber);
+        // Use the cached copy, which may have been scaled down
+        return LookupCache.cacheImage(mContext, request.normalizedNumber, bmp);
     }
 
     private static class LookupRequest {
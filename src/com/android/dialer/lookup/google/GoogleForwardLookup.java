@@ -30,17 +30,16 @@ import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
 import android.provider.ContactsContract.CommonDataKinds.Website;
 import android.text.Html;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 public class GoogleForwardLookup extends ForwardLookup {
     private static final String TAG =
             GoogleForwardLookup.class.getSimpleName();
@@ -92,7 +91,7 @@ public class GoogleForwardLookup extends ForwardLookup {
     }
 
     @Override
-    public ContactInfo[] lookup(Context context,
+    protected ContactInfo[] performLookup(Context context,
             String filter, Location lastLocation) {
         int length = filter.length();
 
@@ -128,15 +127,14 @@ public class GoogleForwardLookup extends ForwardLookup {
 
                 Map<String, String> headers = new HashMap<String, String>();
                 headers.put("User-Agent", mUserAgent);
-                JSONArray results = new JSONArray(LookupUtils.httpGet(builder.build().toString(),
-                        headers));
+                String results = LookupUtils.httpGet(builder.build().toString(), headers);
 
                 if (DEBUG) Log.v(TAG, "Results: " + results);
 
                 return getEntries(results);
             } catch (IOException e) {
                 Log.e(TAG, "Failed to execute query", e);
-            } catch (JSONException e) {
+            } catch (IllegalStateException | NumberFormatException e) {
                 Log.e(TAG, "JSON error", e);
             }
         }
@@ -147,55 +145,34 @@ public class GoogleForwardLookup extends ForwardLookup {
     /**
      * Parse JSON results and return them as an array of ContactInfo
      *
+     * The response is streamed, only the fields that end up in the
+     * ContactInfo are kept.
+     *
      * @param results The JSON results returned from the server
      * @return Array of ContactInfo containing the result information
      */
-    private ContactInfo[] getEntries(JSONArray results)
-            throws JSONException {
+    private ContactInfo[] getEntries(String results) throws IOException {
         ArrayList<ContactInfo> details =
                 new ArrayList<ContactInfo>();
 
-        JSONArray entries = results.getJSONArray(1);
-
-        for (int i = 0; i < entries.length(); i++) {
-            try {
-                JSONArray entry = entries.getJSONArray(i);
-
-                String displayName = decodeHtml(entry.getString(0));
-
-                JSONObject params = entry.getJSONObject(3);
-
-                String phoneNumber = decodeHtml(
-                        params.getString(RESULT_NUMBER));
-
-                String address = decodeHtml(params.getString(RESULT_ADDRESS));
-                String city = decodeHtml(params.getString(RESULT_CITY));
-
-                String profileUrl = params.optString(RESULT_WEBSITE, null);
-                String photoUri = params.optString(RESULT_PHOTO_URI, null);
-
-                ContactBuilder builder = new ContactBuilder(
-                        ContactBuilder.FORWARD_LOOKUP, null, phoneNumber);
-                builder.setName(ContactBuilder.Name.createDisplayName(displayName));
-                builder.addPhoneNumber(ContactBuilder.PhoneNumber.createMainNumber(phoneNumber));
-                builder.addWebsite(ContactBuilder.WebsiteUrl.createProfile(profileUrl));
-
-                ContactBuilder.Address a = new ContactBuilder.Address();
-                a.formattedAddress = address;
-                a.city = city;
-                a.type = StructuredPostal.TYPE_WORK;
-                builder.addAddress(a);
-
-                if (photoUri != null) {
-                    builder.setPhotoUri(photoUri);
+        JsonReader reader = new JsonReader(new StringReader(results));
+        try {
+            reader.beginArray();
+            // The query string
+            reader.skipValue();
+
+            reader.beginArray();
+            for (int i = 0; reader.hasNext(); i++) {
+                ContactInfo info = readEntry(reader);
+                if (info != null) {
+                    details.add(info);
                 } else {
-                    builder.setPhotoUri(ContactBuilder.PHOTO_URI_BUSINESS);
+                    Log.e(TAG, "Skipping the suggestions at index " + i);
                 }
-
-                details.add(builder.build());
-            } catch (JSONException e) {
-                Log.e(TAG, "Skipping the suggestions at index " + i, e);
             }
+            reader.endArray();
+        } finally {
+            reader.close();
         }
 
         if (details.size() > 0) {
@@ -205,6 +182,73 @@ public class GoogleForwardLookup extends ForwardLookup {
         }
     }
 
+    /**
+     * Parse a single suggestion: [name, ?, ?, {parameters}]
+     *
+     * @return The suggestion, or null if required fields are missing
+     */
+    private ContactInfo readEntry(JsonReader reader) throws IOException {
+        String displayName = null;
+        String phoneNumber = null;
+        String address = null;
+        String city = null;
+        String profileUrl = null;
+        String photoUri = null;
+
+        reader.beginArray();
+        for (int index = 0; reader.hasNext(); index++) {
+            if (index == 0 && reader.peek() == JsonToken.STRING) {
+                displayName = decodeHtml(reader.nextString());
+            } else if (index == 3 && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (RESULT_NUMBER.equals(name)) {
+                        phoneNumber = decodeHtml(LookupUtils.nextStringOrNull(reader));
+                    } else if (RESULT_ADDRESS.equals(name)) {
+                        address = decodeHtml(LookupUtils.nextStringOrNull(reader));
+                    } else if (RESULT_CITY.equals(name)) {
+                        city = decodeHtml(LookupUtils.nextStringOrNull(reader));
+                    } else if (RESULT_WEBSITE.equals(name)) {
+                        profileUrl = LookupUtils.nextStringOrNull(reader);
+                    } else if (RESULT_PHOTO_URI.equals(name)) {
+                        photoUri = LookupUtils.nextStringOrNull(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+
+        if (displayName == null || phoneNumber == null || address == null || city == null) {
+            return null;
+        }
+
+        ContactBuilder builder = new ContactBuilder(
+                ContactBuilder.FORWARD_LOOKUP, null, phoneNumber);
+        builder.setName(ContactBuilder.Name.createDisplayName(displayName));
+        builder.addPhoneNumber(ContactBuilder.PhoneNumber.createMainNumber(phoneNumber));
+        builder.addWebsite(ContactBuilder.WebsiteUrl.createProfile(profileUrl));
+
+        ContactBuilder.Address a = new ContactBuilder.Address();
+        a.formattedAddress = address;
+        a.city = city;
+        a.type = StructuredPostal.TYPE_WORK;
+        builder.addAddress(a);
+
+        if (photoUri != null) {
+            builder.setPhotoUri(photoUri);
+        } else {
+            builder.setPhotoUri(ContactBuilder.PHOTO_URI_BUSINESS);
+        }
+
+        return builder.build();
+    }
+
     /**
      * Generate a random string of alphanumeric characters of length [4, 36)
      *
@@ -254,6 +298,6 @@ public class GoogleForwardLookup extends ForwardLookup {
      * @return Unformatted plain text
      */
     private String decodeHtml(String s) {
-        return Html.fromHtml(s).toString();
+        return s != null ? Html.fromHtml(s).toString() : null;
     }
 }
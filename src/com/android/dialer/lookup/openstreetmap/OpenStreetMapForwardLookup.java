@@ -23,6 +23,7 @@ import android.content.Context;
 import android.location.Location;
 import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
 import android.provider.ContactsContract.CommonDataKinds.Website;
+import android.util.JsonReader;
 import android.util.Log;
 
 import com.android.dialer.calllog.ContactInfo;
@@ -30,11 +31,8 @@ import com.android.dialer.lookup.ContactBuilder;
 import com.android.dialer.lookup.ForwardLookup;
 import com.android.dialer.lookup.LookupUtils;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Locale;
 
@@ -66,7 +64,7 @@ public class OpenStreetMapForwardLookup extends ForwardLookup {
     }
 
     @Override
-    public ContactInfo[] lookup(Context context,
+    protected ContactInfo[] performLookup(Context context,
             String filter, Location lastLocation) {
 
         // The OSM API doesn't support case-insentive searches, but does
@@ -82,90 +80,152 @@ public class OpenStreetMapForwardLookup extends ForwardLookup {
                 RADIUS, lastLocation.getLatitude(), lastLocation.getLongitude());
 
         try {
-            return getEntries(new JSONObject(LookupUtils.httpPost(LOOKUP_URL, null, request)));
+            return getEntries(LookupUtils.httpPost(LOOKUP_URL, null, request));
         } catch (IOException e) {
             Log.e(TAG, "Failed to execute query", e);
-        } catch (JSONException e) {
+        } catch (IllegalStateException | NumberFormatException e) {
             Log.e(TAG, "JSON error", e);
         }
 
         return null;
     }
 
-    private ContactInfo[] getEntries(JSONObject results)
-            throws JSONException {
+    /**
+     * The Overpass query returns every matching node within the radius, so
+     * results for longer filters are a subset of these.
+     */
+    @Override
+    protected boolean isCompleteResult(ContactInfo[] results) {
+        return true;
+    }
+
+    private ContactInfo[] getEntries(String results) throws IOException {
         ArrayList<ContactInfo> details =
                 new ArrayList<ContactInfo>();
 
-        JSONArray elements = results.getJSONArray(RESULT_ELEMENTS);
+        JsonReader reader = new JsonReader(new StringReader(results));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!RESULT_ELEMENTS.equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
 
-        for (int i = 0; i < elements.length(); i++) {
-            try {
-                JSONObject element = elements.getJSONObject(i);
-                JSONObject tags = element.getJSONObject(RESULT_TAGS);
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    ContactInfo info = readElement(reader);
+                    if (info != null) {
+                        details.add(info);
+                    } else {
+                        Log.e(TAG, "Skipping the suggestions at index " + i);
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
 
-                String displayName = tags.getString(TAG_NAME);
-                String phoneNumber = tags.getString(TAG_PHONE);
+        if (details.size() > 0) {
+            return details.toArray(new ContactInfo[details.size()]);
+        } else {
+            return null;
+        }
+    }
 
-                // Take the first number if there are multiple
-                if (phoneNumber.contains(";")) {
-                    phoneNumber = phoneNumber.split(";")[0];
-                    phoneNumber = phoneNumber.trim();
-                }
+    /**
+     * Parse a single node, of which only the tags are of interest.
+     *
+     * @return The result, or null if the node has no name or phone number
+     */
+    private ContactInfo readElement(JsonReader reader) throws IOException {
+        String displayName = null;
+        String phoneNumber = null;
+        String addressHouseNumber = null;
+        String addressStreet = null;
+        String addressCity = null;
+        String addressPostCode = null;
+        String website = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!RESULT_TAGS.equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
 
-                // The address is split
-                String addressHouseNumber =
-                        tags.optString(TAG_HOUSENUMBER, null);
-                String addressStreet = tags.optString(TAG_STREET, null);
-                String addressCity = tags.optString(TAG_CITY, null);
-                String addressPostCode = tags.optString(TAG_POSTCODE, null);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (TAG_NAME.equals(name)) {
+                    displayName = LookupUtils.nextStringOrNull(reader);
+                } else if (TAG_PHONE.equals(name)) {
+                    phoneNumber = LookupUtils.nextStringOrNull(reader);
+                } else if (TAG_HOUSENUMBER.equals(name)) {
+                    addressHouseNumber = LookupUtils.nextStringOrNull(reader);
+                } else if (TAG_STREET.equals(name)) {
+                    addressStreet = LookupUtils.nextStringOrNull(reader);
+                } else if (TAG_CITY.equals(name)) {
+                    addressCity = LookupUtils.nextStringOrNull(reader);
+                } else if (TAG_POSTCODE.equals(name)) {
+                    addressPostCode = LookupUtils.nextStringOrNull(reader);
+                } else if (TAG_WEBSITE.equals(name)) {
+                    website = LookupUtils.nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
 
-                String address = String.format(
-                        "%s %s, %s %s",
-                        addressHouseNumber != null ? addressHouseNumber : "",
-                        addressStreet != null ? addressStreet : "",
-                        addressCity != null ? addressCity : "",
-                        addressPostCode != null ? addressPostCode : "");
+        if (displayName == null || phoneNumber == null) {
+            return null;
+        }
 
-                address = address.trim().replaceAll("\\s+", " ");
+        // Take the first number if there are multiple
+        if (phoneNumber.contains(";")) {
+            phoneNumber = phoneNumber.split(";")[0];
+            phoneNumber = phoneNumber.trim();
+        }
 
-                if (address.length() == 0) {
-                    address = null;
-                }
+        // The address is split
+        String address = String.format(
+                "%s %s, %s %s",
+                addressHouseNumber != null ? addressHouseNumber : "",
+                addressStreet != null ? addressStreet : "",
+                addressCity != null ? addressCity : "",
+                addressPostCode != null ? addressPostCode : "");
 
-                String website = tags.optString(TAG_WEBSITE, null);
+        address = address.trim().replaceAll("\\s+", " ");
 
-                ContactBuilder builder = new ContactBuilder(
-                        ContactBuilder.FORWARD_LOOKUP, null, phoneNumber);
+        if (address.length() == 0) {
+            address = null;
+        }
 
-                builder.setName(ContactBuilder.Name.createDisplayName(displayName));
-                builder.addPhoneNumber(ContactBuilder.PhoneNumber.createMainNumber(phoneNumber));
+        ContactBuilder builder = new ContactBuilder(
+                ContactBuilder.FORWARD_LOOKUP, null, phoneNumber);
 
-                ContactBuilder.Address a = new ContactBuilder.Address();
-                a.formattedAddress = address;
-                a.city = addressCity;
-                a.street = addressStreet;
-                a.postCode = addressPostCode;
-                a.type = StructuredPostal.TYPE_WORK;
-                builder.addAddress(a);
+        builder.setName(ContactBuilder.Name.createDisplayName(displayName));
+        builder.addPhoneNumber(ContactBuilder.PhoneNumber.createMainNumber(phoneNumber));
 
-                ContactBuilder.WebsiteUrl w = new ContactBuilder.WebsiteUrl();
-                w.url = website;
-                w.type = Website.TYPE_HOMEPAGE;
-                builder.addWebsite(w);
+        ContactBuilder.Address a = new ContactBuilder.Address();
+        a.formattedAddress = address;
+        a.city = addressCity;
+        a.street = addressStreet;
+        a.postCode = addressPostCode;
+        a.type = StructuredPostal.TYPE_WORK;
+        builder.addAddress(a);
 
-                builder.setPhotoUri(ContactBuilder.PHOTO_URI_BUSINESS);
+        ContactBuilder.WebsiteUrl w = new ContactBuilder.WebsiteUrl();
+        w.url = website;
+        w.type = Website.TYPE_HOMEPAGE;
+        builder.addWebsite(w);
 
-                details.add(builder.build());
-            } catch (JSONException e) {
-                Log.e(TAG, "Skipping the suggestions at index " + i, e);
-            }
-        }
+        builder.setPhotoUri(ContactBuilder.PHOTO_URI_BUSINESS);
 
-        if (details.size() > 0) {
-            return details.toArray(new ContactInfo[details.size()]);
-        } else {
-            return null;
-        }
+        return builder.build();
     }
 }
@@ -205,8 +205,12 @@ public class WhitePagesApi {
 
     public static ContactInfo reverseLookup(Context context, String number)
             throws IOException {
-        String provider = LookupSettings.getReverseLookupProvider(context);
+        return reverseLookup(context, number,
+                LookupSettings.getReverseLookupProvider(context));
+    }
 
+    public static ContactInfo reverseLookup(Context context, String number,
+            String provider) throws IOException {
         String lookupUrl = null;
         if (LookupSettings.RLP_WHITEPAGES.equals(provider)) {
             lookupUrl = NEARBY_URL_UNITED_STATES;
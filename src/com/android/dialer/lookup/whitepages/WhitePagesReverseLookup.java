@@ -18,6 +18,7 @@ package com.android.dialer.lookup.whitepages;
 
 import com.android.dialer.calllog.ContactInfo;
 import com.android.dialer.lookup.ContactBuilder;
+import com.android.dialer.lookup.LookupSettings;
 import com.android.dialer.lookup.ReverseLookup;
 
 import android.content.Context;
@@ -28,7 +29,21 @@ public class WhitePagesReverseLookup extends ReverseLookup {
     private static final String TAG =
             WhitePagesReverseLookup.class.getSimpleName();
 
+    private final String mProvider;
+
     public WhitePagesReverseLookup(Context context) {
+        this(context, LookupSettings.getReverseLookupProvider(context));
+    }
+
+    public WhitePagesReverseLookup(Context context, String provider) {
+        mProvider = provider;
+    }
+
+    /**
+     * @return The provider, and with it the region, this instance looks up numbers in.
+     */
+    public String getProvider() {
+        return mProvider;
     }
 
     /**
@@ -41,7 +56,8 @@ public class WhitePagesReverseLookup extends ReverseLookup {
      */
     public ContactInfo lookupNumber(Context context,
             String normalizedNumber, String formattedNumber) throws IOException {
-        WhitePagesApi.ContactInfo info = WhitePagesApi.reverseLookup(context, normalizedNumber);
+        WhitePagesApi.ContactInfo info = WhitePagesApi.reverseLookup(
+                context, normalizedNumber, mProvider);
         if (info == null || info.name == null) {
             return null;
         }
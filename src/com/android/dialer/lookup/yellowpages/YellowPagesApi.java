@@ -41,7 +41,11 @@ public class YellowPagesApi {
     private String mLookupUrl = null;
 
     public YellowPagesApi(Context context, String number) {
-        mProvider = LookupSettings.getReverseLookupProvider(context);
+        this(context, number, LookupSettings.getReverseLookupProvider(context));
+    }
+
+    public YellowPagesApi(Context context, String number, String provider) {
+        mProvider = provider;
         mNumber = number;
 
         if (mProvider.equals(LookupSettings.RLP_YELLOWPAGES)) {
@@ -18,6 +18,8 @@ package com.android.dialer.lookup.yellowpages;
 
 import com.android.dialer.calllog.ContactInfo;
 import com.android.dialer.lookup.ContactBuilder;
+import com.android.dialer.lookup.LookupCache;
+import com.android.dialer.lookup.LookupSettings;
 import com.android.dialer.lookup.LookupUtils;
 import com.android.dialer.lookup.ReverseLookup;
 
@@ -36,7 +38,21 @@ public class YellowPagesReverseLookup extends ReverseLookup {
     private static final String TAG =
             YellowPagesReverseLookup.class.getSimpleName();
 
+    private final String mProvider;
+
     public YellowPagesReverseLookup(Context context) {
+        this(context, LookupSettings.getReverseLookupProvider(context));
+    }
+
+    public YellowPagesReverseLookup(Context context, String provider) {
+        mProvider = provider;
+    }
+
+    /**
+     * @return The provider, and with it the region, this instance looks up numbers in.
+     */
+    public String getProvider() {
+        return mProvider;
     }
 
     /**
@@ -57,7 +73,7 @@ public class YellowPagesReverseLookup extends ReverseLookup {
         if (scheme.startsWith("http")) {
             try {
                 byte[] response = LookupUtils.httpGetBytes(uri.toString(), null);
-                return BitmapFactory.decodeByteArray(response, 0, response.length);
+                return LookupCache.decodeImage(context, response);
             } catch (IOException e) {
                 Log.e(TAG, "Failed to retrieve image", e);
             }
@@ -84,7 +100,7 @@ public class YellowPagesReverseLookup extends ReverseLookup {
      */
     public ContactInfo lookupNumber(Context context,
             String normalizedNumber, String formattedNumber) throws IOException {
-        YellowPagesApi ypa = new YellowPagesApi(context, normalizedNumber);
+        YellowPagesApi ypa = new YellowPagesApi(context, normalizedNumber, mProvider);
         YellowPagesApi.ContactInfo info = ypa.getContactInfo();
 
         if (info.name == null) {
@@ -36,6 +36,7 @@ import com.android.dialer.R;
 import com.android.dialer.compat.FilteredNumberCompat;
 import com.android.dialer.compat.SettingsCompat;
 import com.android.dialer.compat.UserManagerCompat;
+import com.android.dialer.filterednumber.BlockedNumbersSettingsActivity;
 
 import java.util.List;
 
@@ -131,6 +132,15 @@ public class DialerSettingsActivity extends AppCompatPreferenceActivity {
             blockedCallsHeader.intent = FilteredNumberCompat.createManageBlockedNumbersIntent(this);
             target.add(blockedCallsHeader);
             migrationStatusOnBuildHeaders = FilteredNumberCompat.hasMigratedToNewBlocking();
+
+            // The framework block list opened above doesn't support prefix rules
+            if (FilteredNumberCompat.useNewFiltering()) {
+                Header blockedPrefixesHeader = new Header();
+                blockedPrefixesHeader.titleRes = R.string.manage_blocked_prefixes_label;
+                blockedPrefixesHeader.intent =
+                        new Intent(this, BlockedNumbersSettingsActivity.class);
+                target.add(blockedPrefixesHeader);
+            }
         }
         if (isPrimaryUser
                 && (TelephonyManagerCompat.isTtyModeSupported(telephonyManager)
@@ -24,10 +24,12 @@ import android.content.res.Resources;
 import android.os.Bundle;
 import android.preference.Preference;
 import android.preference.ListPreference;
+import android.preference.MultiSelectListPreference;
 import android.preference.PreferenceFragment;
 import android.preference.SwitchPreference;
 
 import com.android.dialer.R;
+import com.android.dialer.lookup.LookupSettings;
 
 import cyanogenmod.providers.CMSettings;
 
@@ -49,6 +51,7 @@ public class LookupSettingsFragment extends PreferenceFragment
     private ListPreference mForwardLookupProvider;
     private ListPreference mPeopleLookupProvider;
     private ListPreference mReverseLookupProvider;
+    private MultiSelectListPreference mAdditionalReverseLookupProviders;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -72,6 +75,9 @@ public class LookupSettingsFragment extends PreferenceFragment
         mPeopleLookupProvider.setOnPreferenceChangeListener(this);
         mReverseLookupProvider.setOnPreferenceChangeListener(this);
 
+        mAdditionalReverseLookupProviders = (MultiSelectListPreference)
+                findPreference(LookupSettings.KEY_ADDITIONAL_REVERSE_LOOKUP_PROVIDERS);
+
         updateReverseLookupProviderList();
     }
 
@@ -126,6 +132,8 @@ public class LookupSettingsFragment extends PreferenceFragment
 
         mReverseLookupProvider.setEntries(entries);
         mReverseLookupProvider.setEntryValues(values);
+        mAdditionalReverseLookupProviders.setEntries(entries);
+        mAdditionalReverseLookupProviders.setEntryValues(values);
     }
 
     private boolean isPackageInstalled(String pkg) {
@@ -23,8 +23,14 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.media.MediaRecorder;
 import android.media.MediaScannerConnection;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.text.TextUtils;
 import android.provider.Settings;
@@ -37,6 +43,9 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import com.android.dialer.R;
 
@@ -49,9 +58,30 @@ public class CallRecorderService extends Service {
         RECORDING
     };
 
+    // Commands handled by the recorder worker, in the order they were issued
+    private static final int MSG_PREPARE = 1;
+    private static final int MSG_START = 2;
+    private static final int MSG_STOP = 3;
+    private static final int MSG_POLL_FIRST_AUDIO = 4;
+    private static final int MSG_RELEASE = 5;
+
+    /** Interval and limit for detecting the first captured audio after a start */
+    private static final long FIRST_AUDIO_POLL_INTERVAL_MS = 20;
+    private static final long FIRST_AUDIO_POLL_TIMEOUT_MS = 2000;
+
+    // Only accessed on the worker thread
     private MediaRecorder mMediaRecorder = null;
-    private RecorderState mState = RecorderState.IDLE;
-    private CallRecording mCurrentRecording = null;
+    private CallRecording mRecordingInProgress = null;
+    private MediaRecorder mPreparedRecorder = null;
+    private int mPreparedFormat = -1;
+    private boolean mDirectoryReady = false;
+    private long mStartRequestTime;
+
+    private volatile RecorderState mState = RecorderState.IDLE;
+    private volatile CallRecording mCurrentRecording = null;
+
+    private HandlerThread mWorkerThread;
+    private Handler mWorkerHandler;
 
     private static final String AUDIO_SOURCE_PROPERTY = "persist.call_recording.src";
 
@@ -60,9 +90,13 @@ public class CallRecorderService extends Service {
     private final ICallRecorderService.Stub mBinder = new ICallRecorderService.Stub() {
         @Override
         public CallRecording stopRecording() {
+            final CallRecording recording = mCurrentRecording;
             if (getState() == RecorderState.RECORDING) {
-                stopRecordingInternal();
-                return mCurrentRecording;
+                // The recorder is torn down on the worker; the caller only needs
+                // to know which recording was active
+                mState = RecorderState.IDLE;
+                mWorkerHandler.sendEmptyMessage(MSG_STOP);
+                return recording;
             }
             return null;
         }
@@ -71,10 +105,28 @@ public class CallRecorderService extends Service {
         public boolean startRecording(String phoneNumber, long creationTime)
                 throws RemoteException {
             String fileName = generateFilename(phoneNumber);
-            mCurrentRecording = new CallRecording(phoneNumber, creationTime,
+            final CallRecording recording = new CallRecording(phoneNumber, creationTime,
                     fileName, System.currentTimeMillis());
-            return startRecordingInternal(mCurrentRecording.getFile());
+            mCurrentRecording = recording;
+
+            // Handed to the worker along with the task rather than through a field
+            final long requestTime = SystemClock.elapsedRealtime();
+            FutureTask<Boolean> task = new FutureTask<Boolean>(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return startRecordingInternal(recording, requestTime);
+                }
+            });
+            mWorkerHandler.obtainMessage(MSG_START, task).sendToTarget();
 
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while starting recording", e);
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Failed to start recording", e.getCause());
+            }
+            return false;
         }
 
         @Override
@@ -88,9 +140,43 @@ public class CallRecorderService extends Service {
         }
     };
 
+    private final class WorkerHandler extends Handler {
+        WorkerHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_PREPARE:
+                    prepareRecorder();
+                    break;
+                case MSG_START:
+                    ((FutureTask<?>) msg.obj).run();
+                    break;
+                case MSG_STOP:
+                    stopRecordingInternal();
+                    break;
+                case MSG_POLL_FIRST_AUDIO:
+                    pollFirstAudio((Long) msg.obj);
+                    break;
+                case MSG_RELEASE:
+                    stopRecordingInternal();
+                    releasePreparedRecorder();
+                    break;
+            }
+        }
+    }
+
     @Override
     public void onCreate() {
         if (DBG) Log.d(TAG, "Creating CallRecorderService");
+        mWorkerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_FOREGROUND);
+        mWorkerThread.start();
+        mWorkerHandler = new WorkerHandler(mWorkerThread.getLooper());
+        // We are bound as soon as a call becomes active, so get everything that
+        // doesn't depend on the recording itself out of the way now
+        mWorkerHandler.sendEmptyMessage(MSG_PREPARE);
     }
 
     @Override
@@ -121,7 +207,65 @@ public class CallRecorderService extends Service {
         return 0;
     }
 
-    private synchronized boolean startRecordingInternal(File file) {
+    private boolean hasPermissions() {
+        return checkSelfPermission(android.Manifest.permission.RECORD_AUDIO)
+                == PackageManager.PERMISSION_GRANTED
+                && checkSelfPermission(android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Create the output directory and a configured media recorder ahead of the
+     * next recording. Runs on the worker thread.
+     */
+    private void prepareRecorder() {
+        if (!hasPermissions()) {
+            return;
+        }
+
+        if (!mDirectoryReady) {
+            File directory = CallRecording.getDirectory();
+            mDirectoryReady = directory.isDirectory() || directory.mkdirs();
+        }
+
+        int formatChoice = getAudioFormatChoice();
+        if (mPreparedRecorder != null && mPreparedFormat == formatChoice) {
+            return;
+        }
+        releasePreparedRecorder();
+
+        MediaRecorder recorder = new MediaRecorder();
+        try {
+            int audioSource = getAudioSource();
+            if (DBG) Log.d(TAG, "Creating media recorder with audio source " + audioSource);
+            recorder.setAudioSource(audioSource);
+            recorder.setOutputFormat(formatChoice == 0
+                    ? MediaRecorder.OutputFormat.AMR_WB : MediaRecorder.OutputFormat.MPEG_4);
+            recorder.setAudioEncoder(formatChoice == 0
+                    ? MediaRecorder.AudioEncoder.AMR_WB : MediaRecorder.AudioEncoder.AAC);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Error initializing media recorder", e);
+            recorder.release();
+            return;
+        }
+
+        mPreparedRecorder = recorder;
+        mPreparedFormat = formatChoice;
+    }
+
+    private void releasePreparedRecorder() {
+        if (mPreparedRecorder != null) {
+            mPreparedRecorder.release();
+            mPreparedRecorder = null;
+            mPreparedFormat = -1;
+        }
+    }
+
+    private boolean startRecordingInternal(CallRecording recording, long requestTime) {
+        final File file = recording.getFile();
+        final long queuedTime = SystemClock.elapsedRealtime();
+        mStartRequestTime = requestTime;
+
         if (mMediaRecorder != null) {
             if (DBG) {
                 Log.d(TAG, "Start called with recording in progress, stopping  current recording");
@@ -142,30 +286,40 @@ public class CallRecorderService extends Service {
 
         if (DBG) Log.d(TAG, "Starting recording");
 
-        mMediaRecorder = new MediaRecorder();
-        try {
-            int audioSource = getAudioSource();
-            int formatChoice = getAudioFormatChoice();
-            if (DBG) Log.d(TAG, "Creating media recorder with audio source " + audioSource);
-            mMediaRecorder.setAudioSource(audioSource);
-            mMediaRecorder.setOutputFormat(formatChoice == 0
-                    ? MediaRecorder.OutputFormat.AMR_WB : MediaRecorder.OutputFormat.MPEG_4);
-            mMediaRecorder.setAudioEncoder(formatChoice == 0
-                    ? MediaRecorder.AudioEncoder.AMR_WB : MediaRecorder.AudioEncoder.AAC);
-        } catch (IllegalStateException e) {
-            Log.w(TAG, "Error initializing media recorder", e);
+        // no-op if the recorder and directory from the last preparation are still valid
+        prepareRecorder();
+        if (mPreparedRecorder == null) {
             return false;
         }
+        mMediaRecorder = mPreparedRecorder;
+        mPreparedRecorder = null;
+        mPreparedFormat = -1;
 
-        file.getParentFile().mkdirs();
+        if (!mDirectoryReady) {
+            file.getParentFile().mkdirs();
+        }
         String outputPath = file.getAbsolutePath();
         if (DBG) Log.d(TAG, "Writing output to file " + outputPath);
 
         try {
             mMediaRecorder.setOutputFile(outputPath);
+            final long prepareStart = SystemClock.elapsedRealtime();
             mMediaRecorder.prepare();
+            final long prepareEnd = SystemClock.elapsedRealtime();
             mMediaRecorder.start();
+            final long startEnd = SystemClock.elapsedRealtime();
+            mRecordingInProgress = recording;
             mState = RecorderState.RECORDING;
+
+            Log.i(TAG, "Recording started " + (startEnd - mStartRequestTime) + " ms after "
+                    + "request (queued " + (queuedTime - mStartRequestTime) + " ms, prepare "
+                    + (prepareEnd - prepareStart) + " ms, start " + (startEnd - prepareEnd)
+                    + " ms)");
+            // the first call only resets the amplitude
+            mMediaRecorder.getMaxAmplitude();
+            mWorkerHandler.sendMessageDelayed(
+                    mWorkerHandler.obtainMessage(MSG_POLL_FIRST_AUDIO, startEnd),
+                    FIRST_AUDIO_POLL_INTERVAL_MS);
             return true;
         } catch (IOException e) {
             Log.w(TAG, "Could not start recording for file " + outputPath, e);
@@ -193,23 +347,65 @@ public class CallRecorderService extends Service {
         return false;
     }
 
-    private synchronized void stopRecordingInternal() {
+    /**
+     * Logs the time from the start request until the recorder captured
+     * actual audio. Runs on the worker thread.
+     */
+    private void pollFirstAudio(long startedTime) {
+        if (mMediaRecorder == null) {
+            return;
+        }
+
+        final long now = SystemClock.elapsedRealtime();
+        int amplitude = 0;
+        try {
+            amplitude = mMediaRecorder.getMaxAmplitude();
+        } catch (IllegalStateException e) {
+            return;
+        }
+
+        if (amplitude > 0) {
+            Log.i(TAG, "First audio frame " + (now - mStartRequestTime)
+                    + " ms after request");
+        } else if (now - startedTime < FIRST_AUDIO_POLL_TIMEOUT_MS) {
+            mWorkerHandler.sendMessageDelayed(
+                    mWorkerHandler.obtainMessage(MSG_POLL_FIRST_AUDIO, startedTime),
+                    FIRST_AUDIO_POLL_INTERVAL_MS);
+        } else {
+            Log.i(TAG, "No audio captured within " + FIRST_AUDIO_POLL_TIMEOUT_MS
+                    + " ms after start");
+        }
+    }
+
+    private void stopRecordingInternal() {
         if (DBG) Log.d(TAG, "Stopping current recording");
+        mWorkerHandler.removeMessages(MSG_POLL_FIRST_AUDIO);
         if (mMediaRecorder != null) {
+            final long stopStart = SystemClock.elapsedRealtime();
             try {
-                if (getState() == RecorderState.RECORDING) {
-                    mMediaRecorder.stop();
-                    mMediaRecorder.reset();
-                    mMediaRecorder.release();
-                }
+                mMediaRecorder.stop();
+                mMediaRecorder.reset();
+                mMediaRecorder.release();
             } catch (IllegalStateException e) {
                 Log.e(TAG, "Exception closing media recorder", e);
+            } catch (RuntimeException e) {
+                // stop() throws if no valid audio was received yet
+                Log.e(TAG, "Exception stopping media recorder", e);
+                mMediaRecorder.release();
+            }
+            if (DBG) {
+                Log.d(TAG, "Recorder stopped in "
+                        + (SystemClock.elapsedRealtime() - stopStart) + " ms");
             }
             MediaScannerConnection.scanFile(this, new String[] {
-                mCurrentRecording.fileName
+                mRecordingInProgress.getFile().getAbsolutePath()
             }, null, null);
             mMediaRecorder = null;
+            mRecordingInProgress = null;
             mState = RecorderState.IDLE;
+
+            // be ready for the next recording of this call
+            mWorkerHandler.sendEmptyMessage(MSG_PREPARE);
         }
     }
 
@@ -217,9 +413,12 @@ public class CallRecorderService extends Service {
     public void onDestroy() {
         super.onDestroy();
         if (DBG) Log.d(TAG, "Destroying CallRecorderService");
+        mWorkerHandler.removeMessages(MSG_PREPARE);
+        mWorkerHandler.sendEmptyMessage(MSG_RELEASE);
+        mWorkerThread.quitSafely();
     }
 
-    private synchronized RecorderState getState() {
+    private RecorderState getState() {
         return mState;
     }
 
@@ -28,7 +28,12 @@ import android.util.Log;
 import com.android.services.callrecorder.common.CallRecording;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Persistent data store for call recordings.  Usage:
@@ -38,8 +43,37 @@ import java.util.List;
  */
 public class CallRecordingDataStore {
     private static final String TAG = "CallRecordingStore";
+    /** Maximum number of rows deleted per statement and transaction */
+    private static final int DELETE_BATCH_SIZE = 100;
     private SQLiteOpenHelper mOpenHelper = null;
     private SQLiteDatabase mDatabase = null;
+    private static final String INSERT_SQL = "INSERT INTO " +
+            CallRecordingsContract.CallRecording.TABLE_NAME + " (" +
+            CallRecordingsContract.CallRecording.COLUMN_NAME_PHONE_NUMBER + ", " +
+            CallRecordingsContract.CallRecording.COLUMN_NAME_CALL_DATE + ", " +
+            CallRecordingsContract.CallRecording.COLUMN_NAME_RECORDING_FILENAME + ", " +
+            CallRecordingsContract.CallRecording.COLUMN_NAME_CREATION_DATE + ") " +
+            " VALUES (?, ?, ?, ?)";
+    /** Compiled on first insert and reused until the store is closed */
+    private SQLiteStatement mInsertStatement = null;
+
+    /**
+     * Callback for recordings saved by any data store in this process.
+     */
+    public interface OnRecordingSavedListener {
+        void onRecordingSaved(CallRecording recording);
+    }
+
+    private static final List<OnRecordingSavedListener> sListeners =
+            new CopyOnWriteArrayList<OnRecordingSavedListener>();
+
+    public static void addOnRecordingSavedListener(OnRecordingSavedListener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeOnRecordingSavedListener(OnRecordingSavedListener listener) {
+        sListeners.remove(listener);
+    }
 
     /**
      * Open before reading/writing.  Will not open handle if one is already open.
@@ -55,6 +89,10 @@ public class CallRecordingDataStore {
      * close when finished reading/writing
      */
     public void close() {
+        if (mInsertStatement != null) {
+            mInsertStatement.close();
+            mInsertStatement = null;
+        }
         if (mDatabase != null) {
             mDatabase.close();
         }
@@ -71,16 +109,11 @@ public class CallRecordingDataStore {
      * @param recording the recording to store
      */
     public void putRecording(CallRecording recording) {
-        final String insertSql = "INSERT INTO " +
-                CallRecordingsContract.CallRecording.TABLE_NAME + " (" +
-                CallRecordingsContract.CallRecording.COLUMN_NAME_PHONE_NUMBER + ", " +
-                CallRecordingsContract.CallRecording.COLUMN_NAME_CALL_DATE + ", " +
-                CallRecordingsContract.CallRecording.COLUMN_NAME_RECORDING_FILENAME + ", " +
-                CallRecordingsContract.CallRecording.COLUMN_NAME_CREATION_DATE + ") " +
-                " VALUES (?, ?, ?, ?)";
-
         try {
-            SQLiteStatement stmt = mDatabase.compileStatement(insertSql);
+            if (mInsertStatement == null) {
+                mInsertStatement = mDatabase.compileStatement(INSERT_SQL);
+            }
+            SQLiteStatement stmt = mInsertStatement;
             int idx = 1;
             stmt.bindString(idx++, recording.phoneNumber);
             stmt.bindLong(idx++, recording.creationTime);
@@ -88,53 +121,113 @@ public class CallRecordingDataStore {
             stmt.bindLong(idx++, System.currentTimeMillis());
             long id = stmt.executeInsert();
             Log.i(TAG, "Saved recording " + recording + " with id " + id);
+            for (OnRecordingSavedListener listener : sListeners) {
+                listener.onRecordingSaved(recording);
+            }
         } catch (SQLiteException e) {
             Log.w(TAG, "Failed to save recording " + recording, e);
         }
     }
 
     /**
-     * Get all recordings associated with a phone call
+     * Get all recordings of calls with a phone number, without checking whether
+     * their files still exist
      *
      * @param phoneNumber phone number no spaces
-     * @param callCreationDate time that the call was created
-     * @return list of recordings
+     * @return list of recordings, ordered by creation date
      */
-    public List<CallRecording> getRecordings(String phoneNumber, long callCreationDate) {
+    public List<CallRecording> getAllRecordings(String phoneNumber) {
         List<CallRecording> resultList = new ArrayList<CallRecording>();
 
         final String query = "SELECT " +
+                CallRecordingsContract.CallRecording.COLUMN_NAME_CALL_DATE + "," +
                 CallRecordingsContract.CallRecording.COLUMN_NAME_RECORDING_FILENAME + "," +
                 CallRecordingsContract.CallRecording.COLUMN_NAME_CREATION_DATE +
                 " FROM " + CallRecordingsContract.CallRecording.TABLE_NAME +
                 " WHERE " + CallRecordingsContract.CallRecording.COLUMN_NAME_PHONE_NUMBER + " = ?" +
-                " AND " + CallRecordingsContract.CallRecording.COLUMN_NAME_CALL_DATE + " = ?" +
                 " ORDER BY " + CallRecordingsContract.CallRecording.COLUMN_NAME_CREATION_DATE;
 
-        String args[] = {
-            phoneNumber, String.valueOf(callCreationDate)
-        };
-
         try {
-            Cursor cursor = mDatabase.rawQuery(query, args);
+            Cursor cursor = mDatabase.rawQuery(query, new String[] { phoneNumber });
             while (cursor.moveToNext()) {
-                String fileName = cursor.getString(0);
-                long creationDate = cursor.getLong(1);
-                CallRecording recording =
-                        new CallRecording(phoneNumber, callCreationDate, fileName, creationDate);
-                if (recording.getFile().exists()) {
-                    resultList.add(recording);
-                }
+                long callDate = cursor.getLong(0);
+                String fileName = cursor.getString(1);
+                long creationDate = cursor.getLong(2);
+                resultList.add(
+                        new CallRecording(phoneNumber, callDate, fileName, creationDate));
             }
             cursor.close();
         } catch (SQLiteException e) {
-            Log.w(TAG, "Failed to fetch recordings for number " + phoneNumber +
-                ", date " + callCreationDate, e);
+            Log.w(TAG, "Failed to fetch recordings for number " + phoneNumber, e);
         }
 
         return resultList;
     }
 
+    /**
+     * Get the file names of all recordings in the data store
+     */
+    public Set<String> getAllRecordingFileNames() {
+        Set<String> result = new HashSet<String>();
+
+        try {
+            Cursor cursor = mDatabase.query(CallRecordingsContract.CallRecording.TABLE_NAME,
+                    new String[] {
+                        CallRecordingsContract.CallRecording.COLUMN_NAME_RECORDING_FILENAME
+                    }, null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                result.add(cursor.getString(0));
+            }
+            cursor.close();
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed to fetch recording file names", e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove the recordings with the given file names from the data store.
+     * The files themselves are left alone.
+     *
+     * @param fileNames names of the recording files
+     * @return number of removed recordings
+     */
+    public int deleteRecordings(Collection<String> fileNames) {
+        int deleted = 0;
+        Iterator<String> iterator = fileNames.iterator();
+
+        while (iterator.hasNext()) {
+            List<String> batch = new ArrayList<String>(DELETE_BATCH_SIZE);
+            while (iterator.hasNext() && batch.size() < DELETE_BATCH_SIZE) {
+                batch.add(iterator.next());
+            }
+
+            StringBuilder where = new StringBuilder(
+                    CallRecordingsContract.CallRecording.COLUMN_NAME_RECORDING_FILENAME)
+                    .append(" IN (");
+            for (int i = 0; i < batch.size(); i++) {
+                where.append(i == 0 ? "?" : ",?");
+            }
+            where.append(")");
+
+            try {
+                mDatabase.beginTransaction();
+                try {
+                    deleted += mDatabase.delete(CallRecordingsContract.CallRecording.TABLE_NAME,
+                            where.toString(), batch.toArray(new String[batch.size()]));
+                    mDatabase.setTransactionSuccessful();
+                } finally {
+                    mDatabase.endTransaction();
+                }
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Failed to delete recordings", e);
+            }
+        }
+
+        return deleted;
+    }
+
     static class CallRecordingsContract {
         static interface CallRecording extends BaseColumns {
             static final String TABLE_NAME = "call_recordings";
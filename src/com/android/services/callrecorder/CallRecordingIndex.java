@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.services.callrecorder;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.services.callrecorder.common.CallRecording;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index of the recordings of one phone number, keyed by call date.
+ *
+ * The index is loaded in the background with a single query, and files that
+ * no longer exist are weeded out with one directory listing instead of a
+ * check per recording. Recordings saved while the index is open are added
+ * as they come in. All methods must be called on the main thread.
+ */
+public class CallRecordingIndex implements CallRecordingDataStore.OnRecordingSavedListener {
+    private static final String TAG = "CallRecordingIndex";
+
+    public interface Listener {
+        void onCallRecordingsChanged();
+    }
+
+    private final Context mContext;
+    private final Listener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private String mPhoneNumber;
+    private Map<Long, List<CallRecording>> mRecordings =
+            new HashMap<Long, List<CallRecording>>();
+    private LoadTask mLoadTask;
+    /** Recordings saved while loading, which the load may have missed */
+    private final List<CallRecording> mSavedDuringLoad = new ArrayList<CallRecording>();
+    private boolean mRegistered;
+
+    public CallRecordingIndex(Context context, Listener listener) {
+        mContext = context.getApplicationContext();
+        mListener = listener;
+    }
+
+    /**
+     * Load the recordings of the given number, replacing the current ones once done.
+     */
+    public void load(String phoneNumber) {
+        if (!mRegistered) {
+            CallRecordingDataStore.addOnRecordingSavedListener(this);
+            mRegistered = true;
+        }
+        if (mLoadTask != null) {
+            mLoadTask.cancel(false);
+            mLoadTask = null;
+        }
+        mSavedDuringLoad.clear();
+        if (!TextUtils.equals(phoneNumber, mPhoneNumber)) {
+            mRecordings = new HashMap<Long, List<CallRecording>>();
+        }
+        mPhoneNumber = phoneNumber;
+
+        if (!TextUtils.isEmpty(phoneNumber)) {
+            mLoadTask = new LoadTask(phoneNumber);
+            mLoadTask.execute();
+        }
+    }
+
+    /**
+     * Stop loading and tracking recordings.
+     */
+    public void close() {
+        if (mRegistered) {
+            CallRecordingDataStore.removeOnRecordingSavedListener(this);
+            mRegistered = false;
+        }
+        if (mLoadTask != null) {
+            mLoadTask.cancel(false);
+            mLoadTask = null;
+        }
+        mSavedDuringLoad.clear();
+    }
+
+    /**
+     * Get the recordings of a call, or an empty list if there are none or
+     * they are not loaded yet.
+     *
+     * @param phoneNumber phone number no spaces
+     * @param callCreationDate time that the call was created
+     */
+    public List<CallRecording> getRecordings(String phoneNumber, long callCreationDate) {
+        List<CallRecording> recordings = mRecordings.get(callCreationDate);
+        if (recordings == null || !TextUtils.equals(phoneNumber, mPhoneNumber)) {
+            return Collections.emptyList();
+        }
+        return recordings;
+    }
+
+    @Override
+    public void onRecordingSaved(final CallRecording recording) {
+        // Recordings are saved on a background thread
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mRegistered || !TextUtils.equals(recording.phoneNumber, mPhoneNumber)) {
+                    return;
+                }
+                if (mLoadTask != null) {
+                    mSavedDuringLoad.add(recording);
+                }
+                Map<Long, List<CallRecording>> recordings =
+                        new HashMap<Long, List<CallRecording>>(mRecordings);
+                addRecording(recordings, recording);
+                mRecordings = recordings;
+                mListener.onCallRecordingsChanged();
+            }
+        });
+    }
+
+    private static void addRecording(Map<Long, List<CallRecording>> recordings,
+            CallRecording recording) {
+        List<CallRecording> list = recordings.get(recording.creationTime);
+        List<CallRecording> newList = new ArrayList<CallRecording>(
+                list != null ? list.size() + 1 : 1);
+        if (list != null) {
+            newList.addAll(list);
+        }
+        newList.add(recording);
+        recordings.put(recording.creationTime, newList);
+    }
+
+    private static boolean containsFile(List<CallRecording> recordings, String fileName) {
+        if (recordings != null) {
+            for (CallRecording recording : recordings) {
+                if (TextUtils.equals(recording.fileName, fileName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private class LoadTask extends AsyncTask<Void, Void, Map<Long, List<CallRecording>>> {
+        private final String mNumber;
+
+        LoadTask(String phoneNumber) {
+            mNumber = phoneNumber;
+        }
+
+        @Override
+        protected Map<Long, List<CallRecording>> doInBackground(Void... params) {
+            Map<Long, List<CallRecording>> result = new HashMap<Long, List<CallRecording>>();
+            CallRecordingDataStore dataStore = new CallRecordingDataStore();
+            List<CallRecording> recordings;
+            try {
+                dataStore.open(mContext);
+                recordings = dataStore.getAllRecordings(mNumber);
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Failed to open call recording data store", e);
+                return result;
+            } finally {
+                dataStore.close();
+            }
+
+            if (recordings.isEmpty()) {
+                return result;
+            }
+
+            String[] fileNames = CallRecording.getDirectory().list();
+            if (fileNames == null) {
+                return result;
+            }
+            Set<String> existingFiles = new HashSet<String>(Arrays.asList(fileNames));
+            for (CallRecording recording : recordings) {
+                if (existingFiles.contains(recording.fileName)) {
+                    addRecording(result, recording);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected void onPostExecute(Map<Long, List<CallRecording>> result) {
+            if (mLoadTask != this) {
+                return;
+            }
+            mLoadTask = null;
+            for (CallRecording saved : mSavedDuringLoad) {
+                if (!containsFile(result.get(saved.creationTime), saved.fileName)) {
+                    addRecording(result, saved);
+                }
+            }
+            mSavedDuringLoad.clear();
+            mRecordings = result;
+            mListener.onCallRecordingsChanged();
+        }
+    }
+}
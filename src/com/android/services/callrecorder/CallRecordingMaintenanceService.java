@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.services.callrecorder;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.sqlite.SQLiteException;
+import android.media.MediaScannerConnection;
+import android.os.Environment;
+import android.util.Log;
+
+import com.android.dialer.R;
+import com.android.services.callrecorder.common.CallRecording;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Periodic job that keeps the call recording data store in line with the
+ * recordings directory.
+ *
+ * The directory is scanned once per run. Data store entries whose file is
+ * gone are removed, and if the recordings exceed the configured size or age
+ * limits, the oldest ones are deleted until they fit again. Files the data
+ * store doesn't track are never deleted.
+ */
+public class CallRecordingMaintenanceService extends JobService {
+    private static final String TAG = "CallRecordingMaintenance";
+
+    private static final int JOB_ID = 0x43524d4a;
+
+    private static final long JOB_INTERVAL_MS = 24 * 60 * 60 * 1000;
+    /** Recordings this recent may still be written to and are never evicted */
+    private static final long MIN_EVICTION_AGE_MS = 60 * 60 * 1000;
+
+    private MaintenanceThread mThread;
+
+    /**
+     * Schedule the periodic maintenance job, unless it is already scheduled.
+     */
+    public static void schedule(Context context) {
+        if (!CallRecorderService.isEnabled(context)) {
+            return;
+        }
+
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, CallRecordingMaintenanceService.class))
+                .setPeriodic(JOB_INTERVAL_MS)
+                .setRequiresDeviceIdle(true)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        if (checkSelfPermission(android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
+                != PackageManager.PERMISSION_GRANTED
+                || !Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+            return false;
+        }
+
+        mThread = new MaintenanceThread(params);
+        mThread.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mThread != null) {
+            mThread.cancel();
+            mThread = null;
+        }
+        return false;
+    }
+
+    private class MaintenanceThread extends Thread {
+        private final JobParameters mParams;
+        private volatile boolean mCancelled;
+
+        MaintenanceThread(JobParameters params) {
+            super("CallRecordingMaintenance");
+            mParams = params;
+        }
+
+        void cancel() {
+            mCancelled = true;
+        }
+
+        @Override
+        public void run() {
+            CallRecordingDataStore dataStore = new CallRecordingDataStore();
+            try {
+                dataStore.open(CallRecordingMaintenanceService.this);
+                performMaintenance(dataStore);
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Failed to open call recording data store", e);
+            } finally {
+                dataStore.close();
+                if (!mCancelled) {
+                    jobFinished(mParams, false);
+                }
+            }
+        }
+
+        private void performMaintenance(CallRecordingDataStore dataStore) {
+            final long now = System.currentTimeMillis();
+            final long maxBytes = getResources().getInteger(
+                    R.integer.call_recording_max_storage_mb) * 1024L * 1024L;
+            final long maxAgeMs = getResources().getInteger(
+                    R.integer.call_recording_max_age_days) * 24L * 60L * 60L * 1000L;
+
+            // Only files the data store knows about are recordings; anything else in the
+            // directory is left alone. The entries are read before the directory is listed, so
+            // a recording saved in between isn't taken for an entry whose file was deleted.
+            Set<String> knownNames = dataStore.getAllRecordingFileNames();
+            File[] listing = CallRecording.getDirectory().listFiles();
+            if (listing == null) {
+                // Without a listing every entry would look orphaned
+                Log.w(TAG, "Unable to list " + CallRecording.getDirectory());
+                return;
+            }
+            List<RecordingFile> files = new ArrayList<RecordingFile>();
+            Set<String> fileNames = new HashSet<String>();
+            long totalBytes = 0;
+            for (File file : listing) {
+                if (file.isFile() && knownNames.contains(file.getName())) {
+                    RecordingFile recordingFile = new RecordingFile(file);
+                    files.add(recordingFile);
+                    fileNames.add(recordingFile.name);
+                    totalBytes += recordingFile.length;
+                }
+            }
+
+            // Entries whose file was deleted by the user
+            Set<String> orphans = new HashSet<String>(knownNames);
+            orphans.removeAll(fileNames);
+            int removedEntries = dataStore.deleteRecordings(orphans);
+
+            // Oldest first eviction
+            RecordingFile[] sorted = files.toArray(new RecordingFile[files.size()]);
+            Arrays.sort(sorted, new Comparator<RecordingFile>() {
+                @Override
+                public int compare(RecordingFile lhs, RecordingFile rhs) {
+                    return Long.compare(lhs.lastModified, rhs.lastModified);
+                }
+            });
+
+            List<String> evicted = new ArrayList<String>();
+            List<String> evictedPaths = new ArrayList<String>();
+            long reclaimedBytes = 0;
+            for (RecordingFile file : sorted) {
+                if (mCancelled) {
+                    break;
+                }
+                final long age = now - file.lastModified;
+                final boolean overQuota = maxBytes > 0 && totalBytes > maxBytes;
+                final boolean tooOld = maxAgeMs > 0 && age > maxAgeMs;
+                if (!overQuota && !tooOld) {
+                    break;
+                }
+                if (age < MIN_EVICTION_AGE_MS) {
+                    break;
+                }
+                if (file.file.delete()) {
+                    totalBytes -= file.length;
+                    reclaimedBytes += file.length;
+                    evicted.add(file.name);
+                    evictedPaths.add(file.file.getAbsolutePath());
+                }
+            }
+            removedEntries += dataStore.deleteRecordings(evicted);
+
+            if (!evictedPaths.isEmpty()) {
+                // Let the media provider forget about the deleted files
+                MediaScannerConnection.scanFile(CallRecordingMaintenanceService.this,
+                        evictedPaths.toArray(new String[evictedPaths.size()]), null, null);
+            }
+
+            Log.i(TAG, "Removed " + removedEntries + " entries and " + evicted.size()
+                    + " recordings, reclaimed " + reclaimedBytes + " bytes, "
+                    + totalBytes + " bytes in use");
+        }
+    }
+
+    private static class RecordingFile {
+        final File file;
+        final String name;
+        final long length;
+        final long lastModified;
+
+        RecordingFile(File file) {
+            this.file = file;
+            this.name = file.getName();
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+    }
+}
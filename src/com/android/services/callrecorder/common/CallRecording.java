@@ -57,8 +57,11 @@ public final class CallRecording implements Parcelable {
     }
 
     public File getFile() {
-        File dir = Environment.getExternalStoragePublicDirectory(PUBLIC_DIRECTORY_NAME);
-        return new File(dir, fileName);
+        return new File(getDirectory(), fileName);
+    }
+
+    public static File getDirectory() {
+        return Environment.getExternalStoragePublicDirectory(PUBLIC_DIRECTORY_NAME);
     }
 
     @Override
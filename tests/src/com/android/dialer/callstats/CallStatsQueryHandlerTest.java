@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.callstats;
+
+import android.os.SystemClock;
+import android.provider.CallLog.Calls;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.android.dialer.calllog.ContactInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Unit tests for {@link CallStatsQueryHandler}.
+ */
+public class CallStatsQueryHandlerTest extends AndroidTestCase {
+    private static final String TAG = "CallStatsQueryHandlerTest";
+
+    private List<CallStatsDetails> mCalls;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCalls = new ArrayList<CallStatsDetails>();
+    }
+
+    @SmallTest
+    public void testMergeItemsByNumber_DifferentFormats() {
+        addCall("+16505551212", Calls.INCOMING_TYPE, 10);
+        addCall("6505551212", Calls.OUTGOING_TYPE, 20);
+        addCall("(650) 555-1212", Calls.MISSED_TYPE, 0);
+        addCall("+16505559999", Calls.INCOMING_TYPE, 30);
+
+        CallStatsQueryHandler.mergeItemsByNumber(mCalls);
+
+        assertEquals(2, mCalls.size());
+        assertEquals("+16505551212", mCalls.get(0).number);
+        assertEquals(3, mCalls.get(0).getTotalCount());
+        assertEquals(30, mCalls.get(0).getFullDuration());
+        assertEquals("+16505559999", mCalls.get(1).number);
+        assertEquals(1, mCalls.get(1).getTotalCount());
+    }
+
+    @SmallTest
+    public void testMergeItemsByNumber_ShortNumbers() {
+        addCall("1234", Calls.INCOMING_TYPE, 10);
+        addCall("1234", Calls.INCOMING_TYPE, 10);
+        addCall("5678", Calls.INCOMING_TYPE, 10);
+
+        CallStatsQueryHandler.mergeItemsByNumber(mCalls);
+
+        assertEquals(2, mCalls.size());
+        assertEquals(2, mCalls.get(0).getTotalCount());
+        assertEquals(1, mCalls.get(1).getTotalCount());
+    }
+
+    @SmallTest
+    public void testMergeItemsByNumber_SipAddresses() {
+        addCall("user@EXAMPLE.com", Calls.INCOMING_TYPE, 10);
+        addCall("user@example.com", Calls.INCOMING_TYPE, 10);
+        addCall("USER@example.com", Calls.INCOMING_TYPE, 10);
+
+        CallStatsQueryHandler.mergeItemsByNumber(mCalls);
+
+        assertEquals(2, mCalls.size());
+        assertEquals(2, mCalls.get(0).getTotalCount());
+        assertEquals(1, mCalls.get(1).getTotalCount());
+    }
+
+    /**
+     * Merges a synthetic log of 50000 calls from 5000 numbers, each number
+     * appearing in several formats.
+     */
+    @LargeTest
+    public void testMergeItemsByNumber_Benchmark() {
+        final int numbers = 5000;
+        final int callsPerNumber = 10;
+        for (int i = 0; i < numbers; i++) {
+            final String local = String.format(Locale.US, "650%07d", i);
+            for (int j = 0; j < callsPerNumber; j++) {
+                addCall(j % 2 == 0 ? "+1" + local : local, Calls.INCOMING_TYPE, 1);
+            }
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        CallStatsQueryHandler.mergeItemsByNumber(mCalls);
+        Log.i(TAG, "Merged " + numbers * callsPerNumber + " calls in "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+
+        assertEquals(numbers, mCalls.size());
+        for (CallStatsDetails call : mCalls) {
+            assertEquals(callsPerNumber, call.getTotalCount());
+        }
+    }
+
+    private void addCall(String number, int type, long duration) {
+        ContactInfo info = new ContactInfo();
+        info.number = number;
+        CallStatsDetails details = new CallStatsDetails(number, Calls.PRESENTATION_ALLOWED,
+                null, null, info, null, null, 0);
+        details.addTimeOrMissed(type, duration);
+        mCalls.add(details);
+    }
+}
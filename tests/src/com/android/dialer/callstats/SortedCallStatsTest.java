@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.callstats;
+
+import android.provider.CallLog.Calls;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.dialer.calllog.CallLogQueryHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link SortedCallStats}.
+ */
+@SmallTest
+public class SortedCallStatsTest extends AndroidTestCase {
+    private SortedCallStats mCalls;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        List<CallStatsDetails> items = new ArrayList<CallStatsDetails>();
+        items.add(createCall("1", 1, 100, 0));
+        items.add(createCall("2", 3, 10, 2));
+        items.add(createCall("3", 3, 50, 0));
+        items.add(createCall("4", 0, 0, 1));
+        mCalls = new SortedCallStats(items);
+    }
+
+    public void testSortByCount() {
+        assertOrder(CallLogQueryHandler.CALL_TYPE_ALL, false, "2", "3", "1", "4");
+        assertOrder(Calls.INCOMING_TYPE, false, "2", "3", "1");
+        assertOrder(Calls.MISSED_TYPE, false, "2", "4");
+        assertOrder(Calls.OUTGOING_TYPE, false);
+    }
+
+    public void testSortByDuration() {
+        assertOrder(CallLogQueryHandler.CALL_TYPE_ALL, true, "1", "3", "2");
+        assertOrder(Calls.INCOMING_TYPE, true, "1", "3", "2");
+    }
+
+    public void testTotal() {
+        assertEquals(10, mCalls.getTotal().getTotalCount());
+        assertEquals(160, mCalls.getTotal().getFullDuration());
+    }
+
+    public void testEmpty() {
+        SortedCallStats calls = SortedCallStats.empty();
+        assertEquals(0, calls.getCount(CallLogQueryHandler.CALL_TYPE_ALL, false));
+        assertEquals(0, calls.getTotal().getTotalCount());
+    }
+
+    private void assertOrder(int type, boolean sortByDuration, String... numbers) {
+        assertEquals(numbers.length, mCalls.getCount(type, sortByDuration));
+        for (int i = 0; i < numbers.length; i++) {
+            assertEquals(numbers[i], mCalls.get(type, sortByDuration, i).number);
+        }
+    }
+
+    private static CallStatsDetails createCall(String number, int incoming, long inDuration,
+            int missed) {
+        CallStatsDetails details = new CallStatsDetails(number, Calls.PRESENTATION_ALLOWED,
+                null, null, null, null, null, 0);
+        details.addCalls(Calls.INCOMING_TYPE, incoming, inDuration);
+        details.addCalls(Calls.MISSED_TYPE, missed, 0);
+        return details;
+    }
+}
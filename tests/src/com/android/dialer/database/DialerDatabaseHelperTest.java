@@ -18,12 +18,15 @@ package com.android.dialer.database;
 
 import static com.android.dialer.database.DatabaseTestUtils.*;
 
+import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.provider.CallLog.Calls;
 import android.test.suitebuilder.annotation.SmallTest;
 import android.test.suitebuilder.annotation.Suppress;
 import android.test.AndroidTestCase;
 
+import com.android.dialer.callstats.CallStatsQuery;
 import com.android.dialer.database.DialerDatabaseHelper;
 import com.android.dialer.database.DialerDatabaseHelper.ContactNumber;
 import com.android.dialer.dialpad.SmartDialNameMatcher;
@@ -32,6 +35,8 @@ import com.android.dialer.dialpad.SmartDialPrefix;
 import java.lang.Exception;
 import java.lang.Override;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.TimeZone;
 
 /**
  * Validates the behavior of the smart dial database helper with regards to contact updates and
@@ -56,6 +61,7 @@ public class DialerDatabaseHelperTest extends AndroidTestCase {
     protected void tearDown() throws Exception {
         final SQLiteDatabase db = mTestHelper.getWritableDatabase();
         mTestHelper.removeAllContacts(db);
+        mTestHelper.removeAllCallStats(db);
         super.tearDown();
     }
 
@@ -146,6 +152,179 @@ public class DialerDatabaseHelperTest extends AndroidTestCase {
         assertEquals(0, getMatchesFromDb("5105272357").size());
     }
 
+    /**
+     * Verifies that calls are summed up per number and type, and that calls added in a later
+     * update go into the existing daily buckets.
+     */
+    public void testCallStatsAggregation() {
+        final long day = getDay(0);
+        final MatrixCursor calls = new MatrixCursor(CallStatsQuery._PROJECTION);
+        addCall(calls, 1, "5105272357", day + 1000, 10, Calls.INCOMING_TYPE, "1");
+        addCall(calls, 2, "5105272357", day + 2000, 20, Calls.INCOMING_TYPE, "1");
+        addCall(calls, 3, "5105272357", day + 3000, 0, Calls.MISSED_TYPE, "1");
+        addCall(calls, 4, "6501234567", day + 4000, 30, Calls.OUTGOING_TYPE, "1");
+        assertEquals(4, mTestHelper.insertCallStats(mDb, calls, TimeZone.getDefault()));
+
+        final MatrixCursor moreCalls = new MatrixCursor(CallStatsQuery._PROJECTION);
+        addCall(moreCalls, 5, "5105272357", day + 5000, 5, Calls.INCOMING_TYPE, "1");
+        assertEquals(5, mTestHelper.insertCallStats(mDb, moreCalls, TimeZone.getDefault()));
+
+        final Cursor cursor = mTestHelper.queryCallStats(mDb, -1, -1, null);
+        try {
+            assertEquals(3, cursor.getCount());
+
+            assertTrue(cursor.moveToNext());
+            assertCallStats(cursor, "5105272357", Calls.INCOMING_TYPE, 3, 35);
+            assertEquals(5, cursor.getLong(CallStatsQuery.ID));
+
+            assertTrue(cursor.moveToNext());
+            assertCallStats(cursor, "5105272357", Calls.MISSED_TYPE, 1, 0);
+
+            assertTrue(cursor.moveToNext());
+            assertCallStats(cursor, "6501234567", Calls.OUTGOING_TYPE, 1, 30);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Verifies that the date range and account filters select the right daily buckets.
+     */
+    public void testCallStatsFilters() {
+        final long today = getDay(0);
+        final long yesterday = getDay(-1);
+        final MatrixCursor calls = new MatrixCursor(CallStatsQuery._PROJECTION);
+        addCall(calls, 1, "5105272357", yesterday + 1000, 10, Calls.INCOMING_TYPE, "1");
+        addCall(calls, 2, "5105272357", today + 1000, 20, Calls.INCOMING_TYPE, "1");
+        addCall(calls, 3, "5105272357", today + 2000, 40, Calls.INCOMING_TYPE, "2");
+        mTestHelper.insertCallStats(mDb, calls, TimeZone.getDefault());
+
+        Cursor cursor = mTestHelper.queryCallStats(mDb, today, -1, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertCallStats(cursor, "5105272357", Calls.INCOMING_TYPE, 2, 60);
+        } finally {
+            cursor.close();
+        }
+
+        cursor = mTestHelper.queryCallStats(mDb, yesterday, today - 1, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertCallStats(cursor, "5105272357", Calls.INCOMING_TYPE, 1, 10);
+        } finally {
+            cursor.close();
+        }
+
+        cursor = mTestHelper.queryCallStats(mDb, -1, -1, "2");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertCallStats(cursor, "5105272357", Calls.INCOMING_TYPE, 1, 40);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Tests that calls pruned from the call log are taken out of their buckets, and that
+     * numbers without calls left are dropped.
+     */
+    public void testCallStatsPruning() {
+        final long day = getDay(0);
+        final MatrixCursor calls = new MatrixCursor(CallStatsQuery._PROJECTION);
+        addCall(calls, 1, "6501234567", day + 1000, 30, Calls.OUTGOING_TYPE, "1");
+        addCall(calls, 2, "5105272357", day + 2000, 10, Calls.INCOMING_TYPE, "1");
+        addCall(calls, 3, "5105272357", day + 3000, 20, Calls.INCOMING_TYPE, "1");
+        addCall(calls, 4, "5105272357", day + 4000, 0, Calls.MISSED_TYPE, "1");
+        mTestHelper.insertCallStats(mDb, calls, TimeZone.getDefault());
+
+        assertEquals(2, mTestHelper.removePrunedCallStats(mDb, 3));
+        assertEquals(0, mTestHelper.removePrunedCallStats(mDb, 3));
+
+        final Cursor cursor = mTestHelper.queryCallStats(mDb, -1, -1, null);
+        try {
+            assertEquals(2, cursor.getCount());
+
+            assertTrue(cursor.moveToFirst());
+            assertCallStats(cursor, "5105272357", Calls.INCOMING_TYPE, 1, 20);
+            assertEquals(4, cursor.getLong(CallStatsQuery.ID));
+
+            assertTrue(cursor.moveToNext());
+            assertCallStats(cursor, "5105272357", Calls.MISSED_TYPE, 1, 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Verifies that the per-call columns are taken from the current call log row of the newest
+     * call of each number, so contact info cached after the call was added shows up.
+     */
+    public void testFillCallStats() {
+        final long day = getDay(0);
+        final MatrixCursor calls = new MatrixCursor(CallStatsQuery._PROJECTION);
+        addCall(calls, 1, "5105272357", day + 1000, 10, Calls.INCOMING_TYPE, "1");
+        addCall(calls, 2, "5105272357", day + 2000, 20, Calls.INCOMING_TYPE, "1");
+        addCall(calls, 3, "6501234567", day + 3000, 30, Calls.OUTGOING_TYPE, "1");
+        mTestHelper.insertCallStats(mDb, calls, TimeZone.getDefault());
+
+        // The name of the first number was looked up afterwards, the second call was deleted
+        final MatrixCursor updatedCalls = new MatrixCursor(CallStatsQuery._PROJECTION);
+        addCall(updatedCalls, 2, "5105272357", day + 2000, 20, Calls.INCOMING_TYPE, "1",
+                "Alice");
+
+        final Cursor stats = mTestHelper.queryCallStats(mDb, -1, -1, null);
+        final Cursor cursor = DialerDatabaseHelper.fillCallStats(stats, updatedCalls);
+        try {
+            assertEquals(1, cursor.getCount());
+
+            assertTrue(cursor.moveToFirst());
+            assertCallStats(cursor, "5105272357", Calls.INCOMING_TYPE, 2, 30);
+            assertEquals(2, cursor.getLong(CallStatsQuery.ID));
+            assertEquals(day + 2000, cursor.getLong(CallStatsQuery.DATE));
+            assertEquals("Alice", cursor.getString(CallStatsQuery.CACHED_NAME));
+        } finally {
+            stats.close();
+            cursor.close();
+        }
+    }
+
+    private static long getDay(int offset) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, offset);
+        return calendar.getTimeInMillis();
+    }
+
+    private static void addCall(MatrixCursor cursor, long id, String number, long date,
+            long duration, int type, String accountId) {
+        addCall(cursor, id, number, date, duration, type, accountId, null);
+    }
+
+    private static void addCall(MatrixCursor cursor, long id, String number, long date,
+            long duration, int type, String accountId, String cachedName) {
+        final Object[] row = new Object[CallStatsQuery._PROJECTION.length];
+        row[CallStatsQuery.ID] = id;
+        row[CallStatsQuery.NUMBER] = number;
+        row[CallStatsQuery.DATE] = date;
+        row[CallStatsQuery.DURATION] = duration;
+        row[CallStatsQuery.CALL_TYPE] = type;
+        row[CallStatsQuery.NUMBER_PRESENTATION] = Calls.PRESENTATION_ALLOWED;
+        row[CallStatsQuery.ACCOUNT_ID] = accountId;
+        row[CallStatsQuery.CACHED_NAME] = cachedName;
+        cursor.addRow(row);
+    }
+
+    private static void assertCallStats(Cursor cursor, String number, int type, int count,
+            long duration) {
+        assertEquals(number, cursor.getString(CallStatsQuery.NUMBER));
+        assertEquals(type, cursor.getInt(CallStatsQuery.CALL_TYPE));
+        assertEquals(count, cursor.getInt(CallStatsQuery.CALL_COUNT));
+        assertEquals(duration, cursor.getLong(CallStatsQuery.DURATION));
+    }
+
     private ArrayList<ContactNumber> getMatchesFromDb(String query) {
         final SmartDialNameMatcher nameMatcher = new SmartDialNameMatcher(query,
                 SmartDialPrefix.getMap());
@@ -37,6 +37,8 @@ import com.android.dialer.database.FilteredNumberContract.FilteredNumberColumns;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumberSources;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumberTypes;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -198,6 +200,61 @@ public class FilteredNumberAsyncQueryHandlerTest extends InstrumentationTestCase
         mContentProvider.verify();
     }
 
+    public void testIsBlockedNumberOrPrefix_Number() throws Throwable {
+        final MockContentProvider dialerProvider = addDialerProvider();
+        if (CompatUtils.isNCompatible()) {
+            newIsBlockedNumberExpectedQuery().returnRow(ID);
+        } else {
+            newIsBlockedNumberExpectedQuery().returnRow(ID, FilteredNumberTypes.BLOCKED_NUMBER);
+        }
+        final CheckBlockedListener listener = new CheckBlockedListener();
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                new FilteredNumberAsyncQueryHandler(mContentResolver)
+                        .isBlockedNumberOrPrefix(listener, NUMBER, COUNTRY_ISO);
+            }
+        });
+        // Prefix rules aren't queried once the number itself is blocked
+        assertEquals(ID, listener.waitForCallback());
+        mContentProvider.verify();
+        dialerProvider.verify();
+    }
+
+    public void testIsBlockedNumberOrPrefix_Prefix() throws Throwable {
+        final MockContentProvider dialerProvider = addDialerProvider();
+        newIsBlockedNumberExpectedQuery().returnEmptyCursor();
+        newIsBlockedPrefixExpectedQuery(dialerProvider).returnRow(ID2);
+        final CheckBlockedListener listener = new CheckBlockedListener();
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                new FilteredNumberAsyncQueryHandler(mContentResolver)
+                        .isBlockedNumberOrPrefix(listener, NUMBER, COUNTRY_ISO);
+            }
+        });
+        assertEquals(ID2, listener.waitForCallback());
+        mContentProvider.verify();
+        dialerProvider.verify();
+    }
+
+    public void testIsBlockedNumberOrPrefix_NoResults() throws Throwable {
+        final MockContentProvider dialerProvider = addDialerProvider();
+        newIsBlockedNumberExpectedQuery().returnEmptyCursor();
+        newIsBlockedPrefixExpectedQuery(dialerProvider).returnEmptyCursor();
+        final CheckBlockedListener listener = new CheckBlockedListener();
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                new FilteredNumberAsyncQueryHandler(mContentResolver)
+                        .isBlockedNumberOrPrefix(listener, NUMBER, COUNTRY_ISO);
+            }
+        });
+        assertNull(listener.waitForCallback());
+        mContentProvider.verify();
+        dialerProvider.verify();
+    }
+
     public void testBlockNumber_Disabled() throws Throwable {
         if (!CompatUtils.isNCompatible()) {
             return;
@@ -305,6 +362,80 @@ public class FilteredNumberAsyncQueryHandlerTest extends InstrumentationTestCase
         mContentProvider.verify();
     }
 
+    public void testUnblockPrefix_NullId() {
+        try {
+            new FilteredNumberAsyncQueryHandler(mContentResolver).unblockPrefix(null, null);
+            fail();
+        } catch (IllegalArgumentException e) {}
+    }
+
+    public void testUnblockPrefix() throws Throwable {
+        // Prefix rules are kept in the Dialer table, also with the framework block list
+        final MockContentResolver resolver = new MockContentResolver();
+        final MockContentProvider dialerProvider = new MockContentProvider();
+        resolver.addProvider(FilteredNumberContract.AUTHORITY, dialerProvider);
+
+        final Uri uriWithId = ContentUris.withAppendedId(BLOCKED_NUMBER_URI_M, ID);
+        dialerProvider.expectQuery(uriWithId)
+                .withProjection(null)
+                .withDefaultProjection(FilteredNumberColumns._ID)
+                .withSelection(null, null)
+                .withSortOrder(null)
+                .returnRow(ID);
+        dialerProvider.expectDelete(uriWithId).returnRowsAffected(1);
+        final UnblockNumberListener listener = new UnblockNumberListener();
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                new FilteredNumberAsyncQueryHandler(resolver).unblockPrefix(listener, ID);
+            }
+        });
+        assertNotNull(listener.waitForCallback());
+        dialerProvider.verify();
+    }
+
+    public void testBlockPrefixes_InvalidPrefix() {
+        try {
+            new FilteredNumberAsyncQueryHandler(mContentResolver).blockPrefixes(null,
+                    Arrays.asList("+1800", "1800"), COUNTRY_ISO);
+            fail();
+        } catch (IllegalArgumentException e) {}
+    }
+
+    public void testDedupeNumbers_ByNormalizedNumber() {
+        final ContentValues first = newFilteredNumberValues(NUMBER, E164_NUMBER);
+        final List<ContentValues> result = FilteredNumberAsyncQueryHandler.dedupeNumbers(
+                Arrays.asList(first, newFilteredNumberValues("(650) 253-0000", E164_NUMBER),
+                        newFilteredNumberValues("6502530001", "+16502530001")));
+        assertEquals(2, result.size());
+        assertSame(first, result.get(0));
+        assertEquals("+16502530001",
+                result.get(1).getAsString(FilteredNumberColumns.NORMALIZED_NUMBER));
+    }
+
+    public void testDedupeNumbers_WithoutNormalizedNumber() {
+        final List<ContentValues> result = FilteredNumberAsyncQueryHandler.dedupeNumbers(
+                Arrays.asList(newFilteredNumberValues(NUMBER, null),
+                        newFilteredNumberValues(NUMBER, ""),
+                        newFilteredNumberValues("6502530001", null)));
+        assertEquals(2, result.size());
+        assertEquals(NUMBER, result.get(0).getAsString(FilteredNumberColumns.NUMBER));
+        assertEquals("6502530001", result.get(1).getAsString(FilteredNumberColumns.NUMBER));
+    }
+
+    public void testDedupeNumbers_KeepsValuesWithoutNumber() {
+        final List<ContentValues> result = FilteredNumberAsyncQueryHandler.dedupeNumbers(
+                Arrays.asList(new ContentValues(), new ContentValues()));
+        assertEquals(2, result.size());
+    }
+
+    private ContentValues newFilteredNumberValues(String number, String normalizedNumber) {
+        ContentValues values = new ContentValues();
+        values.put(FilteredNumberColumns.NUMBER, number);
+        values.put(FilteredNumberColumns.NORMALIZED_NUMBER, normalizedNumber);
+        return values;
+    }
+
     private Query newIsBlockedNumberExpectedQuery() {
         if (CompatUtils.isNCompatible()) {
             return newIsBlockedNumberExpectedQueryN();
@@ -324,6 +455,27 @@ public class FilteredNumberAsyncQueryHandlerTest extends InstrumentationTestCase
                 .withSelection(FilteredNumberColumns.NORMALIZED_NUMBER + " = ?", E164_NUMBER);
     }
 
+    /**
+     * Prefix rules are kept in the Dialer table, also with the framework block list.
+     */
+    private MockContentProvider addDialerProvider() {
+        if (!CompatUtils.isNCompatible()) {
+            return mContentProvider;
+        }
+        final MockContentProvider dialerProvider = new MockContentProvider();
+        mContentResolver.addProvider(FilteredNumberContract.AUTHORITY, dialerProvider);
+        return dialerProvider;
+    }
+
+    private Query newIsBlockedPrefixExpectedQuery(MockContentProvider dialerProvider) {
+        return dialerProvider.expectQuery(BLOCKED_NUMBER_URI_M)
+                .withProjection(FilteredNumberColumns._ID)
+                .withSelection(FilteredNumberColumns.TYPE + "="
+                        + FilteredNumberTypes.BLOCKED_PREFIX + " AND ? LIKE "
+                        + FilteredNumberColumns.NORMALIZED_NUMBER + " || '%'", E164_NUMBER)
+                .withSortOrder("LENGTH(" + FilteredNumberColumns.NORMALIZED_NUMBER + ") ASC");
+    }
+
     private Query newHasBlockedNumbersExpectedQuery() {
         if (CompatUtils.isNCompatible()) {
             return newHasBlockedNumbersExpectedQueryN();
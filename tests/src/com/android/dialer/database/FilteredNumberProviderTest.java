@@ -180,6 +180,26 @@ public class FilteredNumberProviderTest extends
         cursor.close();
     }
 
+    public void testBulkInsert() {
+        // Existing row
+        mResolver.insert(FilteredNumberContract.FilteredNumber.CONTENT_URI, getTestValues(null));
+
+        ContentValues other = getTestValues(null);
+        other.put(FilteredNumberContract.FilteredNumberColumns.NORMALIZED_NUMBER, "+1234567891");
+        other.put(FilteredNumberContract.FilteredNumberColumns.NUMBER, "234567891");
+        ContentValues otherDuplicate = new ContentValues(other);
+
+        int inserted = mResolver.bulkInsert(FilteredNumberContract.FilteredNumber.CONTENT_URI,
+                new ContentValues[] { getTestValues(null), other, otherDuplicate });
+        assertEquals(1, inserted);
+
+        Cursor cursor = mResolver.query(
+                FilteredNumberContract.FilteredNumber.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        cursor.close();
+    }
+
     @Override
     protected void tearDown() throws Exception {
         getProvider().closeDb();
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.filterednumber;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.database.MatrixCursor;
+import android.provider.BlockedNumberContract;
+import android.provider.BlockedNumberContract.BlockedNumbers;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.contacts.common.compat.CompatUtils;
+import com.android.contacts.common.test.mocks.MockContentProvider;
+import com.android.dialer.DialerApplication;
+import com.android.dialer.compat.FilteredNumberCompat;
+import com.android.dialer.database.FilteredNumberContract;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumber;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumberColumns;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumberTypes;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@SmallTest
+public class BlockedNumberIndexTest extends AndroidTestCase {
+
+    private static final String[] PROJECTION = new String[] { "_id", "e164_number" };
+    private static final String E164_NUMBER = "+16502530000";
+    private static final String OTHER_E164_NUMBER = "+16502530001";
+    private static final String PREFIX = "+1800";
+    private static final long TIMEOUT_MS = 5000;
+
+    private final MockContentResolver mContentResolver = new MockContentResolver();
+    private final MockContentProvider mFilteredNumberProvider = new MockContentProvider();
+    private final MockContentProvider mBlockedNumberProvider = new MockContentProvider();
+    private Context mIndexContext;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        DialerApplication.setContextForTest(getContext());
+        FilteredNumberCompat.setContextForTest(getContext());
+        FilteredNumberCompat.setIsEnabledForTest(false);
+        FilteredNumberCompat.setHasMigratedToNewBlocking(false);
+
+        mContentResolver.addProvider(FilteredNumberContract.AUTHORITY, mFilteredNumberProvider);
+        if (CompatUtils.isNCompatible()) {
+            mContentResolver.addProvider(BlockedNumberContract.AUTHORITY,
+                    mBlockedNumberProvider);
+        }
+        mIndexContext = new ContextWrapper(getContext()) {
+            @Override
+            public ContentResolver getContentResolver() {
+                return mContentResolver;
+            }
+        };
+
+        mFilteredNumberProvider.expectQuery(FilteredNumber.CONTENT_URI)
+                .withProjection(FilteredNumberColumns._ID, FilteredNumberColumns.NORMALIZED_NUMBER,
+                        FilteredNumberColumns.TYPE)
+                .withSelection(FilteredNumberColumns.TYPE + "="
+                        + FilteredNumberTypes.BLOCKED_NUMBER, null)
+                .anyNumberOfTimes()
+                .returnRow(1, E164_NUMBER, FilteredNumberTypes.BLOCKED_NUMBER);
+        mFilteredNumberProvider.expectQuery(FilteredNumber.CONTENT_URI)
+                .withProjection(FilteredNumberColumns._ID, FilteredNumberColumns.NORMALIZED_NUMBER)
+                .withSelection(FilteredNumberColumns.TYPE + "="
+                        + FilteredNumberTypes.BLOCKED_PREFIX, null)
+                .anyNumberOfTimes()
+                .returnRow(2, PREFIX);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        FilteredNumberCompat.setHasMigratedToNewBlocking(false);
+        FilteredNumberCompat.setIsEnabledForTest(null);
+        FilteredNumberCompat.setContextForTest(null);
+        DialerApplication.setContextForTest(null);
+        super.tearDown();
+    }
+
+    public void testIsLoaded_AfterFirstLoad() throws InterruptedException {
+        BlockedNumberIndex index = newLoadedIndex();
+
+        assertTrue(index.isLoaded());
+        assertEquals(1, index.getBlockedId(E164_NUMBER));
+        assertEquals(2, index.getPrefixRuleId("+18005550100"));
+        assertFalse(index.isBlocked(OTHER_E164_NUMBER));
+    }
+
+    public void testIsLoaded_StaleAfterInvalidate() throws InterruptedException {
+        BlockedNumberIndex index = newLoadedIndex();
+
+        CountDownLatch reloaded = addReloadLatch(index);
+        index.invalidate();
+        assertFalse(index.isLoaded());
+
+        assertTrue(reloaded.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(index.isLoaded());
+    }
+
+    public void testIsLoaded_StaleAfterProviderChange() throws InterruptedException {
+        BlockedNumberIndex index = newLoadedIndex();
+
+        CountDownLatch reloaded = addReloadLatch(index);
+        index.mObserver.onChange(false);
+        assertFalse(index.isLoaded());
+
+        assertTrue(reloaded.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(index.isLoaded());
+    }
+
+    public void testIsLoaded_StaleAfterMigration() throws InterruptedException {
+        if (!CompatUtils.isNCompatible()) {
+            return;
+        }
+        FilteredNumberCompat.setIsEnabledForTest(true);
+        BlockedNumberIndex index = newLoadedIndex();
+
+        mBlockedNumberProvider.expectQuery(BlockedNumbers.CONTENT_URI)
+                .withProjection(BlockedNumbers.COLUMN_ID, BlockedNumbers.COLUMN_E164_NUMBER)
+                .withSelection(null, null)
+                .anyNumberOfTimes()
+                .returnRow(3, OTHER_E164_NUMBER);
+        CountDownLatch reloaded = addReloadLatch(index);
+        FilteredNumberCompat.setHasMigratedToNewBlocking(true);
+        assertFalse(index.isLoaded());
+
+        assertTrue(reloaded.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(index.isLoaded());
+        assertEquals(3, index.getBlockedId(OTHER_E164_NUMBER));
+        assertEquals(BlockedNumberIndex.NOT_BLOCKED, index.getBlockedId(E164_NUMBER));
+        // Prefix rules stay with the Dialer's provider
+        assertEquals(2, index.getPrefixRuleId("+18005550100"));
+    }
+
+    private BlockedNumberIndex newLoadedIndex() throws InterruptedException {
+        final CountDownLatch loaded = new CountDownLatch(1);
+        BlockedNumberIndex index = new BlockedNumberIndex(mIndexContext);
+        index.addListener(new BlockedNumberIndex.Listener() {
+            @Override
+            public void onBlockedNumbersChanged() {
+                loaded.countDown();
+            }
+        });
+        // The first load may have notified before the listener was added
+        if (!index.isLoaded()) {
+            assertTrue(loaded.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+        return index;
+    }
+
+    private static CountDownLatch addReloadLatch(BlockedNumberIndex index) {
+        final CountDownLatch reloaded = new CountDownLatch(1);
+        index.addListener(new BlockedNumberIndex.Listener() {
+            @Override
+            public void onBlockedNumbersChanged() {
+                reloaded.countDown();
+            }
+        });
+        return reloaded;
+    }
+
+    public void testReadBlockedNumbers_Empty() {
+        MatrixCursor cursor = new MatrixCursor(PROJECTION);
+        assertTrue(BlockedNumberIndex.readBlockedNumbers(cursor).isEmpty());
+    }
+
+    public void testReadBlockedNumbers() {
+        MatrixCursor cursor = new MatrixCursor(PROJECTION);
+        cursor.addRow(new Object[] { 1, "+16502530000" });
+        cursor.addRow(new Object[] { 2, "+16502530001" });
+
+        Map<String, Integer> ids = BlockedNumberIndex.readBlockedNumbers(cursor);
+        assertEquals(2, ids.size());
+        assertEquals(Integer.valueOf(1), ids.get("+16502530000"));
+        assertEquals(Integer.valueOf(2), ids.get("+16502530001"));
+    }
+
+    public void testReadBlockedNumbers_SkipsNumbersWithoutE164() {
+        MatrixCursor cursor = new MatrixCursor(PROJECTION);
+        cursor.addRow(new Object[] { 1, null });
+        cursor.addRow(new Object[] { 2, "" });
+
+        assertTrue(BlockedNumberIndex.readBlockedNumbers(cursor).isEmpty());
+    }
+
+    public void testReadBlockedNumbers_KeepsFirstIdForDuplicates() {
+        // The framework provider can contain several rows for the same E164 number
+        MatrixCursor cursor = new MatrixCursor(PROJECTION);
+        cursor.addRow(new Object[] { 1, "+16502530000" });
+        cursor.addRow(new Object[] { 2, "+16502530000" });
+
+        Map<String, Integer> ids = BlockedNumberIndex.readBlockedNumbers(cursor);
+        assertEquals(1, ids.size());
+        assertEquals(Integer.valueOf(1), ids.get("+16502530000"));
+    }
+}
@@ -73,6 +73,12 @@ public class BlockedNumbersFragmentInstrumentationTest extends
     assertEquals(View.VISIBLE, blockedNumbersFragment.migratePromoView.getVisibility());
   }
 
+  public void testAddPrefix_Shown() {
+    // Prefix rules are managed here whether or not the framework blocking can be used
+    assertEquals(View.VISIBLE, blockedNumbersFragment.getListView()
+        .findViewById(R.id.add_prefix_linear_layout).getVisibility());
+  }
+
   public void testOnClick_Migrate() {
     if (!CompatUtils.isNCompatible()) {
       return;
@@ -29,6 +29,7 @@ import com.android.dialer.compat.FilteredNumberCompat;
 import com.android.dialer.database.FilteredNumberContract;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumber;
 import com.android.dialer.database.FilteredNumberContract.FilteredNumberColumns;
+import com.android.dialer.database.FilteredNumberContract.FilteredNumberTypes;
 
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -41,6 +42,8 @@ public class BlockedNumbersMigratorTest extends AndroidTestCase {
     private static final String NUMBER = "6502530000";
     private static final String NUMBER1 = "6502530001";
     private static final String NUMBER2 = "6502530002";
+    private static final String BLOCKED_SELECTION =
+            FilteredNumberColumns.TYPE + "=" + FilteredNumberTypes.BLOCKED_NUMBER;
 
     @Mock private BlockedNumbersMigrator.Listener mListener;
     private final MockContentResolver mContentResolver = new MockContentResolver();
@@ -94,8 +97,10 @@ public class BlockedNumbersMigratorTest extends AndroidTestCase {
             return;
         }
         mContentProvider.expectQuery(FilteredNumber.CONTENT_URI)
-                .withProjection(FilteredNumberColumns.NUMBER).returnRow(NUMBER).returnRow(NUMBER1)
-                .returnRow(NUMBER2);
+                .withProjection(FilteredNumberColumns.NUMBER).withSelection(BLOCKED_SELECTION, null)
+                .returnRow(NUMBER).returnRow(NUMBER1).returnRow(NUMBER2);
+        mContentProvider.expectQuery(BlockedNumbers.CONTENT_URI)
+                .withProjection(BlockedNumbers.COLUMN_ORIGINAL_NUMBER).returnEmptyCursor();
 
         setUpNewBlockedNumberExpectations(mContentProvider, NUMBER, 0);
         setUpNewBlockedNumberExpectations(mContentProvider, NUMBER1, 1);
@@ -113,10 +118,10 @@ public class BlockedNumbersMigratorTest extends AndroidTestCase {
             return;
         }
         mContentProvider.expectQuery(FilteredNumber.CONTENT_URI)
-                .withProjection(FilteredNumberColumns.NUMBER).returnRow(NUMBER);
+                .withProjection(FilteredNumberColumns.NUMBER).withSelection(BLOCKED_SELECTION, null)
+                .returnRow(NUMBER);
         mContentProvider.expectQuery(BlockedNumbers.CONTENT_URI)
-                .withProjection(BlockedNumbers.COLUMN_ID)
-                .withSelection(BlockedNumbers.COLUMN_ORIGINAL_NUMBER + " = ?", NUMBER).returnRow(0);
+                .withProjection(BlockedNumbers.COLUMN_ORIGINAL_NUMBER).returnRow(NUMBER);
         // No expectation for insert into BlockedNumbers.CONTENT_URI because it's already there
 
         MigrationListener listener = new MigrationListener();
@@ -126,11 +131,27 @@ public class BlockedNumbersMigratorTest extends AndroidTestCase {
         mContentProvider.verify();
     }
 
+    public void testMigrate_N_DuplicateNumbers() throws InterruptedException {
+        if (!CompatUtils.isNCompatible()) {
+            return;
+        }
+        mContentProvider.expectQuery(FilteredNumber.CONTENT_URI)
+                .withProjection(FilteredNumberColumns.NUMBER).withSelection(BLOCKED_SELECTION, null)
+                .returnRow(NUMBER).returnRow(NUMBER);
+        mContentProvider.expectQuery(BlockedNumbers.CONTENT_URI)
+                .withProjection(BlockedNumbers.COLUMN_ORIGINAL_NUMBER).returnEmptyCursor();
+        // Only a single insert expected
+        setUpNewBlockedNumberExpectations(mContentProvider, NUMBER, 0);
+
+        MigrationListener listener = new MigrationListener();
+        assertTrue(mMigrator.migrate(listener));
+        listener.waitForCallback();
+        assertTrue(FilteredNumberCompat.hasMigratedToNewBlocking());
+        mContentProvider.verify();
+    }
+
     private void setUpNewBlockedNumberExpectations(MockContentProvider contentProvider,
             String number, int returnId) {
-        contentProvider.expectQuery(BlockedNumbers.CONTENT_URI)
-                .withProjection(BlockedNumbers.COLUMN_ID)
-                .withSelection(BlockedNumbers.COLUMN_ORIGINAL_NUMBER + " = ?", number).returnEmptyCursor();
         contentProvider.expectInsert(BlockedNumbers.CONTENT_URI,
                 createBlockedNumberInsertValues(number),
                 ContentUris.withAppendedId(BlockedNumbers.CONTENT_URI, returnId));
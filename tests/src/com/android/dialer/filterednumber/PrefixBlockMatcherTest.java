@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.filterednumber;
+
+import android.database.MatrixCursor;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Unit tests for {@link PrefixBlockMatcher}.
+ */
+public class PrefixBlockMatcherTest extends AndroidTestCase {
+    private static final String TAG = "PrefixBlockMatcherTest";
+
+    @SmallTest
+    public void testMatch_Empty() {
+        assertEquals(PrefixBlockMatcher.NO_MATCH,
+                PrefixBlockMatcher.empty().match("+16502530000"));
+    }
+
+    @SmallTest
+    public void testMatch() {
+        PrefixBlockMatcher.Builder builder = new PrefixBlockMatcher.Builder();
+        builder.add("+1800555", 1);
+        builder.add("+4930", 2);
+        PrefixBlockMatcher matcher = builder.build();
+
+        assertEquals(2, matcher.getPrefixCount());
+        assertEquals(1, matcher.match("+18005551234"));
+        assertEquals(1, matcher.match("+1800555"));
+        assertEquals(2, matcher.match("+49301234567"));
+        assertEquals(PrefixBlockMatcher.NO_MATCH, matcher.match("+1800556"));
+        assertEquals(PrefixBlockMatcher.NO_MATCH, matcher.match("+180055"));
+        assertEquals(PrefixBlockMatcher.NO_MATCH, matcher.match("+4989123456"));
+    }
+
+    @SmallTest
+    public void testMatch_ShortestPrefixWins() {
+        PrefixBlockMatcher.Builder builder = new PrefixBlockMatcher.Builder();
+        builder.add("+1800555", 1);
+        builder.add("+1800", 2);
+        PrefixBlockMatcher matcher = builder.build();
+
+        assertEquals(2, matcher.match("+18005551234"));
+    }
+
+    @SmallTest
+    public void testMatch_InvalidNumbers() {
+        PrefixBlockMatcher.Builder builder = new PrefixBlockMatcher.Builder();
+        builder.add("+1", 1);
+        PrefixBlockMatcher matcher = builder.build();
+
+        assertEquals(PrefixBlockMatcher.NO_MATCH, matcher.match(null));
+        assertEquals(PrefixBlockMatcher.NO_MATCH, matcher.match(""));
+        assertEquals(PrefixBlockMatcher.NO_MATCH, matcher.match("+"));
+        assertEquals(PrefixBlockMatcher.NO_MATCH, matcher.match("16502530000"));
+        assertEquals(PrefixBlockMatcher.NO_MATCH, matcher.match("+*1"));
+    }
+
+    @SmallTest
+    public void testBuilder_IgnoresInvalidPrefixes() {
+        PrefixBlockMatcher.Builder builder = new PrefixBlockMatcher.Builder();
+        assertFalse(builder.add(null, 1));
+        assertFalse(builder.add("+", 1));
+        assertFalse(builder.add("1800", 1));
+        assertFalse(builder.add("+1800-555", 1));
+        assertFalse(builder.add("+1800", -1));
+        assertEquals(0, builder.build().getPrefixCount());
+    }
+
+    @SmallTest
+    public void testBuilder_KeepsFirstIdForDuplicates() {
+        PrefixBlockMatcher.Builder builder = new PrefixBlockMatcher.Builder();
+        builder.add("+1800", 1);
+        builder.add("+1800", 2);
+        PrefixBlockMatcher matcher = builder.build();
+
+        assertEquals(1, matcher.getPrefixCount());
+        assertEquals(1, matcher.match("+18005551234"));
+    }
+
+    @SmallTest
+    public void testRangeToPrefixes() {
+        assertEquals(Arrays.asList("+16502530", "+16502531"),
+                PrefixBlockMatcher.rangeToPrefixes("+16502530000", "+16502531999"));
+    }
+
+    @SmallTest
+    public void testRangeToPrefixes_SingleNumber() {
+        assertEquals(Arrays.asList("+16502530000"),
+                PrefixBlockMatcher.rangeToPrefixes("+16502530000", "+16502530000"));
+    }
+
+    @SmallTest
+    public void testRangeToPrefixes_Unaligned() {
+        assertEquals(Arrays.asList("+165025300005", "+165025300006", "+165025300007",
+                "+165025300008", "+165025300009", "+16502530001", "+165025300020",
+                "+165025300021"),
+                PrefixBlockMatcher.rangeToPrefixes("+165025300005", "+165025300021"));
+    }
+
+    @SmallTest
+    public void testRangeToPrefixes_CoversExactlyTheRange() {
+        List<String> prefixes = PrefixBlockMatcher.rangeToPrefixes("+1650253", "+1650972");
+        PrefixBlockMatcher.Builder builder = new PrefixBlockMatcher.Builder();
+        for (String prefix : prefixes) {
+            builder.add(prefix, 1);
+        }
+        PrefixBlockMatcher matcher = builder.build();
+
+        for (int i = 1650000; i < 1651000; i++) {
+            final boolean inRange = i >= 1650253 && i <= 1650972;
+            assertEquals("+" + i, inRange ? 1 : PrefixBlockMatcher.NO_MATCH,
+                    matcher.match("+" + i));
+        }
+    }
+
+    @SmallTest
+    public void testRangeToPrefixes_Invalid() {
+        assertInvalidRange("+16502531999", "+16502530000");
+        assertInvalidRange("+1650253000", "+16502530000");
+        assertInvalidRange("16502530000", "16502530001");
+    }
+
+    @SmallTest
+    public void testReadPrefixRules() {
+        MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "normalized_number" });
+        cursor.addRow(new Object[] { 3, "+1800555" });
+        cursor.addRow(new Object[] { 4, "invalid" });
+
+        PrefixBlockMatcher matcher = BlockedNumberIndex.readPrefixRules(cursor);
+        assertEquals(1, matcher.getPrefixCount());
+        assertEquals(3, matcher.match("+18005551234"));
+    }
+
+    @LargeTest
+    public void testMatch_Benchmark() {
+        final int prefixCount = 10000;
+        final int lookups = 100000;
+
+        long start = SystemClock.elapsedRealtime();
+        PrefixBlockMatcher.Builder builder = new PrefixBlockMatcher.Builder();
+        for (int i = 0; i < prefixCount; i++) {
+            builder.add(String.format(Locale.US, "+1650%05d", i * 7), i);
+        }
+        PrefixBlockMatcher matcher = builder.build();
+        Log.i(TAG, "Compiled " + prefixCount + " prefixes in "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+
+        final String[] numbers = new String[lookups];
+        for (int i = 0; i < lookups; i++) {
+            numbers[i] = String.format(Locale.US, "+1650%07d", i * 97);
+        }
+
+        int matches = 0;
+        start = SystemClock.elapsedRealtime();
+        for (String number : numbers) {
+            if (matcher.match(number) != PrefixBlockMatcher.NO_MATCH) {
+                matches++;
+            }
+        }
+        Log.i(TAG, "Matched " + lookups + " numbers in "
+                + (SystemClock.elapsedRealtime() - start) + "ms, " + matches + " blocked");
+
+        assertEquals(prefixCount, matcher.getPrefixCount());
+        assertTrue(matches > 0);
+    }
+
+    private void assertInvalidRange(String start, String end) {
+        try {
+            PrefixBlockMatcher.rangeToPrefixes(start, end);
+            fail("Expected IllegalArgumentException for " + start + " - " + end);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
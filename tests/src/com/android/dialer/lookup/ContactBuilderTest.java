@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.lookup;
+
+import android.net.Uri;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.dialer.calllog.ContactInfo;
+
+import org.json.JSONException;
+
+/**
+ * Unit tests for {@link ContactBuilder}.
+ */
+@SmallTest
+public class ContactBuilderTest extends AndroidTestCase {
+    private static final String NAME = "Pizza Place";
+    private static final String NUMBER = "+1 650-555-1212";
+    private static final String CITY = "Mountain View";
+    private static final String ADDRESS = "1 Main St, Mountain View";
+    private static final String WEBSITE = "http://example.com";
+
+    private static final String ENCODED_SINGLE_PHONE =
+            "{\"display_name\":\"" + NAME + "\",\"vnd.android.cursor.item/contact\":{"
+            + "\"vnd.android.cursor.item/name\":{\"data1\":\"" + NAME + "\"},"
+            + "\"vnd.android.cursor.item/phone_v2\":{\"data1\":\"" + NUMBER + "\",\"data2\":12}}}";
+
+    public void testRoundTrip() throws JSONException {
+        ContactInfo info = buildContact();
+
+        ContactBuilder parsed = new ContactBuilder(info.lookupUri);
+        assertEquals(NAME, parsed.getName().displayName);
+
+        assertEquals(1, parsed.getPhoneNumbers().length);
+        assertEquals(NUMBER, parsed.getPhoneNumbers()[0].number);
+        assertEquals(Phone.TYPE_MAIN, parsed.getPhoneNumbers()[0].type);
+
+        assertEquals(1, parsed.getAddresses().length);
+        assertEquals(CITY, parsed.getAddresses()[0].city);
+        assertEquals(ADDRESS, parsed.getAddresses()[0].formattedAddress);
+        assertEquals(StructuredPostal.TYPE_WORK, parsed.getAddresses()[0].type);
+
+        assertEquals(1, parsed.getWebsites().length);
+        assertEquals(WEBSITE, parsed.getWebsites()[0].url);
+        assertEquals(DirectoryId.NEARBY, parsed.getDirectoryId());
+    }
+
+    public void testSinglePhoneNumberObject() throws JSONException {
+        Uri uri = new Uri.Builder()
+                .scheme("content")
+                .authority("com.android.contacts")
+                .encodedFragment(ENCODED_SINGLE_PHONE)
+                .build();
+
+        ContactBuilder parsed = new ContactBuilder(uri);
+        assertEquals(NAME, parsed.getName().displayName);
+        assertEquals(1, parsed.getPhoneNumbers().length);
+        assertEquals(NUMBER, parsed.getPhoneNumbers()[0].number);
+        assertEquals(Phone.TYPE_MAIN, parsed.getPhoneNumbers()[0].type);
+    }
+
+    public void testMalformedData() {
+        Uri uri = new Uri.Builder()
+                .scheme("content")
+                .authority("com.android.contacts")
+                .encodedFragment("{\"vnd.android.cursor.item/contact\":[")
+                .build();
+
+        try {
+            new ContactBuilder(uri);
+            fail("Expected JSONException");
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+
+    public void testGetAddressLabel() throws JSONException {
+        ContactInfo info = buildContact();
+        assertEquals(CITY, ContactBuilder.getAddressLabel(info.lookupUri));
+    }
+
+    public void testGetAddressLabel_NoAddress() throws JSONException {
+        Uri uri = new Uri.Builder()
+                .scheme("content")
+                .authority("com.android.contacts")
+                .encodedFragment(ENCODED_SINGLE_PHONE)
+                .build();
+        assertNull(ContactBuilder.getAddressLabel(uri));
+    }
+
+    public void testGetAddressLabel_IgnoresLaterBuilderChanges() throws JSONException {
+        ContactBuilder builder = newContactBuilder();
+        ContactInfo info = builder.build();
+
+        builder.getAddresses()[0].city = "Palo Alto";
+
+        assertEquals(CITY, ContactBuilder.getAddressLabel(info.lookupUri));
+    }
+
+    private static ContactInfo buildContact() {
+        return newContactBuilder().build();
+    }
+
+    private static ContactBuilder newContactBuilder() {
+        ContactBuilder builder = new ContactBuilder(ContactBuilder.FORWARD_LOOKUP, null, NUMBER);
+        builder.setName(ContactBuilder.Name.createDisplayName(NAME));
+        builder.addPhoneNumber(ContactBuilder.PhoneNumber.createMainNumber(NUMBER));
+        builder.addWebsite(ContactBuilder.WebsiteUrl.createProfile(WEBSITE));
+
+        ContactBuilder.Address a = new ContactBuilder.Address();
+        a.formattedAddress = ADDRESS;
+        a.city = CITY;
+        a.type = StructuredPostal.TYPE_WORK;
+        builder.addAddress(a);
+
+        return builder;
+    }
+}